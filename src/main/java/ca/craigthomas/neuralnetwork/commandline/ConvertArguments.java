@@ -0,0 +1,21 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.commandline;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+
+/**
+ * Parameters used for the convert command.
+ */
+@Parameters(commandDescription="Converts a CSV file or image directories into a binary data set")
+public class ConvertArguments extends DataArguments
+{
+    @Parameter(names={"-o", "--output"}, description="the binary data set file to write", required=true)
+    public String outputFile = "";
+
+    @Parameter(names={"--float"}, description="stores values as 32-bit floats instead of 64-bit doubles")
+    public boolean useFloat = false;
+}
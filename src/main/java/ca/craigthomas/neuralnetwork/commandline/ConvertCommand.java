@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.commandline;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ca.craigthomas.neuralnetwork.dataset.BinaryDataSet;
+import ca.craigthomas.neuralnetwork.dataset.DataSet;
+
+/**
+ * The ConvertCommand loads a data set from a CSV file or from positive and
+ * negative image directories, and writes it out as a binary data set that
+ * later commands can open with the --dataset option.
+ */
+public class ConvertCommand
+{
+    // The logger for the class
+    private final static Logger LOGGER = Logger.getLogger(Runner.class.getName());
+    // The arguments passed to the command
+    ConvertArguments arguments;
+
+    public ConvertCommand(ConvertArguments arguments) {
+        this.arguments = arguments;
+    }
+
+    public void execute() {
+        DataSet dataSet = new DataSetLoader(arguments).load();
+        if (dataSet == null || dataSet.getNumSamples() == 0) {
+            LOGGER.log(Level.SEVERE, "no data set could be built, exiting");
+            return;
+        }
+
+        int dataType = arguments.useFloat ? BinaryDataSet.DTYPE_FLOAT32 : BinaryDataSet.DTYPE_FLOAT64;
+        try {
+            BinaryDataSet.write(dataSet, arguments.outputFile, dataType);
+            LOGGER.log(Level.INFO, "wrote " + dataSet.getNumSamples() + " sample(s) to " + arguments.outputFile);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "could not write data set [" + arguments.outputFile + "]: " + e.getMessage());
+        }
+    }
+}
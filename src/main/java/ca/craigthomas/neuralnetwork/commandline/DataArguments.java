@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.commandline;
+
+import com.beust.jcommander.Parameter;
+
+/**
+ * Parameters shared by every command that needs to load a data set.
+ */
+public class DataArguments
+{
+    @Parameter(names={"-c", "--csv"}, description="loads data from a CSV file")
+    public String csvFile = "";
+
+    @Parameter(names={"--header"}, description="ignores the first line of the CSV file")
+    public boolean csvHeader = false;
+
+    @Parameter(names={"-d", "--dataset"}, description="loads data from a binary data set file")
+    public String binaryFile = "";
+
+    @Parameter(names={"--color"}, description="processes images in color")
+    public boolean color = false;
+
+    @Parameter(names={"-p", "--positivedir"}, description="specifies positive image directory")
+    public String positiveDir = "";
+
+    @Parameter(names={"-n", "--negativedir"}, description="specifies negative image directory")
+    public String negativeDir = "";
+
+    @Parameter(names={"-w", "--width"}, description="ensure images have specified width in pixels")
+    public Integer requiredWidth = 10;
+
+    @Parameter(names={"-h", "--height"}, description="ensure images have specified height in pixels")
+    public Integer requiredHeight = 10;
+
+    @Parameter(names={"--iothreads"}, description="number of threads reading image files")
+    public Integer ioThreads = 16;
+
+    @Parameter(names={"--cache"}, description="reuses image features stored in the specified cache file")
+    public String cacheFile = "";
+}
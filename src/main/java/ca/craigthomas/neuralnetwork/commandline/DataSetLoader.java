@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.commandline;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+
+import ca.craigthomas.neuralnetwork.dataset.DataSet;
+import ca.craigthomas.neuralnetwork.dataset.FeatureCache;
+import ca.craigthomas.neuralnetwork.dataset.ImageDirectoryReader;
+
+/**
+ * Builds a DataSet from the sources named in a set of DataArguments. Data
+ * can come from a binary data set file, a CSV file, or a pair of positive
+ * and negative image directories, checked in that order.
+ */
+public class DataSetLoader
+{
+    // The logger for the class
+    private final static Logger LOGGER = Logger.getLogger(Runner.class.getName());
+    // The underlying data set
+    private DataSet mDataSet;
+    // The arguments describing where to load data from
+    DataArguments arguments;
+
+    public DataSetLoader(DataArguments arguments) {
+        this.arguments = arguments;
+    }
+
+    /**
+     * Loads the data set from whichever source was specified. Returns null
+     * if no data set could be built.
+     *
+     * @return the loaded data set, or null on failure
+     */
+    public DataSet load() {
+        if (!arguments.binaryFile.isEmpty()) {
+            loadFromBinaryFile();
+        } else if (!arguments.csvFile.isEmpty()) {
+            loadFromCSV();
+        } else {
+            loadFromDirectories();
+        }
+        return mDataSet;
+    }
+
+    /**
+     * Load the data from a binary data set file.
+     */
+    public void loadFromBinaryFile() {
+        mDataSet = new DataSet(true);
+        try {
+            mDataSet.addFromBinaryFile(arguments.binaryFile);
+            LOGGER.log(Level.INFO, "loaded " + mDataSet.getNumSamples() + " sample(s)");
+        } catch(IOException e) {
+            LOGGER.log(Level.SEVERE, e.getMessage());
+            mDataSet = null;
+        }
+    }
+
+    /**
+     * Load the data from a CSV file.
+     */
+    public void loadFromCSV() {
+        mDataSet = new DataSet(true);
+        try {
+            mDataSet.addFromCSVFile(arguments.csvFile, arguments.csvHeader);
+            LOGGER.log(Level.INFO, "loaded " + mDataSet.getNumSamples() + " sample(s)");
+        } catch(IOException e) {
+            LOGGER.log(Level.SEVERE, e.getMessage());
+            mDataSet = null;
+        }
+    }
+
+    /**
+     * Loads up the files from the specified directories.
+     */
+    public void loadFromDirectories() {
+        File positiveDir = new File(arguments.positiveDir);
+        File negativeDir = new File(arguments.negativeDir);
+
+        if (!positiveDir.isDirectory()) {
+            LOGGER.log(Level.SEVERE, "positives directory [" + arguments.positiveDir + "] is not a directory");
+            return;
+        }
+
+        if (!negativeDir.isDirectory()) {
+            LOGGER.log(Level.SEVERE, "negatives directory [" + arguments.negativeDir + "] is not a directory");
+            return;
+        }
+
+        FeatureCache cache = null;
+        try {
+            if (!arguments.cacheFile.isEmpty()) {
+                cache = FeatureCache.open(arguments.cacheFile);
+            }
+            ImageDirectoryReader reader = new ImageDirectoryReader.Builder(arguments.requiredWidth, arguments.requiredHeight)
+                    .directory(positiveDir, 1.0)
+                    .directory(negativeDir, 0.0)
+                    .color(arguments.color)
+                    .ioThreads(arguments.ioThreads)
+                    .cache(cache).build();
+            mDataSet = reader.read();
+            LOGGER.log(Level.INFO, "loaded " + mDataSet.getNumSamples() + " sample(s)");
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, e.getMessage());
+        } catch (InterruptedException e) {
+            LOGGER.log(Level.SEVERE, "interrupted while loading images");
+            Thread.currentThread().interrupt();
+        }
+        IOUtils.closeQuietly(cache);
+    }
+}
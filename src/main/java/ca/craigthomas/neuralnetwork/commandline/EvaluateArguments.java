@@ -0,0 +1,24 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.commandline;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+
+/**
+ * Parameters used for the evaluate command.
+ */
+@Parameters(commandDescription="Measures a saved model against a labelled data set of any size")
+public class EvaluateArguments extends DataArguments
+{
+    @Parameter(names={"-m", "--model"}, description="the model file written by the train command", required=true)
+    public String modelFile = "";
+
+    @Parameter(names={"-t", "--threshold"}, description="prediction threshold")
+    public Double predictionThreshold = 0.5;
+
+    @Parameter(names={"--chunk"}, description="number of samples scored at once")
+    public Integer chunkSize = 1024;
+}
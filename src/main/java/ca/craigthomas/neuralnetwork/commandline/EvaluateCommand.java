@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.commandline;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+
+import ca.craigthomas.neuralnetwork.components.network.NetworkFile;
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+import ca.craigthomas.neuralnetwork.dataset.BinaryDataSet;
+import ca.craigthomas.neuralnetwork.dataset.ChunkedEvaluator;
+import ca.craigthomas.neuralnetwork.dataset.ConfusionMatrix;
+import ca.craigthomas.neuralnetwork.dataset.DataSetReader;
+import ca.craigthomas.neuralnetwork.dataset.FeatureCache;
+import ca.craigthomas.neuralnetwork.dataset.ImageDirectoryReader;
+import ca.craigthomas.neuralnetwork.dataset.ParallelEvaluator;
+import ca.craigthomas.neuralnetwork.dataset.SampleSource;
+
+/**
+ * The EvaluateCommand loads a model saved by the train command, and 
+ * measures it against a labelled data set. The data set is read a chunk at
+ * a time - a binary data set is mapped rather than loaded, and CSV files and
+ * image directories are streamed - so data sets much larger than memory can 
+ * be evaluated.
+ */
+public class EvaluateCommand
+{
+    // The logger for the class
+    private final static Logger LOGGER = Logger.getLogger(Runner.class.getName());
+    // The arguments passed to the command
+    EvaluateArguments arguments;
+
+    public EvaluateCommand(EvaluateArguments arguments) {
+        this.arguments = arguments;
+    }
+
+    public void execute() {
+        NeuralNetwork model;
+        try {
+            model = NetworkFile.read(arguments.modelFile);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "could not read model [" + arguments.modelFile + "]: " + e.getMessage());
+            return;
+        }
+
+        ChunkedEvaluator evaluator;
+        try {
+            evaluator = new ChunkedEvaluator(model, arguments.predictionThreshold, arguments.chunkSize);
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.SEVERE, e.getMessage());
+            return;
+        }
+
+        long start = System.nanoTime();
+        ConfusionMatrix confusion;
+        try {
+            confusion = evaluate(evaluator, model);
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.log(Level.SEVERE, "could not evaluate: " + e.getMessage());
+            return;
+        }
+        if (confusion == null) {
+            return;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        LOGGER.log(Level.INFO, "evaluated " + confusion.getTotal() + " sample(s) in " + String.format("%.1f", seconds) +
+                "s (" + String.format("%.1f", confusion.getTotal() / seconds) + "/s)");
+
+        System.out.println("True Positives " + confusion.getTruePositives());
+        System.out.println("False Positives " + confusion.getFalsePositives());
+        System.out.println("True Negatives " + confusion.getTrueNegatives());
+        System.out.println("False Negatives " + confusion.getFalseNegatives());
+        System.out.println("Accuracy " + confusion.getAccuracy());
+        System.out.println("Precision " + confusion.getPrecision());
+        System.out.println("Recall " + confusion.getRecall());
+        System.out.println("F1 " + confusion.getF1());
+    }
+
+    /**
+     * Evaluates the model against whichever data set was specified. Returns
+     * null if the data set does not suit the model.
+     *
+     * @param evaluator the evaluator for the model
+     * @param model the model to evaluate
+     * @return the counts of the predictions, or null
+     * @throws IOException if the data set cannot be read
+     */
+    private ConfusionMatrix evaluate(ChunkedEvaluator evaluator, NeuralNetwork model) throws IOException {
+        int numFeatures = model.getLayerSizes()[0];
+        if (!arguments.binaryFile.isEmpty()) {
+            BinaryDataSet dataSet = BinaryDataSet.open(arguments.binaryFile);
+            if (!checkFeatures(dataSet.getNumColsSamples(), numFeatures)) {
+                return null;
+            }
+            // Mapped rows can be copied from any thread, so every core can
+            // score a chunk at once
+            return new ParallelEvaluator(model, arguments.predictionThreshold,
+                    arguments.chunkSize, ForkJoinPool.commonPool()).evaluate(dataSet);
+        }
+
+        FeatureCache cache = null;
+        SampleSource source = null;
+        try {
+            if (!arguments.csvFile.isEmpty()) {
+                source = DataSetReader.openCSVSource(arguments.csvFile, arguments.csvHeader);
+            } else {
+                cache = openCache();
+                source = openDirectories(cache);
+                if (source == null) {
+                    return null;
+                }
+            }
+            if (!checkFeatures(source.getNumColsSamples(), numFeatures)) {
+                return null;
+            }
+            return evaluator.evaluate(source);
+        } finally {
+            IOUtils.closeQuietly(source);
+            IOUtils.closeQuietly(cache);
+        }
+    }
+
+    /**
+     * Opens the feature cache, if one was specified.
+     *
+     * @return the feature cache, or null
+     * @throws IOException if the cache cannot be opened
+     */
+    private FeatureCache openCache() throws IOException {
+        return arguments.cacheFile.isEmpty() ? null : FeatureCache.open(arguments.cacheFile);
+    }
+
+    /**
+     * Opens the positive and negative image directories as a source.
+     * Returns null if either is not a directory.
+     *
+     * @param cache the feature cache to use, or null
+     * @return the source of the images
+     */
+    private SampleSource openDirectories(FeatureCache cache) {
+        File positiveDir = new File(arguments.positiveDir);
+        File negativeDir = new File(arguments.negativeDir);
+        if (!positiveDir.isDirectory()) {
+            LOGGER.log(Level.SEVERE, "positives directory [" + arguments.positiveDir + "] is not a directory");
+            return null;
+        }
+        if (!negativeDir.isDirectory()) {
+            LOGGER.log(Level.SEVERE, "negatives directory [" + arguments.negativeDir + "] is not a directory");
+            return null;
+        }
+        return new ImageDirectoryReader.Builder(arguments.requiredWidth, arguments.requiredHeight)
+                .directory(positiveDir, 1.0)
+                .directory(negativeDir, 0.0)
+                .color(arguments.color)
+                .cache(cache).build().createSource();
+    }
+
+    /**
+     * Checks that the data set has as many features as the model expects,
+     * logging an error if not.
+     *
+     * @param dataSetFeatures the number of features in the data set
+     * @param numFeatures the number of features the model expects
+     * @return true if the numbers match
+     */
+    private boolean checkFeatures(int dataSetFeatures, int numFeatures) {
+        if (dataSetFeatures != numFeatures) {
+            LOGGER.log(Level.SEVERE, "model expects " + numFeatures + " features, but the data set has " + dataSetFeatures);
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.commandline;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+
+/**
+ * Parameters used for the predict command.
+ */
+@Parameters(commandDescription="Classifies a directory of images or a CSV file with a saved model")
+public class PredictArguments
+{
+    @Parameter(names={"-m", "--model"}, description="the model file written by the train command", required=true)
+    public String modelFile = "";
+
+    @Parameter(names={"--dir"}, description="classifies every image in the specified directory")
+    public String imageDir = "";
+
+    @Parameter(names={"-c", "--csv"}, description="classifies every row of the specified CSV file")
+    public String csvFile = "";
+
+    @Parameter(names={"--header"}, description="ignores the first line of the CSV file")
+    public boolean csvHeader = false;
+
+    @Parameter(names={"-o", "--output"}, description="writes results to the specified file instead of the console")
+    public String outputFile = "";
+
+    @Parameter(names={"--color"}, description="processes images in color")
+    public boolean color = false;
+
+    @Parameter(names={"-w", "--width"}, description="the width in pixels of the images the model was trained on")
+    public Integer requiredWidth = 10;
+
+    @Parameter(names={"-h", "--height"}, description="the height in pixels of the images the model was trained on")
+    public Integer requiredHeight = 10;
+
+    @Parameter(names={"-t", "--threshold"}, description="prediction threshold")
+    public Double predictionThreshold = 0.5;
+
+    @Parameter(names={"--batch"}, description="largest number of images classified at once")
+    public Integer batchSize = 256;
+
+    @Parameter(names={"--queue"}, description="number of images each pipeline stage can hold")
+    public Integer queueCapacity = 1024;
+
+    @Parameter(names={"--threads"}, description="number of threads decoding images")
+    public Integer decodeThreads = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names={"--workers"}, description="number of threads classifying batches")
+    public Integer classifyThreads = 1;
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.commandline;
+
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+
+import ca.craigthomas.neuralnetwork.components.network.NetworkFile;
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+import ca.craigthomas.neuralnetwork.dataset.NumericCSVReader;
+import ca.craigthomas.neuralnetwork.pipeline.FrameQueue;
+import ca.craigthomas.neuralnetwork.pipeline.WatchPipeline;
+
+/**
+ * The PredictCommand loads a model saved by the train command, and
+ * classifies every image in a directory, or every row of a CSV file. Files
+ * are decoded and classified in batches on worker threads, and a line with
+ * the name, score and label of each one is written as soon as it has been
+ * classified, so results from a long run are available while it is still
+ * going. Rows of a CSV file are named by their line number, and may have a
+ * truth column at the end, which is ignored.
+ */
+public class PredictCommand
+{
+    // The logger for the class
+    private final static Logger LOGGER = Logger.getLogger(Runner.class.getName());
+    // The arguments passed to the command
+    PredictArguments arguments;
+
+    public PredictCommand(PredictArguments arguments) {
+        this.arguments = arguments;
+    }
+
+    public void execute() {
+        if (arguments.imageDir.isEmpty() == arguments.csvFile.isEmpty()) {
+            LOGGER.log(Level.SEVERE, "exactly one of --dir or --csv must be specified");
+            return;
+        }
+        if (!arguments.imageDir.isEmpty() && !Files.isDirectory(Paths.get(arguments.imageDir))) {
+            LOGGER.log(Level.SEVERE, "image directory [" + arguments.imageDir + "] is not a directory");
+            return;
+        }
+
+        NeuralNetwork model;
+        try {
+            model = NetworkFile.read(arguments.modelFile);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "could not read model [" + arguments.modelFile + "]: " + e.getMessage());
+            return;
+        }
+        int numFeatures = arguments.requiredWidth * arguments.requiredHeight * (arguments.color ? 3 : 1);
+        if (model.getLayerSizes()[0] != numFeatures) {
+            LOGGER.log(Level.SEVERE, "model expects " + model.getLayerSizes()[0] + " features, but " + numFeatures + " were specified");
+            return;
+        }
+
+        Writer output = null;
+        WatchPipeline pipeline = null;
+        long start = System.nanoTime();
+        long skipped = 0;
+        try {
+            output = new BufferedWriter(arguments.outputFile.isEmpty() ?
+                    new OutputStreamWriter(System.out, StandardCharsets.UTF_8) :
+                    new OutputStreamWriter(new FileOutputStream(arguments.outputFile), StandardCharsets.UTF_8));
+            pipeline = new WatchPipeline.Builder(model, arguments.requiredWidth, arguments.requiredHeight)
+                    .color(arguments.color)
+                    .threshold(arguments.predictionThreshold)
+                    .batchSize(arguments.batchSize)
+                    .queueCapacity(arguments.queueCapacity)
+                    .policy(FrameQueue.Policy.BLOCK)
+                    .decodeThreads(arguments.decodeThreads)
+                    .classifyThreads(arguments.classifyThreads)
+                    .output(output).build();
+            if (!arguments.imageDir.isEmpty()) {
+                submitDirectory(pipeline);
+            } else {
+                skipped = submitCSV(pipeline, numFeatures);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "could not classify: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (pipeline != null) {
+                pipeline.close();
+                double seconds = (System.nanoTime() - start) / 1e9;
+                LOGGER.log(Level.INFO, "classified " + pipeline.getProcessed() + " sample(s) in " +
+                        String.format("%.1f", seconds) + "s (" + String.format("%.1f", pipeline.getProcessed() / seconds) +
+                        "/s), failed " + (pipeline.getFailed() + skipped));
+            }
+            if (arguments.outputFile.isEmpty()) {
+                try {
+                    if (output != null) {
+                        output.flush();
+                    }
+                } catch (IOException e) {
+                    LOGGER.log(Level.SEVERE, "could not flush results: " + e.getMessage());
+                }
+            } else {
+                IOUtils.closeQuietly(output);
+            }
+        }
+    }
+
+    /**
+     * Submits every file in the image directory to the pipeline. The
+     * directory is streamed rather than listed, so that very large
+     * directories are not held in memory.
+     *
+     * @param pipeline the pipeline to submit files to
+     * @throws IOException if the directory cannot be read
+     * @throws InterruptedException if interrupted while waiting for room
+     */
+    private void submitDirectory(WatchPipeline pipeline) throws IOException, InterruptedException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(arguments.imageDir))) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    pipeline.submit(file.toFile());
+                }
+            }
+        }
+    }
+
+    /**
+     * Submits every row of the CSV file to the pipeline. Rows with one
+     * value more than the number of features have their last value, the
+     * truth, removed. Rows of any other length are skipped.
+     *
+     * @param pipeline the pipeline to submit rows to
+     * @param numFeatures the number of features the model expects
+     * @return the number of rows skipped
+     * @throws IOException if the file cannot be read
+     * @throws InterruptedException if interrupted while waiting for room
+     */
+    private long submitCSV(WatchPipeline pipeline, int numFeatures) throws IOException, InterruptedException {
+        long skipped = 0;
+        try (FileInputStream stream = new FileInputStream(arguments.csvFile);
+             NumericCSVReader reader = new NumericCSVReader(stream.getChannel(), arguments.csvHeader)) {
+            while (reader.readRow()) {
+                int columns = reader.getNumColumns();
+                if (columns != numFeatures && columns != numFeatures + 1) {
+                    LOGGER.log(Level.WARNING, "line " + reader.getLineNumber() + " has " + columns +
+                            " value(s), expected " + numFeatures + ", skipping");
+                    skipped++;
+                    continue;
+                }
+                double [] features = new double [numFeatures];
+                System.arraycopy(reader.getRow(), 0, features, 0, numFeatures);
+                pipeline.submit(Long.toString(reader.getLineNumber()), features);
+            }
+        }
+        return skipped;
+    }
+}
@@ -11,11 +11,21 @@ import com.beust.jcommander.JCommander;
  * to run. The current commands supported are:
  * 
  *  train - trains the neural network
+ *  convert - converts CSV or image data into a binary data set
+ *  watch - classifies images as they are added to a directory
+ *  predict - classifies a directory of images or a CSV file
+ *  serve - classifies images sent to a local HTTP server
+ *  evaluate - measures a saved model against a labelled data set
  *  
  */
 public class Runner
 {
     public static final String TRAIN_COMMAND = "train";
+    public static final String CONVERT_COMMAND = "convert";
+    public static final String WATCH_COMMAND = "watch";
+    public static final String PREDICT_COMMAND = "predict";
+    public static final String SERVE_COMMAND = "serve";
+    public static final String EVALUATE_COMMAND = "evaluate";
 
     /**
      * Parse the command line options and execute the specified command.
@@ -24,8 +34,18 @@ public class Runner
      */
     public static void main(String[] argv) {
         TrainArguments trainArguments = new TrainArguments();
+        ConvertArguments convertArguments = new ConvertArguments();
+        WatchArguments watchArguments = new WatchArguments();
+        PredictArguments predictArguments = new PredictArguments();
+        ServeArguments serveArguments = new ServeArguments();
+        EvaluateArguments evaluateArguments = new EvaluateArguments();
         JCommander jCommander = JCommander.newBuilder()
                 .addCommand(TRAIN_COMMAND, trainArguments)
+                .addCommand(CONVERT_COMMAND, convertArguments)
+                .addCommand(WATCH_COMMAND, watchArguments)
+                .addCommand(PREDICT_COMMAND, predictArguments)
+                .addCommand(SERVE_COMMAND, serveArguments)
+                .addCommand(EVALUATE_COMMAND, evaluateArguments)
                 .build();
         jCommander.setProgramName("visualclassifier");
         jCommander.parse(argv);
@@ -40,6 +60,31 @@ public class Runner
                     tc.execute();
                     break;
 
+                case CONVERT_COMMAND:
+                    ConvertCommand cc = new ConvertCommand(convertArguments);
+                    cc.execute();
+                    break;
+
+                case WATCH_COMMAND:
+                    WatchCommand wc = new WatchCommand(watchArguments);
+                    wc.execute();
+                    break;
+
+                case PREDICT_COMMAND:
+                    PredictCommand pc = new PredictCommand(predictArguments);
+                    pc.execute();
+                    break;
+
+                case SERVE_COMMAND:
+                    ServeCommand sc = new ServeCommand(serveArguments);
+                    sc.execute();
+                    break;
+
+                case EVALUATE_COMMAND:
+                    EvaluateCommand ec = new EvaluateCommand(evaluateArguments);
+                    ec.execute();
+                    break;
+
                 default:
                     jCommander.usage();
                     break;
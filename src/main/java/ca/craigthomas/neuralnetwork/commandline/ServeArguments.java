@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.commandline;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+
+/**
+ * Parameters used for the serve command.
+ */
+@Parameters(commandDescription="Keeps a saved model loaded, and classifies images sent over HTTP")
+public class ServeArguments
+{
+    @Parameter(names={"-m", "--model"}, description="the model file written by the train command", required=true)
+    public String modelFile = "";
+
+    @Parameter(names={"--bind"}, description="the address to listen on")
+    public String bindAddress = "127.0.0.1";
+
+    @Parameter(names={"--port"}, description="the port to listen on")
+    public Integer port = 8080;
+
+    @Parameter(names={"--color"}, description="processes images in color")
+    public boolean color = false;
+
+    @Parameter(names={"-w", "--width"}, description="the width in pixels of the images the model was trained on")
+    public Integer requiredWidth = 10;
+
+    @Parameter(names={"-h", "--height"}, description="the height in pixels of the images the model was trained on")
+    public Integer requiredHeight = 10;
+
+    @Parameter(names={"-t", "--threshold"}, description="prediction threshold")
+    public Double predictionThreshold = 0.5;
+
+    @Parameter(names={"--batch"}, description="largest number of samples classified at once")
+    public Integer batchSize = 32;
+
+    @Parameter(names={"--workers"}, description="number of threads handling requests")
+    public Integer workers = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names={"--queue"}, description="number of requests that can wait for a worker")
+    public Integer queueCapacity = 64;
+
+    @Parameter(names={"--warmup"}, description="number of classifications run before listening")
+    public Integer warmupIterations = 1000;
+}
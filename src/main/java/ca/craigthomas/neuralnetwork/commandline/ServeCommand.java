@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.commandline;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import ca.craigthomas.neuralnetwork.components.network.NetworkFile;
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+import ca.craigthomas.neuralnetwork.server.ClassificationServer;
+
+/**
+ * The ServeCommand loads a model saved by the train command, and keeps it
+ * loaded in a ClassificationServer until the process is stopped, so that
+ * images can be classified without paying for starting a new process each
+ * time.
+ */
+public class ServeCommand
+{
+    // The logger for the class
+    private final static Logger LOGGER = Logger.getLogger(Runner.class.getName());
+    // The arguments passed to the command
+    ServeArguments arguments;
+
+    public ServeCommand(ServeArguments arguments) {
+        this.arguments = arguments;
+    }
+
+    public void execute() {
+        NeuralNetwork model;
+        try {
+            model = NetworkFile.read(arguments.modelFile);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "could not read model [" + arguments.modelFile + "]: " + e.getMessage());
+            return;
+        }
+        int numFeatures = arguments.requiredWidth * arguments.requiredHeight * (arguments.color ? 3 : 1);
+        if (model.getLayerSizes()[0] != numFeatures) {
+            LOGGER.log(Level.SEVERE, "model expects " + model.getLayerSizes()[0] + " features, but " + numFeatures + " were specified");
+            return;
+        }
+
+        final ClassificationServer server = new ClassificationServer.Builder(model, arguments.requiredWidth, arguments.requiredHeight)
+                .color(arguments.color)
+                .threshold(arguments.predictionThreshold)
+                .batchSize(arguments.batchSize)
+                .workers(arguments.workers)
+                .queueCapacity(arguments.queueCapacity)
+                .warmupIterations(arguments.warmupIterations)
+                .address(new InetSocketAddress(arguments.bindAddress, arguments.port)).build();
+        try {
+            server.start();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "could not start server: " + e.getMessage());
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                server.close();
+            }
+        }));
+        LOGGER.log(Level.INFO, "listening on " + server.getAddress());
+    }
+}
@@ -11,7 +11,7 @@ import com.beust.jcommander.Parameters;
  * Parameters used for the training command.
  */
 @Parameters(commandDescription="Trains a neural network")
-public class TrainArguments
+public class TrainArguments extends DataArguments
 {
     @Parameter(names={"-b", "--heartbeat"}, description="specifies heartbeat during training")
     public Integer heartBeat = 100;
@@ -19,41 +19,35 @@ public class TrainArguments
     @Parameter(names={"-l", "--learnrate"}, description="specifies learning rate")
     public Double learningRate = 0.01;
 
-    @Parameter(names={"-c", "--csv"}, description="loads data from a CSV file")
-    public String csvFile = "";
-
-    @Parameter(names={"--color"}, description="processes images in color")
-    public boolean color = false;
-
-    @Parameter(names={"-p", "--positivedir"}, description="specifies positive image directory")
-    public String positiveDir = "";
-
-    @Parameter(names={"-n", "--negativedir"}, description="specifies negative image directory")
-    public String negativeDir = "";
-
-    @Parameter(names={"-w", "--width"}, description="ensure images have specified width in pixels")
-    public Integer requiredWidth = 10;
-
-    @Parameter(names={"-h", "--height"}, description="ensure images have specified height in pixels")
-    public Integer requiredHeight = 10;
-
     @Parameter(names={"--savedir"}, description="save prediction results into specified directory")
     public String saveDir = "";
 
+    @Parameter(names={"-m", "--model"}, description="save the best model to the specified file")
+    public String modelFile = "";
+
     @Parameter(names={"-s", "--split"}, description="splits the data between training and testing")
     public Integer split = 80;
 
     @Parameter(names={"-t", "--threshold"}, description="prediction threshold")
     public Double predictionThreshold = 0.5;
 
+    @Parameter(names={"--curves"}, description="save the ROC and precision-recall curves to the specified CSV file")
+    public String curvesFile = "";
+
     @Parameter(names={"-f", "--folds"}, description="generate this many folds for cross-validation")
     public Integer folds = 1;
 
-    @Parameter(names={"-l1", "--layer1neurons"}, description="specifies number of neurons in first hidden layer")
-    public Integer layer1 = 10;
+    @Parameter(names={"--balance"}, description="undersample the training set so that every class is the same size")
+    public boolean balance = false;
+
+    @Parameter(names={"-l1", "--layer1neurons"}, description="specifies number of neurons in first hidden layer (10 if not given)")
+    public Integer layer1 = null;
 
     @Parameter(names={"-l2", "--layer2neurons"}, description="specifies number of neurons in second hidden layer")
-    public Integer layer2 = 0;
+    public Integer layer2 = null;
+
+    @Parameter(names={"--layers"}, description="comma separated hidden layers, such as conv:8:5,maxpool:2,10, used instead of -l1 and -l2")
+    public String layers = "";
 
     @Parameter(names={"-o", "--outputneurons"}, description="specifies number of neurons in output layer")
     public Integer outputLayer = 1;
@@ -63,4 +57,16 @@ public class TrainArguments
 
     @Parameter(names={"-i", "--iterations"}, description="number of iterations")
     public Integer iterations = 500;
+
+    @Parameter(names={"--seed"}, description="seed for shuffling, splitting and weight initialization")
+    public Long seed = null;
+
+    @Parameter(names={"--checkpoint"}, description="periodically save training progress to the specified file")
+    public String checkpointFile = "";
+
+    @Parameter(names={"--checkpoint-interval"}, description="number of iterations between checkpoints")
+    public Integer checkpointInterval = 100;
+
+    @Parameter(names={"--resume"}, description="resume training from the checkpoint file")
+    public boolean resume = false;
 }
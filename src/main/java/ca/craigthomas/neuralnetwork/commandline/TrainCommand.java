@@ -5,23 +5,39 @@
 package ca.craigthomas.neuralnetwork.commandline;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.imageio.ImageIO;
+import javax.management.JMException;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.math3.stat.StatUtils;
 import org.jblas.DoubleMatrix;
+import org.jblas.util.Random;
 
+import ca.craigthomas.neuralnetwork.dataset.ConfusionMatrix;
 import ca.craigthomas.neuralnetwork.dataset.DataSet;
+import ca.craigthomas.neuralnetwork.dataset.ParallelEvaluator;
 import ca.craigthomas.neuralnetwork.dataset.Prediction;
+import ca.craigthomas.neuralnetwork.dataset.StratifiedSplitter;
+import ca.craigthomas.neuralnetwork.dataset.ThresholdSweep;
 import ca.craigthomas.neuralnetwork.imageprocessing.Image;
+import ca.craigthomas.neuralnetwork.components.network.Layer;
+import ca.craigthomas.neuralnetwork.components.network.NetworkFile;
 import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+import ca.craigthomas.neuralnetwork.components.trainer.CheckpointWriter;
 import ca.craigthomas.neuralnetwork.components.trainer.Trainer;
+import ca.craigthomas.neuralnetwork.components.trainer.TrainingCheckpoint;
+import ca.craigthomas.neuralnetwork.components.trainer.TrainingMetrics;
 
 /**
  * The TrainCommand is used to train a neural network based upon a number of
@@ -31,6 +47,8 @@ public class TrainCommand
 {
     // The logger for the class
     private final static Logger LOGGER = Logger.getLogger(Runner.class.getName());
+    // The number of nodes in the first hidden layer when -l1 is not given
+    private static final int DEFAULT_LAYER1 = 10;
     // The underlying data set
     private DataSet mDataSet;
     // The arguments passed to the command
@@ -40,68 +58,6 @@ public class TrainCommand
         this.arguments = arguments;
     }
     
-    /**
-     * Load the data from a CSV file.
-     */
-    public void loadFromCSV() {
-        mDataSet = new DataSet(true);
-        try {
-            mDataSet.addFromCSVFile(arguments.csvFile);
-            LOGGER.log(Level.INFO, "loaded " + mDataSet.getNumSamples() + " sample(s)");
-        } catch(IOException e) {
-            LOGGER.log(Level.SEVERE, e.getMessage());
-            mDataSet = null;
-        }
-    }
-    
-    /**
-     * Load data from a directory. Assumes that all samples are images.
-     * The truth value indicates whether it is a positive or negative sample.
-     * 
-     * @param directory the directory to load images from
-     * @param truth whether the samples are positive or negative
-     */
-    public void loadFromDirectory(File directory, double truth) {
-        File [] files = directory.listFiles();
-        for (File file : files) {
-            String filename = file.getAbsolutePath();
-            Image image = new Image(filename);
-            
-            if (image.getWidth() != arguments.requiredWidth || image.getHeight() != arguments.requiredHeight) {
-                LOGGER.log(Level.WARNING, "file " + filename + " not correct size, skipping (want " + arguments.requiredWidth + "x" + arguments.requiredHeight + ", got " + image.getWidth() + "x" + image.getHeight() + ")");
-            } else {
-                if (arguments.color) {
-                    mDataSet.addSample(image.convertColorToMatrix(truth));
-                } else {
-                    mDataSet.addSample(image.convertGrayscaleToMatrix(truth));                    
-                }
-            }
-        }
-    }
-    
-    /**
-     * Loads up the files from the specified directories.
-     */
-    public void loadFromDirectories() {
-        File positiveDir = new File(arguments.positiveDir);
-        File negativeDir = new File(arguments.negativeDir);
-        
-        if (!positiveDir.isDirectory()) {
-            LOGGER.log(Level.SEVERE, "positives directory [" + arguments.positiveDir + "] is not a directory");
-            return;
-        }
-    
-        if (!negativeDir.isDirectory()) {
-            LOGGER.log(Level.SEVERE, "negatives directory [" + arguments.negativeDir + "] is not a directory");
-            return;
-        }
-        
-        mDataSet = new DataSet(true);
-        loadFromDirectory(positiveDir, 1.0);
-        loadFromDirectory(negativeDir, 0.0);
-        LOGGER.log(Level.INFO, "loaded " + mDataSet.getNumSamples() + " sample(s)");
-    }
-    
     public void saveImage(Image image, File path, String filename) {
         File saveFile = new File(path, filename);
         try {
@@ -132,6 +88,58 @@ public class TrainCommand
         }
     }
     
+    public void saveModel(NeuralNetwork bestModel) {
+        try {
+            NetworkFile.write(bestModel, arguments.modelFile);
+            LOGGER.log(Level.INFO, "saved model to [" + arguments.modelFile + "]");
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "could not save model [" + arguments.modelFile + "]: " + e.getMessage());
+        }
+    }
+    
+    public void saveCurves(ThresholdSweep sweep, String filename) {
+        try (Writer output = new OutputStreamWriter(new FileOutputStream(filename), StandardCharsets.UTF_8)) {
+            sweep.writeCSV(output);
+            LOGGER.log(Level.INFO, "saved curves to [" + filename + "]");
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "could not save curves [" + filename + "]: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Returns the name of the file for a fold. A single split uses the file
+     * as named, while each fold of a cross-validation has its own file.
+     * 
+     * @param filename the name of the file
+     * @param fold the fold, starting at 0
+     * @param numPartitions the number of folds
+     * @return the name of the file for the fold
+     */
+    public String getFoldFile(String filename, int fold, int numPartitions) {
+        if (numPartitions == 1) {
+            return filename;
+        }
+        return filename + ".fold" + (fold+1);
+    }
+    
+    /**
+     * Reads the checkpoint of each fold that has one.
+     * 
+     * @param numPartitions the number of folds
+     * @return the checkpoint of each fold, or null for folds without one
+     * @throws IOException if a checkpoint cannot be read
+     */
+    public TrainingCheckpoint [] readCheckpoints(int numPartitions) throws IOException {
+        TrainingCheckpoint [] checkpoints = new TrainingCheckpoint [numPartitions];
+        for (int fold = 0; fold < numPartitions; fold++) {
+            String filename = getFoldFile(arguments.checkpointFile, fold, numPartitions);
+            if (new File(filename).isFile()) {
+                checkpoints[fold] = TrainingCheckpoint.read(filename);
+            }
+        }
+        return checkpoints;
+    }
+    
     public void execute() {
         NeuralNetwork bestModel = null;
         DataSet bestFold = null;
@@ -142,71 +150,200 @@ public class TrainCommand
         double [] precision = new double [arguments.folds];
         double [] recall = new double [arguments.folds];
         double [] f1 = new double [arguments.folds];
+        double [] rocAuc = new double [arguments.folds];
+        double [] averagePrecision = new double [arguments.folds];
+        double [] bestThreshold = new double [arguments.folds];
+        double [] bestThresholdF1 = new double [arguments.folds];
         double bestF1 = 0;
         
         // Step 1: create the dataset
-        if (!arguments.csvFile.isEmpty()) {
-            loadFromCSV();
-        } else {
-            loadFromDirectories();
-        }
-        
+        mDataSet = new DataSetLoader(arguments).load();
         if (mDataSet == null) {
             LOGGER.log(Level.SEVERE, "no data set could be built, exiting");
             return;
         }
         
+        // Step 1a: a resumed run must split the data exactly as the run it
+        // continues did, so checkpoints always store the seed they used
+        int numPartitions = (arguments.folds > 1) ? arguments.folds : 1;
+        boolean checkpointing = !arguments.checkpointFile.isEmpty();
+        TrainingCheckpoint [] checkpoints = new TrainingCheckpoint [numPartitions];
+        Long seed = arguments.seed;
+        if (arguments.resume && !checkpointing) {
+            LOGGER.log(Level.SEVERE, "--resume requires a --checkpoint file");
+            return;
+        }
+        if (arguments.resume) {
+            try {
+                checkpoints = readCheckpoints(numPartitions);
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "could not read checkpoint: " + e.getMessage());
+                return;
+            }
+            for (TrainingCheckpoint checkpoint : checkpoints) {
+                if (checkpoint == null || checkpoint.getSeed() == null) {
+                    continue;
+                }
+                if (seed != null && !seed.equals(checkpoint.getSeed())) {
+                    LOGGER.log(Level.SEVERE, "seed " + seed + " does not match the checkpoint seed " + checkpoint.getSeed());
+                    return;
+                }
+                seed = checkpoint.getSeed();
+            }
+        }
+        if (checkpointing && seed == null) {
+            seed = new java.util.Random().nextLong();
+            LOGGER.log(Level.INFO, "checkpointing with seed " + seed);
+        }
+        if (seed != null) {
+            mDataSet.setSeed(seed);
+            Random.seed(seed);
+        }
+        
         // Step 2: Generate layer information
         List<Integer> layerSizes = new ArrayList<>();
         layerSizes.add(mDataSet.getNumColsSamples());
-        if (arguments.layer1 != 0) {
-            layerSizes.add(arguments.layer1);
+        int layer1 = (arguments.layer1 != null) ? arguments.layer1 : DEFAULT_LAYER1;
+        if (layer1 != 0) {
+            layerSizes.add(layer1);
         }
-        if (arguments.layer2 != 0) {
+        if (arguments.layer2 != null && arguments.layer2 != 0) {
             layerSizes.add(arguments.layer2);
         }
         layerSizes.add(arguments.outputLayer);
         
-        // Step 3: generate the folds and train the model
-        for (int fold = 0; fold < arguments.folds; fold++) {
+        // Step 2a: hidden layers given by --layers can include convolution
+        // and pooling layers, which need the shape of the images
+        List<Layer> layers = null;
+        int channels = arguments.color ? 3 : 1;
+        if (!arguments.layers.isEmpty()) {
+            if (arguments.layer1 != null || arguments.layer2 != null) {
+                LOGGER.log(Level.SEVERE, "--layers cannot be combined with -l1 or -l2");
+                return;
+            }
+            if (mDataSet.getNumColsSamples() != arguments.requiredWidth * arguments.requiredHeight * channels) {
+                LOGGER.log(Level.SEVERE, "--layers needs " + arguments.requiredWidth + "x" + arguments.requiredHeight + 
+                        " images with " + channels + " channel(s), but samples have " + mDataSet.getNumColsSamples() + " features");
+                return;
+            }
+            try {
+                layers = Layer.parseList(arguments.layers);
+                layers.add(Layer.dense(arguments.outputLayer));
+                NeuralNetwork.checkLayers(arguments.requiredWidth, arguments.requiredHeight, channels, layers);
+            } catch (IllegalArgumentException e) {
+                LOGGER.log(Level.SEVERE, "invalid --layers: " + e.getMessage());
+                return;
+            }
+        }
+        
+        // Step 3: generate the folds and train the model, publishing the
+        // time spent in each phase of training through JMX
+        TrainingMetrics metrics = new TrainingMetrics();
+        try {
+            metrics.register();
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "could not publish training metrics: " + e.getMessage());
+        }
+        LOGGER.log(Level.INFO, "generating training and testing sets");
+        StratifiedSplitter splitter = mDataSet.createSplitter();
+        List<Pair<int [], int []>> partitions = (arguments.folds > 1) ?
+                splitter.kFold(arguments.folds, arguments.balance) :
+                Collections.singletonList(splitter.split(arguments.split, arguments.balance));
+        for (int fold = 0; fold < partitions.size(); fold++) {
             LOGGER.log(Level.INFO, "processing fold " + (fold+1));
-            LOGGER.log(Level.INFO, "randomizing dataset");
-            mDataSet.randomize();
-            LOGGER.log(Level.INFO, "generating training and testing sets");
-            Pair<DataSet, DataSet> split = mDataSet.splitEqually(arguments.split);
-            DataSet trainingData = split.getLeft();
-            DataSet testingData = split.getRight();
-            LOGGER.log(Level.INFO, "training neural network...");   
-            trainingData.randomize();
-            Trainer trainer = new Trainer.Builder(layerSizes, trainingData)
+            DataSet trainingData = mDataSet.subset(partitions.get(fold).getLeft());
+            DataSet testingData = mDataSet.subset(partitions.get(fold).getRight());
+            Trainer.Builder builder = ((layers != null) ?
+                    new Trainer.Builder(arguments.requiredWidth, arguments.requiredHeight, channels, layers, trainingData) :
+                    new Trainer.Builder(layerSizes, trainingData))
                     .maxIterations(arguments.iterations)
                     .heartBeat(arguments.heartBeat)
                     .learningRate(arguments.learningRate)
-                    .lambda(arguments.lambda).build();
+                    .lambda(arguments.lambda)
+                    .metrics(metrics);
+            
+            // Each fold initializes its thetas from its own seed, so that a
+            // fold starts the same way whether or not earlier folds were
+            // trained in this run
+            CheckpointWriter writer = null;
+            TrainingCheckpoint checkpoint = checkpoints[fold];
+            if (checkpointing) {
+                Random.seed(seed + fold);
+            }
+            if (checkpoint != null) {
+                builder.resume(checkpoint);
+            }
+            if (checkpoint != null && checkpoint.getIteration() >= arguments.iterations) {
+                LOGGER.log(Level.INFO, "fold already trained, using checkpoint [" + getFoldFile(arguments.checkpointFile, fold, numPartitions) + "]");
+            } else if (checkpointing) {
+                writer = new CheckpointWriter.Builder(getFoldFile(arguments.checkpointFile, fold, numPartitions))
+                        .interval(arguments.checkpointInterval)
+                        .learningRate((checkpoint != null) ? checkpoint.getLearningRate() : arguments.learningRate)
+                        .seed(seed).build();
+                builder.listener(writer);
+            }
+            
+            Trainer trainer;
+            try {
+                trainer = builder.build();
+            } catch (IllegalArgumentException e) {
+                LOGGER.log(Level.SEVERE, "could not resume from checkpoint: " + e.getMessage());
+                return;
+            }
+            if (checkpoint != null && checkpoint.getIteration() < arguments.iterations) {
+                LOGGER.log(Level.INFO, "resuming training after iteration " + checkpoint.getIteration());
+            } else if (checkpoint == null) {
+                LOGGER.log(Level.INFO, "training neural network...");
+            }
             trainer.train();
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "could not write checkpoint: " + e.getMessage());
+                }
+            }
             
-            // Step 4: evaluate each model
+            // Step 4: evaluate each model, scoring the test set once on
+            // every core for both the counts and the threshold sweep
             NeuralNetwork model = trainer.getNeuralNetwork();
-            Prediction prediction = new Prediction(model, arguments.predictionThreshold);
-            prediction.predict(testingData);
-            System.out.println("True Positives " + prediction.getTruePositives());
-            System.out.println("False Positives " + prediction.getFalsePositives());
-            System.out.println("True Negatives " + prediction.getTrueNegatives());
-            System.out.println("False Negatives " + prediction.getFalseNegatives());
-            System.out.println("Precision " + prediction.getPrecision());
-            System.out.println("Recall " + prediction.getRecall());
-            System.out.println("F1 " + prediction.getF1());
+            DoubleMatrix scores = new ParallelEvaluator(model, arguments.predictionThreshold).score(testingData);
+            DoubleMatrix truth = testingData.getTruth();
+            ConfusionMatrix confusion = new ConfusionMatrix();
+            confusion.add(scores, truth, scores.rows, arguments.predictionThreshold);
+            System.out.println("True Positives " + confusion.getTruePositives());
+            System.out.println("False Positives " + confusion.getFalsePositives());
+            System.out.println("True Negatives " + confusion.getTrueNegatives());
+            System.out.println("False Negatives " + confusion.getFalseNegatives());
+            System.out.println("Precision " + confusion.getPrecision());
+            System.out.println("Recall " + confusion.getRecall());
+            System.out.println("F1 " + confusion.getF1());
             
-            tp[fold] = prediction.getTruePositives();
-            fp[fold] = prediction.getFalsePositives();
-            tn[fold] = prediction.getTrueNegatives();
-            fn[fold] = prediction.getFalseNegatives();
-            precision[fold] = prediction.getPrecision();
-            recall[fold] = prediction.getRecall();
-            f1[fold] = prediction.getF1();
-            if (f1[fold] > bestF1) {
+            // Every threshold is measured from one set of scores, so the
+            // best threshold for the data comes at no extra cost
+            ThresholdSweep sweep = new ThresholdSweep(model);
+            sweep.sweep(scores, truth);
+            System.out.println("ROC AUC " + sweep.getRocAuc());
+            System.out.println("Average Precision " + sweep.getAveragePrecision());
+            System.out.println("Best Threshold " + sweep.getBestThreshold() + " (F1 " + sweep.getBestF1() + ")");
+            if (!arguments.curvesFile.isEmpty()) {
+                saveCurves(sweep, getFoldFile(arguments.curvesFile, fold, numPartitions));
+            }
+            
+            tp[fold] = confusion.getTruePositives();
+            fp[fold] = confusion.getFalsePositives();
+            tn[fold] = confusion.getTrueNegatives();
+            fn[fold] = confusion.getFalseNegatives();
+            precision[fold] = confusion.getPrecision();
+            recall[fold] = confusion.getRecall();
+            f1[fold] = confusion.getF1();
+            rocAuc[fold] = sweep.getRocAuc();
+            averagePrecision[fold] = sweep.getAveragePrecision();
+            bestThreshold[fold] = sweep.getBestThreshold();
+            bestThresholdF1[fold] = sweep.getBestF1();
+            if (bestModel == null || f1[fold] > bestF1) {
                 bestModel = model;
-                bestFold = mDataSet.dup();
+                bestFold = testingData;
                 bestF1 = f1[fold];
             }
         }
@@ -215,6 +352,9 @@ public class TrainCommand
         if (!arguments.saveDir.isEmpty()) {
             saveResults(bestModel, bestFold);
         }
+        if (!arguments.modelFile.isEmpty()) {
+            saveModel(bestModel);
+        }
         
         // Step 5: compute the overall statistics
         System.out.println("Overall Statistics");
@@ -225,5 +365,16 @@ public class TrainCommand
         System.out.println("Precision " + StatUtils.mean(precision) + " (" + StatUtils.variance(precision) + ")");
         System.out.println("Recall " + StatUtils.mean(recall) + " (" + StatUtils.variance(recall) + ")");
         System.out.println("F1 " + StatUtils.mean(f1) + " (" + StatUtils.variance(f1) + ")");
+        System.out.println("ROC AUC " + StatUtils.mean(rocAuc) + " (" + StatUtils.variance(rocAuc) + ")");
+        System.out.println("Average Precision " + StatUtils.mean(averagePrecision) + " (" + StatUtils.variance(averagePrecision) + ")");
+        System.out.println("Best Threshold " + StatUtils.mean(bestThreshold) + " (" + StatUtils.variance(bestThreshold) + ")");
+        System.out.println("Best Threshold F1 " + StatUtils.mean(bestThresholdF1) + " (" + StatUtils.variance(bestThresholdF1) + ")");
+        System.out.println("Training Metrics");
+        System.out.println(metrics.getSummary());
+        try {
+            metrics.unregister();
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "could not remove training metrics: " + e.getMessage());
+        }
     }
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.commandline;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+
+/**
+ * Parameters used for the watch command.
+ */
+@Parameters(commandDescription="Classifies images as they are added to a directory")
+public class WatchArguments
+{
+    @Parameter(names={"-m", "--model"}, description="the model file written by the train command", required=true)
+    public String modelFile = "";
+
+    @Parameter(names={"--dir"}, description="the directory to watch for new images", required=true)
+    public String watchDir = "";
+
+    @Parameter(names={"-o", "--output"}, description="writes results to the specified file instead of the console")
+    public String outputFile = "";
+
+    @Parameter(names={"--color"}, description="processes images in color")
+    public boolean color = false;
+
+    @Parameter(names={"-w", "--width"}, description="the width in pixels of the images the model was trained on")
+    public Integer requiredWidth = 10;
+
+    @Parameter(names={"-h", "--height"}, description="the height in pixels of the images the model was trained on")
+    public Integer requiredHeight = 10;
+
+    @Parameter(names={"-t", "--threshold"}, description="prediction threshold")
+    public Double predictionThreshold = 0.5;
+
+    @Parameter(names={"--batch"}, description="largest number of images classified at once")
+    public Integer batchSize = 32;
+
+    @Parameter(names={"--queue"}, description="number of images each pipeline stage can hold")
+    public Integer queueCapacity = 64;
+
+    @Parameter(names={"--policy"}, description="what to do with new images when behind: coalesce, drop or block")
+    public String policy = "coalesce";
+
+    @Parameter(names={"--threads"}, description="number of threads decoding images")
+    public Integer decodeThreads = Runtime.getRuntime().availableProcessors();
+}
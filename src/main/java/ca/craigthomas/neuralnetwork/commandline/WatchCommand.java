@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.commandline;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+
+import ca.craigthomas.neuralnetwork.components.network.NetworkFile;
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+import ca.craigthomas.neuralnetwork.pipeline.FrameQueue;
+import ca.craigthomas.neuralnetwork.pipeline.WatchPipeline;
+
+/**
+ * The WatchCommand loads a model saved by the train command, and classifies
+ * every image added to a directory until it is stopped. A line with the
+ * path, score and label of each image is written as soon as the image has
+ * been classified.
+ */
+public class WatchCommand
+{
+    // The logger for the class
+    private final static Logger LOGGER = Logger.getLogger(Runner.class.getName());
+    // The arguments passed to the command
+    WatchArguments arguments;
+
+    public WatchCommand(WatchArguments arguments) {
+        this.arguments = arguments;
+    }
+
+    public void execute() {
+        File directory = new File(arguments.watchDir);
+        if (!directory.isDirectory()) {
+            LOGGER.log(Level.SEVERE, "watch directory [" + arguments.watchDir + "] is not a directory");
+            return;
+        }
+
+        FrameQueue.Policy policy;
+        try {
+            policy = FrameQueue.Policy.valueOf(arguments.policy.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.SEVERE, "unknown policy [" + arguments.policy + "], must be coalesce, drop or block");
+            return;
+        }
+
+        NeuralNetwork model;
+        try {
+            model = NetworkFile.read(arguments.modelFile);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "could not read model [" + arguments.modelFile + "]: " + e.getMessage());
+            return;
+        }
+        int numFeatures = arguments.requiredWidth * arguments.requiredHeight * (arguments.color ? 3 : 1);
+        if (model.getLayerSizes()[0] != numFeatures) {
+            LOGGER.log(Level.SEVERE, "model expects " + model.getLayerSizes()[0] + " features, but " + numFeatures + " were specified");
+            return;
+        }
+
+        Writer output = null;
+        try {
+            output = arguments.outputFile.isEmpty() ?
+                    new OutputStreamWriter(System.out, StandardCharsets.UTF_8) :
+                    new OutputStreamWriter(new FileOutputStream(arguments.outputFile, true), StandardCharsets.UTF_8);
+            final WatchPipeline pipeline = new WatchPipeline.Builder(model, arguments.requiredWidth, arguments.requiredHeight)
+                    .color(arguments.color)
+                    .threshold(arguments.predictionThreshold)
+                    .batchSize(arguments.batchSize)
+                    .queueCapacity(arguments.queueCapacity)
+                    .policy(policy)
+                    .decodeThreads(arguments.decodeThreads)
+                    .output(output).build();
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // The logging handlers may already be shut down here
+                    pipeline.close();
+                    System.err.println("classified " + pipeline.getProcessed() + " image(s), dropped " +
+                            pipeline.getDropped() + ", failed " + pipeline.getFailed());
+                }
+            }));
+            LOGGER.log(Level.INFO, "watching [" + directory + "] for new images");
+            pipeline.watch(directory);
+            pipeline.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "could not watch [" + arguments.watchDir + "]: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (!arguments.outputFile.isEmpty()) {
+                IOUtils.closeQuietly(output);
+            }
+        }
+    }
+}
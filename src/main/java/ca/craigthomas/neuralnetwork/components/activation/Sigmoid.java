@@ -29,7 +29,7 @@ public class Sigmoid implements IActivationFunction {
      * @return the sigmoid value of the input matrix
      */
     public DoubleMatrix apply(DoubleMatrix input) {
-        DoubleMatrix result = new DoubleMatrix().copy(input);
+        DoubleMatrix result = input.dup();
         DoubleMatrix ones = DoubleMatrix.ones(result.rows, result.columns);
         result.muli(-1);
         MatrixFunctions.expi(result);
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.network;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * Computes a convolution layer as a single matrix multiplication. Every
+ * patch of the input that a filter covers is copied into a row of a patch
+ * matrix (im2col), with a bias column of 1's first, so that the patch
+ * matrix times the transposed theta gives the output of every filter at
+ * every position at once. The theta has one row per filter, laid out like
+ * the theta of a fully connected layer: the bias, then the weight of each
+ * pixel and channel of the filter.
+ *
+ * The patch matrix has one row per position for each sample, with the rows
+ * of all samples at the first position, then all samples at the second
+ * position, and so on. Each column of the patch matrix is then made up of
+ * whole columns of the input, so patches are copied a column at a time.
+ *
+ * Images are stored one per row, with the channels of each pixel next to
+ * each other, and the pixels in row-major order.
+ *
+ * @author thomas
+ */
+public class Convolution {
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mChannels;
+    private final int mFilters;
+    private final int mKernel;
+    private final int mOutputWidth;
+    private final int mOutputHeight;
+
+    /**
+     * Creates a convolution of an image of the specified size.
+     *
+     * @param width the width of the input in pixels
+     * @param height the height of the input in pixels
+     * @param channels the number of channels of each input pixel
+     * @param filters the number of filters
+     * @param kernel the width and height of each filter in pixels
+     */
+    public Convolution(int width, int height, int channels, int filters, int kernel) {
+        if (kernel > width || kernel > height) {
+            throw new IllegalArgumentException("filters of " + kernel + " pixels do not fit in a " + width + "x" + height + " input");
+        }
+        mWidth = width;
+        mHeight = height;
+        mChannels = channels;
+        mFilters = filters;
+        mKernel = kernel;
+        mOutputWidth = width - kernel + 1;
+        mOutputHeight = height - kernel + 1;
+    }
+
+    /**
+     * Returns the width of the output in pixels.
+     *
+     * @return the width of the output
+     */
+    public int getOutputWidth() {
+        return mOutputWidth;
+    }
+
+    /**
+     * Returns the height of the output in pixels.
+     *
+     * @return the height of the output
+     */
+    public int getOutputHeight() {
+        return mOutputHeight;
+    }
+
+    /**
+     * Returns the number of values in each input image.
+     *
+     * @return the size of the input
+     */
+    public int getInputSize() {
+        return mWidth * mHeight * mChannels;
+    }
+
+    /**
+     * Returns the number of values in each output image, which has one
+     * channel per filter.
+     *
+     * @return the size of the output
+     */
+    public int getOutputSize() {
+        return mOutputWidth * mOutputHeight * mFilters;
+    }
+
+    /**
+     * Returns the number of positions each filter is applied at.
+     *
+     * @return the number of positions
+     */
+    public int getNumPositions() {
+        return mOutputWidth * mOutputHeight;
+    }
+
+    /**
+     * Returns the number of weights in each filter, not counting the bias.
+     *
+     * @return the number of weights in a filter
+     */
+    public int getPatchSize() {
+        return mKernel * mKernel * mChannels;
+    }
+
+    /**
+     * Allocates a patch matrix for the specified number of samples, with the
+     * bias column filled in.
+     *
+     * @param rows the number of samples
+     * @return the new patch matrix
+     */
+    public DoubleMatrix createPatches(int rows) {
+        DoubleMatrix patches = new DoubleMatrix(rows * getNumPositions(), getPatchSize() + 1);
+        for (int row = 0; row < patches.rows; row++) {
+            patches.data[row] = 1.0;
+        }
+        return patches;
+    }
+
+    /**
+     * Copies every patch of the input into a new patch matrix.
+     *
+     * @param input the input images, one per row
+     * @param firstColumn the column of the input where the image starts
+     * @return the patch matrix
+     */
+    public DoubleMatrix toPatches(DoubleMatrix input, int firstColumn) {
+        DoubleMatrix patches = createPatches(input.rows);
+        toPatches(input, firstColumn, patches);
+        return patches;
+    }
+
+    /**
+     * Copies every patch of the input into a patch matrix made by
+     * createPatches. Nothing is allocated.
+     *
+     * @param input the input images, one per row
+     * @param firstColumn the column of the input where the image starts
+     * @param patches the patch matrix to copy into
+     */
+    public void toPatches(DoubleMatrix input, int firstColumn, DoubleMatrix patches) {
+        int rows = input.rows;
+        int column = patches.rows;
+        for (int y = 0; y < mKernel; y++) {
+            for (int x = 0; x < mKernel; x++) {
+                for (int channel = 0; channel < mChannels; channel++) {
+                    int offset = column;
+                    for (int outputY = 0; outputY < mOutputHeight; outputY++) {
+                        int source = firstColumn + (((((outputY + y) * mWidth) + x) * mChannels) + channel);
+                        for (int outputX = 0; outputX < mOutputWidth; outputX++) {
+                            System.arraycopy(input.data, source * rows, patches.data, offset, rows);
+                            source += mChannels;
+                            offset += rows;
+                        }
+                    }
+                    column += patches.rows;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the values of a matrix shaped like the patch matrix back into
+     * the pixels each patch came from (col2im). The bias column is skipped.
+     * This turns the error of each patch into the error of each input.
+     *
+     * @param patchErrors the error of each value of the patch matrix
+     * @param rows the number of samples
+     * @return the error of each input, one image per row
+     */
+    public DoubleMatrix fromPatches(DoubleMatrix patchErrors, int rows) {
+        DoubleMatrix result = new DoubleMatrix(rows, getInputSize());
+        int column = patchErrors.rows;
+        for (int y = 0; y < mKernel; y++) {
+            for (int x = 0; x < mKernel; x++) {
+                for (int channel = 0; channel < mChannels; channel++) {
+                    int offset = column;
+                    for (int outputY = 0; outputY < mOutputHeight; outputY++) {
+                        int target = ((((outputY + y) * mWidth) + x) * mChannels) + channel;
+                        for (int outputX = 0; outputX < mOutputWidth; outputX++) {
+                            int start = target * rows;
+                            for (int row = 0; row < rows; row++) {
+                                result.data[start + row] += patchErrors.data[offset + row];
+                            }
+                            target += mChannels;
+                            offset += rows;
+                        }
+                    }
+                    column += patchErrors.rows;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Rearranges the output of each filter at each position, one row per
+     * position, into output images, one row per sample.
+     *
+     * @param positions the output of the filters, one column per filter
+     * @return the output images
+     */
+    public DoubleMatrix toOutput(DoubleMatrix positions) {
+        DoubleMatrix output = new DoubleMatrix(positions.rows / getNumPositions(), getOutputSize());
+        toOutput(positions, output);
+        return output;
+    }
+
+    /**
+     * Rearranges the output of each filter at each position into output
+     * images, without allocating anything.
+     *
+     * @param positions the output of the filters, one column per filter
+     * @param output the matrix to store the output images in
+     */
+    public void toOutput(DoubleMatrix positions, DoubleMatrix output) {
+        int rows = output.rows;
+        for (int position = 0; position < getNumPositions(); position++) {
+            for (int filter = 0; filter < mFilters; filter++) {
+                System.arraycopy(positions.data, (filter * positions.rows) + (position * rows),
+                        output.data, ((position * mFilters) + filter) * rows, rows);
+            }
+        }
+    }
+
+    /**
+     * Rearranges output images back into one row per position, the reverse
+     * of toOutput.
+     *
+     * @param output the output images, one per row
+     * @return the values of the filters, one column per filter
+     */
+    public DoubleMatrix toPositions(DoubleMatrix output) {
+        int rows = output.rows;
+        DoubleMatrix positions = new DoubleMatrix(rows * getNumPositions(), mFilters);
+        for (int position = 0; position < getNumPositions(); position++) {
+            for (int filter = 0; filter < mFilters; filter++) {
+                System.arraycopy(output.data, ((position * mFilters) + filter) * rows,
+                        positions.data, (filter * positions.rows) + (position * rows), rows);
+            }
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.network;
+
+import java.util.List;
+
+import org.jblas.DoubleMatrix;
+
+import ca.craigthomas.neuralnetwork.components.activation.IActivationFunction;
+
+/**
+ * The buffers for scoring a fixed number of rows with a network, allocated 
+ * once and reused for every chunk. Each layer keeps its activations, with
+ * the bias column already filled in, and the thetas are transposed once up
+ * front, so a forward pass allocates nothing. Convolution layers keep their
+ * patch matrix, with the bias column already filled in, and the output of
+ * each filter at each position. A scratch holds the state of 
+ * the pass being run, so each thread needs its own. The thetas are read 
+ * when the scratch is created, so it must be created again if the thetas 
+ * of the network change.
+ *
+ * @author thomas
+ */
+public class InferenceScratch {
+
+    private final int mRows;
+    private final IActivationFunction mActivationFunction;
+    private final DoubleMatrix mSamples;
+    private final Convolution [] mConvolutions;
+    private final Pooling [] mPoolings;
+    private final DoubleMatrix [] mTransposedThetas;
+    private final DoubleMatrix [] mActivations;
+    private final DoubleMatrix [] mPatches;
+    private final DoubleMatrix [] mPositions;
+    private final DoubleMatrix [] mOutputs;
+
+    /**
+     * Allocates the buffers for scoring the specified number of rows at once
+     * with a network.
+     *
+     * @param network the network to score rows with
+     * @param rows the number of rows scored at once
+     */
+    public InferenceScratch(NeuralNetwork network, int rows) {
+        if (rows < 1) {
+            throw new IllegalArgumentException("rows must be positive");
+        }
+        int [] layerSizes = network.getLayerSizes();
+        List<Layer> layers = network.getLayers();
+        List<DoubleMatrix> thetas = network.getThetas();
+        mRows = rows;
+        mActivationFunction = network.getActivationFunction();
+        mSamples = new DoubleMatrix(rows, layerSizes[0]);
+        mConvolutions = new Convolution [layers.size()];
+        mPoolings = new Pooling [layers.size()];
+        mTransposedThetas = new DoubleMatrix [layers.size()];
+        mActivations = new DoubleMatrix [layers.size()];
+        mPatches = new DoubleMatrix [layers.size()];
+        mPositions = new DoubleMatrix [layers.size()];
+        mOutputs = new DoubleMatrix [layers.size()];
+        int theta = 0;
+        for (int index = 0; index < layers.size(); index++) {
+            mOutputs[index] = new DoubleMatrix(rows, layerSizes[index + 1]);
+            mConvolutions[index] = network.getConvolution(index);
+            mPoolings[index] = network.getPooling(index);
+            if (mPoolings[index] != null) {
+                continue;
+            }
+            mTransposedThetas[index] = thetas.get(theta++).transpose();
+            if (mConvolutions[index] != null) {
+                mPatches[index] = mConvolutions[index].createPatches(rows);
+                mPositions[index] = new DoubleMatrix(mPatches[index].rows, layers.get(index).getSize());
+            } else {
+                mActivations[index] = new DoubleMatrix(rows, layerSizes[index] + 1);
+                for (int row = 0; row < rows; row++) {
+                    mActivations[index].data[row] = 1.0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of rows scored at once.
+     *
+     * @return the number of rows
+     */
+    public int getRows() {
+        return mRows;
+    }
+
+    /**
+     * Returns the matrix that the samples to score are copied into before
+     * calling feedForward.
+     *
+     * @return the matrix of samples
+     */
+    public DoubleMatrix getSamples() {
+        return mSamples;
+    }
+
+    /**
+     * Scores every row of the samples matrix. The scores are returned in a
+     * buffer that is overwritten by the next call.
+     *
+     * @return the output of the network for each row
+     */
+    public DoubleMatrix feedForward() {
+        DoubleMatrix input = mSamples;
+        for (int index = 0; index < mOutputs.length; index++) {
+            if (mPoolings[index] != null) {
+                mPoolings[index].forward(input, 0, mOutputs[index], null);
+                input = mOutputs[index];
+                continue;
+            }
+            if (mConvolutions[index] != null) {
+                mConvolutions[index].toPatches(input, 0, mPatches[index]);
+                mPatches[index].mmuli(mTransposedThetas[index], mPositions[index]);
+                mConvolutions[index].toOutput(mPositions[index], mOutputs[index]);
+            } else {
+                // The bias is the first column, so the inputs follow it
+                DoubleMatrix activation = mActivations[index];
+                System.arraycopy(input.data, 0, activation.data, mRows, input.length);
+                activation.mmuli(mTransposedThetas[index], mOutputs[index]);
+            }
+            double [] output = mOutputs[index].data;
+            for (int element = 0; element < output.length; element++) {
+                output[element] = mActivationFunction.apply(output[element]);
+            }
+            input = mOutputs[index];
+        }
+        return input;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes one layer of a neural network after the input layer. A layer is
+ * either fully connected, a convolution of its input with a number of
+ * square filters, or a max or average pooling of its input over square
+ * windows. Convolution and pooling layers treat their input as an image,
+ * with the channels of each pixel next to each other, in the same layout
+ * as the features of an Image.
+ *
+ * Layers can be written as text, with layers separated by commas:
+ *
+ *   10          a fully connected layer of 10 nodes
+ *   conv:8:5    a convolution with 8 filters of 5 x 5 pixels
+ *   maxpool:2   the largest value of each 2 x 2 window
+ *   avgpool:2   the average value of each 2 x 2 window
+ *
+ * @author thomas
+ */
+public class Layer {
+
+    public enum Type {
+        DENSE, CONVOLUTION, MAX_POOL, AVERAGE_POOL
+    }
+
+    private final Type mType;
+    private final int mSize;
+    private final int mKernel;
+
+    private Layer(Type type, int size, int kernel) {
+        mType = type;
+        mSize = size;
+        mKernel = kernel;
+    }
+
+    /**
+     * Creates a fully connected layer.
+     *
+     * @param nodes the number of nodes in the layer
+     * @return the new layer
+     */
+    public static Layer dense(int nodes) {
+        if (nodes < 1) {
+            throw new IllegalArgumentException("layer must have at least 1 node");
+        }
+        return new Layer(Type.DENSE, nodes, 0);
+    }
+
+    /**
+     * Creates a convolution layer. Each filter is moved over every position
+     * where it fits entirely inside its input, one pixel at a time, and
+     * produces one channel of the output.
+     *
+     * @param filters the number of filters
+     * @param kernel the width and height of each filter in pixels
+     * @return the new layer
+     */
+    public static Layer convolution(int filters, int kernel) {
+        if (filters < 1 || kernel < 1) {
+            throw new IllegalArgumentException("convolution must have at least 1 filter of at least 1 pixel");
+        }
+        return new Layer(Type.CONVOLUTION, filters, kernel);
+    }
+
+    /**
+     * Creates a layer that keeps the largest value in each window of each
+     * channel. Windows do not overlap.
+     *
+     * @param window the width and height of each window in pixels
+     * @return the new layer
+     */
+    public static Layer maxPool(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("pooling window must be at least 1 pixel");
+        }
+        return new Layer(Type.MAX_POOL, window, 0);
+    }
+
+    /**
+     * Creates a layer that keeps the average value in each window of each
+     * channel. Windows do not overlap.
+     *
+     * @param window the width and height of each window in pixels
+     * @return the new layer
+     */
+    public static Layer averagePool(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("pooling window must be at least 1 pixel");
+        }
+        return new Layer(Type.AVERAGE_POOL, window, 0);
+    }
+
+    /**
+     * Creates a layer from its text form, such as "10", "conv:8:5",
+     * "maxpool:2" or "avgpool:2".
+     *
+     * @param spec the text form of the layer
+     * @return the new layer
+     */
+    public static Layer parse(String spec) {
+        String [] parts = spec.trim().split(":");
+        try {
+            if (parts.length == 1) {
+                return dense(Integer.parseInt(parts[0]));
+            }
+            if (parts[0].equals("conv") && parts.length == 3) {
+                return convolution(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            }
+            if (parts[0].equals("maxpool") && parts.length == 2) {
+                return maxPool(Integer.parseInt(parts[1]));
+            }
+            if (parts[0].equals("avgpool") && parts.length == 2) {
+                return averagePool(Integer.parseInt(parts[1]));
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid layer [" + spec + "]");
+        }
+        throw new IllegalArgumentException("invalid layer [" + spec + "]");
+    }
+
+    /**
+     * Creates the layers in a comma separated list of their text forms.
+     *
+     * @param specs the text forms of the layers
+     * @return the new layers, in order
+     */
+    public static List<Layer> parseList(String specs) {
+        List<Layer> layers = new ArrayList<Layer>();
+        for (String spec : specs.split(",")) {
+            layers.add(parse(spec));
+        }
+        return layers;
+    }
+
+    /**
+     * Returns the type of the layer.
+     *
+     * @return the type of the layer
+     */
+    public Type getType() {
+        return mType;
+    }
+
+    /**
+     * Returns the number of nodes of a fully connected layer, the number of
+     * filters of a convolution layer, or the window size of a pooling layer.
+     *
+     * @return the size of the layer
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * Returns the width and height of the filters of a convolution layer,
+     * or 0 for other layers.
+     *
+     * @return the size of the filters
+     */
+    public int getKernel() {
+        return mKernel;
+    }
+
+    /**
+     * Returns whether the layer has a theta that is learned in training.
+     * Pooling layers have no weights.
+     *
+     * @return true if the layer has a theta
+     */
+    public boolean hasTheta() {
+        return mType == Type.DENSE || mType == Type.CONVOLUTION;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Layer)) {
+            return false;
+        }
+        Layer layer = (Layer)other;
+        return mType == layer.mType && mSize == layer.mSize && mKernel == layer.mKernel;
+    }
+
+    @Override
+    public int hashCode() {
+        return (((mType.hashCode() * 31) + mSize) * 31) + mKernel;
+    }
+
+    @Override
+    public String toString() {
+        switch (mType) {
+            case CONVOLUTION:
+                return "conv:" + mSize + ":" + mKernel;
+
+            case MAX_POOL:
+                return "maxpool:" + mSize;
+
+            case AVERAGE_POOL:
+                return "avgpool:" + mSize;
+
+            default:
+                return Integer.toString(mSize);
+        }
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.network;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jblas.DoubleMatrix;
+
+import ca.craigthomas.neuralnetwork.components.activation.HyperbolicTangent;
+import ca.craigthomas.neuralnetwork.components.activation.IActivationFunction;
+import ca.craigthomas.neuralnetwork.components.activation.Sigmoid;
+
+/**
+ * Reads and writes trained neural networks, so that a model can be used
+ * again without retraining it. The file is made up of a header, the size of
+ * each layer, and the thetas between each pair of layers, in little-endian
+ * byte order:
+ *
+ *   offset  size  contents
+ *   0       4     magic number (NNET)
+ *   4       4     format version
+ *   8       4     activation function (1 = sigmoid, 2 = hyperbolic tangent)
+ *   12      4     number of layers
+ *   16      ...   size of each layer, as 32-bit integers
+ *   ...     ...   thetas, as 64-bit doubles in row-major order
+ *
+ * The theta between layer i and layer i + 1 has one row per node of layer
+ * i + 1, and one column per node of layer i plus the bias column.
+ *
+ * Networks with convolution or pooling layers are written as version 2,
+ * which adds the shape of the input and the type of each layer after the
+ * layer sizes:
+ *
+ *   offset  size  contents
+ *   ...     12    input width, height and channels
+ *   ...     ...   type (1 = fully connected, 2 = convolution, 3 = max 
+ *                 pooling, 4 = average pooling), size and filter size of
+ *                 each layer after the input, as 32-bit integers
+ *   ...     ...   thetas of the layers with weights
+ *
+ * The theta of a convolution layer has one row per filter, and one column
+ * per pixel and channel of the filter plus the bias column. Networks of 
+ * fully connected layers are still written as version 1.
+ *
+ * @author thomas
+ */
+public class NetworkFile {
+
+    // Identifies the file as a neural network
+    public static final int MAGIC = 0x4E4E4554;
+    // The version of the file format for fully connected networks
+    public static final int VERSION = 1;
+    // The version of the file format for networks with image layers
+    public static final int VERSION_LAYERS = 2;
+    // The network uses the Sigmoid activation function
+    public static final int ACTIVATION_SIGMOID = 1;
+    // The network uses the HyperbolicTangent activation function
+    public static final int ACTIVATION_TANH = 2;
+    // A fully connected layer
+    public static final int LAYER_DENSE = 1;
+    // A convolution layer
+    public static final int LAYER_CONVOLUTION = 2;
+    // A max pooling layer
+    public static final int LAYER_MAX_POOL = 3;
+    // An average pooling layer
+    public static final int LAYER_AVERAGE_POOL = 4;
+    // The size of the fixed part of the header in bytes
+    public static final int HEADER_SIZE = 16;
+
+    private NetworkFile() {
+    }
+
+    /**
+     * Writes the layer sizes, activation function and thetas of the network
+     * to the specified file.
+     *
+     * @param network the network to write
+     * @param filename the name of the file to write to
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(NeuralNetwork network, String filename) throws IOException {
+        long size = getSize(network);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(filename + ": network is too large to write");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int)size).order(ByteOrder.LITTLE_ENDIAN);
+        write(network, buffer);
+        buffer.flip();
+        try (FileOutputStream stream = new FileOutputStream(filename);
+             FileChannel channel = stream.getChannel()) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes the network takes up when written.
+     *
+     * @param network the network to measure
+     * @return the size of the written network in bytes
+     */
+    public static long getSize(NeuralNetwork network) {
+        long size = HEADER_SIZE + (network.getLayerSizes().length * 4L);
+        if (hasImageLayers(network)) {
+            size += 12 + (network.getLayers().size() * 12L);
+        }
+        for (DoubleMatrix theta : network.getThetas()) {
+            size += theta.length * 8L;
+        }
+        return size;
+    }
+
+    /**
+     * Writes the network into a buffer, in the same format as a file. The
+     * buffer must be in little-endian order, and have getSize bytes
+     * remaining.
+     *
+     * @param network the network to write
+     * @param buffer the buffer to write to
+     */
+    public static void write(NeuralNetwork network, ByteBuffer buffer) {
+        int activation = getActivationType(network.getActivationFunction());
+        int [] layerSizes = network.getLayerSizes();
+        List<DoubleMatrix> thetas = network.getThetas();
+        boolean imageLayers = hasImageLayers(network);
+        buffer.putInt(MAGIC);
+        buffer.putInt(imageLayers ? VERSION_LAYERS : VERSION);
+        buffer.putInt(activation);
+        buffer.putInt(layerSizes.length);
+        for (int layerSize : layerSizes) {
+            buffer.putInt(layerSize);
+        }
+        if (imageLayers) {
+            for (int dimension : network.getInputShape()) {
+                buffer.putInt(dimension);
+            }
+            for (Layer layer : network.getLayers()) {
+                buffer.putInt(getLayerType(layer));
+                buffer.putInt(layer.getSize());
+                buffer.putInt(layer.getKernel());
+            }
+        }
+        for (DoubleMatrix theta : thetas) {
+            for (int row = 0; row < theta.rows; row++) {
+                for (int column = 0; column < theta.columns; column++) {
+                    buffer.putDouble(theta.data[(column * theta.rows) + row]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a network from the specified file.
+     *
+     * @param filename the name of the file to read
+     * @return the network stored in the file
+     * @throws IOException if the file cannot be read or is not a network
+     */
+    public static NeuralNetwork read(String filename) throws IOException {
+        ByteBuffer buffer;
+        try (FileInputStream stream = new FileInputStream(filename);
+             FileChannel channel = stream.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(filename + ": file is too large to be a network");
+            }
+            buffer = ByteBuffer.allocate((int)channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+        }
+        return read(buffer, filename);
+    }
+
+    /**
+     * Reads a network from a buffer, in the same format as a file. The
+     * buffer must be in little-endian order, and is left positioned after
+     * the network.
+     *
+     * @param buffer the buffer to read from
+     * @param filename the name of the file the buffer came from, for errors
+     * @return the network stored in the buffer
+     * @throws IOException if the buffer does not hold a network
+     */
+    public static NeuralNetwork read(ByteBuffer buffer, String filename) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException(filename + ": not a neural network");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION && version != VERSION_LAYERS) {
+            throw new IOException(filename + ": unsupported network version " + version);
+        }
+        IActivationFunction activationFunction = createActivationFunction(filename, buffer.getInt());
+        int numLayers = buffer.getInt();
+        if (numLayers < 2 || buffer.remaining() < numLayers * 4L) {
+            throw new IOException(filename + ": invalid number of layers " + numLayers);
+        }
+
+        List<Integer> layerSizes = new ArrayList<Integer>();
+        for (int layer = 0; layer < numLayers; layer++) {
+            int layerSize = buffer.getInt();
+            if (layerSize < 1) {
+                throw new IOException(filename + ": invalid layer size " + layerSize);
+            }
+            layerSizes.add(layerSize);
+        }
+        NeuralNetwork.Builder builder = (version == VERSION) ?
+                new NeuralNetwork.Builder(layerSizes) : readLayers(buffer, filename, layerSizes);
+        List<DoubleMatrix> thetas = new ArrayList<DoubleMatrix>();
+        for (int [] shape : builder.getThetaShapes()) {
+            int rows = shape[0];
+            int columns = shape[1];
+            if (buffer.remaining() < (long)rows * columns * 8) {
+                throw new IOException(filename + ": file is truncated");
+            }
+            DoubleMatrix theta = new DoubleMatrix(rows, columns);
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    theta.data[(column * rows) + row] = buffer.getDouble();
+                }
+            }
+            thetas.add(theta);
+        }
+        return builder.theta(thetas)
+                .activationFunction(activationFunction).build();
+    }
+
+    /**
+     * Reads the input shape and layers of a version 2 network, and checks
+     * that they give the layer sizes stored before them.
+     *
+     * @param buffer the buffer to read from
+     * @param filename the name of the file the buffer came from, for errors
+     * @param layerSizes the size of each layer
+     * @return a builder for the network
+     * @throws IOException if the layers are not valid
+     */
+    private static NeuralNetwork.Builder readLayers(ByteBuffer buffer, String filename, List<Integer> layerSizes) throws IOException {
+        if (buffer.remaining() < 12 + ((layerSizes.size() - 1) * 12L)) {
+            throw new IOException(filename + ": file is truncated");
+        }
+        int width = buffer.getInt();
+        int height = buffer.getInt();
+        int channels = buffer.getInt();
+        List<Layer> layers = new ArrayList<Layer>();
+        NeuralNetwork.Builder builder;
+        try {
+            for (int layer = 1; layer < layerSizes.size(); layer++) {
+                layers.add(createLayer(filename, buffer.getInt(), buffer.getInt(), buffer.getInt()));
+            }
+            builder = new NeuralNetwork.Builder(width, height, channels, layers);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(filename + ": " + e.getMessage());
+        }
+        List<Integer> computed = new ArrayList<Integer>();
+        for (int layerSize : builder.getLayerSizes()) {
+            computed.add(layerSize);
+        }
+        if (!computed.equals(layerSizes)) {
+            throw new IOException(filename + ": layers do not match the layer sizes");
+        }
+        return builder;
+    }
+
+    /**
+     * Returns whether the network has any layers that are not fully 
+     * connected, and so must be written as version 2.
+     *
+     * @param network the network to check
+     * @return true if the network has image layers
+     */
+    private static boolean hasImageLayers(NeuralNetwork network) {
+        for (Layer layer : network.getLayers()) {
+            if (layer.getType() != Layer.Type.DENSE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the type stored in the file for a layer.
+     *
+     * @param layer the layer to store
+     * @return the type of the layer
+     */
+    private static int getLayerType(Layer layer) {
+        switch (layer.getType()) {
+            case CONVOLUTION:
+                return LAYER_CONVOLUTION;
+
+            case MAX_POOL:
+                return LAYER_MAX_POOL;
+
+            case AVERAGE_POOL:
+                return LAYER_AVERAGE_POOL;
+
+            default:
+                return LAYER_DENSE;
+        }
+    }
+
+    /**
+     * Creates a layer from the values stored in a file.
+     *
+     * @param filename the name of the file being read
+     * @param type the type of the layer
+     * @param size the size of the layer
+     * @param kernel the filter size of the layer
+     * @return a new layer
+     * @throws IOException if the type is unknown
+     */
+    private static Layer createLayer(String filename, int type, int size, int kernel) throws IOException {
+        switch (type) {
+            case LAYER_DENSE:
+                return Layer.dense(size);
+
+            case LAYER_CONVOLUTION:
+                return Layer.convolution(size, kernel);
+
+            case LAYER_MAX_POOL:
+                return Layer.maxPool(size);
+
+            case LAYER_AVERAGE_POOL:
+                return Layer.averagePool(size);
+
+            default:
+                throw new IOException(filename + ": unknown layer type " + type);
+        }
+    }
+
+    /**
+     * Returns the type stored in the file for an activation function.
+     *
+     * @param activationFunction the activation function of the network
+     * @return the type of the activation function
+     */
+    private static int getActivationType(IActivationFunction activationFunction) {
+        if (activationFunction instanceof Sigmoid) {
+            return ACTIVATION_SIGMOID;
+        }
+        if (activationFunction instanceof HyperbolicTangent) {
+            return ACTIVATION_TANH;
+        }
+        throw new IllegalArgumentException("cannot store activation function " + activationFunction.getClass().getName());
+    }
+
+    /**
+     * Creates the activation function for a type stored in a file.
+     *
+     * @param filename the name of the file being read
+     * @param type the type of the activation function
+     * @return a new activation function
+     * @throws IOException if the type is unknown
+     */
+    private static IActivationFunction createActivationFunction(String filename, int type) throws IOException {
+        switch (type) {
+            case ACTIVATION_SIGMOID:
+                return new Sigmoid();
+
+            case ACTIVATION_TANH:
+                return new HyperbolicTangent();
+
+            default:
+                throw new IOException(filename + ": unknown activation function " + type);
+        }
+    }
+}
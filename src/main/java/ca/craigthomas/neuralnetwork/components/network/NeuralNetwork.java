@@ -6,11 +6,11 @@ package ca.craigthomas.neuralnetwork.components.network;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.lang.IllegalArgumentException;
 
 import org.jblas.DoubleMatrix;
-import org.jblas.MatrixFunctions;
 import org.jblas.ranges.*;
 import org.jblas.util.Random;
 
@@ -25,21 +25,43 @@ import ca.craigthomas.neuralnetwork.components.activation.Sigmoid;
  * each layer. The predict function can then be used to calculate the resulting
  * values for a given set of inputs.
  * 
+ * Networks for images can also start with convolution and pooling layers,
+ * described by a list of Layers and the shape of the input image. The size 
+ * of each of those layers is the number of values in its output image. 
+ * Only layers with weights have a theta, so the thetas of a network with
+ * pooling layers are fewer than its layers.
+ * 
  * @author thomas
  */
 public class NeuralNetwork {
 
+    // The closest an output is allowed to 0 or 1 when computing the cost
+    private static final double MIN_PROBABILITY = 1e-15;
+
     private int[] mLayerSizes;
+    private final int[] mInputShape;
+    private final Layer[] mLayers;
+    private final Convolution[] mConvolutions;
+    private final Pooling[] mPoolings;
+    private final int[] mThetaLayers;
+    private final int[] mLayerThetas;
     private DoubleMatrix[] mThetas;
     private final IActivationFunction mActivationFunction;
     public DoubleMatrix[] mActivations;
     private DoubleMatrix[] mDeltas;
+    private DoubleMatrix[] mInputs;
+    private DoubleMatrix[] mPatches;
+    private int[][] mSwitches;
     private DoubleMatrix mIdentities;
     private final double mLambda;
     
     public static class Builder {
         
         private int[] mLayerSizes;
+        private int[] mInputShape;
+        private Layer[] mLayers;
+        private Convolution[] mConvolutions;
+        private Pooling[] mPoolings;
         private DoubleMatrix[] mThetas;
         private DoubleMatrix mInputs;
         private DoubleMatrix mExpected;
@@ -60,13 +82,77 @@ public class NeuralNetwork {
             if (layerSizes.size() < 2) {
                 throw new IllegalArgumentException("must have at least 2 layers");
             }
-            mLayerSizes = new int[layerSizes.size()];
-            for (int index = 0; index < layerSizes.size(); index++) {
-                mLayerSizes[index] = layerSizes.get(index).intValue();
+            List<Layer> layers = new ArrayList<Layer>();
+            for (int index = 1; index < layerSizes.size(); index++) {
+                layers.add(Layer.dense(layerSizes.get(index).intValue()));
             }
+            setLayers(layerSizes.get(0).intValue(), 1, 1, layers);
+            mLambda = 0.0;
+        }
+        
+        /**
+         * Constructs a neural network for images of the specified shape, 
+         * with the specified layers after the input layer. Convolution and
+         * pooling layers may come anywhere before the output layer, which 
+         * must be fully connected. For example, a 10 x 10 color image, 
+         * followed by the layers [conv:8:3, maxpool:2, 1], builds a network
+         * whose first layer has 300 nodes, and whose second layer is 8 
+         * images of 8 x 8 pixels, pooled down to 8 images of 4 x 4 pixels,
+         * and then fully connected to a single output node.
+         * 
+         * @param width the width of the input images in pixels
+         * @param height the height of the input images in pixels
+         * @param channels the number of channels of each pixel
+         * @param layers the layers after the input layer
+         */
+        public Builder(int width, int height, int channels, List<Layer> layers) {
+            setLayers(width, height, channels, layers);
             mLambda = 0.0;
         }
         
+        /**
+         * Works out the shape and size of each layer from the shape of the
+         * input, and checks that every layer fits in the one before it.
+         * 
+         * @param width the width of the input images in pixels
+         * @param height the height of the input images in pixels
+         * @param channels the number of channels of each pixel
+         * @param layers the layers after the input layer
+         */
+        private void setLayers(int width, int height, int channels, List<Layer> layers) {
+            mInputShape = new int [] {width, height, channels};
+            mLayers = layers.toArray(new Layer[layers.size()]);
+            mConvolutions = new Convolution[mLayers.length];
+            mPoolings = new Pooling[mLayers.length];
+            mLayerSizes = computeLayerSizes(width, height, channels, mLayers, mConvolutions, mPoolings);
+        }
+        
+        /**
+         * Returns the number of nodes in each layer of the network, starting
+         * with the input layer.
+         * 
+         * @return the size of each layer
+         */
+        int [] getLayerSizes() {
+            return mLayerSizes.clone();
+        }
+        
+        /**
+         * Returns the rows and columns of each theta of the network, so that
+         * thetas can be read before the network is built.
+         * 
+         * @return the rows and columns of each theta, in order
+         */
+        List<int[]> getThetaShapes() {
+            List<int[]> shapes = new ArrayList<int[]>();
+            for (int index = 0; index < mLayers.length; index++) {
+                if (mLayers[index].hasTheta()) {
+                    shapes.add(getThetaShape(mLayers[index], mLayerSizes[index], mConvolutions[index]));
+                }
+            }
+            return shapes;
+        }
+        
         /**
          * Sets the theta values (weights) to be used between the various 
          * layers in the neural network. 
@@ -147,10 +233,29 @@ public class NeuralNetwork {
      */
     private NeuralNetwork(Builder builder) {
         mLayerSizes = builder.mLayerSizes;
+        mInputShape = builder.mInputShape;
+        mLayers = builder.mLayers;
+        mConvolutions = builder.mConvolutions;
+        mPoolings = builder.mPoolings;
         mThetas = builder.mThetas;
         mActivationFunction = builder.mActivationFunction;
         mActivations = new DoubleMatrix[mLayerSizes.length];
         mDeltas = new DoubleMatrix[mLayerSizes.length];
+        mInputs = new DoubleMatrix[mLayerSizes.length];
+        mPatches = new DoubleMatrix[mLayers.length];
+        mSwitches = new int[mLayers.length][];
+        mLayerThetas = new int[mLayers.length];
+        List<Integer> thetaLayers = new ArrayList<Integer>();
+        for (int index = 0; index < mLayers.length; index++) {
+            mLayerThetas[index] = mLayers[index].hasTheta() ? thetaLayers.size() : -1;
+            if (mLayers[index].hasTheta()) {
+                thetaLayers.add(index);
+            }
+        }
+        mThetaLayers = new int[thetaLayers.size()];
+        for (int index = 0; index < mThetaLayers.length; index++) {
+            mThetaLayers[index] = thetaLayers.get(index);
+        }
         mIdentities = builder.mExpected;
         mLambda = builder.mLambda;
         if (builder.mInputs != null) {
@@ -168,9 +273,10 @@ public class NeuralNetwork {
      */
     public void initThetas() {
         List<DoubleMatrix> thetas = new ArrayList<DoubleMatrix>();
-        for (int layer = 0; layer < mLayerSizes.length - 1; layer++) {
-            int inputNodes = mLayerSizes[layer];
-            int outputNodes = mLayerSizes[layer+1];
+        for (int layer : mThetaLayers) {
+            int [] shape = getThetaShape(mLayers[layer], mLayerSizes[layer], mConvolutions[layer]);
+            int inputNodes = shape[1] - 1;
+            int outputNodes = shape[0];
             double range = Math.sqrt(6) / Math.sqrt(inputNodes + outputNodes);
             DoubleMatrix theta = DoubleMatrix.ones(outputNodes, inputNodes + 1);
             for (int col = 0; col < theta.columns; col++) {
@@ -184,6 +290,94 @@ public class NeuralNetwork {
         mThetas = thetas.toArray(new DoubleMatrix[thetas.size()]);
     }
     
+    /**
+     * Checks that the layers describe a network for images of the specified
+     * shape: there is at least one layer, each convolution and pooling layer
+     * fits in the image it receives, and the output layer is fully 
+     * connected.
+     * 
+     * @param width the width of the input images in pixels
+     * @param height the height of the input images in pixels
+     * @param channels the number of channels of each pixel
+     * @param layers the layers after the input layer
+     * @throws IllegalArgumentException if the layers do not fit the images
+     */
+    public static void checkLayers(int width, int height, int channels, List<Layer> layers) {
+        Layer [] array = layers.toArray(new Layer[layers.size()]);
+        computeLayerSizes(width, height, channels, array, new Convolution[array.length], new Pooling[array.length]);
+    }
+    
+    /**
+     * Works out the size of each layer, starting with the input layer, and
+     * the convolution or pooling of each layer that has one.
+     * 
+     * @param width the width of the input images in pixels
+     * @param height the height of the input images in pixels
+     * @param channels the number of channels of each pixel
+     * @param layers the layers after the input layer
+     * @param convolutions filled with the convolution of each layer
+     * @param poolings filled with the pooling of each layer
+     * @return the size of each layer
+     */
+    private static int [] computeLayerSizes(int width, int height, int channels, Layer [] layers, 
+            Convolution [] convolutions, Pooling [] poolings) {
+        if (layers.length == 0) {
+            throw new IllegalArgumentException("must have at least 2 layers");
+        }
+        if (width < 1 || height < 1 || channels < 1) {
+            throw new IllegalArgumentException("input must have at least 1 node");
+        }
+        if (layers[layers.length - 1].getType() != Layer.Type.DENSE) {
+            throw new IllegalArgumentException("output layer must be fully connected");
+        }
+        int [] layerSizes = new int[layers.length + 1];
+        layerSizes[0] = width * height * channels;
+        for (int index = 0; index < layers.length; index++) {
+            Layer layer = layers[index];
+            switch (layer.getType()) {
+                case CONVOLUTION:
+                    convolutions[index] = new Convolution(width, height, channels, layer.getSize(), layer.getKernel());
+                    width = convolutions[index].getOutputWidth();
+                    height = convolutions[index].getOutputHeight();
+                    channels = layer.getSize();
+                    break;
+                    
+                case MAX_POOL:
+                case AVERAGE_POOL:
+                    poolings[index] = new Pooling(width, height, channels, layer.getSize(), layer.getType() == Layer.Type.MAX_POOL);
+                    width = poolings[index].getOutputWidth();
+                    height = poolings[index].getOutputHeight();
+                    break;
+                    
+                default:
+                    width = layer.getSize();
+                    height = 1;
+                    channels = 1;
+            }
+            layerSizes[index + 1] = width * height * channels;
+        }
+        return layerSizes;
+    }
+    
+    /**
+     * Returns the rows and columns of the theta of a layer. A fully 
+     * connected layer has a row for each node, and a column for each node
+     * of the layer before it, plus the bias. A convolution layer has a row
+     * for each filter, and a column for each pixel and channel covered by a
+     * filter, plus the bias.
+     * 
+     * @param layer the layer to get the theta shape of
+     * @param inputSize the size of the layer before it
+     * @param convolution the convolution of the layer, or null
+     * @return the rows and columns of the theta
+     */
+    private static int [] getThetaShape(Layer layer, int inputSize, Convolution convolution) {
+        if (convolution != null) {
+            return new int [] {layer.getSize(), convolution.getPatchSize() + 1};
+        }
+        return new int [] {layer.getSize(), inputSize + 1};
+    }
+    
     /**
      * Adds a bias unit on to the specified matrix. This essentially adds a 
      * column of 1's to the input matrix.
@@ -213,15 +407,58 @@ public class NeuralNetwork {
      */
     public void forwardPropagation() {
         for (int index = 0; index < mActivations.length - 1; index++) {
-            DoubleMatrix theta = mThetas[index];
-            DoubleMatrix activation = mActivations[index];
-            DoubleMatrix z = activation.mmul(theta.transpose());
-            mActivations[index+1] = mActivationFunction.apply(z);
+            mActivations[index+1] = computeLayer(index, mActivations[index], true);
             if (index+1 != mActivations.length - 1) {
                 mActivations[index+1] = addBias(mActivations[index+1]);
             } 
         }
     }
+    
+    /**
+     * Computes the activations of the layer after the specified one. When 
+     * storing, the inputs to the activation function, the patches of a 
+     * convolution and the choices of a max pooling are kept for back 
+     * propagation.
+     * 
+     * @param index the layer whose activations are given
+     * @param activation the activations of the layer, with a bias unit
+     * @param store whether to keep what back propagation needs
+     * @return the activations of the next layer, without a bias unit
+     */
+    private DoubleMatrix computeLayer(int index, DoubleMatrix activation, boolean store) {
+        DoubleMatrix z;
+        switch (mLayers[index].getType()) {
+            case CONVOLUTION: {
+                Convolution convolution = mConvolutions[index];
+                DoubleMatrix patches = convolution.toPatches(activation, 1);
+                z = convolution.toOutput(patches.mmul(getLayerTheta(index).transpose()));
+                if (store) {
+                    mPatches[index] = patches;
+                }
+                break;
+            }
+                
+            case MAX_POOL:
+            case AVERAGE_POOL: {
+                int [] switches = null;
+                if (store && mLayers[index].getType() == Layer.Type.MAX_POOL) {
+                    switches = new int [activation.rows * mLayerSizes[index+1]];
+                    mSwitches[index] = switches;
+                }
+                if (store) {
+                    mInputs[index+1] = null;
+                }
+                return mPoolings[index].forward(activation, 1, switches);
+            }
+                
+            default:
+                z = activation.mmul(getLayerTheta(index).transpose());
+        }
+        if (store) {
+            mInputs[index+1] = z;
+        }
+        return mActivationFunction.apply(z);
+    }
 
     /**
      * Perform back propagation on the neural network. In other words,
@@ -233,12 +470,37 @@ public class NeuralNetwork {
         int outputLayer = mActivations.length - 1;
         mDeltas[outputLayer] = mActivations[outputLayer].dup().sub(mIdentities);
         for (int index = outputLayer - 1; index > 0; index--) {
-            DoubleMatrix temp = getMatrixNoBias(mDeltas[index+1].mmul(mThetas[index]));
-            DoubleMatrix activation = mActivations[index-1];
-            DoubleMatrix theta = mThetas[index-1];
-            // TODO: store the z during forward propagation so we don't have to recompute here!
-            DoubleMatrix z = mActivationFunction.gradient(theta.mmul(activation.transpose()));
-            mDeltas[index] = temp.mul(z.transpose());
+            DoubleMatrix error = getLayerError(index);
+            // Pooling layers have no activation function to pass through
+            if (mInputs[index] != null) {
+                error.muli(mActivationFunction.gradient(mInputs[index]));
+            }
+            mDeltas[index] = error;
+        }
+    }
+    
+    /**
+     * Computes the error of the activations of the specified layer from the
+     * delta of the layer after it.
+     * 
+     * @param index the layer to compute the error of
+     * @return the error of each node of the layer, without a bias unit
+     */
+    private DoubleMatrix getLayerError(int index) {
+        DoubleMatrix delta = mDeltas[index+1];
+        switch (mLayers[index].getType()) {
+            case CONVOLUTION: {
+                Convolution convolution = mConvolutions[index];
+                DoubleMatrix patchErrors = convolution.toPositions(delta).mmul(getLayerTheta(index));
+                return convolution.fromPatches(patchErrors, delta.rows);
+            }
+                
+            case MAX_POOL:
+            case AVERAGE_POOL:
+                return mPoolings[index].backward(delta, mSwitches[index]);
+                
+            default:
+                return getMatrixNoBias(delta.mmul(getLayerTheta(index)));
         }
     }
 
@@ -288,6 +550,68 @@ public class NeuralNetwork {
         return mThetas[thetaNum];
     }
     
+    /**
+     * Returns the number of nodes in each layer, starting with the input 
+     * layer.
+     * 
+     * @return the size of each layer
+     */
+    public int [] getLayerSizes() {
+        return mLayerSizes.clone();
+    }
+    
+    /**
+     * Returns the theta of the specified layer, which must have weights.
+     * 
+     * @param layer the layer whose theta to return
+     * @return the theta of the layer
+     */
+    private DoubleMatrix getLayerTheta(int layer) {
+        return mThetas[mLayerThetas[layer]];
+    }
+    
+    /**
+     * Returns the layers after the input layer.
+     * 
+     * @return the layers of the network
+     */
+    public List<Layer> getLayers() {
+        return Collections.unmodifiableList(Arrays.asList(mLayers));
+    }
+    
+    /**
+     * Returns the width, height and number of channels of the input. A
+     * network built from layer sizes alone has an input as wide as its
+     * first layer, 1 pixel high, with 1 channel.
+     * 
+     * @return the width, height and channels of the input
+     */
+    public int [] getInputShape() {
+        return mInputShape.clone();
+    }
+    
+    /**
+     * Returns the convolution of the specified layer, or null if it is not
+     * a convolution layer.
+     * 
+     * @param layer the layer to get the convolution of
+     * @return the convolution of the layer
+     */
+    Convolution getConvolution(int layer) {
+        return mConvolutions[layer];
+    }
+    
+    /**
+     * Returns the pooling of the specified layer, or null if it is not a
+     * pooling layer.
+     * 
+     * @param layer the layer to get the pooling of
+     * @return the pooling of the layer
+     */
+    Pooling getPooling(int layer) {
+        return mPoolings[layer];
+    }
+    
     /**
      * Get all of the thetas.
      * 
@@ -330,7 +654,16 @@ public class NeuralNetwork {
      */
     public DoubleMatrix getThetaGradient(int thetaNum) {
         int numInputs = mActivations[0].rows;
-        DoubleMatrix gradient = mActivations[thetaNum].transpose().mmul(mDeltas[thetaNum + 1]).transpose();
+        int layer = mThetaLayers[thetaNum];
+        DoubleMatrix gradient;
+        if (mConvolutions[layer] != null) {
+            // A filter is shared by every position, so its gradient is the
+            // sum of the gradients at each position
+            DoubleMatrix delta = mConvolutions[layer].toPositions(mDeltas[layer + 1]);
+            gradient = delta.transpose().mmul(mPatches[layer]);
+        } else {
+            gradient = mActivations[layer].transpose().mmul(mDeltas[layer + 1]).transpose();
+        }
         DoubleMatrix regularization =  getMatrixNoBias(mThetas[thetaNum]).muli(mLambda / numInputs);
         DoubleMatrix zeros = DoubleMatrix.zeros(regularization.rows, 1);
         regularization = DoubleMatrix.concatHorizontally(zeros, regularization);
@@ -338,16 +671,38 @@ public class NeuralNetwork {
     }
 
     /**
-     * Get the cost associated with the current thetas.
+     * Get the cost associated with the current thetas. The cross entropy is
+     * summed in a single pass, without allocating any matrices. With the
+     * Sigmoid activation function, each term is computed from the input to
+     * the output layer as:
+     * 
+     *     max(z, 0) - z * y + log(1 + exp(-|z|))
+     *     
+     * which is the same as -y * log(a) - (1 - y) * log(1 - a), but never 
+     * takes the log of an output that has rounded to exactly 0 or 1, so the
+     * cost is always finite. With other activation functions, the outputs 
+     * are clamped away from 0 and 1 instead.
      * 
+     * @param numInputs the number of inputs over which to average the cost
      * @return the cost of the thetas
      */
     public double getCostNoRegularization(int numInputs) {
-        DoubleMatrix outputLayer = mActivations[mActivations.length - 1];
-        DoubleMatrix expected = mIdentities.transpose().mul(-1);
-        DoubleMatrix posTerm = expected.mmul(MatrixFunctions.log(outputLayer));
-        DoubleMatrix negTerm = expected.add(1.0).mmul(MatrixFunctions.log(outputLayer.mul(-1).add(1.0)));
-        return (1.0/numInputs) * posTerm.sub(negTerm).sum();
+        double [] expected = mIdentities.data;
+        double cost = 0.0;
+        if (mActivationFunction instanceof Sigmoid) {
+            double [] z = mInputs[mInputs.length - 1].data;
+            for (int index = 0; index < z.length; index++) {
+                double input = z[index];
+                cost += Math.max(input, 0.0) - (input * expected[index]) + Math.log1p(Math.exp(-Math.abs(input)));
+            }
+        } else {
+            double [] output = mActivations[mActivations.length - 1].data;
+            for (int index = 0; index < output.length; index++) {
+                double value = Math.min(Math.max(output[index], MIN_PROBABILITY), 1.0 - MIN_PROBABILITY);
+                cost -= (expected[index] * Math.log(value)) + ((1.0 - expected[index]) * Math.log(1.0 - value));
+            }
+        }
+        return cost / numInputs;
     }
     
     /**
@@ -375,6 +730,26 @@ public class NeuralNetwork {
         return mActivations[mLayerSizes.length - 1];
     }
     
+    /**
+     * Computes the output values for the given data, like predict, but 
+     * without storing any activations in the network. Since the network is
+     * not modified, any number of threads may call feedForward at once, as
+     * long as the thetas are not being changed by training at the same time.
+     * 
+     * @param data the examples to predict
+     * @return the predicted values (classes)
+     */
+    public DoubleMatrix feedForward(DoubleMatrix data) {
+        DoubleMatrix activation = addBias(data);
+        for (int index = 0; index < mLayers.length; index++) {
+            activation = computeLayer(index, activation, false);
+            if (index != mLayers.length - 1) {
+                activation = addBias(activation);
+            }
+        }
+        return activation;
+    }
+    
     /**
      * Returns the activation function that computes the activation along 
      * network edges.
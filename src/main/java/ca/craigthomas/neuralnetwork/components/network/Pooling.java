@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.network;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * Computes a max or average pooling layer. Each channel of the input is
+ * split into square windows that do not overlap, and each window becomes
+ * one pixel of the output. Pixels at the right and bottom edges that do not
+ * fill a whole window are left out. Pooling has no weights, and no
+ * activation function is applied to its output.
+ *
+ * Images are stored one per row, in the same layout as for a Convolution.
+ *
+ * @author thomas
+ */
+public class Pooling {
+
+    private final int mWidth;
+    private final int mHeight;
+    private final int mChannels;
+    private final int mWindow;
+    private final boolean mMax;
+    private final int mOutputWidth;
+    private final int mOutputHeight;
+
+    /**
+     * Creates a pooling of an image of the specified size.
+     *
+     * @param width the width of the input in pixels
+     * @param height the height of the input in pixels
+     * @param channels the number of channels of each input pixel
+     * @param window the width and height of each window in pixels
+     * @param max true to keep the largest value of each window, false to
+     *        keep the average
+     */
+    public Pooling(int width, int height, int channels, int window, boolean max) {
+        if (window > width || window > height) {
+            throw new IllegalArgumentException("pooling windows of " + window + " pixels do not fit in a " + width + "x" + height + " input");
+        }
+        mWidth = width;
+        mHeight = height;
+        mChannels = channels;
+        mWindow = window;
+        mMax = max;
+        mOutputWidth = width / window;
+        mOutputHeight = height / window;
+    }
+
+    /**
+     * Returns the width of the output in pixels.
+     *
+     * @return the width of the output
+     */
+    public int getOutputWidth() {
+        return mOutputWidth;
+    }
+
+    /**
+     * Returns the height of the output in pixels.
+     *
+     * @return the height of the output
+     */
+    public int getOutputHeight() {
+        return mOutputHeight;
+    }
+
+    /**
+     * Returns the number of values in each input image.
+     *
+     * @return the size of the input
+     */
+    public int getInputSize() {
+        return mWidth * mHeight * mChannels;
+    }
+
+    /**
+     * Returns the number of values in each output image.
+     *
+     * @return the size of the output
+     */
+    public int getOutputSize() {
+        return mOutputWidth * mOutputHeight * mChannels;
+    }
+
+    /**
+     * Pools the input into a new matrix.
+     *
+     * @param input the input images, one per row
+     * @param firstColumn the column of the input where the image starts
+     * @param switches if not null, stores the input chosen for each output
+     *        of a max pooling, for backward
+     * @return the output images
+     */
+    public DoubleMatrix forward(DoubleMatrix input, int firstColumn, int [] switches) {
+        DoubleMatrix output = new DoubleMatrix(input.rows, getOutputSize());
+        forward(input, firstColumn, output, switches);
+        return output;
+    }
+
+    /**
+     * Pools the input into the output, without allocating anything.
+     *
+     * @param input the input images, one per row
+     * @param firstColumn the column of the input where the image starts
+     * @param output the matrix to store the output images in
+     * @param switches if not null, stores the input chosen for each output
+     *        of a max pooling, for backward
+     */
+    public void forward(DoubleMatrix input, int firstColumn, DoubleMatrix output, int [] switches) {
+        int rows = input.rows;
+        double area = mWindow * mWindow;
+        int outputColumn = 0;
+        for (int outputY = 0; outputY < mOutputHeight; outputY++) {
+            for (int outputX = 0; outputX < mOutputWidth; outputX++) {
+                for (int channel = 0; channel < mChannels; channel++) {
+                    int target = outputColumn * rows;
+                    for (int y = 0; y < mWindow; y++) {
+                        for (int x = 0; x < mWindow; x++) {
+                            int column = (((((outputY * mWindow) + y) * mWidth) + (outputX * mWindow) + x) * mChannels) + channel;
+                            int source = (firstColumn + column) * rows;
+                            boolean first = y == 0 && x == 0;
+                            for (int row = 0; row < rows; row++) {
+                                double value = input.data[source + row];
+                                if (!mMax) {
+                                    output.data[target + row] = first ? value : output.data[target + row] + value;
+                                } else if (first || value > output.data[target + row]) {
+                                    output.data[target + row] = value;
+                                    if (switches != null) {
+                                        switches[target + row] = column;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                    if (!mMax) {
+                        for (int row = 0; row < rows; row++) {
+                            output.data[target + row] /= area;
+                        }
+                    }
+                    outputColumn++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Passes the error of each output back to the inputs it came from. A
+     * max pooling passes all of the error to the input chosen in forward,
+     * while an average pooling shares it equally over the window.
+     *
+     * @param errors the error of each output, one image per row
+     * @param switches the inputs chosen by forward, for a max pooling
+     * @return the error of each input, one image per row
+     */
+    public DoubleMatrix backward(DoubleMatrix errors, int [] switches) {
+        int rows = errors.rows;
+        DoubleMatrix result = new DoubleMatrix(rows, getInputSize());
+        if (mMax) {
+            for (int index = 0; index < errors.length; index++) {
+                result.data[(switches[index] * rows) + (index % rows)] += errors.data[index];
+            }
+            return result;
+        }
+
+        double area = mWindow * mWindow;
+        int outputColumn = 0;
+        for (int outputY = 0; outputY < mOutputHeight; outputY++) {
+            for (int outputX = 0; outputX < mOutputWidth; outputX++) {
+                for (int channel = 0; channel < mChannels; channel++) {
+                    int source = outputColumn * rows;
+                    for (int y = 0; y < mWindow; y++) {
+                        for (int x = 0; x < mWindow; x++) {
+                            int column = (((((outputY * mWindow) + y) * mWidth) + (outputX * mWindow) + x) * mChannels) + channel;
+                            int target = column * rows;
+                            for (int row = 0; row < rows; row++) {
+                                result.data[target + row] += errors.data[source + row] / area;
+                            }
+                        }
+                    }
+                    outputColumn++;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.trainer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+
+/**
+ * Writes a TrainingCheckpoint every few iterations of training, and once
+ * more when training finishes. The training thread only copies the network
+ * into one of two buffers; a background thread writes the buffer to a
+ * temporary file and renames it over the checkpoint, so the checkpoint on
+ * disk is always complete, and training never waits for the disk. If the
+ * disk falls behind, a snapshot that has not started to be written yet is
+ * replaced by the newer one, rather than training waiting for it.
+ *
+ * @author thomas
+ */
+public class CheckpointWriter implements TrainingListener, Closeable {
+
+    // The default number of iterations between checkpoints
+    public static final int DEFAULT_INTERVAL = 100;
+    // No buffer
+    private static final int NONE = -1;
+
+    private final Path mFile;
+    private final Path mTempFile;
+    private final int mInterval;
+    private final double mLearningRate;
+    private final Long mSeed;
+    private final ByteBuffer [] mBuffers;
+    private final Object mLock;
+    private int mWriting;
+    private int mPending;
+    private boolean mClosed;
+    private long mWritten;
+    private IOException mError;
+    private NeuralNetwork mNeuralNetwork;
+    private int mMaxIterations;
+    private Thread mThread;
+
+    public static class Builder {
+
+        private final String mFilename;
+        private int mInterval;
+        private double mLearningRate;
+        private Long mSeed;
+
+        /**
+         * Initialize a builder for a writer that keeps its checkpoint in the
+         * specified file.
+         *
+         * @param filename the name of the checkpoint file
+         */
+        public Builder(String filename) {
+            mFilename = filename;
+            mInterval = DEFAULT_INTERVAL;
+            mLearningRate = Trainer.DEFAULT_LEARNING_RATE;
+        }
+
+        /**
+         * Sets the number of iterations between checkpoints. Defaults to
+         * 100.
+         *
+         * @param interval the number of iterations between checkpoints
+         * @return the builder for the writer
+         */
+        public Builder interval(int interval) {
+            mInterval = interval;
+            return this;
+        }
+
+        /**
+         * Sets the learning rate stored in each checkpoint. Should match the
+         * learning rate of the trainer. Defaults to 0.01.
+         *
+         * @param learningRate the learning rate of the trainer
+         * @return the builder for the writer
+         */
+        public Builder learningRate(double learningRate) {
+            mLearningRate = learningRate;
+            return this;
+        }
+
+        /**
+         * Sets the seed the data was split with, stored in each checkpoint.
+         * Defaults to none.
+         *
+         * @param seed the seed the data was split with
+         * @return the builder for the writer
+         */
+        public Builder seed(Long seed) {
+            mSeed = seed;
+            return this;
+        }
+
+        /**
+         * Builds the writer.
+         *
+         * @return the new writer
+         */
+        public CheckpointWriter build() {
+            if (mFilename == null || mFilename.isEmpty()) {
+                throw new IllegalArgumentException("checkpoint file must be specified");
+            }
+            if (mInterval < 1) {
+                throw new IllegalArgumentException("interval must be positive");
+            }
+            return new CheckpointWriter(this);
+        }
+    }
+
+    private CheckpointWriter(Builder builder) {
+        mFile = Paths.get(builder.mFilename);
+        mTempFile = Paths.get(builder.mFilename + ".tmp");
+        mInterval = builder.mInterval;
+        mLearningRate = builder.mLearningRate;
+        mSeed = builder.mSeed;
+        mBuffers = new ByteBuffer [2];
+        mLock = new Object();
+        mWriting = NONE;
+        mPending = NONE;
+    }
+
+    /**
+     * Takes a snapshot every interval iterations. Listeners are told about
+     * an iteration before its new thetas are set, so the snapshot taken
+     * during iteration N is of the network after N - 1 iterations.
+     */
+    @Override
+    public void onIteration(TrainingEvent event) {
+        mNeuralNetwork = event.getNeuralNetwork();
+        mMaxIterations = event.getMaxIterations();
+        int completed = event.getIteration() - 1;
+        if (completed > 0 && completed % mInterval == 0) {
+            snapshot(completed);
+        }
+    }
+
+    /**
+     * Takes a snapshot of the finished network, and waits for it to be
+     * written.
+     */
+    @Override
+    public void onTrainingFinished() {
+        if (mNeuralNetwork != null) {
+            snapshot(mMaxIterations);
+        }
+        stop();
+    }
+
+    /**
+     * Copies the network into a buffer that is not being written, and hands
+     * it to the writing thread.
+     *
+     * @param completed the number of iterations done
+     */
+    private void snapshot(int completed) {
+        int index;
+        synchronized (mLock) {
+            if (mClosed) {
+                return;
+            }
+            if (mPending != NONE) {
+                index = mPending;
+                mPending = NONE;
+            } else {
+                index = (mWriting == 0) ? 1 : 0;
+            }
+        }
+
+        long size = TrainingCheckpoint.getSize(mNeuralNetwork);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("network is too large to checkpoint");
+        }
+        ByteBuffer buffer = mBuffers[index];
+        if (buffer == null || buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate((int)size).order(ByteOrder.LITTLE_ENDIAN);
+            mBuffers[index] = buffer;
+        }
+        buffer.clear();
+        TrainingCheckpoint.write(buffer, completed, mMaxIterations, mLearningRate, mSeed, mNeuralNetwork);
+        buffer.flip();
+
+        synchronized (mLock) {
+            mPending = index;
+            if (mThread == null) {
+                mThread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        writeSnapshots();
+                    }
+                }, "training-checkpoint");
+                mThread.setDaemon(true);
+                mThread.start();
+            }
+            mLock.notifyAll();
+        }
+    }
+
+    /**
+     * Writes each snapshot as it is handed over, until the writer is closed
+     * and no snapshot is left.
+     */
+    private void writeSnapshots() {
+        while (true) {
+            ByteBuffer buffer;
+            synchronized (mLock) {
+                while (mPending == NONE && !mClosed) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (mPending == NONE) {
+                    return;
+                }
+                mWriting = mPending;
+                mPending = NONE;
+                buffer = mBuffers[mWriting].duplicate();
+            }
+
+            IOException error = null;
+            try {
+                writeFile(buffer);
+            } catch (IOException e) {
+                error = e;
+            }
+
+            synchronized (mLock) {
+                mWriting = NONE;
+                if (error != null) {
+                    mError = error;
+                } else {
+                    mWritten++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a snapshot to the temporary file, and renames it over the
+     * checkpoint once it is safely on disk.
+     *
+     * @param buffer the snapshot to write
+     * @throws IOException if the checkpoint cannot be written
+     */
+    private void writeFile(ByteBuffer buffer) throws IOException {
+        try (FileChannel channel = FileChannel.open(mTempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(mTempFile, mFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Waits for the last snapshot to be written, and stops the writing
+     * thread.
+     */
+    private void stop() {
+        Thread thread;
+        synchronized (mLock) {
+            mClosed = true;
+            mLock.notifyAll();
+            thread = mThread;
+        }
+        if (thread != null) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of checkpoints written to disk so far.
+     *
+     * @return the number of checkpoints written
+     */
+    public long getWritten() {
+        synchronized (mLock) {
+            return mWritten;
+        }
+    }
+
+    /**
+     * Waits for the last snapshot to be written, and stops the writing
+     * thread.
+     *
+     * @throws IOException if a checkpoint could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        stop();
+        synchronized (mLock) {
+            if (mError != null) {
+                throw mError;
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.trainer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints a heartbeat line with the iteration and cost to standard output
+ * every few iterations. The lines are printed by a background thread, so
+ * the training thread does not wait for the console. If the console falls
+ * far enough behind that the queue of lines fills, the training thread
+ * waits for room rather than losing lines. Every line has been printed by
+ * the time training finishes.
+ *
+ * @author thomas
+ */
+public class ConsoleListener implements TrainingListener {
+
+    // The number of lines that can wait to be printed
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private final int mHeartBeat;
+    private ThreadPoolExecutor mPrinter;
+
+    /**
+     * Creates a listener that prints a line every heartBeat iterations.
+     *
+     * @param heartBeat the number of iterations between lines
+     */
+    public ConsoleListener(int heartBeat) {
+        if (heartBeat < 1) {
+            throw new IllegalArgumentException("heartbeat must be positive");
+        }
+        mHeartBeat = heartBeat;
+    }
+
+    @Override
+    public void onIteration(TrainingEvent event) {
+        if (event.getIteration() % mHeartBeat == 0) {
+            final String line = "Iteration: " + event.getIteration() + ", Cost: " + event.getCost();
+            getPrinter().execute(new Runnable() {
+                @Override
+                public void run() {
+                    System.out.println(line);
+                }
+            });
+        }
+    }
+
+    /**
+     * Waits for every line to be printed, and stops the printing thread.
+     */
+    @Override
+    public void onTrainingFinished() {
+        if (mPrinter == null) {
+            return;
+        }
+        mPrinter.shutdown();
+        try {
+            mPrinter.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        mPrinter = null;
+    }
+
+    /**
+     * Returns the thread that prints lines, starting it if needed.
+     *
+     * @return the printing thread
+     */
+    private ThreadPoolExecutor getPrinter() {
+        if (mPrinter == null) {
+            mPrinter = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "training-console");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    },
+                    new RejectedExecutionHandler() {
+                        @Override
+                        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                            // Wait for room rather than printing out of order
+                            try {
+                                executor.getQueue().put(runnable);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                throw new RejectedExecutionException("interrupted while waiting to print", e);
+                            }
+                        }
+                    });
+        }
+        return mPrinter;
+    }
+}
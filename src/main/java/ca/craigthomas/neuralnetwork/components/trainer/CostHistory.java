@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.trainer;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Records the cost of every training iteration in a ring buffer of
+ * primitive doubles. Once the buffer is full, each new cost replaces the
+ * oldest one, so the memory used stays fixed however long training runs.
+ *
+ * @author thomas
+ */
+public class CostHistory implements TrainingListener {
+
+    private final double [] mCosts;
+    private long mTotal;
+
+    /**
+     * Creates a new, empty history that holds the specified number of the
+     * most recent costs.
+     *
+     * @param capacity the number of costs to hold
+     */
+    public CostHistory(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        mCosts = new double [capacity];
+    }
+
+    @Override
+    public void onIteration(TrainingEvent event) {
+        add(event.getCost());
+    }
+
+    @Override
+    public void onTrainingFinished() {
+    }
+
+    /**
+     * Adds a cost to the history, replacing the oldest cost if the history
+     * is full.
+     *
+     * @param cost the cost to add
+     */
+    public void add(double cost) {
+        mCosts[(int)(mTotal % mCosts.length)] = cost;
+        mTotal++;
+    }
+
+    /**
+     * Returns the number of costs held, which is at most the capacity.
+     *
+     * @return the number of costs held
+     */
+    public int size() {
+        return (int)Math.min(mTotal, mCosts.length);
+    }
+
+    /**
+     * Returns the number of costs ever added, including the ones that have
+     * been replaced.
+     *
+     * @return the number of costs added
+     */
+    public long getTotal() {
+        return mTotal;
+    }
+
+    /**
+     * Returns the number of costs the history can hold.
+     *
+     * @return the capacity of the history
+     */
+    public int getCapacity() {
+        return mCosts.length;
+    }
+
+    /**
+     * Returns a cost from the history, where 0 is the oldest cost held.
+     *
+     * @param index the position of the cost
+     * @return the cost at that position
+     */
+    public double get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("index " + index + " is outside the history of " + size());
+        }
+        long first = mTotal - size();
+        return mCosts[(int)((first + index) % mCosts.length)];
+    }
+
+    /**
+     * Returns the costs held, from oldest to newest.
+     *
+     * @return a copy of the costs held
+     */
+    public double [] toArray() {
+        double [] costs = new double [size()];
+        for (int index = 0; index < costs.length; index++) {
+            costs[index] = get(index);
+        }
+        return costs;
+    }
+
+    /**
+     * Returns a read-only list view of the history, from oldest to newest.
+     * Costs are only boxed as they are read.
+     *
+     * @return a list view of the history
+     */
+    public List<Double> asList() {
+        return new AbstractList<Double>() {
+            @Override
+            public Double get(int index) {
+                return CostHistory.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return CostHistory.this.size();
+            }
+        };
+    }
+}
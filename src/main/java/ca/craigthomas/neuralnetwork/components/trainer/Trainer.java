@@ -5,13 +5,17 @@
 package ca.craigthomas.neuralnetwork.components.trainer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.jblas.DoubleMatrix;
 
 import ca.craigthomas.neuralnetwork.dataset.DataSet;
 import ca.craigthomas.neuralnetwork.components.activation.IActivationFunction;
+import ca.craigthomas.neuralnetwork.components.network.Layer;
 import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+import ca.craigthomas.neuralnetwork.components.trainer.TrainingMetrics.Phase;
 
 /**
  * The trainer class is responsible for training a neural network. Will
@@ -30,14 +34,18 @@ public class Trainer {
     
     private NeuralNetwork mNeuralNetwork;
     private double mLearningRate;
-    private boolean mRecordCosts;
     private int mMaxIterations;
-    private int mHeartBeat;
-    private List<Double> mCosts;
+    private CostHistory mCosts;
+    private List<TrainingListener> mListeners;
+    private TrainingMetrics mMetrics;
+    private int mNumSamples;
+    private int mStartIteration;
 
     public static class Builder {
         
         private List<Integer> mLayerSizes;
+        private int [] mInputShape;
+        private List<Layer> mLayers;
         private double mLambda;
         private double mLearningRate;
         private DoubleMatrix mInputs;
@@ -45,7 +53,11 @@ public class Trainer {
         private IActivationFunction mActivationFunction;
         private int mMaxIterations;
         private boolean mRecordCosts;
+        private int mCostHistorySize;
         private int mHeartBeat;
+        private List<TrainingListener> mListeners;
+        private TrainingMetrics mMetrics;
+        private TrainingCheckpoint mCheckpoint;
         
         /**
          * Initialize a builder object which will be used to build a neural
@@ -64,6 +76,7 @@ public class Trainer {
             mInputs = inputs;
             mOutputs = outputs;
             mLearningRate = DEFAULT_LEARNING_RATE;
+            mListeners = new ArrayList<TrainingListener>();
         }
         
         /**
@@ -77,6 +90,37 @@ public class Trainer {
             this(layerSizes, trainingData.getSamples(), trainingData.getTruth());
         }
         
+        /**
+         * Alternate constructor to build a neural network for images, which
+         * may have convolution and pooling layers.
+         * 
+         * @param width the width of the input images in pixels
+         * @param height the height of the input images in pixels
+         * @param channels the number of channels of each pixel
+         * @param layers the layers after the input layer
+         * @param inputs the inputs to use for training
+         * @param outputs the outputs to use for training
+         */
+        public Builder(int width, int height, int channels, List<Layer> layers, DoubleMatrix inputs, DoubleMatrix outputs) {
+            this(null, inputs, outputs);
+            mInputShape = new int [] {width, height, channels};
+            mLayers = layers;
+        }
+        
+        /**
+         * Alternate constructor to build a neural network for images with a
+         * DataSet instead of inputs and outputs.
+         * 
+         * @param width the width of the input images in pixels
+         * @param height the height of the input images in pixels
+         * @param channels the number of channels of each pixel
+         * @param layers the layers after the input layer
+         * @param trainingData the training data set to use
+         */
+        public Builder(int width, int height, int channels, List<Layer> layers, DataSet trainingData) {
+            this(width, height, channels, layers, trainingData.getSamples(), trainingData.getTruth());
+        }
+        
         /**
          * The regularization parameter to use. Defaults to 0 - no lambda. 
          * 
@@ -134,10 +178,23 @@ public class Trainer {
             return this;
         }
         
+        /**
+         * Sets the number of the most recent costs kept when recording 
+         * costs. Defaults to the maximum number of iterations, so that every
+         * cost is kept.
+         * 
+         * @param costHistorySize the number of costs to keep
+         * @return the builder for the trainer
+         */
+        public Builder costHistorySize(int costHistorySize) {
+            mCostHistorySize = costHistorySize;
+            return this;
+        }
+        
         /**
          * Sets how often informational output is output to stdout during
          * training of the network. Default is to show information every 100
-         * iterations.
+         * iterations. The output is printed by a ConsoleListener.
          * 
          * @param beatIterations the number of iterations to use
          * @return the builder for the trainer
@@ -147,6 +204,44 @@ public class Trainer {
             return this;
         }
         
+        /**
+         * Adds a listener that is told about the progress of training after
+         * every iteration.
+         * 
+         * @param listener the listener to add
+         * @return the builder for the trainer
+         */
+        public Builder listener(TrainingListener listener) {
+            mListeners.add(listener);
+            return this;
+        }
+        
+        /**
+         * Sets the metrics that the time of each phase of every iteration is
+         * recorded in. Defaults to none.
+         * 
+         * @param metrics the metrics to record into
+         * @return the builder for the trainer
+         */
+        public Builder metrics(TrainingMetrics metrics) {
+            mMetrics = metrics;
+            return this;
+        }
+        
+        /**
+         * Resumes training from a checkpoint. The network starts with the
+         * thetas and activation function of the checkpoint, training uses
+         * its learning rate, and only the iterations after those already done
+         * are run. The layers must match those of the checkpoint.
+         * 
+         * @param checkpoint the checkpoint to resume from
+         * @return the builder for the trainer
+         */
+        public Builder resume(TrainingCheckpoint checkpoint) {
+            mCheckpoint = checkpoint;
+            return this;
+        }
+        
         /**
          * Builds the trainer for the neural network and trains the neural
          * network.
@@ -164,8 +259,9 @@ public class Trainer {
      * @param builder the trainer builder
      */
     private Trainer(Builder builder) {
-        NeuralNetwork.Builder nnBuilder = new NeuralNetwork
-                .Builder(builder.mLayerSizes)
+        NeuralNetwork.Builder nnBuilder = ((builder.mLayers != null) ?
+                new NeuralNetwork.Builder(builder.mInputShape[0], builder.mInputShape[1], builder.mInputShape[2], builder.mLayers) :
+                new NeuralNetwork.Builder(builder.mLayerSizes))
                 .inputs(builder.mInputs)
                 .expectedValues(builder.mOutputs)
                 .lambda(builder.mLambda);
@@ -174,49 +270,124 @@ public class Trainer {
             nnBuilder = nnBuilder.activationFunction(builder.mActivationFunction);
         }
         
-        mNeuralNetwork = nnBuilder.build();
         mLearningRate = builder.mLearningRate;
-        mRecordCosts = builder.mRecordCosts;
+        NeuralNetwork saved = null;
+        if (builder.mCheckpoint != null) {
+            saved = builder.mCheckpoint.getNeuralNetwork();
+            nnBuilder = nnBuilder.theta(saved.getThetas())
+                    .activationFunction(saved.getActivationFunction());
+            mLearningRate = builder.mCheckpoint.getLearningRate();
+            mStartIteration = Math.min(builder.mCheckpoint.getIteration(), builder.mMaxIterations);
+        }
+        
+        mNeuralNetwork = nnBuilder.build();
+        if (saved != null && (!Arrays.equals(saved.getLayerSizes(), mNeuralNetwork.getLayerSizes()) ||
+                !Arrays.equals(saved.getInputShape(), mNeuralNetwork.getInputShape()) ||
+                !saved.getLayers().equals(mNeuralNetwork.getLayers()))) {
+            throw new IllegalArgumentException("checkpoint layer sizes do not match the network");
+        }
         mMaxIterations = builder.mMaxIterations;
-        mHeartBeat = builder.mHeartBeat;
-        mCosts = new ArrayList<Double>();
+        mListeners = new ArrayList<TrainingListener>();
+        if (builder.mRecordCosts) {
+            int size = (builder.mCostHistorySize > 0) ? builder.mCostHistorySize : builder.mMaxIterations;
+            mCosts = new CostHistory(Math.max(size, 1));
+            mListeners.add(mCosts);
+        }
+        if (builder.mHeartBeat != 0) {
+            mListeners.add(new ConsoleListener(builder.mHeartBeat));
+        }
+        mListeners.addAll(builder.mListeners);
+        mMetrics = builder.mMetrics;
+        mNumSamples = builder.mInputs.rows;
     }
     
     /**
-     * Trains the neural network.
+     * Trains the neural network, starting after the iterations already done
+     * if training was resumed from a checkpoint.
      */
     public void train() {
-        int beat = 0;
+        long [] phaseNanos = new long [Phase.values().length];
+        TrainingEvent event = new TrainingEvent(mNeuralNetwork, mMaxIterations);
         
-        for (int iteration = 0; iteration < mMaxIterations; iteration++) {
+        for (int iteration = mStartIteration; iteration < mMaxIterations; iteration++) {
+            long allocated = (mMetrics != null) ? TrainingMetrics.getCurrentThreadAllocatedBytes() : -1;
+            long time = System.nanoTime();
             mNeuralNetwork.forwardPropagation();
+            time = lap(phaseNanos, Phase.FORWARD, time);
             mNeuralNetwork.backPropagation();
+            time = lap(phaseNanos, Phase.BACKWARD, time);
+            List<DoubleMatrix> gradients = getGradients();
+            time = lap(phaseNanos, Phase.GRADIENT, time);
+            List<DoubleMatrix> newThetas = adjustThetas(gradients);
+            lap(phaseNanos, Phase.UPDATE, time);
             
-            if (mRecordCosts) {
-                mCosts.add(mNeuralNetwork.getCost());
+            // Listeners see the network before the new thetas are set, so 
+            // that the cost matches the activations of this iteration
+            event.start(iteration + 1, phaseNanos);
+            for (TrainingListener listener : mListeners) {
+                listener.onIteration(event);
             }
+            phaseNanos[Phase.COST.ordinal()] = event.getPhaseNanos(Phase.COST);
+            mNeuralNetwork.setThetas(newThetas);
             
-            beat++;
-
-            if (beat == mHeartBeat && mHeartBeat != 0) {
-                System.out.println("Iteration: " + (iteration + 1) + ", Cost: " + mNeuralNetwork.getCost());
-                beat = 0;
+            if (mMetrics != null) {
+                if (event.isCostComputed()) {
+                    mMetrics.recordCost(event.getCost());
+                }
+                if (allocated >= 0) {
+                    allocated = TrainingMetrics.getCurrentThreadAllocatedBytes() - allocated;
+                }
+                mMetrics.recordIteration(phaseNanos, mNumSamples, allocated);
             }
-            
-            adjustThetas();
+        }
+        
+        for (TrainingListener listener : mListeners) {
+            listener.onTrainingFinished();
         }
     }
     
+    /**
+     * Stores the time since the start of a phase, and returns the current
+     * time as the start of the next phase.
+     * 
+     * @param phaseNanos the time of each phase in nanoseconds
+     * @param phase the phase that has just finished
+     * @param start the time the phase started
+     * @return the current time
+     */
+    private static long lap(long [] phaseNanos, Phase phase, long start) {
+        long now = System.nanoTime();
+        phaseNanos[phase.ordinal()] = now - start;
+        return now;
+    }
+    
+    /**
+     * Computes the gradient of each of the thetas in the neural network.
+     * 
+     * @return the gradient of each theta
+     */
+    private List<DoubleMatrix> getGradients() {
+        int numThetas = mNeuralNetwork.getThetas().size();
+        List<DoubleMatrix> gradients = new ArrayList<DoubleMatrix>(numThetas);
+        for (int index = 0; index < numThetas; index++) {
+            gradients.add(mNeuralNetwork.getThetaGradient(index));
+        }
+        return gradients;
+    }
+    
     /**
      * Loop through all of the thetas in the neural network and adjust them so 
      * that they are always approaching zero.
+     * 
+     * @param allGradients the gradient of each theta
+     * @return the adjusted thetas
      */
-    private void adjustThetas() {
+    private List<DoubleMatrix> adjustThetas(List<DoubleMatrix> allGradients) {
         List<DoubleMatrix> newThetas = new ArrayList<DoubleMatrix>();
         List<DoubleMatrix> thetas = mNeuralNetwork.getThetas();
         
         for (int index = 0; index < thetas.size(); index++) {
-            DoubleMatrix gradients = mNeuralNetwork.getThetaGradient(index);
+            DoubleMatrix gradients = allGradients.get(index);
             DoubleMatrix theta = mNeuralNetwork.getTheta(index);
             DoubleMatrix newTheta = new DoubleMatrix(theta.rows, theta.columns);
             
@@ -234,7 +405,7 @@ public class Trainer {
             }  
             newThetas.add(newTheta);
         }
-        mNeuralNetwork.setThetas(newThetas);
+        return newThetas;
     }
     
     /**
@@ -247,11 +418,26 @@ public class Trainer {
     }
     
     /**
-     * Returns the costs associated with each iteration of training.
+     * Returns the costs associated with each iteration of training, if costs
+     * are being recorded. Only the most recent costs are kept if the history
+     * is smaller than the number of iterations.
      * 
      * @return the list of training costs
      */
     public List<Double> getCosts() {
+        if (mCosts == null) {
+            return Collections.emptyList();
+        }
+        return mCosts.asList();
+    }
+    
+    /**
+     * Returns the history of costs as primitive values, or null if costs
+     * are not being recorded.
+     * 
+     * @return the history of training costs
+     */
+    public CostHistory getCostHistory() {
         return mCosts;
     }
     
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.trainer;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import ca.craigthomas.neuralnetwork.components.network.NetworkFile;
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+
+/**
+ * The state of a training run at the end of an iteration, from which
+ * training can be resumed. The trainer moves the thetas by a fixed learning
+ * rate on every iteration, so the thetas, the number of iterations done,
+ * and the learning rate are all the state there is. The seed that the data
+ * was split and shuffled with is kept as well, so that a resumed run can
+ * train on the same samples. The file is made up of a header followed by
+ * the network, in little-endian byte order:
+ *
+ *   offset  size  contents
+ *   0       4     magic number (NNCK)
+ *   4       4     format version
+ *   8       4     number of iterations done
+ *   12      4     number of iterations training runs for
+ *   16      8     learning rate
+ *   24      4     1 if a seed follows, 0 if not
+ *   28      8     seed
+ *   36      ...   the network, as written by NetworkFile
+ *
+ * @author thomas
+ */
+public class TrainingCheckpoint {
+
+    // Identifies the file as a training checkpoint
+    public static final int MAGIC = 0x4E4E434B;
+    // The current version of the file format
+    public static final int VERSION = 1;
+    // The size of the header in bytes
+    public static final int HEADER_SIZE = 36;
+
+    private final int mIteration;
+    private final int mMaxIterations;
+    private final double mLearningRate;
+    private final Long mSeed;
+    private final NeuralNetwork mNeuralNetwork;
+
+    /**
+     * Creates a checkpoint.
+     *
+     * @param iteration the number of iterations done
+     * @param maxIterations the number of iterations training runs for
+     * @param learningRate the learning rate of the trainer
+     * @param seed the seed the data was split with, or null
+     * @param neuralNetwork the network after the iterations done
+     */
+    public TrainingCheckpoint(int iteration, int maxIterations, double learningRate, Long seed, NeuralNetwork neuralNetwork) {
+        mIteration = iteration;
+        mMaxIterations = maxIterations;
+        mLearningRate = learningRate;
+        mSeed = seed;
+        mNeuralNetwork = neuralNetwork;
+    }
+
+    /**
+     * Returns the number of bytes a checkpoint of the network takes up.
+     *
+     * @param neuralNetwork the network to measure
+     * @return the size of the checkpoint in bytes
+     */
+    public static long getSize(NeuralNetwork neuralNetwork) {
+        return HEADER_SIZE + NetworkFile.getSize(neuralNetwork);
+    }
+
+    /**
+     * Writes a checkpoint into a buffer. The buffer must be in little-endian
+     * order, and have getSize bytes remaining.
+     *
+     * @param buffer the buffer to write to
+     * @param iteration the number of iterations done
+     * @param maxIterations the number of iterations training runs for
+     * @param learningRate the learning rate of the trainer
+     * @param seed the seed the data was split with, or null
+     * @param neuralNetwork the network after the iterations done
+     */
+    public static void write(ByteBuffer buffer, int iteration, int maxIterations, double learningRate, Long seed, NeuralNetwork neuralNetwork) {
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putInt(iteration);
+        buffer.putInt(maxIterations);
+        buffer.putDouble(learningRate);
+        buffer.putInt(seed == null ? 0 : 1);
+        buffer.putLong(seed == null ? 0 : seed);
+        NetworkFile.write(neuralNetwork, buffer);
+    }
+
+    /**
+     * Reads a checkpoint from the specified file.
+     *
+     * @param filename the name of the file to read
+     * @return the checkpoint stored in the file
+     * @throws IOException if the file cannot be read or is not a checkpoint
+     */
+    public static TrainingCheckpoint read(String filename) throws IOException {
+        ByteBuffer buffer;
+        try (FileInputStream stream = new FileInputStream(filename);
+             FileChannel channel = stream.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(filename + ": file is too large to be a checkpoint");
+            }
+            buffer = ByteBuffer.allocate((int)channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+        }
+
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException(filename + ": not a training checkpoint");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException(filename + ": unsupported checkpoint version " + version);
+        }
+        int iteration = buffer.getInt();
+        int maxIterations = buffer.getInt();
+        double learningRate = buffer.getDouble();
+        boolean hasSeed = buffer.getInt() != 0;
+        long seed = buffer.getLong();
+        NeuralNetwork neuralNetwork = NetworkFile.read(buffer, filename);
+        return new TrainingCheckpoint(iteration, maxIterations, learningRate, hasSeed ? seed : null, neuralNetwork);
+    }
+
+    /**
+     * Returns the number of iterations done.
+     *
+     * @return the number of iterations done
+     */
+    public int getIteration() {
+        return mIteration;
+    }
+
+    /**
+     * Returns the number of iterations training runs for.
+     *
+     * @return the total number of iterations
+     */
+    public int getMaxIterations() {
+        return mMaxIterations;
+    }
+
+    /**
+     * Returns whether every iteration of training was done.
+     *
+     * @return true if training had finished
+     */
+    public boolean isFinished() {
+        return mIteration >= mMaxIterations;
+    }
+
+    /**
+     * Returns the learning rate of the trainer.
+     *
+     * @return the learning rate
+     */
+    public double getLearningRate() {
+        return mLearningRate;
+    }
+
+    /**
+     * Returns the seed the data was split with, or null if there was none.
+     *
+     * @return the seed, or null
+     */
+    public Long getSeed() {
+        return mSeed;
+    }
+
+    /**
+     * Returns the network after the iterations done.
+     *
+     * @return the network
+     */
+    public NeuralNetwork getNeuralNetwork() {
+        return mNeuralNetwork;
+    }
+}
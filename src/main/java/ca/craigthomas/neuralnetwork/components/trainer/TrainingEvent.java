@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.trainer;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+import ca.craigthomas.neuralnetwork.components.trainer.TrainingMetrics.Phase;
+
+/**
+ * Describes a training iteration to a TrainingListener. The cost of the
+ * network is only computed the first time a listener asks for it, so
+ * iterations where no listener needs the cost do not pay for it. A single
+ * event is reused for every iteration of a Trainer.
+ *
+ * @author thomas
+ */
+public class TrainingEvent {
+
+    private final NeuralNetwork mNeuralNetwork;
+    private final int mMaxIterations;
+    private final long [] mPhaseNanos;
+    private int mIteration;
+    private boolean mCostComputed;
+    private double mCost;
+
+    /**
+     * Creates an event for the iterations of training the specified network.
+     *
+     * @param neuralNetwork the network being trained
+     * @param maxIterations the number of iterations training will run for
+     */
+    TrainingEvent(NeuralNetwork neuralNetwork, int maxIterations) {
+        mNeuralNetwork = neuralNetwork;
+        mMaxIterations = maxIterations;
+        mPhaseNanos = new long [Phase.values().length];
+    }
+
+    /**
+     * Moves the event on to a new iteration.
+     *
+     * @param iteration the number of the iteration, starting at 1
+     * @param phaseNanos the time of each phase of the iteration
+     */
+    void start(int iteration, long [] phaseNanos) {
+        mIteration = iteration;
+        System.arraycopy(phaseNanos, 0, mPhaseNanos, 0, mPhaseNanos.length);
+        mPhaseNanos[Phase.COST.ordinal()] = 0;
+        mCostComputed = false;
+    }
+
+    /**
+     * Returns the number of the iteration, starting at 1.
+     *
+     * @return the number of the iteration
+     */
+    public int getIteration() {
+        return mIteration;
+    }
+
+    /**
+     * Returns the network being trained. Its thetas are those from before
+     * the iteration, since the new thetas are set once every listener has
+     * been told about it.
+     *
+     * @return the network being trained
+     */
+    public NeuralNetwork getNeuralNetwork() {
+        return mNeuralNetwork;
+    }
+
+    /**
+     * Returns the number of iterations training will run for.
+     *
+     * @return the total number of iterations
+     */
+    public int getMaxIterations() {
+        return mMaxIterations;
+    }
+
+    /**
+     * Returns the time a phase of the iteration took. The cost phase is
+     * only timed once the cost has been computed.
+     *
+     * @param phase the phase to return the time of
+     * @return the time of the phase in nanoseconds
+     */
+    public long getPhaseNanos(Phase phase) {
+        return mPhaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * Returns the time every phase of the iteration took together.
+     *
+     * @return the time of the iteration in nanoseconds
+     */
+    public long getIterationNanos() {
+        long nanos = 0;
+        for (long phaseNanos : mPhaseNanos) {
+            nanos += phaseNanos;
+        }
+        return nanos;
+    }
+
+    /**
+     * Returns the cost of the network for the iteration, computing it if no
+     * listener has asked for it yet.
+     *
+     * @return the cost of the network
+     */
+    public double getCost() {
+        if (!mCostComputed) {
+            long start = System.nanoTime();
+            mCost = mNeuralNetwork.getCost();
+            mPhaseNanos[Phase.COST.ordinal()] = System.nanoTime() - start;
+            mCostComputed = true;
+        }
+        return mCost;
+    }
+
+    /**
+     * Returns whether the cost has been computed for the iteration.
+     *
+     * @return true if the cost has been computed
+     */
+    public boolean isCostComputed() {
+        return mCostComputed;
+    }
+}
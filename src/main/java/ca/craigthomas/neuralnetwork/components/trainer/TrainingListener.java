@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.trainer;
+
+/**
+ * Receives progress from a Trainer. The trainer calls onIteration on the
+ * training thread at the end of every iteration, so a listener should hand
+ * any slow work, such as I/O, to another thread.
+ *
+ * @author thomas
+ */
+public interface TrainingListener {
+
+    /**
+     * Called at the end of each iteration, before the new thetas are set.
+     * The event is reused for the next iteration, so it must not be kept.
+     *
+     * @param event the iteration that has just finished
+     */
+    void onIteration(TrainingEvent event);
+
+    /**
+     * Called once every iteration has finished, before train returns.
+     */
+    void onTrainingFinished();
+}
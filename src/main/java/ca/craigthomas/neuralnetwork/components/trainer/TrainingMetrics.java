@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.trainer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects how long each phase of a training iteration takes, how many
+ * samples are processed per second, and how much memory each iteration
+ * allocates. A Trainer records into the metrics after every iteration, and
+ * the metrics can be registered with the platform MBean server to be read
+ * while training is running. The same metrics may be shared by several
+ * trainers, in which case they hold the totals for all of them.
+ *
+ * @author thomas
+ */
+public class TrainingMetrics implements TrainingMetricsMXBean {
+
+    // The phases of a training iteration
+    public enum Phase { FORWARD, BACKWARD, GRADIENT, UPDATE, COST }
+
+    // The name the metrics are registered under
+    public static final String OBJECT_NAME = "ca.craigthomas.neuralnetwork:type=TrainingMetrics";
+
+    private final long [] mPhaseNanos;
+    private long mIterations;
+    private long mSamples;
+    private long mAllocatedBytes;
+    private long mAllocationIterations;
+    private double mLastCost;
+    private ObjectName mRegisteredName;
+
+    /**
+     * Creates a new set of metrics with nothing recorded.
+     */
+    public TrainingMetrics() {
+        mPhaseNanos = new long [Phase.values().length];
+        reset();
+    }
+
+    /**
+     * Records the times of the phases of one iteration.
+     *
+     * @param phaseNanos the time of each phase in nanoseconds, indexed by
+     *        the ordinal of the phase
+     * @param samples the number of samples the iteration processed
+     * @param allocatedBytes the bytes allocated by the iteration, or a
+     *        negative number if they could not be measured
+     */
+    public synchronized void recordIteration(long [] phaseNanos, int samples, long allocatedBytes) {
+        for (int phase = 0; phase < mPhaseNanos.length; phase++) {
+            mPhaseNanos[phase] += phaseNanos[phase];
+        }
+        mIterations++;
+        mSamples += samples;
+        if (allocatedBytes >= 0) {
+            mAllocatedBytes += allocatedBytes;
+            mAllocationIterations++;
+        }
+    }
+
+    /**
+     * Records the most recently computed cost of the network.
+     *
+     * @param cost the cost of the network
+     */
+    public synchronized void recordCost(double cost) {
+        mLastCost = cost;
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread so far,
+     * or -1 if the JVM cannot measure it. The difference between two calls
+     * is the memory allocated in between.
+     *
+     * @return the bytes allocated by the current thread, or -1
+     */
+    public static long getCurrentThreadAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean)threads;
+            if (allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled()) {
+                return allocations.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the mean time of a phase in milliseconds per iteration.
+     *
+     * @param phase the phase to return the time of
+     * @return the mean time of the phase
+     */
+    public synchronized double getPhaseMillis(Phase phase) {
+        return (mIterations == 0) ? 0.0 : mPhaseNanos[phase.ordinal()] / 1e6 / mIterations;
+    }
+
+    @Override
+    public synchronized long getIterations() {
+        return mIterations;
+    }
+
+    @Override
+    public synchronized long getSamples() {
+        return mSamples;
+    }
+
+    @Override
+    public synchronized double getSamplesPerSecond() {
+        long nanos = 0;
+        for (long phaseNanos : mPhaseNanos) {
+            nanos += phaseNanos;
+        }
+        return (nanos == 0) ? 0.0 : mSamples / (nanos / 1e9);
+    }
+
+    @Override
+    public synchronized double getIterationMillis() {
+        double millis = 0.0;
+        for (Phase phase : Phase.values()) {
+            millis += getPhaseMillis(phase);
+        }
+        return millis;
+    }
+
+    @Override
+    public double getForwardMillis() {
+        return getPhaseMillis(Phase.FORWARD);
+    }
+
+    @Override
+    public double getBackwardMillis() {
+        return getPhaseMillis(Phase.BACKWARD);
+    }
+
+    @Override
+    public double getGradientMillis() {
+        return getPhaseMillis(Phase.GRADIENT);
+    }
+
+    @Override
+    public double getUpdateMillis() {
+        return getPhaseMillis(Phase.UPDATE);
+    }
+
+    @Override
+    public double getCostMillis() {
+        return getPhaseMillis(Phase.COST);
+    }
+
+    @Override
+    public synchronized double getAllocatedBytesPerIteration() {
+        return (mAllocationIterations == 0) ? -1.0 : (double)mAllocatedBytes / mAllocationIterations;
+    }
+
+    @Override
+    public synchronized double getLastCost() {
+        return mLastCost;
+    }
+
+    @Override
+    public synchronized void reset() {
+        for (int phase = 0; phase < mPhaseNanos.length; phase++) {
+            mPhaseNanos[phase] = 0;
+        }
+        mIterations = 0;
+        mSamples = 0;
+        mAllocatedBytes = 0;
+        mAllocationIterations = 0;
+        mLastCost = Double.NaN;
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server under
+     * OBJECT_NAME, replacing any metrics already registered there.
+     *
+     * @throws JMException if the metrics cannot be registered
+     */
+    public synchronized void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(this, name);
+        mRegisteredName = name;
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server, if they were
+     * registered.
+     *
+     * @throws JMException if the metrics cannot be unregistered
+     */
+    public synchronized void unregister() throws JMException {
+        if (mRegisteredName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mRegisteredName);
+            mRegisteredName = null;
+        }
+    }
+
+    /**
+     * Returns a summary of the metrics, one measurement per line.
+     *
+     * @return the summary of the metrics
+     */
+    public synchronized String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append("Iterations ").append(mIterations).append('\n');
+        summary.append("Samples per second ").append(String.format("%.1f", getSamplesPerSecond())).append('\n');
+        summary.append("Iteration ms ").append(String.format("%.3f", getIterationMillis())).append('\n');
+        for (Phase phase : Phase.values()) {
+            String name = phase.name().charAt(0) + phase.name().substring(1).toLowerCase(Locale.ROOT);
+            summary.append("  ").append(name).append(" ms ").append(String.format("%.3f", getPhaseMillis(phase))).append('\n');
+        }
+        double allocated = getAllocatedBytesPerIteration();
+        summary.append("Allocated bytes per iteration ").append(allocated < 0 ? "unavailable" : String.format("%.0f", allocated));
+        return summary.toString();
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.trainer;
+
+/**
+ * The management interface of TrainingMetrics, published through JMX so
+ * that a running training job can be watched with tools such as jconsole.
+ * Times are the mean over every iteration recorded so far.
+ *
+ * @author thomas
+ */
+public interface TrainingMetricsMXBean {
+
+    long getIterations();
+
+    long getSamples();
+
+    double getSamplesPerSecond();
+
+    double getIterationMillis();
+
+    double getForwardMillis();
+
+    double getBackwardMillis();
+
+    double getGradientMillis();
+
+    double getUpdateMillis();
+
+    double getCostMillis();
+
+    double getAllocatedBytesPerIteration();
+
+    double getLastCost();
+
+    void reset();
+}
@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * Reads and writes data sets in a compact binary format, so that they can
+ * be opened again without parsing CSV text or decoding images. The file is
+ * made up of a fixed size header, followed by a block of sample values and
+ * a block of truth values. Both blocks are stored in row-major order, in
+ * little-endian byte order:
+ *
+ *   offset  size  contents
+ *   0       4     magic number (DSET)
+ *   4       4     format version
+ *   8       4     data type (1 = 64-bit double, 2 = 32-bit float)
+ *   12      4     number of sample columns
+ *   16      4     number of truth columns (0 if there is no truth)
+ *   20      8     number of rows
+ *   28      4     reserved
+ *   32      ...   samples, then truth
+ *
+ * Opening a file memory maps both blocks through FileChannel.map, so no
+ * values are read until rows are actually requested.
+ *
+ * @author thomas
+ */
+public class BinaryDataSet implements SampleRows {
+
+    // Identifies the file as a binary data set
+    public static final int MAGIC = 0x44534554;
+    // The current version of the file format
+    public static final int VERSION = 1;
+    // Values are stored as 64-bit doubles
+    public static final int DTYPE_FLOAT64 = 1;
+    // Values are stored as 32-bit floats
+    public static final int DTYPE_FLOAT32 = 2;
+    // The size of the header in bytes
+    public static final int HEADER_SIZE = 32;
+    // The size of the buffer used when writing files
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    private final int mDataType;
+    private final int mNumSamples;
+    private final int mNumColsSamples;
+    private final int mNumColsTruth;
+    private final ByteBuffer mSamples;
+    private final ByteBuffer mTruth;
+
+    /**
+     * Creates a new binary data set from mapped sample and truth blocks.
+     *
+     * @param dataType the type of the stored values
+     * @param numSamples the number of rows
+     * @param numColsSamples the number of sample columns
+     * @param numColsTruth the number of truth columns
+     * @param samples the mapped sample block
+     * @param truth the mapped truth block
+     */
+    private BinaryDataSet(int dataType, int numSamples, int numColsSamples, int numColsTruth, ByteBuffer samples, ByteBuffer truth) {
+        mDataType = dataType;
+        mNumSamples = numSamples;
+        mNumColsSamples = numColsSamples;
+        mNumColsTruth = numColsTruth;
+        mSamples = samples;
+        mTruth = truth;
+    }
+
+    /**
+     * Opens a binary data set file, and maps its contents into memory.
+     *
+     * @param filename the name of the file to open
+     * @return the mapped data set
+     * @throws IOException if the file cannot be read or is not a data set
+     */
+    public static BinaryDataSet open(String filename) throws IOException {
+        try (FileInputStream stream = new FileInputStream(filename);
+             FileChannel channel = stream.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    throw new IOException(filename + ": file is too short to be a data set");
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC) {
+                throw new IOException(filename + ": not a binary data set");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(filename + ": unsupported data set version " + version);
+            }
+            int dataType = header.getInt();
+            int numColsSamples = header.getInt();
+            int numColsTruth = header.getInt();
+            long numSamples = header.getLong();
+            if (dataType != DTYPE_FLOAT64 && dataType != DTYPE_FLOAT32) {
+                throw new IOException(filename + ": unknown data type " + dataType);
+            }
+            if (numSamples > Integer.MAX_VALUE || numColsSamples < 0 || numColsTruth < 0) {
+                throw new IOException(filename + ": invalid data set dimensions");
+            }
+
+            long samplesSize = numSamples * numColsSamples * getValueSize(dataType);
+            long truthSize = numSamples * numColsTruth * getValueSize(dataType);
+            if (samplesSize > Integer.MAX_VALUE || truthSize > Integer.MAX_VALUE) {
+                throw new IOException(filename + ": data set is too large to map");
+            }
+            if (channel.size() < HEADER_SIZE + samplesSize + truthSize) {
+                throw new IOException(filename + ": file is truncated");
+            }
+            ByteBuffer samples = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, samplesSize);
+            ByteBuffer truth = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + samplesSize, truthSize);
+            samples.order(ByteOrder.LITTLE_ENDIAN);
+            truth.order(ByteOrder.LITTLE_ENDIAN);
+            return new BinaryDataSet(dataType, (int)numSamples, numColsSamples, numColsTruth, samples, truth);
+        }
+    }
+
+    /**
+     * Writes the DataSet to a binary data set file. The values are stored
+     * with the specified data type.
+     *
+     * @param dataSet the DataSet to write
+     * @param filename the name of the file to write to
+     * @param dataType the type to store values as
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(DataSet dataSet, String filename, int dataType) throws IOException {
+        if (dataType != DTYPE_FLOAT64 && dataType != DTYPE_FLOAT32) {
+            throw new IllegalArgumentException("unknown data type " + dataType);
+        }
+        DoubleMatrix samples = dataSet.getSamples();
+        DoubleMatrix truth = dataSet.hasTruth() ? dataSet.getTruth() : null;
+        int numSamples = dataSet.getNumSamples();
+        int numColsTruth = (truth == null) ? 0 : truth.columns;
+
+        try (FileOutputStream stream = new FileOutputStream(filename);
+             FileChannel channel = stream.getChannel()) {
+            ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(dataType);
+            buffer.putInt(dataSet.getNumColsSamples());
+            buffer.putInt(numColsTruth);
+            buffer.putLong(numSamples);
+            buffer.putInt(0);
+            if (samples != null) {
+                writeRows(samples, dataType, channel, buffer);
+            }
+            if (truth != null) {
+                writeRows(truth, dataType, channel, buffer);
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    /**
+     * Writes every row of the matrix to the channel in row-major order.
+     *
+     * @param matrix the matrix to write
+     * @param dataType the type to store values as
+     * @param channel the channel to write to
+     * @param buffer the buffer to stage values in
+     * @throws IOException
+     */
+    private static void writeRows(DoubleMatrix matrix, int dataType, FileChannel channel, ByteBuffer buffer) throws IOException {
+        int valueSize = getValueSize(dataType);
+        for (int row = 0; row < matrix.rows; row++) {
+            for (int column = 0; column < matrix.columns; column++) {
+                if (buffer.remaining() < valueSize) {
+                    flush(channel, buffer);
+                }
+                double value = matrix.data[(column * matrix.rows) + row];
+                if (dataType == DTYPE_FLOAT64) {
+                    buffer.putDouble(value);
+                } else {
+                    buffer.putFloat((float)value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the contents of the buffer to the channel, and clears it.
+     *
+     * @param channel the channel to write to
+     * @param buffer the buffer to write out
+     * @throws IOException
+     */
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Returns the number of bytes used to store a single value.
+     *
+     * @param dataType the type of the stored values
+     * @return the size of a single value in bytes
+     */
+    private static int getValueSize(int dataType) {
+        return (dataType == DTYPE_FLOAT64) ? 8 : 4;
+    }
+
+    /**
+     * Returns the type the values are stored as.
+     *
+     * @return the data type of the file
+     */
+    public int getDataType() {
+        return mDataType;
+    }
+
+    /**
+     * Returns the number of samples (rows) in the file.
+     *
+     * @return the number of samples
+     */
+    public int getNumSamples() {
+        return mNumSamples;
+    }
+
+    /**
+     * Returns the number of columns in the Samples.
+     *
+     * @return the number of sample columns
+     */
+    public int getNumColsSamples() {
+        return mNumColsSamples;
+    }
+
+    /**
+     * Returns the number of columns in the Truth data.
+     *
+     * @return the number of truth columns, 0 if there is no truth
+     */
+    public int getNumColsTruth() {
+        return mNumColsTruth;
+    }
+
+    /**
+     * Returns true if the file contains ground truth.
+     *
+     * @return true if the file has truth columns
+     */
+    public boolean hasTruth() {
+        return mNumColsTruth > 0;
+    }
+
+    /**
+     * Copies the samples for the rows from start to end into a new matrix.
+     *
+     * @param start the first row to copy (inclusive)
+     * @param end the last row to copy (exclusive)
+     * @return a new matrix holding the samples
+     */
+    public DoubleMatrix getSamples(int start, int end) {
+        DoubleMatrix result = new DoubleMatrix(end - start, mNumColsSamples);
+        copyRows(mSamples, mNumColsSamples, start, end, result, 0);
+        return result;
+    }
+
+    /**
+     * Copies the truth values for the rows from start to end into a new
+     * matrix. Returns null if the file has no truth.
+     *
+     * @param start the first row to copy (inclusive)
+     * @param end the last row to copy (exclusive)
+     * @return a new matrix holding the truth values
+     */
+    public DoubleMatrix getTruth(int start, int end) {
+        if (!hasTruth()) {
+            return null;
+        }
+        DoubleMatrix result = new DoubleMatrix(end - start, mNumColsTruth);
+        copyRows(mTruth, mNumColsTruth, start, end, result, 0);
+        return result;
+    }
+
+    /**
+     * Copies the samples for the rows from start to end into the target
+     * matrix, beginning at targetRow.
+     *
+     * @param start the first row to copy (inclusive)
+     * @param end the last row to copy (exclusive)
+     * @param target the matrix to copy into
+     * @param targetRow the first row of the target to write
+     */
+    public void copySamples(int start, int end, DoubleMatrix target, int targetRow) {
+        copyRows(mSamples, mNumColsSamples, start, end, target, targetRow);
+    }
+
+    /**
+     * Copies the truth values for the rows from start to end into the target
+     * matrix, beginning at targetRow.
+     *
+     * @param start the first row to copy (inclusive)
+     * @param end the last row to copy (exclusive)
+     * @param target the matrix to copy into
+     * @param targetRow the first row of the target to write
+     */
+    public void copyTruth(int start, int end, DoubleMatrix target, int targetRow) {
+        copyRows(mTruth, mNumColsTruth, start, end, target, targetRow);
+    }
+
+    /**
+     * Copies a range of row-major rows out of a mapped block into a
+     * column-major matrix. Only absolute reads are used, so several threads
+     * may copy from the same block at once.
+     *
+     * @param block the mapped block to copy from
+     * @param columns the number of columns in the block
+     * @param start the first row to copy (inclusive)
+     * @param end the last row to copy (exclusive)
+     * @param target the matrix to copy into
+     * @param targetRow the first row of the target to write
+     */
+    private void copyRows(ByteBuffer block, int columns, int start, int end, DoubleMatrix target, int targetRow) {
+        double [] data = target.data;
+        for (int row = start; row < end; row++) {
+            int targetIndex = targetRow + (row - start);
+            if (mDataType == DTYPE_FLOAT64) {
+                int offset = row * columns * 8;
+                for (int column = 0; column < columns; column++) {
+                    data[targetIndex] = block.getDouble(offset + (column * 8));
+                    targetIndex += target.rows;
+                }
+            } else {
+                int offset = row * columns * 4;
+                for (int column = 0; column < columns; column++) {
+                    data[targetIndex] = block.getFloat(offset + (column * 4));
+                    targetIndex += target.rows;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import java.io.IOException;
+
+import org.jblas.DoubleMatrix;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+
+/**
+ * Evaluates a network over samples a fixed size chunk at a time, counting
+ * the predictions of each chunk into a ConfusionMatrix before the next is 
+ * read. Unlike a Prediction, the samples are never gathered into one 
+ * matrix, so the memory used depends on the chunk size, and not on the 
+ * number of samples.
+ *
+ * @author thomas
+ */
+public class ChunkedEvaluator {
+
+    // The default number of rows scored at once
+    public static final int DEFAULT_CHUNK_SIZE = 1024;
+
+    private final NeuralNetwork mNeuralNetwork;
+    private final double mPredictionThreshold;
+    private final int mChunkSize;
+
+    /**
+     * Creates an evaluator that scores DEFAULT_CHUNK_SIZE rows at once.
+     *
+     * @param model a trained neural network
+     * @param predictionThreshold the prediction threshold
+     */
+    public ChunkedEvaluator(NeuralNetwork model, double predictionThreshold) {
+        this(model, predictionThreshold, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates an evaluator that scores the specified number of rows at once.
+     *
+     * @param model a trained neural network
+     * @param predictionThreshold the prediction threshold
+     * @param chunkSize the number of rows scored at once
+     */
+    public ChunkedEvaluator(NeuralNetwork model, double predictionThreshold, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunk size must be positive");
+        }
+        mNeuralNetwork = model;
+        mPredictionThreshold = predictionThreshold;
+        mChunkSize = chunkSize;
+    }
+
+    /**
+     * Evaluates the network over every row of a DataSet, BinaryDataSet or
+     * other rows that can be copied a range at a time.
+     *
+     * @param rows the samples and truth to evaluate
+     * @return the counts of the predictions
+     */
+    public ConfusionMatrix evaluate(SampleRows rows) {
+        if (rows.getNumColsTruth() < 1) {
+            throw new IllegalArgumentException("samples have no truth to evaluate against");
+        }
+        ConfusionMatrix confusion = new ConfusionMatrix();
+        int numSamples = rows.getNumSamples();
+        DoubleMatrix samples = new DoubleMatrix(Math.min(mChunkSize, numSamples), rows.getNumColsSamples());
+        DoubleMatrix truth = new DoubleMatrix(samples.rows, rows.getNumColsTruth());
+        for (int start = 0; start < numSamples; start += mChunkSize) {
+            int end = Math.min(start + mChunkSize, numSamples);
+            rows.copySamples(start, end, samples, 0);
+            rows.copyTruth(start, end, truth, 0);
+            confusion.add(score(samples, end - start), truth, end - start, mPredictionThreshold);
+        }
+        return confusion;
+    }
+
+    /**
+     * Evaluates the network over every row of a source, reading one chunk
+     * at a time. The source is read to the end, but not closed.
+     *
+     * @param source the samples and truth to evaluate
+     * @return the counts of the predictions
+     * @throws IOException if the source cannot be read
+     */
+    public ConfusionMatrix evaluate(SampleSource source) throws IOException {
+        ConfusionMatrix confusion = new ConfusionMatrix();
+        DoubleMatrix samples = new DoubleMatrix(mChunkSize, source.getNumColsSamples());
+        DoubleMatrix truth = new DoubleMatrix(mChunkSize, 1);
+        int rows;
+        while ((rows = source.read(samples, truth)) > 0) {
+            confusion.add(score(samples, rows), truth, rows, mPredictionThreshold);
+        }
+        return confusion;
+    }
+
+    /**
+     * Scores the first rows of a chunk. Only the last chunk of a set of 
+     * samples is ever partly filled, so only its rows are copied out.
+     *
+     * @param samples the chunk of samples
+     * @param rows the number of rows that were filled
+     * @return the score of each row
+     */
+    private DoubleMatrix score(DoubleMatrix samples, int rows) {
+        if (rows < samples.rows) {
+            samples = samples.getRange(0, rows, 0, samples.columns);
+        }
+        return mNeuralNetwork.feedForward(samples);
+    }
+}
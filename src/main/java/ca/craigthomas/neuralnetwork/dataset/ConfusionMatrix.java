@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * Counts the true and false positives and negatives of a set of 
+ * predictions. Predictions can be added a chunk at a time, and the counts of
+ * separate chunks merged, so the counts of any number of samples take the
+ * same small amount of memory.
+ *
+ * @author thomas
+ */
+public class ConfusionMatrix {
+
+    private long mTruePositives;
+    private long mTrueNegatives;
+    private long mFalsePositives;
+    private long mFalseNegatives;
+
+    /**
+     * Counts the first rows of a chunk of scores against their truth. Scores
+     * above the prediction threshold are predicted positive, and truth 
+     * values above ThresholdSweep.TRUTH_THRESHOLD are positive. Only the 
+     * first column of each matrix is used.
+     *
+     * @param scores the score of each sample
+     * @param truth the truth of each sample
+     * @param rows the number of rows to count
+     * @param predictionThreshold the prediction threshold
+     */
+    public void add(DoubleMatrix scores, DoubleMatrix truth, int rows, double predictionThreshold) {
+        // The first column of each matrix is held at the start of its data
+        for (int index = 0; index < rows; index++) {
+            boolean predicted = scores.data[index] > predictionThreshold;
+            if (truth.data[index] > ThresholdSweep.TRUTH_THRESHOLD) {
+                if (predicted) {
+                    mTruePositives++;
+                } else {
+                    mFalseNegatives++;
+                }
+            } else {
+                if (predicted) {
+                    mFalsePositives++;
+                } else {
+                    mTrueNegatives++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the counts of another confusion matrix to this one.
+     *
+     * @param other the counts to add
+     */
+    public void merge(ConfusionMatrix other) {
+        mTruePositives += other.mTruePositives;
+        mTrueNegatives += other.mTrueNegatives;
+        mFalsePositives += other.mFalsePositives;
+        mFalseNegatives += other.mFalseNegatives;
+    }
+
+    /**
+     * Gets the number of true positives.
+     *
+     * @return the number of true positives
+     */
+    public long getTruePositives() {
+        return mTruePositives;
+    }
+
+    /**
+     * Gets the number of true negatives.
+     *
+     * @return the number of true negatives
+     */
+    public long getTrueNegatives() {
+        return mTrueNegatives;
+    }
+
+    /**
+     * Gets the number of false positives.
+     *
+     * @return the number of false positives
+     */
+    public long getFalsePositives() {
+        return mFalsePositives;
+    }
+
+    /**
+     * Gets the number of false negatives.
+     *
+     * @return the number of false negatives
+     */
+    public long getFalseNegatives() {
+        return mFalseNegatives;
+    }
+
+    /**
+     * Gets the number of samples counted.
+     *
+     * @return the number of samples
+     */
+    public long getTotal() {
+        return mTruePositives + mTrueNegatives + mFalsePositives + mFalseNegatives;
+    }
+
+    /**
+     * Gets the fraction of samples that were predicted correctly.
+     *
+     * @return the accuracy
+     */
+    public double getAccuracy() {
+        return (double)(mTruePositives + mTrueNegatives) / getTotal();
+    }
+
+    /**
+     * Gets the overall precision.
+     *
+     * @return the precision
+     */
+    public double getPrecision() {
+        return (double)mTruePositives / (mTruePositives + mFalsePositives);
+    }
+
+    /**
+     * Gets the overall recall.
+     *
+     * @return the recall
+     */
+    public double getRecall() {
+        return (double)mTruePositives / (mTruePositives + mFalseNegatives);
+    }
+
+    /**
+     * Gets the overall F-1 score.
+     *
+     * @return the F1 score
+     */
+    public double getF1() {
+        double precision = getPrecision();
+        double recall = getRecall();
+        return 2 * (precision * recall) / (precision + recall);
+    }
+}
@@ -24,7 +24,7 @@ import ca.craigthomas.neuralnetwork.commandline.Runner;
  * 
  * @author thomas
  */
-public class DataSet {
+public class DataSet implements SampleRows {
     
     // The logger for the class
     private final static Logger LOGGER = Logger.getLogger(Runner.class.getName());
@@ -33,6 +33,8 @@ public class DataSet {
     private DoubleMatrix mTruth;
     private final boolean sHasTruth;
     private Random mRandom;
+    // The storage row of each logical row, or null if they are the same
+    private int [] mOrder;
     
     /**
      * Generates a new DataSet based upon current internal values.
@@ -61,21 +63,101 @@ public class DataSet {
     }
     
     /**
-     * Returns the Samples.
+     * Sets the seed used to shuffle and split the DataSet, so that runs can
+     * be reproduced. DataSets produced by splitting or duplicating this one
+     * are seeded from it in turn.
+     * 
+     * @param seed the seed for the random number generator
+     */
+    public void setSeed(long seed) {
+        mRandom = new Random(seed);
+    }
+    
+    /**
+     * Returns the Samples, in the current row order. Since randomize never
+     * moves the underlying rows, a shuffled DataSet has to gather a new
+     * matrix here - use copySamples to fetch one batch at a time instead.
      * 
      * @return the Samples
      */
     public DoubleMatrix getSamples() {
-        return mSamples;
+        return (mOrder == null) ? mSamples : getSamples(0, getNumSamples());
     }
     
     /**
-     * Returns the ground truth.
+     * Returns the ground truth, in the current row order. As with getSamples,
+     * a shuffled DataSet has to gather a new matrix here.
      * 
      * @return the ground truth
      */
     public DoubleMatrix getTruth() {
-        return mTruth;
+        return (mOrder == null) ? mTruth : getTruth(0, getNumSamples());
+    }
+    
+    /**
+     * Returns a new matrix holding the Samples from rows start to end, in
+     * the current row order. Returns null if the range is empty.
+     * 
+     * @param start the first row to return (inclusive)
+     * @param end the last row to return (exclusive)
+     * @return the Samples in the range
+     */
+    public DoubleMatrix getSamples(int start, int end) {
+        return gatherRows(mSamples, start, end);
+    }
+    
+    /**
+     * Returns a new matrix holding the ground truth from rows start to end,
+     * in the current row order. Returns null if the range is empty.
+     * 
+     * @param start the first row to return (inclusive)
+     * @param end the last row to return (exclusive)
+     * @return the ground truth in the range
+     */
+    public DoubleMatrix getTruth(int start, int end) {
+        return gatherRows(mTruth, start, end);
+    }
+    
+    /**
+     * Copies the Samples from rows start to end, in the current row order,
+     * into the target matrix starting at targetRow. The target must have
+     * getNumColsSamples columns.
+     * 
+     * @param start the first row to copy (inclusive)
+     * @param end the last row to copy (exclusive)
+     * @param target the matrix to copy into
+     * @param targetRow the first row of the target to write
+     */
+    public void copySamples(int start, int end, DoubleMatrix target, int targetRow) {
+        copyOrderedRows(mSamples, start, end, target, targetRow);
+    }
+    
+    /**
+     * Copies the ground truth from rows start to end, in the current row
+     * order, into the target matrix starting at targetRow. The target must
+     * have getNumColsTruth columns.
+     * 
+     * @param start the first row to copy (inclusive)
+     * @param end the last row to copy (exclusive)
+     * @param target the matrix to copy into
+     * @param targetRow the first row of the target to write
+     */
+    public void copyTruth(int start, int end, DoubleMatrix target, int targetRow) {
+        copyOrderedRows(mTruth, start, end, target, targetRow);
+    }
+    
+    /**
+     * Returns the current row order. Element i holds the index in the
+     * underlying storage of row i.
+     * 
+     * @return a copy of the row order
+     */
+    public int [] getRowOrder() {
+        int [] order = new int [getNumSamples()];
+        for (int row = 0; row < order.length; row++) {
+            order[row] = getStorageRow(row);
+        }
+        return order;
     }
     
     /**
@@ -124,19 +206,64 @@ public class DataSet {
         return sHasTruth;
     }
     
+    /**
+     * Reads samples from a CSV file that has no header line, and adds them
+     * to the DataSet.
+     *
+     * @param filename the name of the file to read from
+     * @throws IOException
+     */
+    public void addFromCSVFile(String filename) throws IOException {
+        addFromCSVFile(filename, false);
+    }
+
     /**
      * Reads samples from a CSV file, and adds them to the DataSet. If header
-     * is set (true), will ignore the first line of the file.
-     * 
+     * is set (true), will ignore the first line of the file. If the DataSet
+     * has ground truth, the last column of the file is the truth label.
+     * Large files are parsed in parallel - see DataSetReader.readCSVChunks.
+     *
      * @param filename the name of the file to read from
      * @param hasHeader whether the file has a header line
      * @throws IOException
      */
-    public void addFromCSVFile(String filename) throws IOException {
-        List<List<Double>> data = DataSetReader.readCSVFile(filename);
-        addSamples(data);
+    public void addFromCSVFile(String filename, boolean hasHeader) throws IOException {
+        List<RowBuffer> chunks = DataSetReader.readCSVChunks(filename, hasHeader);
+        if (chunks.isEmpty() || chunks.get(0).getNumRows() == 0) {
+            return;
+        }
+        int columns = chunks.get(0).getNumColumns();
+        if (sHasTruth) {
+            addSampleRow(RowBuffer.toMatrix(chunks, 0, columns - 1));
+            addTruthRow(RowBuffer.toMatrix(chunks, columns - 1, columns));
+        } else {
+            addSampleRow(RowBuffer.toMatrix(chunks, 0, columns));
+        }
     }
     
+    /**
+     * Reads samples from a binary data set file written by BinaryDataSet,
+     * and adds them to the DataSet. The file is memory mapped, so the values
+     * are copied straight out of the page cache without being parsed.
+     *
+     * @param filename the name of the file to read from
+     * @throws IOException if the file cannot be read, or has no truth when
+     *         this DataSet expects it
+     */
+    public void addFromBinaryFile(String filename) throws IOException {
+        BinaryDataSet file = BinaryDataSet.open(filename);
+        if (sHasTruth && !file.hasTruth()) {
+            throw new IOException(filename + ": data set has no truth values");
+        }
+        if (file.getNumSamples() == 0) {
+            return;
+        }
+        addSampleRow(file.getSamples(0, file.getNumSamples()));
+        if (sHasTruth) {
+            addTruthRow(file.getTruth(0, file.getNumSamples()));
+        }
+    }
+
     /**
      * Adds a list of samples to the DataSet. Each element in the list contains
      * a list of Doubles, which are assumed to be the samples to add. If the
@@ -183,7 +310,15 @@ public class DataSet {
      * @param samples the matrix of samples to add
      */
     private void addSampleRow(DoubleMatrix samples) {
+        int oldRows = getNumSamples();
         mSamples = (mSamples == null) ? samples : DoubleMatrix.concatVertically(mSamples, samples);
+        if (mOrder != null) {
+            int [] order = Arrays.copyOf(mOrder, mSamples.rows);
+            for (int row = oldRows; row < order.length; row++) {
+                order[row] = row;
+            }
+            mOrder = order;
+        }
     }
     
     /**
@@ -197,24 +332,128 @@ public class DataSet {
     }
     
     /**
-     * Randomizes the data points within the DataSet.
+     * Returns the index in the underlying storage of the specified row.
+     * 
+     * @param row the row in the current order
+     * @return the row in the underlying storage
+     */
+    private int getStorageRow(int row) {
+        return (mOrder == null) ? row : mOrder[row];
+    }
+    
+    /**
+     * Gathers the rows from start to end, in the current row order, into a
+     * new matrix. Returns null if the matrix is null or the range is empty.
+     * 
+     * @param matrix the matrix to gather from
+     * @param start the first row to gather (inclusive)
+     * @param end the last row to gather (exclusive)
+     * @return a new matrix holding the rows
+     */
+    private DoubleMatrix gatherRows(DoubleMatrix matrix, int start, int end) {
+        if (matrix == null || end <= start) {
+            return null;
+        }
+        DoubleMatrix result = new DoubleMatrix(end - start, matrix.columns);
+        copyOrderedRows(matrix, start, end, result, 0);
+        return result;
+    }
+    
+    /**
+     * Gathers the listed rows, numbered in the current row order, into a new
+     * matrix. Returns null if the matrix is null or no rows are listed.
+     * 
+     * @param matrix the matrix to gather from
+     * @param rows the rows to gather
+     * @return a new matrix holding the rows
+     */
+    private DoubleMatrix gatherRows(DoubleMatrix matrix, int [] rows) {
+        if (matrix == null || rows.length == 0) {
+            return null;
+        }
+        int [] storageRows = new int [rows.length];
+        for (int index = 0; index < rows.length; index++) {
+            if (rows[index] < 0 || rows[index] >= getNumSamples()) {
+                throw new IndexOutOfBoundsException("row " + rows[index] + " out of range");
+            }
+            storageRows[index] = getStorageRow(rows[index]);
+        }
+        DoubleMatrix result = new DoubleMatrix(rows.length, matrix.columns);
+        for (int column = 0; column < matrix.columns; column++) {
+            int sourceOffset = column * matrix.rows;
+            int targetOffset = column * result.rows;
+            for (int index = 0; index < storageRows.length; index++) {
+                result.data[targetOffset + index] = matrix.data[sourceOffset + storageRows[index]];
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Copies the rows from start to end, in the current row order, into the
+     * target matrix starting at targetRow. Works a column at a time, since
+     * both matrices are stored in column-major order.
+     * 
+     * @param matrix the matrix to copy from
+     * @param start the first row to copy (inclusive)
+     * @param end the last row to copy (exclusive)
+     * @param target the matrix to copy into
+     * @param targetRow the first row of the target to write
+     */
+    private void copyOrderedRows(DoubleMatrix matrix, int start, int end, DoubleMatrix target, int targetRow) {
+        if (start < 0 || end > getNumSamples() || start > end) {
+            throw new IndexOutOfBoundsException("rows " + start + " to " + end + " out of range");
+        }
+        if (target.columns != matrix.columns || targetRow + (end - start) > target.rows) {
+            throw new IllegalArgumentException("target matrix is too small");
+        }
+        for (int column = 0; column < matrix.columns; column++) {
+            int sourceOffset = column * matrix.rows;
+            int targetOffset = (column * target.rows) + targetRow;
+            if (mOrder == null) {
+                System.arraycopy(matrix.data, sourceOffset + start, target.data, targetOffset, end - start);
+            } else {
+                for (int row = start; row < end; row++) {
+                    target.data[targetOffset + row - start] = matrix.data[sourceOffset + mOrder[row]];
+                }
+            }
+        }
+    }
+    
+    /**
+     * Creates a new DataSet seeded from this one, so that a seeded DataSet
+     * produces the same splits and shuffles on every run.
+     * 
+     * @param samples the samples for the new DataSet
+     * @param truth the truth values for the new DataSet
+     * @return the new DataSet
+     */
+    private DataSet createDataSet(DoubleMatrix samples, DoubleMatrix truth) {
+        DataSet result = new DataSet(sHasTruth, samples, truth);
+        result.setSeed(mRandom.nextLong());
+        return result;
+    }
+    
+    /**
+     * Randomizes the order of the data points within the DataSet with a
+     * Fisher-Yates shuffle of the row order. The samples and truth values
+     * themselves are never moved - only the order that getSamples,
+     * copySamples and the split functions return them in changes.
      */
     public void randomize() {
-        for (int counter = 0; counter < mSamples.rows * 5; counter++) {
-            int firstIndex = mRandom.nextInt(mSamples.rows);
-            int secondIndex = mRandom.nextInt(mSamples.rows);
-            DoubleMatrix tempRow = mSamples.getRow(firstIndex);
-            DoubleMatrix tempRow1 = mSamples.getRow(secondIndex);
-            mSamples.putRow(firstIndex, tempRow1);
-            mSamples.putRow(secondIndex, tempRow);
-            
-            if (sHasTruth) {
-                tempRow = mTruth.getRow(firstIndex);
-                tempRow1 = mTruth.getRow(secondIndex);
-                mTruth.putRow(firstIndex, tempRow1);
-                mTruth.putRow(secondIndex, tempRow);                
+        int rows = getNumSamples();
+        if (mOrder == null) {
+            mOrder = new int [rows];
+            for (int row = 0; row < rows; row++) {
+                mOrder[row] = row;
             }
         }
+        for (int row = rows - 1; row > 0; row--) {
+            int other = mRandom.nextInt(row + 1);
+            int temp = mOrder[row];
+            mOrder[row] = mOrder[other];
+            mOrder[other] = temp;
+        }
     }
     
     /**
@@ -257,16 +496,16 @@ public class DataSet {
         int trainEnd = (int)Math.ceil(((percentage / 100.0) * (float)mSamples.rows));
         int testStart = trainEnd;
         int testEnd = mSamples.rows;
-        DoubleMatrix trainingSamples = copyRows(trainStart, trainEnd, mSamples);
-        DoubleMatrix testingSamples = copyRows(testStart, testEnd, mSamples);
+        DoubleMatrix trainingSamples = getSamples(trainStart, trainEnd);
+        DoubleMatrix testingSamples = getSamples(testStart, testEnd);
         DoubleMatrix trainingTruth = null;
         DoubleMatrix testingTruth = null;
         if (sHasTruth) {
-            trainingTruth = copyRows(trainStart, trainEnd, mTruth);
-            testingTruth = copyRows(testStart, testEnd, mTruth);
+            trainingTruth = getTruth(trainStart, trainEnd);
+            testingTruth = getTruth(testStart, testEnd);
         }
-        DataSet trainingSet = new DataSet(sHasTruth, trainingSamples, trainingTruth);
-        DataSet testingSet = new DataSet(sHasTruth, testingSamples, testingTruth);
+        DataSet trainingSet = createDataSet(trainingSamples, trainingTruth);
+        DataSet testingSet = createDataSet(testingSamples, testingTruth);
         return Pair.of(trainingSet, testingSet);
     }
     
@@ -284,19 +523,20 @@ public class DataSet {
      * @return the training DataSet, and the testing DataSet
      */
     public Pair<DataSet, DataSet> splitEqually(int percentage) {
-        boolean selectedRows [] = new boolean [mSamples.rows];
         int half = (int)Math.ceil(((percentage / 100.0) * (float)mSamples.rows) / 2);
-        int negCounter = 0;
-        int posCounter = 0;
         
         // First, make sure that the data set has at least 'half' number of
         // negative and positive samples - if we don't have it, default to 
         // splitSequentially.
-        for (int index = 0; index < mTruth.rows; index++) {
-            if (mTruth.get(index, 0) == 1.0) {
-                posCounter++;
+        int [] positives = new int [mSamples.rows];
+        int [] negatives = new int [mSamples.rows];
+        int posCounter = 0;
+        int negCounter = 0;
+        for (int row = 0; row < mSamples.rows; row++) {
+            if (mTruth.get(getStorageRow(row), 0) == 1.0) {
+                positives[posCounter++] = row;
             } else {
-                negCounter++;
+                negatives[negCounter++] = row;
             }
         }
         
@@ -305,41 +545,65 @@ public class DataSet {
             return splitSequentially(percentage);
         }
         
-        posCounter = 0;
-        negCounter = 0;
-        DataSet trainingData = new DataSet(sHasTruth);
-        DataSet testingData = new DataSet(sHasTruth);
-        
-        // Select an index at random and see if we have already added it to
-        // the training DataSet. Loop until we have the desired number of
-        // positive and negative cases
-        while (negCounter < half || posCounter < half) {
-            int nextIndex = mRandom.nextInt(mSamples.rows);
-            if (!selectedRows[nextIndex]) {
-                DoubleMatrix row = DoubleMatrix.concatHorizontally(mSamples.getRow(nextIndex), mTruth.getRow(nextIndex));
-                if (mTruth.get(nextIndex, 0) == 1.0 && posCounter < half) {
-                    selectedRows[nextIndex] = true;
-                    posCounter++;
-                    trainingData.addSample(row);
-                }
-                
-                if (mTruth.get(nextIndex, 0) == 0.0 && negCounter < half) {
-                    selectedRows[nextIndex] = true;
-                    negCounter++;
-                    trainingData.addSample(row);
-                }
-            }
+        // Pick 'half' rows at random from each class with a partial
+        // Fisher-Yates shuffle, and put the rest into the testing DataSet
+        // in the current row order.
+        boolean [] selectedRows = new boolean [mSamples.rows];
+        int [] trainingRows = new int [half * 2];
+        shufflePrefix(positives, posCounter, half);
+        shufflePrefix(negatives, negCounter, half);
+        for (int index = 0; index < half; index++) {
+            trainingRows[index * 2] = positives[index];
+            trainingRows[(index * 2) + 1] = negatives[index];
+            selectedRows[positives[index]] = true;
+            selectedRows[negatives[index]] = true;
         }
-        
-        // Take all the remaining unused samples, and include them in the
-        // testing DataSet.
-        for (int index = 0; index < selectedRows.length; index++) {
-            if (!selectedRows[index]) {
-                DoubleMatrix row = DoubleMatrix.concatHorizontally(mSamples.getRow(index), mTruth.getRow(index));
-                testingData.addSample(row);
+        int [] testingRows = new int [mSamples.rows - trainingRows.length];
+        int next = 0;
+        for (int row = 0; row < selectedRows.length; row++) {
+            if (!selectedRows[row]) {
+                testingRows[next++] = row;
             }
         }
-        return Pair.of(trainingData, testingData);
+        return Pair.of(subset(trainingRows), subset(testingRows));
+    }
+    
+    /**
+     * Moves count randomly chosen values from the first length values of the
+     * array to the front of it.
+     * 
+     * @param values the values to choose from
+     * @param length the number of values in the array to choose from
+     * @param count the number of values to choose
+     */
+    private void shufflePrefix(int [] values, int length, int count) {
+        for (int index = 0; index < count; index++) {
+            int other = index + mRandom.nextInt(length - index);
+            int temp = values[index];
+            values[index] = values[other];
+            values[other] = temp;
+        }
+    }
+    
+    /**
+     * Returns a StratifiedSplitter for the rows of this DataSet, in the
+     * current row order, seeded from this DataSet.
+     * 
+     * @return a new StratifiedSplitter
+     */
+    public StratifiedSplitter createSplitter() {
+        return new StratifiedSplitter(this, new Random(mRandom.nextLong()));
+    }
+    
+    /**
+     * Returns a new DataSet containing the specified rows, in the order
+     * they are listed. Row numbers refer to the current row order.
+     * 
+     * @param rows the rows to copy into the new DataSet
+     * @return a new DataSet with the rows
+     */
+    public DataSet subset(int [] rows) {
+        return createDataSet(gatherRows(mSamples, rows), gatherRows(mTruth, rows));
     }
     
     /**
@@ -348,6 +612,8 @@ public class DataSet {
      * @return a duplicate of this DataSet
      */
     public DataSet dup() {
-        return new DataSet(sHasTruth, mSamples.dup(), mTruth.dup());
+        DataSet result = createDataSet((mSamples == null) ? null : mSamples.dup(), (mTruth == null) ? null : mTruth.dup());
+        result.mOrder = (mOrder == null) ? null : mOrder.clone();
+        return result;
     }
 }
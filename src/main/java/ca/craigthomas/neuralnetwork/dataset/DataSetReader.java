@@ -5,51 +5,400 @@
 package ca.craigthomas.neuralnetwork.dataset;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.Reader;
-import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
-import org.apache.commons.io.FileUtils;
+import org.jblas.DoubleMatrix;
 
 /**
- * Contains static methods to read data from various sources, and return 
+ * Contains static methods to read data from various sources, and return
  * them as a list of data points.
- * 
+ *
  * @author thomas
  */
 public class DataSetReader {
 
+    // Files at least this large are parsed in parallel chunks
+    public static final long PARALLEL_THRESHOLD = 8L * 1024 * 1024;
+    // The smallest number of bytes worth splitting off into its own chunk
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+    // The number of chunks to create for each thread in the pool
+    private static final int CHUNKS_PER_THREAD = 4;
+
     /**
      * Read from a CSV file, and return the samples as a list of doubles.
-     * 
+     * Prefer readCSV for large files, since every value returned by this
+     * method is boxed.
+     *
      * @param filename the name of the file to read from
      * @return the list of samples from the file
      * @throws IOException
      */
     public static List<List<Double>> readCSVFile(String filename) throws IOException {
+        List<List<Double>> inputs = new ArrayList<List<Double>>();
+        try (FileInputStream stream = new FileInputStream(filename);
+             NumericCSVReader reader = new NumericCSVReader(stream.getChannel(), false)) {
+            while (reader.readRow()) {
+                double [] row = reader.getRow();
+                List<Double> inputLine = new ArrayList<Double>(reader.getNumColumns());
+                for (int index = 0; index < reader.getNumColumns(); index++) {
+                    inputLine.add(row[index]);
+                }
+                inputs.add(inputLine);
+            }
+        }
+        return inputs;
+    }
+
+    /**
+     * Read from a numeric CSV file, streaming the values straight into a
+     * primitive RowBuffer. If hasHeader is set, the first line of the file
+     * is ignored. Every row must have the same number of values.
+     *
+     * @param filename the name of the file to read from
+     * @param hasHeader whether the file has a header line
+     * @return the rows read from the file
+     * @throws IOException if the file cannot be read, or a row is malformed
+     */
+    public static RowBuffer readCSV(String filename, boolean hasHeader) throws IOException {
+        try (FileInputStream stream = new FileInputStream(filename);
+             NumericCSVReader reader = new NumericCSVReader(stream.getChannel(), hasHeader)) {
+            return readRows(reader, stream.getChannel().size());
+        }
+    }
+
+    /**
+     * Read from a numeric CSV file, returning the rows as a list of
+     * RowBuffers that hold consecutive pieces of the file, in order. Files
+     * larger than PARALLEL_THRESHOLD are split into chunks that are parsed
+     * in parallel on the common fork-join pool; smaller files are read on
+     * the calling thread into a single RowBuffer.
+     *
+     * @param filename the name of the file to read from
+     * @param hasHeader whether the file has a header line
+     * @return the rows read from the file, in file order
+     * @throws IOException if the file cannot be read, or a row is malformed
+     */
+    public static List<RowBuffer> readCSVChunks(String filename, boolean hasHeader) throws IOException {
         File file = new File(filename);
-        String fileContents = FileUtils.readFileToString(file);
-        Reader reader = new StringReader(fileContents);
-        CSVFormat format = CSVFormat.EXCEL;
-        CSVParser parser = new CSVParser(reader, format);
+        if (file.length() < PARALLEL_THRESHOLD) {
+            return Collections.singletonList(readCSV(filename, hasHeader));
+        }
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int numChunks = (int)Math.min(pool.getParallelism() * CHUNKS_PER_THREAD, file.length() / MIN_CHUNK_SIZE);
+        return readCSVParallel(filename, hasHeader, pool, numChunks);
+    }
 
-        List<CSVRecord> records = parser.getRecords();
-        List<List<Double>> inputs = new ArrayList<List<Double>>();
+    /**
+     * Opens a numeric CSV file as a SampleSource, which reads the rows a
+     * chunk at a time, so that files larger than memory can be evaluated.
+     * The last value of each row is the truth, and the rest are the
+     * samples. If hasHeader is set, the first line of the file is ignored.
+     * Every row must have the same number of values.
+     *
+     * @param filename the name of the file to read from
+     * @param hasHeader whether the file has a header line
+     * @return the source of the rows in the file
+     * @throws IOException if the file cannot be read, or has no rows
+     */
+    public static SampleSource openCSVSource(String filename, boolean hasHeader) throws IOException {
+        FileInputStream stream = new FileInputStream(filename);
+        NumericCSVReader reader = new NumericCSVReader(stream.getChannel(), hasHeader);
+        try {
+            if (!reader.readRow()) {
+                throw new IOException(filename + ": no rows to read");
+            }
+            if (reader.getNumColumns() < 2) {
+                throw new MalformedCSVException(reader.getLineNumber(), "expected samples and truth, found 1 value");
+            }
+            return new CSVSource(reader);
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read from a numeric CSV file by splitting it into numChunks byte ranges
+     * that start and end on line boundaries, and parsing each range on the
+     * pool into its own RowBuffer. The buffers are returned in file order.
+     * Line numbers in error messages refer to the file as a whole.
+     *
+     * @param filename the name of the file to read from
+     * @param hasHeader whether the file has a header line
+     * @param pool the pool to parse the chunks on
+     * @param numChunks the number of chunks to split the file into
+     * @return the rows read from each chunk, in file order
+     * @throws IOException if the file cannot be read, or a row is malformed
+     */
+    public static List<RowBuffer> readCSVParallel(String filename, boolean hasHeader, ForkJoinPool pool, int numChunks) throws IOException {
+        try (FileInputStream stream = new FileInputStream(filename);
+             FileChannel channel = stream.getChannel()) {
+            long [] boundaries = findChunkBoundaries(channel, Math.max(numChunks, 1));
+            List<ChunkTask> tasks = new ArrayList<ChunkTask>();
+            boolean skipHeader = hasHeader;
+            for (int chunk = 0; chunk < boundaries.length - 1; chunk++) {
+                boolean chunkHasHeader = skipHeader && boundaries[chunk] < boundaries[chunk + 1];
+                skipHeader &= !chunkHasHeader;
+                ChunkTask task = new ChunkTask(channel, boundaries[chunk], boundaries[chunk + 1], chunkHasHeader);
+                pool.execute(task);
+                tasks.add(task);
+            }
 
-        for (CSVRecord record : records) {
-            List<Double> inputLine = new ArrayList<Double>();
-            for (int index = 0; index < record.size(); index++) {
-                String value = record.get(index);
-                inputLine.add(Double.parseDouble(value));
+            List<RowBuffer> result = new ArrayList<RowBuffer>();
+            long linesBefore = 0;
+            int numColumns = -1;
+            for (ChunkTask task : tasks) {
+                task.join();
+                if (task.mError instanceof MalformedCSVException) {
+                    MalformedCSVException error = (MalformedCSVException)task.mError;
+                    throw new MalformedCSVException(linesBefore + error.getLineNumber(), error.getDetail());
+                } else if (task.mError != null) {
+                    throw task.mError;
+                }
+                RowBuffer rows = task.mRows;
+                if (rows.getNumRows() > 0) {
+                    if (numColumns >= 0 && rows.getNumColumns() != numColumns) {
+                        throw new MalformedCSVException(linesBefore + task.mFirstRowLine, "expected " + numColumns + " values, found " + rows.getNumColumns());
+                    }
+                    numColumns = rows.getNumColumns();
+                    result.add(rows);
+                }
+                linesBefore += task.mNumLines;
             }
-            inputs.add(inputLine);
+            return result;
+        }
+    }
+
+    /**
+     * Splits the file into roughly equal byte ranges, moving every interior
+     * boundary forward so that it falls on the start of a line. Returns the
+     * boundaries, including 0 and the file size. Boundaries may repeat if
+     * lines are longer than the chunks.
+     *
+     * @param channel the file to split
+     * @param numChunks the number of chunks to create
+     * @return the boundaries of the chunks
+     * @throws IOException
+     */
+    private static long [] findChunkBoundaries(FileChannel channel, int numChunks) throws IOException {
+        long size = channel.size();
+        long [] boundaries = new long [numChunks + 1];
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        boundaries[numChunks] = size;
+        for (int chunk = 1; chunk < numChunks; chunk++) {
+            long position = Math.max((size * chunk) / numChunks, boundaries[chunk - 1]);
+            boundaries[chunk] = (position == 0) ? 0 : findLineStart(channel, position - 1, buffer);
+        }
+        return boundaries;
+    }
+
+    /**
+     * Returns the position just after the first newline at or after the
+     * specified position, or the size of the file if there is none.
+     *
+     * @param channel the file to search
+     * @param position the position to start searching from
+     * @param buffer a scratch buffer to read into
+     * @return the start of the next line
+     * @throws IOException
+     */
+    private static long findLineStart(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return channel.size();
+            }
+            for (int index = 0; index < read; index++) {
+                if (buffer.get(index) == '\n') {
+                    return position + index + 1;
+                }
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Reads all of the remaining rows from the reader into a RowBuffer.
+     *
+     * @param reader the reader to read rows from
+     * @param numBytes the number of bytes the reader will read
+     * @return the rows that were read
+     * @throws IOException if a row is malformed
+     */
+    protected static RowBuffer readRows(NumericCSVReader reader, long numBytes) throws IOException {
+        RowBuffer rows = null;
+        while (reader.readRow()) {
+            if (rows == null) {
+                rows = createRowBuffer(reader, numBytes);
+            } else if (reader.getNumColumns() != rows.getNumColumns()) {
+                throw new MalformedCSVException(reader.getLineNumber(), "expected " + rows.getNumColumns() + " values, found " + reader.getNumColumns());
+            }
+            rows.addRow(reader.getRow());
+        }
+        return (rows == null) ? new RowBuffer(0) : rows;
+    }
+
+    /**
+     * Creates a RowBuffer for the rows of the reader, once its first row has
+     * been read. Space is allocated for as many rows as would fit in
+     * numBytes bytes if they were all as long as the first row, plus one.
+     *
+     * @param reader the reader whose first row has been read
+     * @param numBytes the number of bytes the reader will read
+     * @return an empty buffer sized for the rows of the reader
+     */
+    private static RowBuffer createRowBuffer(NumericCSVReader reader, long numBytes) {
+        long expectedRows = (numBytes / Math.max(1, reader.getRowLength())) + 1;
+        return new RowBuffer(reader.getNumColumns(), (int)Math.min(expectedRows, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Parses one byte range of a CSV file into a RowBuffer. Errors are kept
+     * rather than thrown, so that the line numbers can be corrected once
+     * the number of lines in the earlier chunks is known.
+     */
+    private static class ChunkTask extends RecursiveTask<RowBuffer> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel mChannel;
+        private final long mStart;
+        private final long mEnd;
+        private final boolean mHasHeader;
+        private RowBuffer mRows;
+        private long mNumLines;
+        private long mFirstRowLine;
+        private IOException mError;
+
+        ChunkTask(FileChannel channel, long start, long end, boolean hasHeader) {
+            mChannel = channel;
+            mStart = start;
+            mEnd = end;
+            mHasHeader = hasHeader;
+        }
+
+        @Override
+        protected RowBuffer compute() {
+            try {
+                NumericCSVReader reader = new NumericCSVReader(new FileRangeChannel(mChannel, mStart, mEnd), mHasHeader);
+                mRows = null;
+                while (reader.readRow()) {
+                    if (mRows == null) {
+                        mRows = createRowBuffer(reader, mEnd - mStart);
+                        mFirstRowLine = reader.getLineNumber();
+                    } else if (reader.getNumColumns() != mRows.getNumColumns()) {
+                        throw new MalformedCSVException(reader.getLineNumber(), "expected " + mRows.getNumColumns() + " values, found " + reader.getNumColumns());
+                    }
+                    mRows.addRow(reader.getRow());
+                }
+                mNumLines = reader.getLineNumber();
+                if (mRows == null) {
+                    mRows = new RowBuffer(0);
+                }
+            } catch (IOException e) {
+                mError = e;
+            }
+            return mRows;
+        }
+    }
+
+    /**
+     * A read-only view of a range of bytes in a file. Uses positional reads,
+     * so any number of views can share one FileChannel across threads.
+     * Closing the view leaves the underlying channel open.
+     */
+    private static class FileRangeChannel implements ReadableByteChannel {
+
+        private final FileChannel mChannel;
+        private final long mEnd;
+        private long mPosition;
+
+        FileRangeChannel(FileChannel channel, long start, long end) {
+            mChannel = channel;
+            mPosition = start;
+            mEnd = end;
+        }
+
+        @Override
+        public int read(ByteBuffer destination) throws IOException {
+            if (mPosition >= mEnd) {
+                return -1;
+            }
+            int oldLimit = destination.limit();
+            if (destination.remaining() > mEnd - mPosition) {
+                destination.limit(destination.position() + (int)(mEnd - mPosition));
+            }
+            int read = mChannel.read(destination, mPosition);
+            destination.limit(oldLimit);
+            if (read > 0) {
+                mPosition += read;
+            }
+            return read;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return mChannel.isOpen();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Reads the rows of a CSV file into chunks, with the truth in the last
+     * column. The first row has already been read when the source is
+     * created, to find the number of columns.
+     */
+    private static class CSVSource implements SampleSource {
+
+        private final NumericCSVReader mReader;
+        private final int mNumColumns;
+        private boolean mHasRow;
+
+        CSVSource(NumericCSVReader reader) {
+            mReader = reader;
+            mNumColumns = reader.getNumColumns();
+            mHasRow = true;
+        }
+
+        @Override
+        public int getNumColsSamples() {
+            return mNumColumns - 1;
+        }
+
+        @Override
+        public int read(DoubleMatrix samples, DoubleMatrix truth) throws IOException {
+            int rows = 0;
+            while (rows < samples.rows && mHasRow) {
+                if (mReader.getNumColumns() != mNumColumns) {
+                    throw new MalformedCSVException(mReader.getLineNumber(), "expected " + mNumColumns + " values, found " + mReader.getNumColumns());
+                }
+                double [] row = mReader.getRow();
+                for (int column = 0; column < mNumColumns - 1; column++) {
+                    samples.data[(column * samples.rows) + rows] = row[column];
+                }
+                truth.data[rows] = row[mNumColumns - 1];
+                rows++;
+                mHasRow = mReader.readRow();
+            }
+            return rows;
+        }
+
+        @Override
+        public void close() throws IOException {
+            mReader.close();
         }
-        parser.close();
-        return inputs;
     }
 }
@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.jblas.DoubleMatrix;
+
+import ca.craigthomas.neuralnetwork.commandline.Runner;
+
+/**
+ * Stores the features extracted from image files, so that later loads can
+ * skip decoding any image that has not changed. Entries are keyed by the
+ * path of the image, its size and modification time, the dimensions it was
+ * required to have, and whether color features were extracted. The cache is
+ * an append-only file in little-endian byte order:
+ *
+ *   offset  size  contents
+ *   0       4     magic number (FCCH)
+ *   4       4     format version
+ *   8       ...   records
+ *
+ * Each record holds:
+ *
+ *   size  contents
+ *   4     length of the path in bytes
+ *   8     size of the image file in bytes
+ *   8     modification time of the image file
+ *   4     required width
+ *   4     required height
+ *   4     color mode (1 = color, 0 = grayscale)
+ *   4     number of features
+ *   ...   path, in UTF-8
+ *   ...   features, as 64-bit doubles
+ *
+ * When an image changes, a new record is appended and the old one is
+ * ignored. A cache written by an older version is emptied when it is
+ * opened, since its features may no longer match the current conversion.
+ * Opening the cache reads only the record headers. A record left
+ * incomplete by an interrupted write is discarded. Lookups may be made
+ * from any number of threads.
+ *
+ * @author thomas
+ */
+public class FeatureCache implements Closeable {
+
+    // The logger for the class
+    private final static Logger LOGGER = Logger.getLogger(Runner.class.getName());
+
+    // Identifies the file as a feature cache
+    public static final int MAGIC = 0x46434348;
+    // The current version of the file format. Version 1 caches hold
+    // features that were extracted with pixels above 127 treated as negative
+    public static final int VERSION = 2;
+    // The size of the file header in bytes
+    public static final int HEADER_SIZE = 8;
+    // The size of the fixed part of each record in bytes
+    private static final int RECORD_HEADER_SIZE = 36;
+
+    private final FileChannel mChannel;
+    private final Map<String, Entry> mEntries;
+    private final AtomicInteger mHits;
+    private final AtomicInteger mMisses;
+    private long mEnd;
+
+    /**
+     * Identifies the features of one image file. The size and modification
+     * time of the file are captured when the key is created, which should
+     * be before the file is read.
+     */
+    public static class Key {
+
+        private final String mPath;
+        private final long mSize;
+        private final long mLastModified;
+        private final int mWidth;
+        private final int mHeight;
+        private final boolean mColor;
+
+        /**
+         * Creates a key for the current contents of an image file.
+         *
+         * @param file the image file
+         * @param width the required width of the image
+         * @param height the required height of the image
+         * @param color whether color features are extracted
+         */
+        public Key(File file, int width, int height, boolean color) {
+            this(file.getAbsolutePath(), file.length(), file.lastModified(), width, height, color);
+        }
+
+        private Key(String path, long size, long lastModified, int width, int height, boolean color) {
+            mPath = path;
+            mSize = size;
+            mLastModified = lastModified;
+            mWidth = width;
+            mHeight = height;
+            mColor = color;
+        }
+
+        private String getLookup() {
+            return mPath + "|" + mWidth + "x" + mHeight + (mColor ? "|color" : "|gray");
+        }
+    }
+
+    /**
+     * The location of the features for one key within the file.
+     */
+    private static class Entry {
+
+        private final long mSize;
+        private final long mLastModified;
+        private final int mNumFeatures;
+        private final long mOffset;
+
+        Entry(long size, long lastModified, int numFeatures, long offset) {
+            mSize = size;
+            mLastModified = lastModified;
+            mNumFeatures = numFeatures;
+            mOffset = offset;
+        }
+    }
+
+    private FeatureCache(FileChannel channel) {
+        mChannel = channel;
+        mEntries = new ConcurrentHashMap<String, Entry>();
+        mHits = new AtomicInteger();
+        mMisses = new AtomicInteger();
+    }
+
+    /**
+     * Opens a feature cache file, creating it if it does not exist.
+     *
+     * @param filename the name of the cache file
+     * @return the opened cache
+     * @throws IOException if the file cannot be opened, or is not a feature cache
+     */
+    public static FeatureCache open(String filename) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FeatureCache cache = new FeatureCache(channel);
+        try {
+            cache.readIndex(filename);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return cache;
+    }
+
+    /**
+     * Writes a header to a new file, or checks the header of an existing
+     * file and reads the header of each record into the index.
+     *
+     * @param filename the name of the cache file
+     * @throws IOException
+     */
+    private void readIndex(String filename) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        long size = mChannel.size();
+        if (size >= HEADER_SIZE) {
+            header.limit(HEADER_SIZE);
+            if (readFully(header, 0) && header.getInt(0) == MAGIC && header.getInt(4) < VERSION) {
+                LOGGER.warning(filename + ": discarding feature cache from older version " + header.getInt(4));
+                mChannel.truncate(0);
+                size = 0;
+            }
+            header.clear();
+        }
+        if (size == 0) {
+            header.putInt(MAGIC).putInt(VERSION).flip();
+            writeFully(header, 0);
+            mEnd = HEADER_SIZE;
+            return;
+        }
+
+        header.limit(HEADER_SIZE);
+        if (size < HEADER_SIZE || !readFully(header, 0) || header.getInt(0) != MAGIC) {
+            throw new IOException(filename + ": not a feature cache");
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IOException(filename + ": unsupported feature cache version " + header.getInt(4));
+        }
+
+        long position = HEADER_SIZE;
+        while (position < size) {
+            header.clear();
+            if (!readFully(header, position)) {
+                break;
+            }
+            int pathLength = header.getInt(0);
+            int numFeatures = header.getInt(32);
+            long recordEnd = position + RECORD_HEADER_SIZE + pathLength + (numFeatures * 8L);
+            if (pathLength < 0 || numFeatures < 0 || recordEnd > size) {
+                break;
+            }
+            ByteBuffer path = ByteBuffer.allocate(pathLength);
+            readFully(path, position + RECORD_HEADER_SIZE);
+            Key key = new Key(new String(path.array(), StandardCharsets.UTF_8), header.getLong(4), header.getLong(12),
+                    header.getInt(20), header.getInt(24), header.getInt(28) == 1);
+            mEntries.put(key.getLookup(), new Entry(key.mSize, key.mLastModified, numFeatures, position + RECORD_HEADER_SIZE + pathLength));
+            position = recordEnd;
+        }
+        if (position < size) {
+            LOGGER.warning(filename + ": discarding incomplete feature cache record");
+            mChannel.truncate(position);
+        }
+        mEnd = position;
+    }
+
+    /**
+     * Returns the number of images in the cache.
+     *
+     * @return the number of cached images
+     */
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * Returns the number of lookups that found features in the cache.
+     *
+     * @return the number of cache hits
+     */
+    public int getHits() {
+        return mHits.get();
+    }
+
+    /**
+     * Returns the number of lookups that did not find features in the cache.
+     *
+     * @return the number of cache misses
+     */
+    public int getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * Looks up the features for a key, and copies them into the specified
+     * row of the target matrix. Returns false if the cache holds no features
+     * for the key, if the file has changed since they were stored, or if the
+     * number of features does not match the number of columns in the target.
+     *
+     * @param key the key to look up
+     * @param target the matrix to copy the features into
+     * @param row the row of the target to write
+     * @return true if the features were found
+     * @throws IOException if the cache cannot be read
+     */
+    public boolean get(Key key, DoubleMatrix target, int row) throws IOException {
+        Entry entry = mEntries.get(key.getLookup());
+        if (entry == null || entry.mSize != key.mSize || entry.mLastModified != key.mLastModified || entry.mNumFeatures != target.columns) {
+            mMisses.incrementAndGet();
+            return false;
+        }
+        ByteBuffer features = ByteBuffer.allocate(entry.mNumFeatures * 8).order(ByteOrder.LITTLE_ENDIAN);
+        if (!readFully(features, entry.mOffset)) {
+            throw new IOException("feature cache truncated");
+        }
+        for (int column = 0; column < target.columns; column++) {
+            target.data[(column * target.rows) + row] = features.getDouble(column * 8);
+        }
+        mHits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Appends the features in the specified row of the source matrix to the
+     * cache under the key.
+     *
+     * @param key the key to store the features under
+     * @param source the matrix holding the features
+     * @param row the row of the source to store
+     * @throws IOException if the cache cannot be written
+     */
+    public void put(Key key, DoubleMatrix source, int row) throws IOException {
+        byte [] path = key.mPath.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + path.length + (source.columns * 8)).order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(path.length);
+        record.putLong(key.mSize);
+        record.putLong(key.mLastModified);
+        record.putInt(key.mWidth);
+        record.putInt(key.mHeight);
+        record.putInt(key.mColor ? 1 : 0);
+        record.putInt(source.columns);
+        record.put(path);
+        for (int column = 0; column < source.columns; column++) {
+            record.putDouble(source.data[(column * source.rows) + row]);
+        }
+        record.flip();
+
+        synchronized (this) {
+            long position = mEnd;
+            writeFully(record, position);
+            mEnd += record.limit();
+            mEntries.put(key.getLookup(), new Entry(key.mSize, key.mLastModified, source.columns, position + RECORD_HEADER_SIZE + path.length));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+
+    /**
+     * Fills the buffer from the file, starting at the specified position.
+     * Returns false if the end of the file is reached first.
+     *
+     * @param buffer the buffer to fill
+     * @param position the position in the file to read from
+     * @return true if the buffer was filled
+     * @throws IOException
+     */
+    private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = mChannel.read(buffer, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the whole buffer to the file at the specified position.
+     *
+     * @param buffer the buffer to write
+     * @param position the position in the file to write to
+     * @throws IOException
+     */
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += mChannel.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,480 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+
+import org.jblas.DoubleMatrix;
+
+import ca.craigthomas.neuralnetwork.commandline.Runner;
+import ca.craigthomas.neuralnetwork.imageprocessing.Image;
+
+/**
+ * Reads directories of images into a DataSet, with every image in a
+ * directory sharing the same truth value. Files are read on a pool of I/O
+ * threads, and decoded and converted into features on a separate pool of
+ * CPU threads, so slow storage and slow decoding overlap. Each file is
+ * assigned a row of the DataSet up front, so the rows come out in the same
+ * order no matter which thread finishes first: directories in the order
+ * they were added, and files sorted by name within each directory. Files
+ * that cannot be decoded, or that are not the required size, are skipped.
+ * If a FeatureCache is supplied, images that are already in the cache are
+ * not decoded at all, and the features of every newly decoded image are
+ * added to the cache.
+ *
+ * @author thomas
+ */
+public class ImageDirectoryReader {
+
+    // The logger for the class
+    private final static Logger LOGGER = Logger.getLogger(Runner.class.getName());
+
+    // The default number of threads reading files
+    public static final int DEFAULT_IO_THREADS = 16;
+
+    private final List<File> mDirectories;
+    private final List<Double> mTruths;
+    private final int mWidth;
+    private final int mHeight;
+    private final boolean mColor;
+    private final int mIOThreads;
+    private final int mCPUThreads;
+    private final FeatureCache mCache;
+
+    public static class Builder {
+
+        private final List<File> mDirectories;
+        private final List<Double> mTruths;
+        private final int mWidth;
+        private final int mHeight;
+        private boolean mColor;
+        private int mIOThreads;
+        private int mCPUThreads;
+        private FeatureCache mCache;
+
+        /**
+         * Initialize a builder for a reader that accepts images of the
+         * specified size.
+         *
+         * @param width the required width of each image in pixels
+         * @param height the required height of each image in pixels
+         */
+        public Builder(int width, int height) {
+            mDirectories = new ArrayList<File>();
+            mTruths = new ArrayList<Double>();
+            mWidth = width;
+            mHeight = height;
+            mIOThreads = DEFAULT_IO_THREADS;
+            mCPUThreads = Runtime.getRuntime().availableProcessors();
+        }
+
+        /**
+         * Adds a directory of images, all of which have the specified truth
+         * value.
+         *
+         * @param directory the directory to read images from
+         * @param truth the truth value of the images
+         * @return the builder for the reader
+         */
+        public Builder directory(File directory, double truth) {
+            mDirectories.add(directory);
+            mTruths.add(truth);
+            return this;
+        }
+
+        /**
+         * Sets whether the images are converted to color features (three
+         * values per pixel) or grayscale features. Defaults to grayscale.
+         *
+         * @param color whether to use color features
+         * @return the builder for the reader
+         */
+        public Builder color(boolean color) {
+            mColor = color;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads used to read files. Defaults to 16,
+         * which keeps network storage busy.
+         *
+         * @param ioThreads the number of reading threads
+         * @return the builder for the reader
+         */
+        public Builder ioThreads(int ioThreads) {
+            mIOThreads = ioThreads;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads used to decode images and convert them
+         * to features. Defaults to the number of processors.
+         *
+         * @param cpuThreads the number of decoding threads
+         * @return the builder for the reader
+         */
+        public Builder cpuThreads(int cpuThreads) {
+            mCPUThreads = cpuThreads;
+            return this;
+        }
+
+        /**
+         * Sets the cache to look up features in before decoding images, and
+         * to store newly extracted features in. Defaults to no cache.
+         *
+         * @param cache the feature cache to use
+         * @return the builder for the reader
+         */
+        public Builder cache(FeatureCache cache) {
+            mCache = cache;
+            return this;
+        }
+
+        /**
+         * Builds the reader.
+         *
+         * @return the new reader
+         */
+        public ImageDirectoryReader build() {
+            if (mIOThreads < 1 || mCPUThreads < 1) {
+                throw new IllegalArgumentException("thread counts must be positive");
+            }
+            return new ImageDirectoryReader(this);
+        }
+    }
+
+    private ImageDirectoryReader(Builder builder) {
+        mDirectories = new ArrayList<File>(builder.mDirectories);
+        mTruths = new ArrayList<Double>(builder.mTruths);
+        mWidth = builder.mWidth;
+        mHeight = builder.mHeight;
+        mColor = builder.mColor;
+        mIOThreads = builder.mIOThreads;
+        mCPUThreads = builder.mCPUThreads;
+        mCache = builder.mCache;
+    }
+
+    /**
+     * Returns the number of features generated for each image.
+     *
+     * @return the number of features per image
+     */
+    public int getNumFeatures() {
+        return mWidth * mHeight * (mColor ? 3 : 1);
+    }
+
+    /**
+     * Reads every image in the directories into a new DataSet with ground
+     * truth. Returns an empty DataSet if no images could be read.
+     *
+     * @return the DataSet of images
+     * @throws IOException if a directory cannot be listed
+     * @throws InterruptedException if interrupted while waiting for images
+     */
+    public DataSet read() throws IOException, InterruptedException {
+        List<File> files = new ArrayList<File>();
+        List<Double> truths = new ArrayList<Double>();
+        for (int index = 0; index < mDirectories.size(); index++) {
+            File [] directoryFiles = mDirectories.get(index).listFiles();
+            if (directoryFiles == null) {
+                throw new IOException("cannot list directory [" + mDirectories.get(index) + "]");
+            }
+            Arrays.sort(directoryFiles);
+            for (File file : directoryFiles) {
+                if (file.isFile()) {
+                    files.add(file);
+                    truths.add(mTruths.get(index));
+                }
+            }
+        }
+        if (files.isEmpty()) {
+            return new DataSet(true);
+        }
+
+        final DoubleMatrix samples = new DoubleMatrix(files.size(), getNumFeatures());
+        final DoubleMatrix truth = new DoubleMatrix(files.size(), 1);
+        final boolean [] loaded = new boolean [files.size()];
+        final CountDownLatch remaining = new CountDownLatch(files.size());
+        // Limits the number of files that have been read but not decoded
+        final Semaphore pending = new Semaphore(mIOThreads + (2 * mCPUThreads));
+        ExecutorService ioPool = Executors.newFixedThreadPool(mIOThreads);
+        final ExecutorService cpuPool = Executors.newFixedThreadPool(mCPUThreads);
+        try {
+            for (int row = 0; row < files.size(); row++) {
+                final int slot = row;
+                final File file = files.get(row);
+                final double fileTruth = truths.get(row);
+                pending.acquire();
+                ioPool.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        // The CPU task releases the permit once it is queued
+                        boolean handedOff = false;
+                        try {
+                            final FeatureCache.Key key = new FeatureCache.Key(file, mWidth, mHeight, mColor);
+                            if (getCached(key, samples, slot)) {
+                                truth.data[slot] = fileTruth;
+                                loaded[slot] = true;
+                                return;
+                            }
+                            final byte [] contents;
+                            try {
+                                contents = Files.readAllBytes(file.toPath());
+                            } catch (IOException e) {
+                                LOGGER.log(Level.WARNING, "file " + file + " could not be read, skipping (" + e.getMessage() + ")");
+                                return;
+                            }
+                            cpuPool.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    try {
+                                        loaded[slot] = convert(file, contents, fileTruth, samples, truth, slot);
+                                        if (loaded[slot]) {
+                                            putCached(key, samples, slot);
+                                        }
+                                    } finally {
+                                        pending.release();
+                                        remaining.countDown();
+                                    }
+                                }
+                            });
+                            handedOff = true;
+                        } finally {
+                            if (!handedOff) {
+                                pending.release();
+                                remaining.countDown();
+                            }
+                        }
+                    }
+                });
+            }
+            remaining.await();
+        } finally {
+            ioPool.shutdownNow();
+            cpuPool.shutdownNow();
+        }
+        if (mCache != null) {
+            LOGGER.log(Level.INFO, "read " + mCache.getHits() + " image(s) from the feature cache");
+        }
+        return compact(samples, truth, loaded);
+    }
+
+    /**
+     * Returns a SampleSource that decodes the images a chunk at a time, as
+     * they are read, so that directories too large to fit in memory can be
+     * evaluated. Unlike read, the directories are streamed rather than
+     * listed, so the files of each directory come out in the order the file
+     * system lists them. Files that cannot be decoded, or that are not the
+     * required size, are skipped.
+     *
+     * @return the source of the images in the directories
+     */
+    public SampleSource createSource() {
+        return new DirectorySource();
+    }
+
+    /**
+     * Copies the cached features for a key into the specified row of the
+     * samples. Returns false if there is no cache, or the features are not
+     * in it.
+     *
+     * @param key the key of the image
+     * @param samples the matrix to copy the features into
+     * @param row the row to write
+     * @return true if the features were found in the cache
+     */
+    private boolean getCached(FeatureCache.Key key, DoubleMatrix samples, int row) {
+        if (mCache == null) {
+            return false;
+        }
+        try {
+            return mCache.get(key, samples, row);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "could not read feature cache (" + e.getMessage() + ")");
+            return false;
+        }
+    }
+
+    /**
+     * Stores the features in the specified row of the samples in the cache,
+     * if there is one.
+     *
+     * @param key the key of the image
+     * @param samples the matrix holding the features
+     * @param row the row to store
+     */
+    private void putCached(FeatureCache.Key key, DoubleMatrix samples, int row) {
+        if (mCache == null) {
+            return;
+        }
+        try {
+            mCache.put(key, samples, row);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "could not write feature cache (" + e.getMessage() + ")");
+        }
+    }
+
+    /**
+     * Decodes a single image, and writes its features and truth value into
+     * the specified row of the matrices. Returns false if the image could
+     * not be decoded, or is not the required size.
+     *
+     * @param file the file the image was read from
+     * @param contents the contents of the file
+     * @param truthValue the truth value of the image
+     * @param samples the matrix to write the features into
+     * @param truth the matrix to write the truth value into
+     * @param row the row to write
+     * @return true if the row was written
+     */
+    private boolean convert(File file, byte [] contents, double truthValue, DoubleMatrix samples, DoubleMatrix truth, int row) {
+        BufferedImage bufferedImage;
+        try {
+            bufferedImage = ImageIO.read(new ByteArrayInputStream(contents));
+        } catch (IOException e) {
+            bufferedImage = null;
+        }
+        if (bufferedImage == null) {
+            LOGGER.log(Level.WARNING, "file " + file + " is not a readable image, skipping");
+            return false;
+        }
+        if (bufferedImage.getWidth() != mWidth || bufferedImage.getHeight() != mHeight) {
+            LOGGER.log(Level.WARNING, "file " + file + " not correct size, skipping (want " + mWidth + "x" + mHeight + ", got " + bufferedImage.getWidth() + "x" + bufferedImage.getHeight() + ")");
+            return false;
+        }
+
+        try {
+            Image image = new Image(bufferedImage);
+            if (mColor) {
+                image.convertColorToRow(samples, row);
+            } else {
+                image.convertGrayscaleToRow(samples, row);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "file " + file + " could not be converted, skipping (" + e + ")");
+            return false;
+        }
+        truth.data[row] = truthValue;
+        return true;
+    }
+
+    /**
+     * Builds a DataSet from the rows that were loaded, dropping the rest.
+     *
+     * @param samples the features of every row
+     * @param truth the truth value of every row
+     * @param loaded which rows were loaded
+     * @return the DataSet of loaded rows
+     */
+    private static DataSet compact(DoubleMatrix samples, DoubleMatrix truth, boolean [] loaded) {
+        int [] rows = new int [loaded.length];
+        int numLoaded = 0;
+        for (int row = 0; row < loaded.length; row++) {
+            if (loaded[row]) {
+                rows[numLoaded++] = row;
+            }
+        }
+        if (numLoaded == 0) {
+            return new DataSet(true);
+        }
+        DataSet result = new DataSet(true, samples, truth);
+        return (numLoaded == loaded.length) ? result : result.subset(Arrays.copyOf(rows, numLoaded));
+    }
+
+    /**
+     * Streams the files of each directory in turn, decoding each image into
+     * the next row of the chunk being read.
+     */
+    private class DirectorySource implements SampleSource {
+
+        private int mDirectory;
+        private DirectoryStream<Path> mStream;
+        private Iterator<Path> mFiles;
+
+        @Override
+        public int getNumColsSamples() {
+            return getNumFeatures();
+        }
+
+        @Override
+        public int read(DoubleMatrix samples, DoubleMatrix truth) throws IOException {
+            int rows = 0;
+            File file;
+            while (rows < samples.rows && (file = nextFile()) != null) {
+                double truthValue = mTruths.get(mDirectory);
+                FeatureCache.Key key = new FeatureCache.Key(file, mWidth, mHeight, mColor);
+                if (getCached(key, samples, rows)) {
+                    truth.data[rows++] = truthValue;
+                    continue;
+                }
+                byte [] contents;
+                try {
+                    contents = Files.readAllBytes(file.toPath());
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "file " + file + " could not be read, skipping (" + e.getMessage() + ")");
+                    continue;
+                }
+                if (convert(file, contents, truthValue, samples, truth, rows)) {
+                    putCached(key, samples, rows);
+                    rows++;
+                }
+            }
+            return rows;
+        }
+
+        /**
+         * Returns the next file, moving on to the next directory when one
+         * runs out, or null once every directory has been read.
+         *
+         * @return the next file, or null
+         * @throws IOException if a directory cannot be listed
+         */
+        private File nextFile() throws IOException {
+            while (mDirectory < mDirectories.size()) {
+                if (mStream == null) {
+                    mStream = Files.newDirectoryStream(mDirectories.get(mDirectory).toPath());
+                    mFiles = mStream.iterator();
+                }
+                while (mFiles.hasNext()) {
+                    Path path = mFiles.next();
+                    if (Files.isRegularFile(path)) {
+                        return path.toFile();
+                    }
+                }
+                mStream.close();
+                mStream = null;
+                mDirectory++;
+            }
+            return null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mStream != null) {
+                mStream.close();
+                mStream = null;
+            }
+            mDirectory = mDirectories.size();
+        }
+    }
+}
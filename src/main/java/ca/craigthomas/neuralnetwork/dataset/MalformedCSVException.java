@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a line of a CSV file cannot be turned into a row of numbers.
+ * Keeps track of the line number, so that readers working on a piece of a
+ * larger file can report where the problem is in the file as a whole.
+ *
+ * @author thomas
+ */
+public class MalformedCSVException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long mLineNumber;
+    private final String mDetail;
+
+    /**
+     * Creates a new exception for the specified line.
+     *
+     * @param lineNumber the line number of the malformed row, starting at 1
+     * @param detail a description of the problem
+     */
+    public MalformedCSVException(long lineNumber, String detail) {
+        super("line " + lineNumber + ": " + detail);
+        mLineNumber = lineNumber;
+        mDetail = detail;
+    }
+
+    /**
+     * Returns the line number of the malformed row.
+     *
+     * @return the line number, starting at 1
+     */
+    public long getLineNumber() {
+        return mLineNumber;
+    }
+
+    /**
+     * Returns the description of the problem, without the line number.
+     *
+     * @return the description of the problem
+     */
+    public String getDetail() {
+        return mDetail;
+    }
+}
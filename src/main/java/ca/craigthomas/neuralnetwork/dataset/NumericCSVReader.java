@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads numeric CSV data directly from a channel, one row at a time. Each
+ * row is parsed straight out of the read buffer into a primitive double
+ * array, so no Strings or boxed Doubles are created for well-formed values.
+ * Only the current row is held in memory, which means arbitrarily large
+ * files can be processed. Blank lines are skipped, and both Unix and
+ * Windows line endings are accepted. Fields may be surrounded by whitespace
+ * or double quotes, but quoted fields may not contain commas or newlines.
+ *
+ * @author thomas
+ */
+public class NumericCSVReader implements Closeable {
+
+    // The default size of the read buffer in bytes
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    // The initial number of values a row can hold before growing
+    private static final int INITIAL_ROW_SIZE = 16;
+    // The largest number of significant digits that fits in a long
+    private static final int MAX_FAST_DIGITS = 18;
+    // Mantissas below this value can be represented exactly as a double
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    // Powers of ten that can be represented exactly as a double
+    private static final double [] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final ReadableByteChannel mChannel;
+    private ByteBuffer mBuffer;
+    private boolean mEndOfInput;
+    private long mLineNumber;
+    private double [] mRow;
+    private int mNumColumns;
+    private int mRowLength;
+
+    /**
+     * Creates a new reader on the specified channel. If hasHeader is set,
+     * the first line of the input is skipped.
+     *
+     * @param channel the channel to read from
+     * @param hasHeader whether the first line is a header line
+     * @throws IOException
+     */
+    public NumericCSVReader(ReadableByteChannel channel, boolean hasHeader) throws IOException {
+        this(channel, hasHeader, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a new reader on the specified channel, with an initial read
+     * buffer of bufferSize bytes. The buffer grows if a single line does
+     * not fit into it.
+     *
+     * @param channel the channel to read from
+     * @param hasHeader whether the first line is a header line
+     * @param bufferSize the initial size of the read buffer in bytes
+     * @throws IOException
+     */
+    public NumericCSVReader(ReadableByteChannel channel, boolean hasHeader, int bufferSize) throws IOException {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("buffer size must be positive");
+        }
+        mChannel = channel;
+        mBuffer = ByteBuffer.allocate(bufferSize);
+        mBuffer.flip();
+        mRow = new double [INITIAL_ROW_SIZE];
+        if (hasHeader) {
+            int end = nextLineEnd();
+            if (end >= 0) {
+                advancePastLine(end);
+            }
+        }
+    }
+
+    /**
+     * Reads the next non-blank row from the input. Returns false when there
+     * are no more rows. The values of the row are available through getRow
+     * until the next call to readRow.
+     *
+     * @return true if a row was read, false at the end of the input
+     * @throws MalformedCSVException if the row contains a value that is not a number
+     * @throws IOException if the input cannot be read
+     */
+    public boolean readRow() throws IOException {
+        while (true) {
+            int end = nextLineEnd();
+            if (end < 0) {
+                return false;
+            }
+            byte [] data = mBuffer.array();
+            int start = mBuffer.position();
+            int lineEnd = end;
+            if (lineEnd > start && data[lineEnd - 1] == '\r') {
+                lineEnd--;
+            }
+            advancePastLine(end);
+            if (!isBlank(data, start, lineEnd)) {
+                mRowLength = mBuffer.position() - start;
+                parseLine(data, start, lineEnd);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the values of the current row. The array may be longer than
+     * the row - only the first getNumColumns values are valid. The array is
+     * reused by the next call to readRow.
+     *
+     * @return the values of the current row
+     */
+    public double [] getRow() {
+        return mRow;
+    }
+
+    /**
+     * Returns the number of values in the current row.
+     *
+     * @return the number of values in the current row
+     */
+    public int getNumColumns() {
+        return mNumColumns;
+    }
+
+    /**
+     * Returns the length of the current row in bytes, including its line
+     * ending.
+     *
+     * @return the length of the current row in bytes
+     */
+    public int getRowLength() {
+        return mRowLength;
+    }
+
+    /**
+     * Returns the line number of the current row, starting at 1. Header and
+     * blank lines are included in the count.
+     *
+     * @return the line number of the current row
+     */
+    public long getLineNumber() {
+        return mLineNumber;
+    }
+
+    @Override
+    public void close() throws IOException {
+        mChannel.close();
+    }
+
+    /**
+     * Finds the end of the next line in the buffer, reading more of the
+     * input as needed. The line starts at the current buffer position. The
+     * returned index points at the newline character, or at the buffer
+     * limit if the input ends without one. Returns -1 if no input remains.
+     *
+     * @return the index of the end of the next line, or -1
+     * @throws IOException
+     */
+    private int nextLineEnd() throws IOException {
+        int searchFrom = mBuffer.position();
+        while (true) {
+            byte [] data = mBuffer.array();
+            int limit = mBuffer.limit();
+            for (int index = searchFrom; index < limit; index++) {
+                if (data[index] == '\n') {
+                    return index;
+                }
+            }
+            if (mEndOfInput) {
+                return (mBuffer.position() < limit) ? limit : -1;
+            }
+            searchFrom = limit - mBuffer.position();
+            fill();
+        }
+    }
+
+    /**
+     * Moves the buffer position past the line ending at the given index.
+     *
+     * @param end the index of the end of the line
+     */
+    private void advancePastLine(int end) {
+        mBuffer.position(Math.min(end + 1, mBuffer.limit()));
+        mLineNumber++;
+    }
+
+    /**
+     * Moves any unread bytes to the front of the buffer and reads more of
+     * the input after them. If the buffer is already full of unread bytes,
+     * its size is doubled first. After the call, the unread bytes start at
+     * position 0.
+     *
+     * @throws IOException
+     */
+    private void fill() throws IOException {
+        if (mBuffer.position() == 0 && mBuffer.limit() == mBuffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(mBuffer.capacity() * 2);
+            larger.put(mBuffer);
+            mBuffer = larger;
+        } else {
+            mBuffer.compact();
+        }
+        int read;
+        do {
+            read = mChannel.read(mBuffer);
+        } while (read == 0 && mBuffer.hasRemaining());
+        if (read < 0) {
+            mEndOfInput = true;
+        }
+        mBuffer.flip();
+    }
+
+    /**
+     * Parses all of the comma separated values between start and end into
+     * the current row.
+     *
+     * @param data the bytes to parse
+     * @param start the start of the line (inclusive)
+     * @param end the end of the line (exclusive)
+     * @throws MalformedCSVException if a value is not a number
+     */
+    private void parseLine(byte [] data, int start, int end) throws MalformedCSVException {
+        int column = 0;
+        int fieldStart = start;
+        for (int index = start; index <= end; index++) {
+            if (index == end || data[index] == ',') {
+                if (column == mRow.length) {
+                    double [] larger = new double [mRow.length * 2];
+                    System.arraycopy(mRow, 0, larger, 0, mRow.length);
+                    mRow = larger;
+                }
+                mRow[column] = parseField(data, fieldStart, index, column);
+                column++;
+                fieldStart = index + 1;
+            }
+        }
+        mNumColumns = column;
+    }
+
+    /**
+     * Parses a single field, ignoring surrounding whitespace and quotes.
+     *
+     * @param data the bytes to parse
+     * @param start the start of the field (inclusive)
+     * @param end the end of the field (exclusive)
+     * @param column the column number of the field
+     * @return the value of the field
+     * @throws MalformedCSVException if the field is not a number
+     */
+    private double parseField(byte [] data, int start, int end, int column) throws MalformedCSVException {
+        while (start < end && isWhitespace(data[start])) {
+            start++;
+        }
+        while (end > start && isWhitespace(data[end - 1])) {
+            end--;
+        }
+        if (end - start >= 2 && data[start] == '"' && data[end - 1] == '"') {
+            start++;
+            end--;
+        }
+        try {
+            return parseDouble(data, start, end);
+        } catch (NumberFormatException e) {
+            String value = new String(data, start, end - start, StandardCharsets.UTF_8);
+            throw new MalformedCSVException(mLineNumber, "column " + (column + 1) + ": [" + value + "] is not a number");
+        }
+    }
+
+    /**
+     * Parses a decimal number from a range of ASCII bytes. Numbers with at
+     * most 18 significant digits and a small decimal exponent are converted
+     * exactly with a single multiplication or division. Anything else,
+     * including NaN and Infinity, is handed off to Double.parseDouble.
+     *
+     * @param data the bytes to parse
+     * @param start the start of the number (inclusive)
+     * @param end the end of the number (exclusive)
+     * @return the parsed number
+     * @throws NumberFormatException if the bytes are not a number
+     */
+    public static double parseDouble(byte [] data, int start, int end) {
+        int index = start;
+        boolean negative = false;
+        if (index < end && (data[index] == '-' || data[index] == '+')) {
+            negative = data[index] == '-';
+            index++;
+        }
+
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean seenDigit = false;
+        while (index < end && isDigit(data[index])) {
+            mantissa = (mantissa * 10) + (data[index] - '0');
+            digits += (mantissa == 0) ? 0 : 1;
+            seenDigit = true;
+            index++;
+        }
+        if (index < end && data[index] == '.') {
+            index++;
+            while (index < end && isDigit(data[index])) {
+                mantissa = (mantissa * 10) + (data[index] - '0');
+                digits += (mantissa == 0) ? 0 : 1;
+                exponent--;
+                seenDigit = true;
+                index++;
+            }
+        }
+        if (seenDigit && index < end && (data[index] == 'e' || data[index] == 'E')) {
+            index++;
+            boolean negativeExponent = false;
+            if (index < end && (data[index] == '-' || data[index] == '+')) {
+                negativeExponent = data[index] == '-';
+                index++;
+            }
+            int explicitExponent = 0;
+            boolean seenExponentDigit = false;
+            while (index < end && isDigit(data[index]) && explicitExponent < 10000) {
+                explicitExponent = (explicitExponent * 10) + (data[index] - '0');
+                seenExponentDigit = true;
+                index++;
+            }
+            if (!seenExponentDigit) {
+                return parseDoubleSlow(data, start, end);
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+
+        if (!seenDigit || index != end || digits > MAX_FAST_DIGITS) {
+            return parseDoubleSlow(data, start, end);
+        }
+        if (mantissa == 0) {
+            return negative ? -0.0 : 0.0;
+        }
+        if (mantissa >= MAX_EXACT_MANTISSA || exponent < -22 || exponent > 22) {
+            return parseDoubleSlow(data, start, end);
+        }
+        double value = (exponent < 0) ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Parses a number with Double.parseDouble.
+     *
+     * @param data the bytes to parse
+     * @param start the start of the number (inclusive)
+     * @param end the end of the number (exclusive)
+     * @return the parsed number
+     * @throws NumberFormatException if the bytes are not a number
+     */
+    private static double parseDoubleSlow(byte [] data, int start, int end) {
+        if (start == end) {
+            throw new NumberFormatException("empty value");
+        }
+        return Double.parseDouble(new String(data, start, end - start, StandardCharsets.US_ASCII));
+    }
+
+    private static boolean isDigit(byte value) {
+        return value >= '0' && value <= '9';
+    }
+
+    private static boolean isWhitespace(byte value) {
+        return value == ' ' || value == '\t';
+    }
+
+    private static boolean isBlank(byte [] data, int start, int end) {
+        for (int index = start; index < end; index++) {
+            if (!isWhitespace(data[index])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
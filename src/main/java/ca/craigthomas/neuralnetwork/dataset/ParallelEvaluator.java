@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.jblas.DoubleMatrix;
+
+import ca.craigthomas.neuralnetwork.components.network.InferenceScratch;
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+
+/**
+ * Evaluates a network over samples split into fixed size chunks, which are
+ * scored at the same time on a fork-join pool. Each chunk is scored with an
+ * InferenceScratch that no other chunk is using at the time, so a forward
+ * pass allocates nothing, and every core can be kept busy. Scratches are
+ * reused from chunk to chunk, so there are never more of them than there 
+ * are threads in the pool. The counts of each chunk are merged as the 
+ * chunks are joined.
+ *
+ * @author thomas
+ */
+public class ParallelEvaluator {
+
+    // The default number of rows scored at once
+    public static final int DEFAULT_CHUNK_SIZE = 256;
+
+    private final NeuralNetwork mNeuralNetwork;
+    private final double mPredictionThreshold;
+    private final int mChunkSize;
+    private final ForkJoinPool mPool;
+
+    /**
+     * Creates an evaluator that scores DEFAULT_CHUNK_SIZE rows at once on
+     * the common fork-join pool.
+     *
+     * @param model a trained neural network
+     * @param predictionThreshold the prediction threshold
+     */
+    public ParallelEvaluator(NeuralNetwork model, double predictionThreshold) {
+        this(model, predictionThreshold, DEFAULT_CHUNK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates an evaluator that scores the specified number of rows at once
+     * on the specified pool.
+     *
+     * @param model a trained neural network
+     * @param predictionThreshold the prediction threshold
+     * @param chunkSize the number of rows scored at once
+     * @param pool the pool to score chunks on
+     */
+    public ParallelEvaluator(NeuralNetwork model, double predictionThreshold, int chunkSize, ForkJoinPool pool) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunk size must be positive");
+        }
+        mNeuralNetwork = model;
+        mPredictionThreshold = predictionThreshold;
+        mChunkSize = chunkSize;
+        mPool = pool;
+    }
+
+    /**
+     * Evaluates the network over every row of a DataSet, BinaryDataSet or
+     * other rows that can be copied a range at a time.
+     *
+     * @param rows the samples and truth to evaluate
+     * @return the counts of the predictions
+     */
+    public ConfusionMatrix evaluate(SampleRows rows) {
+        if (rows.getNumColsTruth() < 1) {
+            throw new IllegalArgumentException("samples have no truth to evaluate against");
+        }
+        return run(rows, null);
+    }
+
+    /**
+     * Scores every row of a DataSet, BinaryDataSet or other rows that can
+     * be copied a range at a time. The rows need not have truth.
+     *
+     * @param rows the samples to score
+     * @return the score of each row, in the first column
+     */
+    public DoubleMatrix score(SampleRows rows) {
+        int numOutputs = mNeuralNetwork.getLayerSizes()[mNeuralNetwork.getLayerSizes().length - 1];
+        DoubleMatrix scores = new DoubleMatrix(rows.getNumSamples(), numOutputs);
+        run(rows, scores);
+        return scores;
+    }
+
+    /**
+     * Scores every chunk of the rows on the pool, counting the predictions
+     * if the rows have truth, and storing the scores if a matrix is given.
+     *
+     * @param rows the samples to score
+     * @param scores the matrix to store the scores in, or null
+     * @return the counts of the predictions
+     */
+    private ConfusionMatrix run(SampleRows rows, DoubleMatrix scores) {
+        if (rows.getNumColsSamples() != mNeuralNetwork.getLayerSizes()[0]) {
+            throw new IllegalArgumentException("network expects " + mNeuralNetwork.getLayerSizes()[0] +
+                    " features, but the samples have " + rows.getNumColsSamples());
+        }
+        int numChunks = (rows.getNumSamples() + mChunkSize - 1) / mChunkSize;
+        if (numChunks == 0) {
+            return new ConfusionMatrix();
+        }
+        return mPool.invoke(new ChunkTask(rows, scores, new ConcurrentLinkedQueue<Scratch>(), 0, numChunks));
+    }
+
+    /**
+     * The buffers one chunk is scored with.
+     */
+    private static class Scratch {
+
+        private final InferenceScratch mInference;
+        private final DoubleMatrix mTruth;
+
+        Scratch(NeuralNetwork network, int rows, int numColsTruth) {
+            mInference = new InferenceScratch(network, rows);
+            mTruth = new DoubleMatrix(rows, Math.max(numColsTruth, 1));
+        }
+    }
+
+    /**
+     * Scores a range of chunks, splitting it in half until a single chunk
+     * is left.
+     */
+    private class ChunkTask extends RecursiveTask<ConfusionMatrix> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SampleRows mRows;
+        private final DoubleMatrix mScores;
+        private final ConcurrentLinkedQueue<Scratch> mScratches;
+        private final int mFirstChunk;
+        private final int mEndChunk;
+
+        ChunkTask(SampleRows rows, DoubleMatrix scores, ConcurrentLinkedQueue<Scratch> scratches, int firstChunk, int endChunk) {
+            mRows = rows;
+            mScores = scores;
+            mScratches = scratches;
+            mFirstChunk = firstChunk;
+            mEndChunk = endChunk;
+        }
+
+        @Override
+        protected ConfusionMatrix compute() {
+            if (mEndChunk - mFirstChunk > 1) {
+                int middle = (mFirstChunk + mEndChunk) >>> 1;
+                ChunkTask first = new ChunkTask(mRows, mScores, mScratches, mFirstChunk, middle);
+                ChunkTask second = new ChunkTask(mRows, mScores, mScratches, middle, mEndChunk);
+                first.fork();
+                ConfusionMatrix confusion = second.compute();
+                confusion.merge(first.join());
+                return confusion;
+            }
+
+            Scratch scratch = mScratches.poll();
+            if (scratch == null) {
+                int scratchRows = Math.min(mChunkSize, mRows.getNumSamples());
+                scratch = new Scratch(mNeuralNetwork, scratchRows, mRows.getNumColsTruth());
+            }
+            try {
+                return scoreChunk(scratch);
+            } finally {
+                mScratches.offer(scratch);
+            }
+        }
+
+        /**
+         * Scores the single chunk of the task. Only the last chunk can be 
+         * partly filled; the rows after the end are left over from the
+         * previous chunk, and are scored but not counted.
+         *
+         * @param scratch the buffers to score the chunk with
+         * @return the counts of the predictions of the chunk
+         */
+        private ConfusionMatrix scoreChunk(Scratch scratch) {
+            int start = mFirstChunk * mChunkSize;
+            int end = Math.min(start + mChunkSize, mRows.getNumSamples());
+            int rows = end - start;
+            mRows.copySamples(start, end, scratch.mInference.getSamples(), 0);
+            DoubleMatrix output = scratch.mInference.feedForward();
+
+            ConfusionMatrix confusion = new ConfusionMatrix();
+            if (mRows.getNumColsTruth() > 0) {
+                mRows.copyTruth(start, end, scratch.mTruth, 0);
+                confusion.add(output, scratch.mTruth, rows, mPredictionThreshold);
+            }
+            if (mScores != null) {
+                for (int column = 0; column < output.columns; column++) {
+                    System.arraycopy(output.data, column * output.rows, mScores.data, (column * mScores.rows) + start, rows);
+                }
+            }
+            return confusion;
+        }
+    }
+}
@@ -25,7 +25,6 @@ public class Prediction {
 
     private NeuralNetwork mNeuralNetwork;
     private DoubleMatrix mSamples;
-    private DoubleMatrix mTruth;
     private double mTruePositives = 0.0;
     private double mTrueNegatives = 0.0;
     private double mFalsePositives = 0.0;
@@ -34,10 +33,8 @@ public class Prediction {
     private double mPrecision = 0.0;
     private double mRecall = 0.0;
     private double mF1 = 0.0;
-    private DoubleMatrix mTruePositiveSamples;
-    private DoubleMatrix mTrueNegativeSamples;
-    private DoubleMatrix mFalsePositiveSamples;
-    private DoubleMatrix mFalseNegativeSamples;
+    private int [][] mClassIndices;
+    private DoubleMatrix [] mClassSamples;
     
     /**
      * Constructor method for the prediction class. Needs a trained NeuralNetwork
@@ -52,75 +49,99 @@ public class Prediction {
     public Prediction(NeuralNetwork model, double predictionThreshold) {
         mNeuralNetwork = model;
         mPredictionThreshold = predictionThreshold;
+        mClassIndices = new int [FALSE_NEG + 1][];
+        mClassSamples = new DoubleMatrix [FALSE_NEG + 1];
     }
     
     /**
-     * Saves the sample to one of four different DoubleMatrix, depending on the
-     * type of sample it is (True Positive, True Negative, etc).
+     * Returns the type of a sample (True Positive, True Negative, etc) from 
+     * its prediction and its truth.
      * 
-     * @param sample the sample to save
-     * @param type the type of sample it is
+     * @param prediction the value predicted for the sample
+     * @param truth the true value of the sample
+     * @return the type of the sample
      */
-    protected void saveSampleToClass(DoubleMatrix sample, int type) {
-        switch (type) {
-        case TRUE_POS:
-            mTruePositiveSamples = (mTruePositiveSamples == null) ? sample : DoubleMatrix.concatVertically(mTruePositiveSamples, sample);
-            break;
-            
-        case TRUE_NEG:
-            mTrueNegativeSamples = (mTrueNegativeSamples == null) ? sample : DoubleMatrix.concatVertically(mTrueNegativeSamples, sample);
-            break;
-
-        case FALSE_POS:
-            mFalsePositiveSamples = (mFalsePositiveSamples == null) ? sample : DoubleMatrix.concatVertically(mFalsePositiveSamples, sample);
-            break;
-
-        case FALSE_NEG:
-            mFalseNegativeSamples = (mFalseNegativeSamples == null) ? sample : DoubleMatrix.concatVertically(mFalseNegativeSamples, sample);
-            break;
+    private int getType(double prediction, double truth) {
+        boolean predicted = prediction > mPredictionThreshold;
+        boolean actual = truth > mPredictionThreshold;
+        if (actual) {
+            return predicted ? TRUE_POS : FALSE_NEG;
         }
+        return predicted ? FALSE_POS : TRUE_NEG;
     }
     
     /**
      * Given a set of data samples, make predictions. The DataSet must have
      * been previously split into a training and testing pair using
      * splitData. It is also good to have randomized the data with 
-     * randomize().
+     * randomize(). Only the row number of each sample is recorded against 
+     * its type - the samples of a type are gathered when they are first 
+     * asked for, so the samples of the DataSet must not be changed until 
+     * then.
      * 
      * @param samples the set of samples to predict
      */
     public void predict(DataSet samples) {
-        mSamples = samples.getSamples().dup();
-        mTruth = samples.getTruth().dup();
+        mSamples = samples.getSamples();
+        DoubleMatrix truth = samples.getTruth();
         DoubleMatrix predictions = mNeuralNetwork.predict(mSamples);
-                
+        
+        // The first column of each matrix is held at the start of its data
+        int [] types = new int [predictions.rows];
+        int [] counts = new int [FALSE_NEG + 1];
         for (int index = 0; index < predictions.rows; index++) {
-            int prediction = (predictions.get(index, 0) > mPredictionThreshold) ? 1 : 0;
-            int actual = (mTruth.get(index, 0) > mPredictionThreshold) ? 1 : 0;
-            DoubleMatrix sample = mSamples.getRow(index);
-            if (actual == 1) {
-                if (prediction == actual) {
-                    mTruePositives += 1.0;
-                    saveSampleToClass(sample, TRUE_POS);
-                } else {
-                    mFalseNegatives += 1.0;
-                    saveSampleToClass(sample, FALSE_NEG);
-                }
-            } else {
-                if (prediction == actual) {
-                    mTrueNegatives += 1.0;
-                    saveSampleToClass(sample, TRUE_NEG);
-                } else {
-                    mFalsePositives += 1.0;
-                    saveSampleToClass(sample, FALSE_POS);
-                }
-            }
+            types[index] = getType(predictions.data[index], truth.data[index]);
+            counts[types[index]]++;
+        }
+        for (int type = TRUE_POS; type <= FALSE_NEG; type++) {
+            mClassIndices[type] = new int [counts[type]];
+            mClassSamples[type] = null;
+            counts[type] = 0;
+        }
+        for (int index = 0; index < types.length; index++) {
+            int type = types[index];
+            mClassIndices[type][counts[type]++] = index;
         }
+        
+        mTruePositives = mClassIndices[TRUE_POS].length;
+        mTrueNegatives = mClassIndices[TRUE_NEG].length;
+        mFalsePositives = mClassIndices[FALSE_POS].length;
+        mFalseNegatives = mClassIndices[FALSE_NEG].length;
         mPrecision = mTruePositives / (mTruePositives + mFalsePositives);
         mRecall = mTruePositives / (mTruePositives + mFalseNegatives);
         mF1 = 2 * (mPrecision * mRecall) / (mPrecision + mRecall);
     }
     
+    /**
+     * Returns the row numbers of the samples of one type (True Positive, 
+     * True Negative, etc), in the order they appear in the DataSet.
+     * 
+     * @param type the type of sample
+     * @return the row numbers of the samples, or null if nothing has been
+     *         predicted
+     */
+    protected int [] getSampleIndices(int type) {
+        return mClassIndices[type];
+    }
+    
+    /**
+     * Gathers the samples of one type into a new matrix the first time they
+     * are asked for.
+     * 
+     * @param type the type of sample
+     * @return the samples of the type, or null if there are none
+     */
+    private DoubleMatrix getSamples(int type) {
+        int [] indices = mClassIndices[type];
+        if (indices == null || indices.length == 0) {
+            return null;
+        }
+        if (mClassSamples[type] == null) {
+            mClassSamples[type] = mSamples.getRows(indices);
+        }
+        return mClassSamples[type];
+    }
+    
     /**
      * Gets the overall precision.
      * 
@@ -190,7 +211,7 @@ public class Prediction {
      * @return the samples that were true positives
      */
     public DoubleMatrix getTruePositiveSamples() {
-        return mTruePositiveSamples;
+        return getSamples(TRUE_POS);
     }
     
     /**
@@ -199,7 +220,7 @@ public class Prediction {
      * @return the samples that were true negatives
      */
     public DoubleMatrix getTrueNegativeSamples() {
-        return mTrueNegativeSamples;
+        return getSamples(TRUE_NEG);
     }
     
     /**
@@ -208,7 +229,7 @@ public class Prediction {
      * @return the samples that were false positives
      */
     public DoubleMatrix getFalsePositiveSamples() {
-        return mFalsePositiveSamples;
+        return getSamples(FALSE_POS);
     }
     
     /**
@@ -217,6 +238,6 @@ public class Prediction {
      * @return the samples that were false negatives
      */
     public DoubleMatrix getFalseNegativeSamples() {
-        return mFalseNegativeSamples;
+        return getSamples(FALSE_NEG);
     }
 }
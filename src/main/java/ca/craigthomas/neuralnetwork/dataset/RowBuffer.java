@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import java.util.List;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * A growable block of rows stored as primitive doubles in row-major order.
+ * Used to collect rows whose total count is not known in advance, before
+ * copying them into a DoubleMatrix in a single pass.
+ *
+ * @author thomas
+ */
+public class RowBuffer {
+
+    // The number of values to allocate space for initially, so that wide
+    // rows start with a few rows rather than a few hundred megabytes
+    private static final int INITIAL_VALUES = 64 * 1024;
+
+    private final int mNumColumns;
+    private double [] mData;
+    private int mNumRows;
+
+    /**
+     * Creates a new, empty buffer for rows with the specified number of
+     * columns.
+     *
+     * @param numColumns the number of columns in each row
+     */
+    public RowBuffer(int numColumns) {
+        this(numColumns, INITIAL_VALUES / Math.max(1, numColumns));
+    }
+
+    /**
+     * Creates a new, empty buffer for rows with the specified number of
+     * columns, with space for expectedRows rows. Space is allocated for at
+     * least one row, and the buffer still grows if more rows are added.
+     *
+     * @param numColumns the number of columns in each row
+     * @param expectedRows the number of rows to allocate space for
+     */
+    public RowBuffer(int numColumns, int expectedRows) {
+        if (numColumns < 0) {
+            throw new IllegalArgumentException("number of columns must not be negative");
+        }
+        long maxRows = Integer.MAX_VALUE / Math.max(1, numColumns);
+        mNumColumns = numColumns;
+        mData = new double [numColumns * (int)Math.max(1, Math.min(expectedRows, maxRows))];
+    }
+
+    /**
+     * Appends a row to the buffer. Only the first getNumColumns values of
+     * the row are copied.
+     *
+     * @param row the values of the row to add
+     */
+    public void addRow(double [] row) {
+        int offset = mNumRows * mNumColumns;
+        if (offset + mNumColumns > mData.length) {
+            double [] larger = new double [Math.max(mData.length + (mData.length >> 1), offset + mNumColumns)];
+            System.arraycopy(mData, 0, larger, 0, offset);
+            mData = larger;
+        }
+        System.arraycopy(row, 0, mData, offset, mNumColumns);
+        mNumRows++;
+    }
+
+    /**
+     * Returns the number of rows in the buffer.
+     *
+     * @return the number of rows
+     */
+    public int getNumRows() {
+        return mNumRows;
+    }
+
+    /**
+     * Returns the number of rows the buffer can hold before it must grow.
+     *
+     * @return the number of rows space is allocated for
+     */
+    int getCapacity() {
+        return (mNumColumns == 0) ? 0 : mData.length / mNumColumns;
+    }
+
+    /**
+     * Returns the number of columns in each row.
+     *
+     * @return the number of columns
+     */
+    public int getNumColumns() {
+        return mNumColumns;
+    }
+
+    /**
+     * Returns a single value from the buffer.
+     *
+     * @param row the row of the value
+     * @param column the column of the value
+     * @return the value at the specified row and column
+     */
+    public double get(int row, int column) {
+        return mData[(row * mNumColumns) + column];
+    }
+
+    /**
+     * Copies a range of columns from every row into a new DoubleMatrix.
+     * Returns null if the buffer is empty.
+     *
+     * @param startColumn the first column to copy (inclusive)
+     * @param endColumn the last column to copy (exclusive)
+     * @return a new matrix holding the specified columns
+     */
+    public DoubleMatrix toMatrix(int startColumn, int endColumn) {
+        if (mNumRows == 0) {
+            return null;
+        }
+        DoubleMatrix result = new DoubleMatrix(mNumRows, endColumn - startColumn);
+        copyInto(result, 0, startColumn, endColumn);
+        return result;
+    }
+
+    /**
+     * Copies a range of columns from every row of several buffers into a
+     * single new DoubleMatrix, stacking the buffers in list order. All of
+     * the buffers must have the same number of columns. Returns null if the
+     * buffers are empty.
+     *
+     * @param buffers the buffers to copy from
+     * @param startColumn the first column to copy (inclusive)
+     * @param endColumn the last column to copy (exclusive)
+     * @return a new matrix holding the specified columns
+     */
+    public static DoubleMatrix toMatrix(List<RowBuffer> buffers, int startColumn, int endColumn) {
+        int numRows = 0;
+        for (RowBuffer buffer : buffers) {
+            numRows += buffer.getNumRows();
+        }
+        if (numRows == 0) {
+            return null;
+        }
+        DoubleMatrix result = new DoubleMatrix(numRows, endColumn - startColumn);
+        int targetRow = 0;
+        for (RowBuffer buffer : buffers) {
+            buffer.copyInto(result, targetRow, startColumn, endColumn);
+            targetRow += buffer.getNumRows();
+        }
+        return result;
+    }
+
+    /**
+     * Copies a range of columns from every row into the target matrix,
+     * starting at the specified target row.
+     *
+     * @param target the matrix to copy into
+     * @param targetRow the first row of the target to write
+     * @param startColumn the first column to copy (inclusive)
+     * @param endColumn the last column to copy (exclusive)
+     */
+    public void copyInto(DoubleMatrix target, int targetRow, int startColumn, int endColumn) {
+        double [] targetData = target.data;
+        for (int column = startColumn; column < endColumn; column++) {
+            int targetIndex = ((column - startColumn) * target.rows) + targetRow;
+            int sourceIndex = column;
+            for (int row = 0; row < mNumRows; row++) {
+                targetData[targetIndex + row] = mData[sourceIndex];
+                sourceIndex += mNumColumns;
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * Samples and ground truth that any range of rows can be copied out of,
+ * such as a DataSet in memory, or a BinaryDataSet mapped from a file. 
+ * Evaluators copy a chunk of rows at a time, so that the rows never have to
+ * be gathered into one matrix.
+ *
+ * @author thomas
+ */
+public interface SampleRows {
+
+    /**
+     * Returns the number of samples (rows).
+     *
+     * @return the number of samples
+     */
+    int getNumSamples();
+
+    /**
+     * Returns the number of columns in the Samples.
+     *
+     * @return the number of sample columns
+     */
+    int getNumColsSamples();
+
+    /**
+     * Returns the number of columns in the Truth data.
+     *
+     * @return the number of truth columns, 0 if there is no truth
+     */
+    int getNumColsTruth();
+
+    /**
+     * Copies the samples for the rows from start to end into the target
+     * matrix, beginning at targetRow.
+     *
+     * @param start the first row to copy (inclusive)
+     * @param end the last row to copy (exclusive)
+     * @param target the matrix to copy into
+     * @param targetRow the first row of the target to write
+     */
+    void copySamples(int start, int end, DoubleMatrix target, int targetRow);
+
+    /**
+     * Copies the truth values for the rows from start to end into the target
+     * matrix, beginning at targetRow.
+     *
+     * @param start the first row to copy (inclusive)
+     * @param end the last row to copy (exclusive)
+     * @param target the matrix to copy into
+     * @param targetRow the first row of the target to write
+     */
+    void copyTruth(int start, int end, DoubleMatrix target, int targetRow);
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.jblas.DoubleMatrix;
+
+/**
+ * Samples and ground truth that can only be read from start to finish, a
+ * chunk of rows at a time, such as the rows of a CSV file, or the images in
+ * a directory. Only the chunk being read is held in memory, so a source can
+ * hold any number of samples.
+ *
+ * @author thomas
+ */
+public interface SampleSource extends Closeable {
+
+    /**
+     * Returns the number of columns in the Samples.
+     *
+     * @return the number of sample columns
+     */
+    int getNumColsSamples();
+
+    /**
+     * Reads the next rows into the first rows of the matrices, reading no
+     * more rows than the samples matrix has. The samples matrix must have
+     * getNumColsSamples columns, and the truth matrix a single column that
+     * receives the truth of each sample.
+     *
+     * @param samples the matrix to read samples into
+     * @param truth the matrix to read truth values into
+     * @return the number of rows read, 0 once every row has been read
+     * @throws IOException if the rows cannot be read
+     */
+    int read(DoubleMatrix samples, DoubleMatrix truth) throws IOException;
+}
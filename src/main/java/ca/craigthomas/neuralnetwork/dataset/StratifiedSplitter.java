@@ -0,0 +1,303 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Splits a DataSet into training and testing partitions while keeping the
+ * proportion of each class the same in every partition. The rows of the
+ * DataSet are bucketed by class once, when the splitter is created. Each
+ * split then shuffles the buckets and hands out index ranges from them, so
+ * a split takes time proportional to the number of rows. The class of a row
+ * is the value of the first column of its ground truth.
+ *
+ * Partitions are returned as arrays of row indices into the DataSet, in its
+ * row order at the time the splitter was created. Use DataSet.subset to turn
+ * them into DataSets.
+ *
+ * @author thomas
+ */
+public class StratifiedSplitter {
+
+    private final Random mRandom;
+    private final int mNumRows;
+    // The label of each class, in ascending order
+    private final double [] mLabels;
+    // The rows that belong to each class, in the same order as mLabels
+    private final int [][] mClassRows;
+
+    /**
+     * Buckets the rows of the DataSet by class. The DataSet must have ground
+     * truth.
+     *
+     * @param dataSet the DataSet to split
+     * @param random the random number generator used to shuffle the classes
+     */
+    public StratifiedSplitter(DataSet dataSet, Random random) {
+        if (!dataSet.hasTruth()) {
+            throw new IllegalArgumentException("cannot stratify a DataSet without truth");
+        }
+        mRandom = random;
+        mNumRows = dataSet.getNumSamples();
+
+        double [] labels = new double [mNumRows];
+        if (mNumRows > 0) {
+            System.arraycopy(dataSet.getTruth(0, mNumRows).data, 0, labels, 0, mNumRows);
+        }
+        Map<Double, Integer> classes = new HashMap<Double, Integer>();
+        for (int row = 0; row < mNumRows; row++) {
+            if (!classes.containsKey(labels[row])) {
+                classes.put(labels[row], classes.size());
+            }
+        }
+        mLabels = new double [classes.size()];
+        for (Double label : classes.keySet()) {
+            mLabels[classes.get(label)] = label;
+        }
+        Arrays.sort(mLabels);
+        for (int index = 0; index < mLabels.length; index++) {
+            classes.put(mLabels[index], index);
+        }
+
+        int [] counts = new int [mLabels.length];
+        int [] rowClasses = new int [mNumRows];
+        for (int row = 0; row < mNumRows; row++) {
+            rowClasses[row] = classes.get(labels[row]);
+            counts[rowClasses[row]]++;
+        }
+        mClassRows = new int [mLabels.length][];
+        for (int index = 0; index < mLabels.length; index++) {
+            mClassRows[index] = new int [counts[index]];
+            counts[index] = 0;
+        }
+        for (int row = 0; row < mNumRows; row++) {
+            int rowClass = rowClasses[row];
+            mClassRows[rowClass][counts[rowClass]++] = row;
+        }
+    }
+
+    /**
+     * Returns the number of distinct classes in the DataSet.
+     *
+     * @return the number of classes
+     */
+    public int getNumClasses() {
+        return mLabels.length;
+    }
+
+    /**
+     * Returns the label of the specified class. Classes are numbered in
+     * ascending order of their labels.
+     *
+     * @param index the class to look up
+     * @return the label of the class
+     */
+    public double getLabel(int index) {
+        return mLabels[index];
+    }
+
+    /**
+     * Returns the number of rows that belong to the specified class.
+     *
+     * @param index the class to look up
+     * @return the number of rows in the class
+     */
+    public int getClassSize(int index) {
+        return mClassRows[index].length;
+    }
+
+    /**
+     * Splits the rows into a training and a testing partition. The training
+     * partition receives percentage percent of the rows of each class,
+     * rounded up. If balance is set, every class is undersampled down to the
+     * size of the smallest class in the training partition, and the rows
+     * that are left out are added to the testing partition instead.
+     *
+     * @param percentage the percentage of each class to put into training
+     * @param balance whether to undersample the training partition
+     * @return the training row indices (left) and testing row indices (right)
+     */
+    public Pair<int [], int []> split(int percentage, boolean balance) {
+        if (percentage < 0 || percentage > 100) {
+            throw new IllegalArgumentException("percentage must be between 0 and 100");
+        }
+        int [][] shuffled = shuffleClasses();
+        int [] trainingCounts = new int [shuffled.length];
+        for (int index = 0; index < shuffled.length; index++) {
+            trainingCounts[index] = (int)Math.ceil((percentage / 100.0) * shuffled[index].length);
+        }
+        if (balance) {
+            undersample(trainingCounts);
+        }
+
+        boolean [] training = new boolean [mNumRows];
+        int [] trainingRows = new int [sum(trainingCounts)];
+        int next = 0;
+        for (int index = 0; index < shuffled.length; index++) {
+            for (int position = 0; position < trainingCounts[index]; position++) {
+                int row = shuffled[index][position];
+                training[row] = true;
+                trainingRows[next++] = row;
+            }
+        }
+        shuffle(trainingRows);
+        return Pair.of(trainingRows, unmarkedRows(training, mNumRows - trainingRows.length));
+    }
+
+    /**
+     * Splits the rows into folds for k-fold cross validation. Each class is
+     * shuffled and dealt into numFolds contiguous ranges, so every row is in
+     * exactly one testing partition, and each testing partition has the same
+     * class proportions as the whole DataSet. The training partition of each
+     * fold holds every row outside of its testing partition. If balance is
+     * set, the classes in each training partition are undersampled down to
+     * the size of the smallest one; the rows left out are not used by that
+     * fold.
+     *
+     * @param numFolds the number of folds to create
+     * @param balance whether to undersample the training partitions
+     * @return the training (left) and testing (right) row indices of each fold
+     */
+    public List<Pair<int [], int []>> kFold(int numFolds, boolean balance) {
+        if (numFolds < 2) {
+            throw new IllegalArgumentException("need at least 2 folds");
+        }
+        int [][] shuffled = shuffleClasses();
+        List<Pair<int [], int []>> folds = new ArrayList<Pair<int [], int []>>(numFolds);
+        for (int fold = 0; fold < numFolds; fold++) {
+            int [] testStarts = new int [shuffled.length];
+            int [] testEnds = new int [shuffled.length];
+            int [] trainingCounts = new int [shuffled.length];
+            boolean [] testing = new boolean [mNumRows];
+            int numTesting = 0;
+            for (int index = 0; index < shuffled.length; index++) {
+                int size = shuffled[index].length;
+                testStarts[index] = (int)(((long)size * fold) / numFolds);
+                testEnds[index] = (int)(((long)size * (fold + 1)) / numFolds);
+                trainingCounts[index] = size - (testEnds[index] - testStarts[index]);
+                for (int position = testStarts[index]; position < testEnds[index]; position++) {
+                    testing[shuffled[index][position]] = true;
+                }
+                numTesting += testEnds[index] - testStarts[index];
+            }
+            if (balance) {
+                undersample(trainingCounts);
+            }
+
+            int [] trainingRows = new int [sum(trainingCounts)];
+            int next = 0;
+            for (int index = 0; index < shuffled.length; index++) {
+                int [] rows = shuffled[index];
+                int remaining = trainingCounts[index];
+                for (int position = 0; position < rows.length && remaining > 0; position++) {
+                    if (position < testStarts[index] || position >= testEnds[index]) {
+                        trainingRows[next++] = rows[position];
+                        remaining--;
+                    }
+                }
+            }
+            shuffle(trainingRows);
+            folds.add(Pair.of(trainingRows, markedRows(testing, numTesting)));
+        }
+        return folds;
+    }
+
+    /**
+     * Returns a shuffled copy of the rows in every class.
+     *
+     * @return the shuffled rows of each class
+     */
+    private int [][] shuffleClasses() {
+        int [][] result = new int [mClassRows.length][];
+        for (int index = 0; index < mClassRows.length; index++) {
+            result[index] = mClassRows[index].clone();
+            shuffle(result[index]);
+        }
+        return result;
+    }
+
+    /**
+     * Shuffles the array in place with a Fisher-Yates shuffle.
+     *
+     * @param values the values to shuffle
+     */
+    private void shuffle(int [] values) {
+        for (int index = values.length - 1; index > 0; index--) {
+            int other = mRandom.nextInt(index + 1);
+            int temp = values[index];
+            values[index] = values[other];
+            values[other] = temp;
+        }
+    }
+
+    /**
+     * Lowers every count to the smallest non-zero count.
+     *
+     * @param counts the counts to undersample
+     */
+    private static void undersample(int [] counts) {
+        int smallest = Integer.MAX_VALUE;
+        for (int count : counts) {
+            if (count > 0) {
+                smallest = Math.min(smallest, count);
+            }
+        }
+        for (int index = 0; index < counts.length; index++) {
+            counts[index] = Math.min(counts[index], smallest);
+        }
+    }
+
+    private static int sum(int [] values) {
+        int total = 0;
+        for (int value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the indices of the rows that are marked, in ascending order.
+     *
+     * @param marked which rows are marked
+     * @param count the number of marked rows
+     * @return the marked rows
+     */
+    private static int [] markedRows(boolean [] marked, int count) {
+        int [] result = new int [count];
+        int next = 0;
+        for (int row = 0; row < marked.length; row++) {
+            if (marked[row]) {
+                result[next++] = row;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the indices of the rows that are not marked, in ascending order.
+     *
+     * @param marked which rows are marked
+     * @param count the number of unmarked rows
+     * @return the unmarked rows
+     */
+    private static int [] unmarkedRows(boolean [] marked, int count) {
+        int [] result = new int [count];
+        int next = 0;
+        for (int row = 0; row < marked.length; row++) {
+            if (!marked[row]) {
+                result[next++] = row;
+            }
+        }
+        return result;
+    }
+}
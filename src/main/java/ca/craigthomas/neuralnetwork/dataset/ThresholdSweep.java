@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+import org.jblas.DoubleMatrix;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+
+/**
+ * Scores a set of data samples once, and measures how the network would do
+ * at every prediction threshold at the same time, rather than at the single
+ * threshold of a Prediction. The scores of the positive and negative 
+ * samples are sorted, and walked from highest to lowest, so that each
+ * distinct score adds one point to the ROC and precision-recall curves. 
+ * Computes the area under the ROC curve, the average precision, and the 
+ * threshold with the best F-1 score.
+ * 
+ * The threshold of each point follows the rule of Prediction - a sample is
+ * predicted positive when its score is above the threshold. Thresholds lie
+ * halfway between neighbouring scores, so the best threshold is not on the
+ * edge of a sample that was seen.
+ * 
+ * @author thomas
+ */
+public class ThresholdSweep {
+    
+    // Truth values above this are positive samples
+    public static final double TRUTH_THRESHOLD = 0.5;
+    // The columns of the CSV file written by writeCSV
+    public static final String CSV_HEADER = "threshold,true_positives,false_positives,true_negatives," +
+            "false_negatives,precision,recall,false_positive_rate,f1";
+
+    private NeuralNetwork mNeuralNetwork;
+    private int mPositives;
+    private int mNegatives;
+    private int mNumPoints;
+    private double [] mThresholds;
+    private int [] mTruePositives;
+    private int [] mFalsePositives;
+    private double mRocAuc;
+    private double mAveragePrecision;
+    private int mBestPoint;
+    
+    /**
+     * Creates a sweep for the specified network.
+     * 
+     * @param model a trained neural network
+     */
+    public ThresholdSweep(NeuralNetwork model) {
+        mNeuralNetwork = model;
+        mThresholds = new double [0];
+        mTruePositives = new int [0];
+        mFalsePositives = new int [0];
+    }
+    
+    /**
+     * Scores the set of data samples with the network, and measures every
+     * threshold.
+     * 
+     * @param samples the set of samples to predict
+     */
+    public void sweep(DataSet samples) {
+        sweep(mNeuralNetwork.feedForward(samples.getSamples()), samples.getTruth());
+    }
+    
+    /**
+     * Measures every threshold over scores that have already been computed.
+     * Scores that are not a number are ignored.
+     * 
+     * @param scores the score of each sample, in the first column
+     * @param truth the truth of each sample, in the first column
+     */
+    public void sweep(DoubleMatrix scores, DoubleMatrix truth) {
+        double [] positives = new double [scores.rows];
+        double [] negatives = new double [scores.rows];
+        mPositives = 0;
+        mNegatives = 0;
+        
+        // The first column of each matrix is held at the start of its data
+        for (int index = 0; index < scores.rows; index++) {
+            double score = scores.data[index];
+            if (Double.isNaN(score)) {
+                continue;
+            }
+            if (truth.data[index] > TRUTH_THRESHOLD) {
+                positives[mPositives++] = score;
+            } else {
+                negatives[mNegatives++] = score;
+            }
+        }
+        Arrays.sort(positives, 0, mPositives);
+        Arrays.sort(negatives, 0, mNegatives);
+        
+        int capacity = mPositives + mNegatives + 1;
+        if (mThresholds.length < capacity) {
+            mThresholds = new double [capacity];
+            mTruePositives = new int [capacity];
+            mFalsePositives = new int [capacity];
+        }
+        
+        // The first point predicts nothing as positive
+        int positive = mPositives - 1;
+        int negative = mNegatives - 1;
+        int truePositives = 0;
+        int falsePositives = 0;
+        double score = highest(positives, positive, negatives, negative);
+        mNumPoints = 0;
+        mThresholds[0] = score;
+        mTruePositives[0] = 0;
+        mFalsePositives[0] = 0;
+        mNumPoints++;
+        
+        // Each distinct score moves every sample with that score to positive
+        while (positive >= 0 || negative >= 0) {
+            while (positive >= 0 && positives[positive] == score) {
+                truePositives++;
+                positive--;
+            }
+            while (negative >= 0 && negatives[negative] == score) {
+                falsePositives++;
+                negative--;
+            }
+            double next = highest(positives, positive, negatives, negative);
+            mThresholds[mNumPoints] = between(next, score);
+            mTruePositives[mNumPoints] = truePositives;
+            mFalsePositives[mNumPoints] = falsePositives;
+            mNumPoints++;
+            score = next;
+        }
+        
+        mRocAuc = 0.0;
+        mAveragePrecision = 0.0;
+        mBestPoint = 0;
+        for (int point = 1; point < mNumPoints; point++) {
+            mRocAuc += (getFalsePositiveRate(point) - getFalsePositiveRate(point - 1)) *
+                    (getRecall(point) + getRecall(point - 1)) / 2;
+            mAveragePrecision += (getRecall(point) - getRecall(point - 1)) * getPrecision(point);
+            if (getF1(point) > getF1(mBestPoint)) {
+                mBestPoint = point;
+            }
+        }
+    }
+    
+    /**
+     * Returns the highest score left in either of two sorted arrays, or
+     * negative infinity if both are used up.
+     * 
+     * @param positives the sorted scores of positive samples
+     * @param positive the last positive score left
+     * @param negatives the sorted scores of negative samples
+     * @param negative the last negative score left
+     * @return the highest score left
+     */
+    private static double highest(double [] positives, int positive, double [] negatives, int negative) {
+        double highest = Double.NEGATIVE_INFINITY;
+        if (positive >= 0) {
+            highest = positives[positive];
+        }
+        if (negative >= 0 && negatives[negative] > highest) {
+            highest = negatives[negative];
+        }
+        return highest;
+    }
+    
+    /**
+     * Returns a threshold that every score above next is above, but that
+     * the score itself is not. The threshold is halfway between the two when
+     * they are far enough apart to have a value between them.
+     * 
+     * @param next the next lower score, or negative infinity
+     * @param score the lowest score that must be above the threshold
+     * @return the threshold between the scores
+     */
+    private static double between(double next, double score) {
+        if (next == Double.NEGATIVE_INFINITY) {
+            return Math.nextDown(score);
+        }
+        double threshold = next + ((score - next) / 2);
+        return (threshold < score) ? threshold : next;
+    }
+    
+    /**
+     * Gets the number of points on the curves, one more than the number of 
+     * distinct scores.
+     * 
+     * @return the number of points
+     */
+    public int getNumPoints() {
+        return mNumPoints;
+    }
+    
+    /**
+     * Gets the threshold of a point. Points are in order of decreasing
+     * threshold.
+     * 
+     * @param point the point on the curves
+     * @return the threshold of the point
+     */
+    public double getThreshold(int point) {
+        return mThresholds[point];
+    }
+    
+    /**
+     * Gets the number of true positives at a point.
+     * 
+     * @param point the point on the curves
+     * @return the number of true positives
+     */
+    public int getTruePositives(int point) {
+        return mTruePositives[point];
+    }
+    
+    /**
+     * Gets the number of false positives at a point.
+     * 
+     * @param point the point on the curves
+     * @return the number of false positives
+     */
+    public int getFalsePositives(int point) {
+        return mFalsePositives[point];
+    }
+    
+    /**
+     * Gets the number of true negatives at a point.
+     * 
+     * @param point the point on the curves
+     * @return the number of true negatives
+     */
+    public int getTrueNegatives(int point) {
+        return mNegatives - mFalsePositives[point];
+    }
+    
+    /**
+     * Gets the number of false negatives at a point.
+     * 
+     * @param point the point on the curves
+     * @return the number of false negatives
+     */
+    public int getFalseNegatives(int point) {
+        return mPositives - mTruePositives[point];
+    }
+    
+    /**
+     * Gets the precision at a point. A point that predicts nothing as 
+     * positive has a precision of 1.
+     * 
+     * @param point the point on the curves
+     * @return the precision
+     */
+    public double getPrecision(int point) {
+        int predicted = mTruePositives[point] + mFalsePositives[point];
+        return (predicted == 0) ? 1.0 : (double)mTruePositives[point] / predicted;
+    }
+    
+    /**
+     * Gets the recall, or true positive rate, at a point.
+     * 
+     * @param point the point on the curves
+     * @return the recall
+     */
+    public double getRecall(int point) {
+        return (double)mTruePositives[point] / mPositives;
+    }
+    
+    /**
+     * Gets the false positive rate at a point.
+     * 
+     * @param point the point on the curves
+     * @return the false positive rate
+     */
+    public double getFalsePositiveRate(int point) {
+        return (double)mFalsePositives[point] / mNegatives;
+    }
+    
+    /**
+     * Gets the F-1 score at a point. A point with no true positives has a
+     * score of 0.
+     * 
+     * @param point the point on the curves
+     * @return the F1 score
+     */
+    public double getF1(int point) {
+        int truePositives = mTruePositives[point];
+        return (truePositives == 0) ? 0.0 :
+            (2.0 * truePositives) / ((2.0 * truePositives) + mFalsePositives[point] + getFalseNegatives(point));
+    }
+    
+    /**
+     * Gets the area under the ROC curve. Not a number if there were no 
+     * positive or no negative samples.
+     * 
+     * @return the area under the ROC curve
+     */
+    public double getRocAuc() {
+        return mRocAuc;
+    }
+    
+    /**
+     * Gets the average precision, the area under the precision-recall curve
+     * taken as steps at each recall. Not a number if there were no positive
+     * samples.
+     * 
+     * @return the average precision
+     */
+    public double getAveragePrecision() {
+        return mAveragePrecision;
+    }
+    
+    /**
+     * Gets the threshold with the best F-1 score. The highest such threshold
+     * is returned if several have the same score.
+     * 
+     * @return the best threshold
+     */
+    public double getBestThreshold() {
+        return mThresholds[mBestPoint];
+    }
+    
+    /**
+     * Gets the F-1 score at the best threshold.
+     * 
+     * @return the best F1 score
+     */
+    public double getBestF1() {
+        return getF1(mBestPoint);
+    }
+    
+    /**
+     * Writes every point of the curves as CSV, one line per point, after a
+     * header line naming the columns.
+     * 
+     * @param output where to write the points
+     * @throws IOException if the points cannot be written
+     */
+    public void writeCSV(Writer output) throws IOException {
+        output.write(CSV_HEADER);
+        output.write('\n');
+        for (int point = 0; point < mNumPoints; point++) {
+            output.write(mThresholds[point] + "," + mTruePositives[point] + "," + mFalsePositives[point] + "," +
+                    getTrueNegatives(point) + "," + getFalseNegatives(point) + "," + getPrecision(point) + "," +
+                    getRecall(point) + "," + getFalsePositiveRate(point) + "," + getF1(point) + "\n");
+        }
+    }
+}
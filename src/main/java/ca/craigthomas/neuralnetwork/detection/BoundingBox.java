@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.detection;
+
+/**
+ * A rectangular region of an image, along with the score the network gave
+ * it. The left and top coordinates are inclusive, while the right and bottom
+ * coordinates are exclusive, as with Image.getSubImage.
+ *
+ * @author thomas
+ */
+public class BoundingBox {
+
+    private final int mLeft;
+    private final int mTop;
+    private final int mRight;
+    private final int mBottom;
+    private final double mScore;
+
+    /**
+     * Creates a new bounding box.
+     *
+     * @param left the left x coordinate (inclusive)
+     * @param top the top y coordinate (inclusive)
+     * @param right the right x coordinate (exclusive)
+     * @param bottom the bottom y coordinate (exclusive)
+     * @param score the score of the region
+     */
+    public BoundingBox(int left, int top, int right, int bottom, double score) {
+        if (right < left || bottom < top) {
+            throw new IllegalArgumentException("bounding box has negative size");
+        }
+        mLeft = left;
+        mTop = top;
+        mRight = right;
+        mBottom = bottom;
+        mScore = score;
+    }
+
+    public int getLeft() {
+        return mLeft;
+    }
+
+    public int getTop() {
+        return mTop;
+    }
+
+    public int getRight() {
+        return mRight;
+    }
+
+    public int getBottom() {
+        return mBottom;
+    }
+
+    public int getWidth() {
+        return mRight - mLeft;
+    }
+
+    public int getHeight() {
+        return mBottom - mTop;
+    }
+
+    /**
+     * Returns the score the network gave the region. Higher scores are more
+     * likely to contain the object.
+     *
+     * @return the score of the region
+     */
+    public double getScore() {
+        return mScore;
+    }
+
+    /**
+     * Returns a copy of the box with a different score.
+     *
+     * @param score the score of the new box
+     * @return a new box with the same coordinates
+     */
+    public BoundingBox withScore(double score) {
+        return new BoundingBox(mLeft, mTop, mRight, mBottom, score);
+    }
+
+    /**
+     * Returns the area of the box in pixels.
+     *
+     * @return the area of the box
+     */
+    public long getArea() {
+        return (long)getWidth() * getHeight();
+    }
+
+    /**
+     * Returns the area of the intersection of this box and another box,
+     * divided by the area of their union. The result is 0 for boxes that
+     * do not overlap, and 1 for identical boxes.
+     *
+     * @param other the box to compare against
+     * @return the intersection over union of the boxes
+     */
+    public double getIntersectionOverUnion(BoundingBox other) {
+        long width = Math.min(mRight, other.mRight) - Math.max(mLeft, other.mLeft);
+        long height = Math.min(mBottom, other.mBottom) - Math.max(mTop, other.mTop);
+        if (width <= 0 || height <= 0) {
+            return 0.0;
+        }
+        long intersection = width * height;
+        return (double)intersection / (getArea() + other.getArea() - intersection);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + mLeft + ", " + mTop + ") - (" + mRight + ", " + mBottom + ") score " + mScore;
+    }
+}
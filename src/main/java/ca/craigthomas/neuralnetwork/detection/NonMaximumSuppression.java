@@ -0,0 +1,517 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.detection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Merges the overlapping boxes reported by a scanner, so that each object is
+ * reported once. Greedy suppression keeps the highest scoring box, drops
+ * every box that overlaps it by more than the overlap threshold, and repeats
+ * with the next highest box that is left. Soft suppression instead lowers
+ * the score of overlapping boxes in proportion to the overlap, either
+ * linearly or with a gaussian, and drops boxes whose score falls below the
+ * score threshold, which keeps nearby objects that greedy suppression would
+ * merge.
+ *
+ * Rather than comparing every box against every other box, the boxes are
+ * split into bands by size, where a band holds the boxes whose longer side
+ * is between a power of two and the next one. The boxes of each band are
+ * placed in their own grid, by the position of their center, with cells
+ * larger than any box in the band. A box is compared only against the
+ * boxes in the cells of each band that its extent reaches, so the small
+ * windows of the fine levels of a pyramid are not put in the same cell just
+ * because the coarse levels have windows the size of the whole frame. The
+ * intersection over union of two boxes is at most the smaller area over the
+ * larger one, so greedy and linear suppression also skip the bands whose
+ * boxes are too much larger or smaller to pass the overlap threshold. This
+ * keeps the cost close to linear in the number of boxes on frames with tens
+ * of thousands of windows.
+ *
+ * @author thomas
+ */
+public class NonMaximumSuppression {
+
+    // The ways in which overlapping boxes are suppressed
+    public enum Method { GREEDY, LINEAR, GAUSSIAN }
+
+    // The default overlap above which boxes are suppressed
+    public static final double DEFAULT_OVERLAP_THRESHOLD = 0.3;
+    // The default spread of the gaussian used by soft suppression
+    public static final double DEFAULT_SIGMA = 0.5;
+    // The default score below which soft suppression drops boxes
+    public static final double DEFAULT_SCORE_THRESHOLD = 0.001;
+
+    private final Method mMethod;
+    private final double mOverlapThreshold;
+    private final double mSigma;
+    private final double mScoreThreshold;
+
+    public static class Builder {
+
+        private Method mMethod;
+        private double mOverlapThreshold;
+        private double mSigma;
+        private double mScoreThreshold;
+
+        /**
+         * Initialize a builder for greedy suppression with the default
+         * overlap threshold.
+         */
+        public Builder() {
+            mMethod = Method.GREEDY;
+            mOverlapThreshold = DEFAULT_OVERLAP_THRESHOLD;
+            mSigma = DEFAULT_SIGMA;
+            mScoreThreshold = DEFAULT_SCORE_THRESHOLD;
+        }
+
+        /**
+         * Sets how overlapping boxes are suppressed. Defaults to GREEDY.
+         *
+         * @param method the suppression method
+         * @return the builder for the suppression
+         */
+        public Builder method(Method method) {
+            mMethod = method;
+            return this;
+        }
+
+        /**
+         * Sets the intersection over union above which a box is suppressed
+         * by a higher scoring box. Used by the GREEDY and LINEAR methods.
+         * Defaults to 0.3.
+         *
+         * @param overlapThreshold the overlap threshold, between 0 and 1
+         * @return the builder for the suppression
+         */
+        public Builder overlapThreshold(double overlapThreshold) {
+            mOverlapThreshold = overlapThreshold;
+            return this;
+        }
+
+        /**
+         * Sets the spread of the gaussian used by the GAUSSIAN method. A
+         * larger sigma lowers the scores of overlapping boxes more gently.
+         * Defaults to 0.5.
+         *
+         * @param sigma the spread of the gaussian
+         * @return the builder for the suppression
+         */
+        public Builder sigma(double sigma) {
+            mSigma = sigma;
+            return this;
+        }
+
+        /**
+         * Sets the score below which boxes are dropped by the LINEAR and
+         * GAUSSIAN methods. Defaults to 0.001.
+         *
+         * @param scoreThreshold the lowest score to keep
+         * @return the builder for the suppression
+         */
+        public Builder scoreThreshold(double scoreThreshold) {
+            mScoreThreshold = scoreThreshold;
+            return this;
+        }
+
+        /**
+         * Builds the suppression.
+         *
+         * @return the new suppression
+         */
+        public NonMaximumSuppression build() {
+            if (mMethod == null) {
+                throw new IllegalArgumentException("method must be specified");
+            }
+            if (mOverlapThreshold < 0.0 || mOverlapThreshold > 1.0) {
+                throw new IllegalArgumentException("overlap threshold must be between 0 and 1");
+            }
+            if (mSigma <= 0.0) {
+                throw new IllegalArgumentException("sigma must be positive");
+            }
+            return new NonMaximumSuppression(this);
+        }
+    }
+
+    private NonMaximumSuppression(Builder builder) {
+        mMethod = builder.mMethod;
+        mOverlapThreshold = builder.mOverlapThreshold;
+        mSigma = builder.mSigma;
+        mScoreThreshold = builder.mScoreThreshold;
+    }
+
+    /**
+     * Suppresses overlapping boxes, and returns the boxes that are left,
+     * highest score first. Soft suppression returns the boxes with their
+     * lowered scores.
+     *
+     * @param boxes the boxes to suppress
+     * @return the boxes that were kept
+     */
+    public List<BoundingBox> suppress(List<BoundingBox> boxes) {
+        if (boxes.isEmpty()) {
+            return new ArrayList<BoundingBox>();
+        }
+        BoundingBox [] array = boxes.toArray(new BoundingBox [boxes.size()]);
+        return suppress(array, createGrid(array));
+    }
+
+    /**
+     * Creates an empty grid for the boxes. Only GAUSSIAN suppression needs
+     * to compare boxes that overlap by less than the overlap threshold.
+     *
+     * @param boxes the boxes to suppress
+     * @return the empty grid for the boxes
+     */
+    Grid createGrid(BoundingBox [] boxes) {
+        return new Grid(boxes, (mMethod == Method.GAUSSIAN) ? 0.0 : mOverlapThreshold);
+    }
+
+    /**
+     * Suppresses overlapping boxes using the specified empty grid, which
+     * counts the comparisons that were made.
+     *
+     * @param boxes the boxes to suppress
+     * @param grid the empty grid for the boxes
+     * @return the boxes that were kept
+     */
+    List<BoundingBox> suppress(BoundingBox [] boxes, Grid grid) {
+        return (mMethod == Method.GREEDY) ? suppressGreedy(boxes, grid) : suppressSoft(boxes, grid);
+    }
+
+    /**
+     * Keeps boxes in order of score, skipping any box that overlaps a box
+     * that has already been kept by more than the overlap threshold. Only
+     * kept boxes are placed in the grid, so each box is compared only
+     * against the kept boxes around it.
+     *
+     * @param boxes the boxes to suppress
+     * @param grid the empty grid to place kept boxes in
+     * @return the boxes that were kept
+     */
+    private List<BoundingBox> suppressGreedy(BoundingBox [] boxes, Grid grid) {
+        double [] scores = new double [boxes.length];
+        for (int index = 0; index < boxes.length; index++) {
+            scores[index] = boxes[index].getScore();
+        }
+        ScoreHeap heap = new ScoreHeap(scores);
+        List<BoundingBox> result = new ArrayList<BoundingBox>();
+        while (!heap.isEmpty()) {
+            int index = heap.pop();
+            if (!overlapsKept(boxes, grid, index)) {
+                grid.add(index);
+                result.add(boxes[index]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns true if the box overlaps a box in the grid by more than the
+     * overlap threshold.
+     *
+     * @param boxes all of the boxes
+     * @param grid the grid of kept boxes
+     * @param index the box to check
+     * @return true if the box should be suppressed
+     */
+    private boolean overlapsKept(BoundingBox [] boxes, Grid grid, int index) {
+        int count = grid.findCandidates(boxes[index]);
+        for (int candidate = 0; candidate < count; candidate++) {
+            if (boxes[index].getIntersectionOverUnion(boxes[grid.mCandidates[candidate]]) > mOverlapThreshold) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Repeatedly keeps the box with the highest remaining score, and lowers
+     * the scores of the remaining boxes around it. Every box starts in the
+     * grid, and is skipped once it has been kept or dropped.
+     *
+     * @param boxes the boxes to suppress
+     * @param grid the empty grid to place the boxes in
+     * @return the boxes that were kept, with their lowered scores
+     */
+    private List<BoundingBox> suppressSoft(BoundingBox [] boxes, Grid grid) {
+        double [] scores = new double [boxes.length];
+        for (int index = 0; index < boxes.length; index++) {
+            scores[index] = boxes[index].getScore();
+            grid.add(index);
+        }
+        boolean [] done = new boolean [boxes.length];
+        ScoreHeap heap = new ScoreHeap(scores);
+        List<BoundingBox> result = new ArrayList<BoundingBox>();
+        while (!heap.isEmpty()) {
+            int index = heap.pop();
+            done[index] = true;
+            if (scores[index] < mScoreThreshold) {
+                // Every remaining box has a lower score
+                break;
+            }
+            result.add(boxes[index].withScore(scores[index]));
+
+            int count = grid.findCandidates(boxes[index]);
+            for (int candidate = 0; candidate < count; candidate++) {
+                int other = grid.mCandidates[candidate];
+                if (done[other]) {
+                    continue;
+                }
+                double overlap = boxes[index].getIntersectionOverUnion(boxes[other]);
+                if (overlap > 0.0) {
+                    double decayed = scores[other] * getDecay(overlap);
+                    if (decayed != scores[other]) {
+                        heap.decrease(other, decayed);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the factor by which soft suppression multiplies the score of
+     * a box that overlaps a kept box.
+     *
+     * @param overlap the intersection over union of the boxes
+     * @return the factor to multiply the score by
+     */
+    private double getDecay(double overlap) {
+        if (mMethod == Method.GAUSSIAN) {
+            return Math.exp(-(overlap * overlap) / mSigma);
+        }
+        return (overlap > mOverlapThreshold) ? 1.0 - overlap : 1.0;
+    }
+
+    /**
+     * The boxes placed in one grid per band of sizes, each cell holding the
+     * indices of the boxes whose center lies within it. The boxes of band
+     * b have a longer side of at least 2^b and less than 2^(b+1) pixels, and
+     * the cells of band b are 2^(b+1) pixels wide, so the center of a box
+     * that overlaps another box is at most one cell beyond its extent. A
+     * band is skipped when the areas of its boxes rule out an intersection
+     * over union above the overlap that matters.
+     */
+    static class Grid {
+
+        // The number of bands, enough for any box that fits in an int
+        private static final int BANDS = 31;
+
+        private final int mLeft;
+        private final int mTop;
+        private final double mOverlap;
+        private final Band [] mBands;
+        private final int [] mBandOf;
+        private final BoundingBox [] mBoxes;
+        private int [] mCandidates;
+        private long mComparisons;
+
+        Grid(BoundingBox [] boxes, double overlap) {
+            int left = Integer.MAX_VALUE;
+            int top = Integer.MAX_VALUE;
+            int right = Integer.MIN_VALUE;
+            int bottom = Integer.MIN_VALUE;
+            mBandOf = new int [boxes.length];
+            boolean [] used = new boolean [BANDS];
+            for (int index = 0; index < boxes.length; index++) {
+                BoundingBox box = boxes[index];
+                left = Math.min(left, box.getLeft());
+                top = Math.min(top, box.getTop());
+                right = Math.max(right, box.getRight());
+                bottom = Math.max(bottom, box.getBottom());
+                int size = Math.max(1, Math.max(box.getWidth(), box.getHeight()));
+                mBandOf[index] = Math.min(BANDS - 1, 31 - Integer.numberOfLeadingZeros(size));
+                used[mBandOf[index]] = true;
+            }
+            mBoxes = boxes;
+            mLeft = left;
+            mTop = top;
+            mOverlap = overlap;
+            mBands = new Band [BANDS];
+            for (int band = 0; band < BANDS; band++) {
+                if (used[band]) {
+                    mBands[band] = new Band(1 << Math.min(band + 1, 30), right - left, bottom - top);
+                }
+            }
+            for (int index = 0; index < boxes.length; index++) {
+                Band band = mBands[mBandOf[index]];
+                band.mMinArea = Math.min(band.mMinArea, boxes[index].getArea());
+                band.mMaxArea = Math.max(band.mMaxArea, boxes[index].getArea());
+            }
+            mCandidates = new int [16];
+        }
+
+        /**
+         * Returns the number of boxes handed out by findCandidates, which is
+         * the number of comparisons a suppression makes.
+         *
+         * @return the number of comparisons
+         */
+        long getComparisons() {
+            return mComparisons;
+        }
+
+        void add(int index) {
+            BoundingBox box = mBoxes[index];
+            Band band = mBands[mBandOf[index]];
+            int x = ((box.getLeft() + box.getRight()) / 2 - mLeft) / band.mCellSize;
+            int y = ((box.getTop() + box.getBottom()) / 2 - mTop) / band.mCellSize;
+            int cell = (y * band.mColumns) + x;
+            int [] members = band.mCells[cell];
+            if (members == null) {
+                members = new int [4];
+                band.mCells[cell] = members;
+            } else if (band.mCounts[cell] == members.length) {
+                members = Arrays.copyOf(members, members.length * 2);
+                band.mCells[cell] = members;
+            }
+            members[band.mCounts[cell]++] = index;
+        }
+
+        /**
+         * Fills mCandidates with every box in the grid that could overlap
+         * the specified box by more than the overlap that matters.
+         *
+         * @param box the box to find the neighbours of
+         * @return the number of candidates
+         */
+        int findCandidates(BoundingBox box) {
+            int count = 0;
+            long area = box.getArea();
+            for (Band band : mBands) {
+                if (band == null || band.mMinArea * mOverlap >= area || band.mMaxArea <= area * mOverlap) {
+                    continue;
+                }
+                int cellSize = band.mCellSize;
+                int firstX = Math.max(0, (box.getLeft() - cellSize - mLeft) / cellSize);
+                int lastX = Math.min(band.mColumns - 1, (box.getRight() + cellSize - mLeft) / cellSize);
+                int firstY = Math.max(0, (box.getTop() - cellSize - mTop) / cellSize);
+                int lastY = Math.min(band.mRows - 1, (box.getBottom() + cellSize - mTop) / cellSize);
+                for (int y = firstY; y <= lastY; y++) {
+                    for (int x = firstX; x <= lastX; x++) {
+                        int cell = (y * band.mColumns) + x;
+                        int members = band.mCounts[cell];
+                        if (members == 0) {
+                            continue;
+                        }
+                        if (count + members > mCandidates.length) {
+                            mCandidates = Arrays.copyOf(mCandidates, Math.max(count + members, mCandidates.length * 2));
+                        }
+                        System.arraycopy(band.mCells[cell], 0, mCandidates, count, members);
+                        count += members;
+                    }
+                }
+            }
+            mComparisons += count;
+            return count;
+        }
+    }
+
+    /**
+     * The cells of one band of a grid.
+     */
+    private static class Band {
+
+        private final int mCellSize;
+        private final int mColumns;
+        private final int mRows;
+        private final int [][] mCells;
+        private final int [] mCounts;
+        private long mMinArea;
+        private long mMaxArea;
+
+        Band(int cellSize, int width, int height) {
+            mCellSize = cellSize;
+            mColumns = (width / cellSize) + 1;
+            mRows = (height / cellSize) + 1;
+            mCells = new int [mColumns * mRows][];
+            mCounts = new int [mCells.length];
+            mMinArea = Long.MAX_VALUE;
+            mMaxArea = 0;
+        }
+    }
+
+    /**
+     * A binary max-heap of box indices ordered by score, which allows the
+     * score of a box still in the heap to be lowered.
+     */
+    private static class ScoreHeap {
+
+        private final double [] mScores;
+        private final int [] mHeap;
+        private final int [] mPositions;
+        private int mSize;
+
+        ScoreHeap(double [] scores) {
+            mScores = scores;
+            mHeap = new int [scores.length];
+            mPositions = new int [scores.length];
+            mSize = scores.length;
+            for (int index = 0; index < mSize; index++) {
+                mHeap[index] = index;
+                mPositions[index] = index;
+            }
+            for (int position = (mSize / 2) - 1; position >= 0; position--) {
+                siftDown(position);
+            }
+        }
+
+        boolean isEmpty() {
+            return mSize == 0;
+        }
+
+        int pop() {
+            int top = mHeap[0];
+            mSize--;
+            if (mSize > 0) {
+                move(mHeap[mSize], 0);
+                siftDown(0);
+            }
+            mPositions[top] = -1;
+            return top;
+        }
+
+        void decrease(int index, double score) {
+            mScores[index] = score;
+            siftDown(mPositions[index]);
+        }
+
+        private void siftDown(int position) {
+            int index = mHeap[position];
+            while (true) {
+                int child = (2 * position) + 1;
+                if (child >= mSize) {
+                    break;
+                }
+                if (child + 1 < mSize && higher(mHeap[child + 1], mHeap[child])) {
+                    child++;
+                }
+                if (!higher(mHeap[child], index)) {
+                    break;
+                }
+                move(mHeap[child], position);
+                position = child;
+            }
+            move(index, position);
+        }
+
+        /**
+         * Returns true if the first box comes out of the heap before the
+         * second. Ties go to the earlier box, so that equal scores are
+         * returned in their original order.
+         */
+        private boolean higher(int first, int second) {
+            return mScores[first] > mScores[second] || (mScores[first] == mScores[second] && first < second);
+        }
+
+        private void move(int index, int position) {
+            mHeap[position] = index;
+            mPositions[index] = position;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.detection;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+import ca.craigthomas.neuralnetwork.imageprocessing.Image;
+
+/**
+ * Finds objects of different sizes by scanning an image pyramid. The frame
+ * is shrunk by a constant scale factor, level after level, until it is
+ * smaller than the network's input window, and each level is scanned with a
+ * SlidingWindowScanner. A window on a smaller level covers a larger area of
+ * the original frame, so larger objects are found there. Every level is
+ * resized and scanned as a separate task on a pool of worker threads, so
+ * the time taken per frame is close to the time taken by the largest level
+ * rather than the sum of all of them. Bounding boxes are returned in the
+ * coordinates of the original frame, after being merged by a
+ * NonMaximumSuppression stage if one is supplied.
+ *
+ * @author thomas
+ */
+public class PyramidDetector implements Closeable {
+
+    // The default ratio between the sizes of neighbouring levels
+    public static final double DEFAULT_SCALE_FACTOR = 1.25;
+
+    private final SlidingWindowScanner mScanner;
+    private final int mWindowWidth;
+    private final int mWindowHeight;
+    private final double mScaleFactor;
+    private final int mMinSize;
+    private final NonMaximumSuppression mSuppression;
+    private final ExecutorService mPool;
+
+    public static class Builder {
+
+        private final SlidingWindowScanner.Builder mScanner;
+        private final int mWindowWidth;
+        private final int mWindowHeight;
+        private double mScaleFactor;
+        private int mMinSize;
+        private int mThreads;
+        private NonMaximumSuppression mSuppression;
+
+        /**
+         * Initialize a builder for a detector that uses a network trained on
+         * images of the specified size.
+         *
+         * @param neuralNetwork the trained network to score windows with
+         * @param windowWidth the width of the network's input in pixels
+         * @param windowHeight the height of the network's input in pixels
+         */
+        public Builder(NeuralNetwork neuralNetwork, int windowWidth, int windowHeight) {
+            mScanner = new SlidingWindowScanner.Builder(neuralNetwork, windowWidth, windowHeight);
+            mWindowWidth = windowWidth;
+            mWindowHeight = windowHeight;
+            mScaleFactor = DEFAULT_SCALE_FACTOR;
+            mMinSize = windowWidth;
+            mThreads = Runtime.getRuntime().availableProcessors();
+        }
+
+        /**
+         * Sets the ratio between the sizes of neighbouring levels of the
+         * pyramid. Smaller factors find more object sizes, at the cost of
+         * more levels to scan. Defaults to 1.25.
+         *
+         * @param scaleFactor the ratio between levels, greater than 1
+         * @return the builder for the detector
+         */
+        public Builder scaleFactor(double scaleFactor) {
+            mScaleFactor = scaleFactor;
+            return this;
+        }
+
+        /**
+         * Sets the width in pixels of the smallest object to look for. The
+         * first level of the pyramid is shrunk so that objects of this width
+         * fill the window. Defaults to the window width, so that the first
+         * level is the frame itself.
+         *
+         * @param minSize the smallest object width, at least the window width
+         * @return the builder for the detector
+         */
+        public Builder minSize(int minSize) {
+            mMinSize = minSize;
+            return this;
+        }
+
+        /**
+         * Sets the distance in pixels between neighbouring windows on each
+         * level. Defaults to SlidingWindowScanner.DEFAULT_STRIDE.
+         *
+         * @param stride the distance between windows
+         * @return the builder for the detector
+         */
+        public Builder stride(int stride) {
+            mScanner.stride(stride);
+            return this;
+        }
+
+        /**
+         * Sets the score a window must be above to be reported.
+         *
+         * @param threshold the score to report windows above
+         * @return the builder for the detector
+         */
+        public Builder threshold(double threshold) {
+            mScanner.threshold(threshold);
+            return this;
+        }
+
+        /**
+         * Sets whether the network was trained on color features.
+         *
+         * @param color whether to use color features
+         * @return the builder for the detector
+         */
+        public Builder color(boolean color) {
+            mScanner.color(color);
+            return this;
+        }
+
+        /**
+         * Sets the largest number of windows to score in one forward pass.
+         *
+         * @param batchSize the largest number of windows per pass
+         * @return the builder for the detector
+         */
+        public Builder batchSize(int batchSize) {
+            mScanner.batchSize(batchSize);
+            return this;
+        }
+
+        /**
+         * Sets the number of worker threads that scan levels. Defaults to
+         * the number of processors.
+         *
+         * @param threads the number of worker threads
+         * @return the builder for the detector
+         */
+        public Builder threads(int threads) {
+            mThreads = threads;
+            return this;
+        }
+
+        /**
+         * Sets the suppression used to merge overlapping boxes from every
+         * level. Defaults to none, which returns every box found.
+         *
+         * @param suppression the suppression to apply to the boxes
+         * @return the builder for the detector
+         */
+        public Builder suppression(NonMaximumSuppression suppression) {
+            mSuppression = suppression;
+            return this;
+        }
+
+        /**
+         * Builds the detector.
+         *
+         * @return the new detector
+         */
+        public PyramidDetector build() {
+            if (mScaleFactor <= 1.0) {
+                throw new IllegalArgumentException("scale factor must be greater than 1");
+            }
+            if (mMinSize < mWindowWidth) {
+                throw new IllegalArgumentException("minimum size cannot be smaller than the window");
+            }
+            if (mThreads < 1) {
+                throw new IllegalArgumentException("thread count must be positive");
+            }
+            return new PyramidDetector(this);
+        }
+    }
+
+    private PyramidDetector(Builder builder) {
+        mScanner = builder.mScanner.build();
+        mWindowWidth = builder.mWindowWidth;
+        mWindowHeight = builder.mWindowHeight;
+        mScaleFactor = builder.mScaleFactor;
+        mMinSize = builder.mMinSize;
+        mSuppression = builder.mSuppression;
+        mPool = Executors.newFixedThreadPool(builder.mThreads);
+    }
+
+    /**
+     * Returns the scale of each level of the pyramid for a frame of the
+     * specified size, largest first. A scale of 0.5 means the level is half
+     * the width and height of the frame.
+     *
+     * @param width the width of the frame in pixels
+     * @param height the height of the frame in pixels
+     * @return the scale of each level
+     */
+    public double [] getScales(int width, int height) {
+        List<Double> scales = new ArrayList<Double>();
+        double scale = (double)mWindowWidth / mMinSize;
+        while (Math.round(width * scale) >= mWindowWidth && Math.round(height * scale) >= mWindowHeight) {
+            scales.add(scale);
+            scale /= mScaleFactor;
+        }
+        double [] result = new double [scales.size()];
+        for (int index = 0; index < result.length; index++) {
+            result[index] = scales.get(index);
+        }
+        return result;
+    }
+
+    /**
+     * Scans every level of the pyramid for the image, and returns the boxes
+     * found on each level in the coordinates of the image, largest level
+     * first. If there is a suppression stage, the boxes that survive it are
+     * returned instead, highest score first.
+     *
+     * @param image the image to scan
+     * @return the windows that scored above the threshold
+     * @throws InterruptedException if interrupted while waiting for a level
+     */
+    public List<BoundingBox> detect(final Image image) throws InterruptedException {
+        List<Future<List<BoundingBox>>> levels = new ArrayList<Future<List<BoundingBox>>>();
+        for (final double scale : getScales(image.getWidth(), image.getHeight())) {
+            levels.add(mPool.submit(new Callable<List<BoundingBox>>() {
+                @Override
+                public List<BoundingBox> call() {
+                    return scanLevel(image, scale);
+                }
+            }));
+        }
+
+        List<BoundingBox> result = new ArrayList<BoundingBox>();
+        try {
+            for (Future<List<BoundingBox>> level : levels) {
+                result.addAll(level.get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw new IllegalStateException("could not scan image", e.getCause());
+        } finally {
+            for (Future<List<BoundingBox>> level : levels) {
+                level.cancel(true);
+            }
+        }
+        return (mSuppression == null) ? result : mSuppression.suppress(result);
+    }
+
+    /**
+     * Shrinks the image to one level of the pyramid, scans it, and maps the
+     * boxes that were found back to the coordinates of the image.
+     *
+     * @param image the image to scan
+     * @param scale the scale of the level
+     * @return the boxes found on the level
+     */
+    private List<BoundingBox> scanLevel(Image image, double scale) {
+        int width = (int)Math.round(image.getWidth() * scale);
+        int height = (int)Math.round(image.getHeight() * scale);
+        Image level = (width == image.getWidth() && height == image.getHeight()) ? image : image.resize(width, height);
+        List<BoundingBox> boxes = mScanner.scan(level);
+        if (level == image) {
+            return boxes;
+        }
+
+        double scaleX = (double)image.getWidth() / width;
+        double scaleY = (double)image.getHeight() / height;
+        List<BoundingBox> result = new ArrayList<BoundingBox>(boxes.size());
+        for (BoundingBox box : boxes) {
+            result.add(new BoundingBox(
+                    (int)Math.round(box.getLeft() * scaleX),
+                    (int)Math.round(box.getTop() * scaleY),
+                    Math.min(image.getWidth(), (int)Math.round(box.getRight() * scaleX)),
+                    Math.min(image.getHeight(), (int)Math.round(box.getBottom() * scaleY)),
+                    box.getScore()));
+        }
+        return result;
+    }
+
+    /**
+     * Stops the worker threads. The detector cannot be used afterwards.
+     */
+    @Override
+    public void close() {
+        mPool.shutdownNow();
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.detection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jblas.DoubleMatrix;
+
+import boofcv.struct.image.ImageUInt8;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+import ca.craigthomas.neuralnetwork.imageprocessing.Image;
+
+/**
+ * Scans an image for instances of an object by sliding a window the size of
+ * the network's input over it. Rather than cutting out and converting each
+ * window separately, the features of many windows are copied straight from
+ * the bands of the image into the rows of one matrix (im2row), which is then
+ * scored with a single forward pass through the network. The features are
+ * built with Image.pixelToFeature, in the same layout as
+ * Image.convertGrayscaleToMatrix and Image.convertColorToMatrix, so they
+ * match what the network was trained on. Windows are scored with
+ * NeuralNetwork.feedForward, so scanners on several threads can share one
+ * network.
+ *
+ * @author thomas
+ */
+public class SlidingWindowScanner {
+
+    // The default distance in pixels between neighbouring windows
+    public static final int DEFAULT_STRIDE = 4;
+    // The default score a window must be above to be reported
+    public static final double DEFAULT_THRESHOLD = 0.5;
+    // The default largest number of windows scored in one forward pass
+    public static final int DEFAULT_BATCH_SIZE = 2048;
+
+    private final NeuralNetwork mNeuralNetwork;
+    private final int mWindowWidth;
+    private final int mWindowHeight;
+    private final int mStride;
+    private final double mThreshold;
+    private final boolean mColor;
+    private final int mBatchSize;
+    // The feature value of every possible byte value
+    private final double [] mFeatures;
+
+    public static class Builder {
+
+        private final NeuralNetwork mNeuralNetwork;
+        private final int mWindowWidth;
+        private final int mWindowHeight;
+        private int mStride;
+        private double mThreshold;
+        private boolean mColor;
+        private int mBatchSize;
+
+        /**
+         * Initialize a builder for a scanner that slides a window of the
+         * specified size, which must match the size of the images the
+         * network was trained on.
+         *
+         * @param neuralNetwork the trained network to score windows with
+         * @param windowWidth the width of the window in pixels
+         * @param windowHeight the height of the window in pixels
+         */
+        public Builder(NeuralNetwork neuralNetwork, int windowWidth, int windowHeight) {
+            mNeuralNetwork = neuralNetwork;
+            mWindowWidth = windowWidth;
+            mWindowHeight = windowHeight;
+            mStride = DEFAULT_STRIDE;
+            mThreshold = DEFAULT_THRESHOLD;
+            mBatchSize = DEFAULT_BATCH_SIZE;
+        }
+
+        /**
+         * Sets the distance in pixels between neighbouring windows, both
+         * horizontally and vertically. Defaults to 4.
+         *
+         * @param stride the distance between windows
+         * @return the builder for the scanner
+         */
+        public Builder stride(int stride) {
+            mStride = stride;
+            return this;
+        }
+
+        /**
+         * Sets the score a window must be above to be reported. Defaults
+         * to 0.5.
+         *
+         * @param threshold the score to report windows above
+         * @return the builder for the scanner
+         */
+        public Builder threshold(double threshold) {
+            mThreshold = threshold;
+            return this;
+        }
+
+        /**
+         * Sets whether the network was trained on color features. Defaults
+         * to grayscale.
+         *
+         * @param color whether to use color features
+         * @return the builder for the scanner
+         */
+        public Builder color(boolean color) {
+            mColor = color;
+            return this;
+        }
+
+        /**
+         * Sets the largest number of windows to score in one forward pass.
+         * Frames with more windows are scored in several passes, which
+         * bounds the size of the window matrix. Defaults to 2048.
+         *
+         * @param batchSize the largest number of windows per pass
+         * @return the builder for the scanner
+         */
+        public Builder batchSize(int batchSize) {
+            mBatchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Builds the scanner.
+         *
+         * @return the new scanner
+         */
+        public SlidingWindowScanner build() {
+            if (mWindowWidth < 1 || mWindowHeight < 1) {
+                throw new IllegalArgumentException("window must be at least 1x1");
+            }
+            if (mStride < 1 || mBatchSize < 1) {
+                throw new IllegalArgumentException("stride and batch size must be positive");
+            }
+            return new SlidingWindowScanner(this);
+        }
+    }
+
+    private SlidingWindowScanner(Builder builder) {
+        mNeuralNetwork = builder.mNeuralNetwork;
+        mWindowWidth = builder.mWindowWidth;
+        mWindowHeight = builder.mWindowHeight;
+        mStride = builder.mStride;
+        mThreshold = builder.mThreshold;
+        mColor = builder.mColor;
+        mBatchSize = builder.mBatchSize;
+        mFeatures = new double [256];
+        for (int value = 0; value < 256; value++) {
+            mFeatures[value] = Image.pixelToFeature((byte)value);
+        }
+    }
+
+    /**
+     * Returns the number of features in each window.
+     *
+     * @return the number of features per window
+     */
+    public int getNumFeatures() {
+        return mWindowWidth * mWindowHeight * (mColor ? 3 : 1);
+    }
+
+    /**
+     * Scans the image, and returns a bounding box for every window whose
+     * score is above the threshold, in scan order. Returns an empty list
+     * if the image is smaller than the window. The features are read
+     * straight from the bands of the image, so sub-images can be scanned
+     * without copying them; only a color image scanned in grayscale needs
+     * its bands averaged first.
+     *
+     * @param image the image to scan
+     * @return the windows that scored above the threshold
+     */
+    public List<BoundingBox> scan(Image image) {
+        if (!mColor && !image.isGrayscale()) {
+            return scan(image.getGrayscalePixels(), image.getWidth(), image.getHeight());
+        }
+        int bands = mColor ? 3 : 1;
+        byte [][] planes = new byte [bands][];
+        for (int band = 0; band < bands; band++) {
+            planes[band] = image.getBand(band).data;
+        }
+        ImageUInt8 first = image.getBand(0);
+        return scan(planes, first.startIndex, first.stride, 1, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Scans a buffer of pixels, laid out as returned by
+     * Image.getGrayscalePixels, or Image.getColorPixels for color scanners.
+     *
+     * @param pixels the pixels to scan
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @return the windows that scored above the threshold
+     */
+    public List<BoundingBox> scan(byte [] pixels, int width, int height) {
+        int bands = mColor ? 3 : 1;
+        return scan(new byte [][] {pixels}, 0, width * bands, bands, width, height);
+    }
+
+    /**
+     * Scans pixels held either in one interleaved plane, or in one plane per
+     * band. Pixel (x, y) of a band starts at start + (y * rowStep) +
+     * (x * columnStep) of its plane; with a single interleaved plane, each
+     * band follows the one before it.
+     *
+     * @param planes the planes holding the pixels
+     * @param start the index of the top left pixel
+     * @param rowStep the distance between rows
+     * @param columnStep the distance between pixels in a row
+     * @param width the width of the image in pixels
+     * @param height the height of the image in pixels
+     * @return the windows that scored above the threshold
+     */
+    private List<BoundingBox> scan(byte [][] planes, int start, int rowStep, int columnStep, int width, int height) {
+        List<BoundingBox> result = new ArrayList<BoundingBox>();
+        if (width < mWindowWidth || height < mWindowHeight) {
+            return result;
+        }
+        int windowsAcross = ((width - mWindowWidth) / mStride) + 1;
+        int windowsDown = ((height - mWindowHeight) / mStride) + 1;
+        int numWindows = windowsAcross * windowsDown;
+        int [] featurePlanes = new int [getNumFeatures()];
+        int [] offsets = getFeatureOffsets(planes.length, rowStep, columnStep, featurePlanes);
+
+        DoubleMatrix batch = null;
+        int [] starts = new int [Math.min(mBatchSize, numWindows)];
+        int [] lefts = new int [starts.length];
+        int [] tops = new int [starts.length];
+        for (int first = 0; first < numWindows; first += mBatchSize) {
+            int count = Math.min(mBatchSize, numWindows - first);
+            if (batch == null || batch.rows != count) {
+                batch = new DoubleMatrix(count, offsets.length);
+            }
+            for (int window = 0; window < count; window++) {
+                lefts[window] = ((first + window) % windowsAcross) * mStride;
+                tops[window] = ((first + window) / windowsAcross) * mStride;
+                starts[window] = start + (tops[window] * rowStep) + (lefts[window] * columnStep);
+            }
+            extractWindows(planes, featurePlanes, offsets, starts, batch);
+
+            DoubleMatrix scores = mNeuralNetwork.feedForward(batch);
+            for (int window = 0; window < count; window++) {
+                double score = scores.get(window, 0);
+                if (score > mThreshold) {
+                    result.add(new BoundingBox(lefts[window], tops[window], lefts[window] + mWindowWidth, tops[window] + mWindowHeight, score));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns, for each feature of a window, the offset of the value it
+     * comes from, relative to the top left of the window, and fills in the
+     * plane the value is held in.
+     *
+     * @param numPlanes the number of planes - 1 for interleaved pixels
+     * @param rowStep the distance between rows
+     * @param columnStep the distance between pixels in a row
+     * @param featurePlanes filled with the plane of each feature
+     * @return the offset of each feature
+     */
+    private int [] getFeatureOffsets(int numPlanes, int rowStep, int columnStep, int [] featurePlanes) {
+        int bands = mColor ? 3 : 1;
+        int [] offsets = new int [getNumFeatures()];
+        int feature = 0;
+        for (int y = 0; y < mWindowHeight; y++) {
+            for (int x = 0; x < mWindowWidth; x++) {
+                for (int band = 0; band < bands; band++) {
+                    int offset = (y * rowStep) + (x * columnStep);
+                    if (numPlanes == 1) {
+                        offsets[feature] = offset + band;
+                    } else {
+                        offsets[feature] = offset;
+                        featurePlanes[feature] = band;
+                    }
+                    feature++;
+                }
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Copies the features of each window into its row of the batch. The
+     * batch is filled a column at a time, since DoubleMatrix is stored in
+     * column-major order.
+     *
+     * @param planes the planes holding the pixels
+     * @param featurePlanes the plane of each feature
+     * @param offsets the offset of each feature within a window
+     * @param starts the index of the top left pixel of each window
+     * @param batch the matrix to copy the windows into
+     */
+    private void extractWindows(byte [][] planes, int [] featurePlanes, int [] offsets, int [] starts, DoubleMatrix batch) {
+        int count = batch.rows;
+        double [] data = batch.data;
+        for (int feature = 0; feature < offsets.length; feature++) {
+            byte [] pixels = planes[featurePlanes[feature]];
+            int offset = offsets[feature];
+            int column = feature * count;
+            for (int window = 0; window < count; window++) {
+                data[column + window] = mFeatures[pixels[starts[window] + offset] & 0xff];
+            }
+        }
+    }
+}
@@ -17,14 +17,27 @@ import boofcv.struct.image.MultiSpectral;
 
 /**
  * The Image class stores image information. Contains useful functions to 
- * transform and manipulate images.
+ * transform and manipulate images. Pixels are held only as planar BoofCV
+ * bands, and every operation works on the bands directly. A BufferedImage
+ * is only made when one is asked for, for writing or displaying the image.
  * 
  * @author thomas
  */
 public class Image {
 
+    // The feature value of every possible pixel value
+    private static final double [] FEATURES = new double [256];
+    
+    static {
+        for (int value = 0; value < FEATURES.length; value++) {
+            FEATURES[value] = value / 255.0;
+        }
+    }
+    
     private MultiSpectral<ImageUInt8> mImage;
     private final int sBufferedImageType;
+    // The image converted to a BufferedImage, created when first needed
+    private BufferedImage mBufferedImage;
     
     /**
      * Generates a new Image from a BufferedImage.
@@ -39,6 +52,17 @@ public class Image {
         sBufferedImageType = image.getType();
     }
     
+    /**
+     * Generates a new Image that wraps the specified bands.
+     * 
+     * @param image the bands of the image
+     * @param bufferedImageType the type to use when converting to a BufferedImage
+     */
+    private Image(MultiSpectral<ImageUInt8> image, int bufferedImageType) {
+        mImage = image;
+        sBufferedImageType = bufferedImageType;
+    }
+    
     /**
      * Generates a new Image by loading in the image information from the 
      * specified filename.
@@ -58,35 +82,51 @@ public class Image {
      * @param height the height of the image in pixels
      */
     public Image(DoubleMatrix imageData, int width, int height, boolean color) {
-        if (color) {
-            mImage = new MultiSpectral<ImageUInt8>(ImageUInt8.class, width, height, 3);
-            int counter = 0;
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    int red = (int)(imageData.get(0, counter) * 255.0);
-                    int green = (int)(imageData.get(0, counter+1) * 255.0);
-                    int blue = (int)(imageData.get(0, counter+2) * 255.0);
-                    mImage.getBand(0).set(x, y, red);
-                    mImage.getBand(1).set(x, y, green);
-                    mImage.getBand(2).set(x, y, blue);
-                    counter += 3;
-                }
+        int bands = color ? 3 : 1;
+        MultiSpectral<ImageUInt8> image = new MultiSpectral<ImageUInt8>(ImageUInt8.class, width, height, bands);
+        for (int band = 0; band < bands; band++) {
+            byte [] pixels = image.getBand(band).data;
+            int column = band;
+            for (int index = 0; index < width * height; index++) {
+                pixels[index] = (byte)(int)(imageData.get(0, column) * 255.0);
+                column += bands;
             }
-            sBufferedImageType = BufferedImage.TYPE_INT_RGB;
-        } else {
-            ImageUInt8 grayscale = new ImageUInt8(width, height);
-            int counter = 0;
-            for (int y = 0; y < height; y++) {
-                for (int x = 0; x < width; x++) {
-                    int intensity = (int)(imageData.get(0, counter) * 255.0);
-                    grayscale.set(x, y, intensity);
-                    counter++;
-                }
+        }
+        mImage = color ? image : shareBand(image.getBand(0));
+        sBufferedImageType = BufferedImage.TYPE_INT_RGB;
+    }
+    
+    /**
+     * Builds a color image whose red, green and blue bands are all the
+     * same grayscale band, so that grayscale images can be used wherever
+     * color images can, without storing their pixels three times.
+     * 
+     * @param grayscale the grayscale band
+     * @return a three band image sharing the grayscale band
+     */
+    private static MultiSpectral<ImageUInt8> shareBand(ImageUInt8 grayscale) {
+        MultiSpectral<ImageUInt8> result = new MultiSpectral<ImageUInt8>(ImageUInt8.class, 3);
+        result.setBands(new ImageUInt8 [] {grayscale, grayscale, grayscale});
+        result.setWidth(grayscale.getWidth());
+        result.setHeight(grayscale.getHeight());
+        result.setStride(grayscale.getStride());
+        result.setStartIndex(grayscale.getStartIndex());
+        return result;
+    }
+    
+    /**
+     * Returns true if every band of the image holds the same pixels, as
+     * with images made by convertToGrayscale, or single band images.
+     * 
+     * @return true if the image is grayscale
+     */
+    public boolean isGrayscale() {
+        for (int band = 1; band < mImage.getNumBands(); band++) {
+            if (mImage.getBand(band).data != mImage.getBand(0).data) {
+                return false;
             }
-            BufferedImage bufferedImage = ConvertBufferedImage.convertTo(grayscale, null);
-            mImage = ConvertBufferedImage.convertFromMulti(bufferedImage, null, true, ImageUInt8.class);
-            sBufferedImageType = bufferedImage.getType();            
         }
+        return true;
     }
     
     /**
@@ -107,6 +147,97 @@ public class Image {
         return mImage.getHeight();
     }
     
+    /**
+     * Shrinks the image to the specified size by area averaging. Each pixel
+     * of the new image is the average of the area of the original image it
+     * covers, with partially covered pixels weighted by how much of them is
+     * covered. The averaging is done in two passes - across, then down - 
+     * which keeps the cost low even for large reductions.
+     * 
+     * @param width the new width in pixels, no larger than the current width
+     * @param height the new height in pixels, no larger than the current height
+     * @return a new, smaller copy of the image
+     */
+    public Image resize(int width, int height) {
+        if (width < 1 || height < 1 || width > getWidth() || height > getHeight()) {
+            throw new IllegalArgumentException("cannot resize " + getWidth() + "x" + getHeight() + " image to " + width + "x" + height);
+        }
+        int oldWidth = getWidth();
+        int oldHeight = getHeight();
+        AreaWeights across = new AreaWeights(oldWidth, width);
+        AreaWeights down = new AreaWeights(oldHeight, height);
+        MultiSpectral<ImageUInt8> result = isGrayscale() && mImage.getNumBands() == 3
+                ? shareBand(new ImageUInt8(width, height))
+                : new MultiSpectral<ImageUInt8>(ImageUInt8.class, width, height, mImage.getNumBands());
+        double [] rows = new double [oldHeight * width];
+        for (int band = 0; band < mImage.getNumBands(); band++) {
+            if (band > 0 && result.getBand(band) == result.getBand(0)) {
+                break;
+            }
+            ImageUInt8 source = mImage.getBand(band);
+            for (int y = 0; y < oldHeight; y++) {
+                int sourceRow = source.startIndex + (y * source.stride);
+                for (int x = 0; x < width; x++) {
+                    int start = across.mStarts[x];
+                    int weight = x * across.mSpan;
+                    double sum = 0.0;
+                    for (int index = 0; index < across.mSpan; index++) {
+                        sum += across.mWeights[weight + index] * (source.data[sourceRow + Math.min(start + index, oldWidth - 1)] & 0xff);
+                    }
+                    rows[(y * width) + x] = sum;
+                }
+            }
+            
+            ImageUInt8 target = result.getBand(band);
+            for (int y = 0; y < height; y++) {
+                int start = down.mStarts[y];
+                int weight = y * down.mSpan;
+                int targetRow = target.startIndex + (y * target.stride);
+                for (int x = 0; x < width; x++) {
+                    double sum = 0.0;
+                    for (int index = 0; index < down.mSpan; index++) {
+                        sum += down.mWeights[weight + index] * rows[(Math.min(start + index, oldHeight - 1) * width) + x];
+                    }
+                    target.data[targetRow + x] = (byte)Math.min(255, (int)Math.round(sum));
+                }
+            }
+        }
+        return new Image(result, sBufferedImageType);
+    }
+    
+    /**
+     * The weights used to shrink one dimension of an image by area 
+     * averaging. New pixel i covers the span of old pixels starting at 
+     * mStarts[i], and old pixel mStarts[i] + j contributes
+     * mWeights[(i * mSpan) + j] of its value. Weights past the end of the
+     * covered area are zero.
+     */
+    private static class AreaWeights {
+        
+        private final int [] mStarts;
+        private final int mSpan;
+        private final double [] mWeights;
+        
+        AreaWeights(int oldSize, int newSize) {
+            double ratio = (double)oldSize / newSize;
+            mStarts = new int [newSize];
+            mSpan = (int)Math.ceil(ratio) + 1;
+            mWeights = new double [newSize * mSpan];
+            for (int pixel = 0; pixel < newSize; pixel++) {
+                double start = pixel * ratio;
+                double end = Math.min((pixel + 1) * ratio, oldSize);
+                mStarts[pixel] = (int)Math.floor(start);
+                for (int index = 0; index < mSpan; index++) {
+                    double left = Math.max(start, mStarts[pixel] + index);
+                    double right = Math.min(end, mStarts[pixel] + index + 1);
+                    if (right > left) {
+                        mWeights[(pixel * mSpan) + index] = (right - left) / ratio;
+                    }
+                }
+            }
+        }
+    }
+    
     /**
      * Converts the image to grayscale. Returns a new copy of the image in
      * grayscale format.
@@ -114,8 +245,117 @@ public class Image {
      * @return a grayscale copy of the image
      */
     public Image convertToGrayscale() {
+        if (isGrayscale()) {
+            return new Image(shareBand(mImage.getBand(0)), BufferedImage.TYPE_INT_RGB);
+        }
         ImageUInt8 grayscale = ConvertImage.average(mImage, null);
-        return new Image(ConvertBufferedImage.convertTo(grayscale, null));
+        return new Image(shareBand(grayscale), BufferedImage.TYPE_INT_RGB);
+    }
+    
+    /**
+     * Returns the number of bands in the image - 3 for color images, and 1
+     * for grayscale images.
+     * 
+     * @return the number of bands
+     */
+    public int getNumBands() {
+        return mImage.getNumBands();
+    }
+    
+    /**
+     * Returns one band of the image directly, without copying it. The band
+     * shares its pixels with the image, and with any image it is a sub-image
+     * of, so it must not be modified. The value of pixel (x, y) is held at
+     * data[startIndex + (y * stride) + x], where the stride may be larger
+     * than the width.
+     * 
+     * @param band the band to return, from 0 to getNumBands() - 1
+     * @return the pixels of the band
+     */
+    public ImageUInt8 getBand(int band) {
+        return mImage.getBand(band);
+    }
+    
+    /**
+     * Returns the grayscale intensity of every pixel, one byte per pixel,
+     * in row-major order. The intensity is the average of the color bands.
+     * 
+     * @return the grayscale pixel intensities
+     */
+    public byte [] getGrayscalePixels() {
+        if (isGrayscale()) {
+            return copyBand(mImage.getBand(0));
+        }
+        ImageUInt8 grayscale = ConvertImage.average(mImage, null);
+        return grayscale.getData();
+    }
+    
+    /**
+     * Copies the pixels of a band into a new array, without the padding at
+     * the end of each row that sub-images have.
+     * 
+     * @param band the band to copy
+     * @return the pixels of the band in row-major order
+     */
+    private static byte [] copyBand(ImageUInt8 band) {
+        int width = band.getWidth();
+        byte [] result = new byte [width * band.getHeight()];
+        for (int y = 0; y < band.getHeight(); y++) {
+            System.arraycopy(band.data, band.startIndex + (y * band.stride), result, y * width, width);
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the red, green and blue values of every pixel, in row-major 
+     * order. The three values for each pixel are interleaved, so the first
+     * pixel is held in bytes 0, 1 and 2.
+     * 
+     * @return the interleaved color values
+     */
+    public byte [] getColorPixels() {
+        ImageUInt8 red = mImage.getBand(0);
+        ImageUInt8 green = mImage.getBand(1);
+        ImageUInt8 blue = mImage.getBand(2);
+        int width = getWidth();
+        byte [] result = new byte [width * getHeight() * 3];
+        int counter = 0;
+        for (int y = 0; y < getHeight(); y++) {
+            int index = red.startIndex + (y * red.stride);
+            for (int x = 0; x < width; x++) {
+                result[counter] = red.data[index];
+                result[counter+1] = green.data[index];
+                result[counter+2] = blue.data[index];
+                counter += 3;
+                index++;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Converts a single pixel value into the feature value that is fed to
+     * the neural network. Every conversion of pixels into features goes
+     * through this function, so that images are always presented to a
+     * network the same way it was trained. Pixel values are unsigned, so 
+     * the features range from 0 to 1.
+     * 
+     * @param pixel the pixel value to convert
+     * @return the feature value of the pixel
+     */
+    public static double pixelToFeature(byte pixel) {
+        return FEATURES[pixel & 0xff];
+    }
+    
+    /**
+     * Returns the number of features the image converts to - one per pixel
+     * for grayscale, or three per pixel for color.
+     * 
+     * @param color whether to count color features
+     * @return the number of features
+     */
+    public int getNumFeatures(boolean color) {
+        return getWidth() * getHeight() * (color ? 3 : 1);
     }
     
     /**
@@ -126,14 +366,10 @@ public class Image {
      * @return a column vector of the pixel intensities
      */
     public DoubleMatrix convertGrayscaleToMatrix(double truth) {
-        ImageUInt8 grayscale = ConvertImage.average(mImage, null);
-        byte [] data = grayscale.getData();
-        DoubleMatrix result = new DoubleMatrix(1, data.length + 1);
-        for (int index = 0; index < data.length; index++) {
-            result.put(0, index, (double)data[index]);
-        }
-        result.put(0, data.length, truth * 255.0);
-        return result.divi(255.0);
+        DoubleMatrix result = new DoubleMatrix(1, getNumFeatures(false) + 1);
+        convertGrayscaleToRow(result, 0);
+        result.data[result.length - 1] = truth;
+        return result;
     }
     
     /**
@@ -146,69 +382,146 @@ public class Image {
      * @return a column vector of the pixel intensities
      */
     public DoubleMatrix convertColorToMatrix(double truth) {
-        byte [] red = mImage.getBand(0).getData();
-        byte [] green = mImage.getBand(1).getData();
-        byte [] blue = mImage.getBand(2).getData();
-        DoubleMatrix result = new DoubleMatrix(1, (red.length * 3) + 1);
-        int counter = 0;
-        for (int index = 0; index < red.length; index++) {
-            result.put(0, counter, (double)red[index]);
-            result.put(0, counter+1, (double)green[index]);
-            result.put(0, counter+2, (double)blue[index]);
-            counter += 3;
+        DoubleMatrix result = new DoubleMatrix(1, getNumFeatures(true) + 1);
+        convertColorToRow(result, 0);
+        result.data[result.length - 1] = truth;
+        return result;
+    }
+    
+    /**
+     * Writes the grayscale features of the image into the first columns of
+     * a row of the target, in the same layout as convertGrayscaleToMatrix.
+     * The intensity of each pixel is the average of its bands. Nothing is
+     * allocated, so a batch of images can be converted into one matrix.
+     * 
+     * @param target the matrix to write the features into
+     * @param row the row of the target to write
+     */
+    public void convertGrayscaleToRow(DoubleMatrix target, int row) {
+        checkRow(target, row, getNumFeatures(false));
+        int width = getWidth();
+        int bands = isGrayscale() ? 1 : mImage.getNumBands();
+        ImageUInt8 first = mImage.getBand(0);
+        double [] data = target.data;
+        int column = row;
+        for (int y = 0; y < getHeight(); y++) {
+            int index = first.startIndex + (y * first.stride);
+            for (int x = 0; x < width; x++) {
+                int total = 0;
+                for (int band = 0; band < bands; band++) {
+                    total += mImage.getBand(band).data[index] & 0xff;
+                }
+                data[column] = FEATURES[total / bands];
+                column += target.rows;
+                index++;
+            }
         }
-        result.put(0, result.columns - 1, truth * 255.0);
-        return result.divi(255.0);
     }
     
     /**
-     * Generates a new image, which will be based upon the bounding box
-     * of the top-left and bottom-right coordinates.
+     * Writes the interleaved red, green and blue features of the image into
+     * the first columns of a row of the target, in the same layout as
+     * convertColorToMatrix. Nothing is allocated, so a batch of images can
+     * be converted into one matrix.
+     * 
+     * @param target the matrix to write the features into
+     * @param row the row of the target to write
+     */
+    public void convertColorToRow(DoubleMatrix target, int row) {
+        checkRow(target, row, getNumFeatures(true));
+        int width = getWidth();
+        byte [] red = mImage.getBand(0).data;
+        byte [] green = mImage.getBand(1).data;
+        byte [] blue = mImage.getBand(2).data;
+        ImageUInt8 first = mImage.getBand(0);
+        double [] data = target.data;
+        int step = target.rows;
+        int column = row;
+        for (int y = 0; y < getHeight(); y++) {
+            int index = first.startIndex + (y * first.stride);
+            for (int x = 0; x < width; x++) {
+                data[column] = FEATURES[red[index] & 0xff];
+                data[column + step] = FEATURES[green[index] & 0xff];
+                data[column + (2 * step)] = FEATURES[blue[index] & 0xff];
+                column += 3 * step;
+                index++;
+            }
+        }
+    }
+    
+    /**
+     * Checks that the target has the specified row, and room for the
+     * specified number of features in it.
+     * 
+     * @param target the matrix to write into
+     * @param row the row to write
+     * @param numFeatures the number of features to write
+     */
+    private static void checkRow(DoubleMatrix target, int row, int numFeatures) {
+        if (row < 0 || row >= target.rows || target.columns < numFeatures) {
+            throw new IllegalArgumentException("cannot write " + numFeatures + " features into row " + row + " of a " + target.rows + "x" + target.columns + " matrix");
+        }
+    }
+    
+    /**
+     * Returns a view of the area of the image inside the bounding box of the
+     * top-left and bottom-right coordinates. The view shares its pixels with
+     * the original image, so no pixels are copied, no matter how many views
+     * are made.
      * 
-     * @param top the top y coordinate
      * @param left the left x coordinate
-     * @param bottom the bottom y coordinate
-     * @param right the right x coordinate
-     * @return a new sub-image of the original
+     * @param top the top y coordinate
+     * @param right the right x coordinate, exclusive
+     * @param bottom the bottom y coordinate, exclusive
+     * @return a sub-image of the original
      */
     public Image getSubImage(int left, int top, int right, int bottom) {
-        int height = bottom - top;
-        int width = right - left;
-        BufferedImage newImage = new BufferedImage(width, height, sBufferedImageType);
-        BufferedImage oldImage = this.getBufferedImage();
-        for (int x = left; x < right; x++) {
-            for (int y = top; y < bottom; y++) {
-                newImage.setRGB(x-left, y-top, oldImage.getRGB(x, y));
-            }
+        if (left < 0 || top < 0 || right > getWidth() || bottom > getHeight() || right <= left || bottom <= top) {
+            throw new IllegalArgumentException("cannot take (" + left + ", " + top + ") - (" + right + ", " + bottom + ") from " + getWidth() + "x" + getHeight() + " image");
         }
-        return new Image(newImage);
+        return new Image(mImage.subimage(left, top, right, bottom, null), sBufferedImageType);
+    }
+    
+    /**
+     * Returns true if the image is a view of part of a larger image.
+     * 
+     * @return true if the image is a sub-image
+     */
+    public boolean isSubImage() {
+        return mImage.getBand(0).isSubimage();
     }
     
     /**
-     * Converts an image into a BufferedImage.
+     * Converts the image into a new BufferedImage.
      * 
-     * @param image the image data to convert
      * @return a new BufferedImage
      */
-    private BufferedImage convertToBufferedImage(MultiSpectral<ImageUInt8> image) {
+    private BufferedImage convertToBufferedImage() {
         BufferedImage result = new BufferedImage(mImage.getWidth(), mImage.getHeight(), sBufferedImageType);
         ConvertBufferedImage.convertTo(mImage, result, true);
         return result;
     }
     
     /**
-     * Returns the BufferedImage that backs the actual Image.
+     * Returns the image as a BufferedImage, for writing to disk or
+     * displaying. The BufferedImage is only created the first time it is
+     * asked for, and is shared by later calls, so it must not be modified.
      * 
-     * @return the BufferedImage backing the Image
+     * @return the BufferedImage for the Image
      */
-    public BufferedImage getBufferedImage() {
-        return convertToBufferedImage(mImage);
+    public synchronized BufferedImage getBufferedImage() {
+        if (mBufferedImage == null) {
+            mBufferedImage = convertToBufferedImage();
+        }
+        return mBufferedImage;
     }
     
     /**
      * Draws a bounding box around the specified coordinates in the specified
      * color. Returns a new copy of the image with the bounding box placed
-     * on the image.
+     * on the image. On grayscale images, as reported by isGrayscale, the box
+     * is drawn in the average of the red, green and blue values of the
+     * color, and the new image is grayscale too.
      * 
      * @param top the top y position of the box
      * @param left the left x position of the box
@@ -218,6 +531,47 @@ public class Image {
      * @return a new copy of the image with the bounding box
      */
     public Image drawBoundingBox(int top, int left, int bottom, int right, Color color) {
-        return null;
+        boolean grayscale = isGrayscale();
+        MultiSpectral<ImageUInt8> result = grayscale && mImage.getNumBands() == 3
+                ? shareBand(new ImageUInt8(getWidth(), getHeight()))
+                : new MultiSpectral<ImageUInt8>(ImageUInt8.class, getWidth(), getHeight(), mImage.getNumBands());
+        int [] values = {color.getRed(), color.getGreen(), color.getBlue()};
+        if (grayscale) {
+            values = new int [] {(color.getRed() + color.getGreen() + color.getBlue()) / 3};
+        }
+        for (int band = 0; band < result.getNumBands(); band++) {
+            if (band > 0 && result.getBand(band) == result.getBand(0)) {
+                break;
+            }
+            ImageUInt8 source = mImage.getBand(band);
+            ImageUInt8 target = result.getBand(band);
+            for (int y = 0; y < getHeight(); y++) {
+                System.arraycopy(source.data, source.startIndex + (y * source.stride), target.data, y * target.stride, getWidth());
+            }
+            int value = values[Math.min(band, values.length - 1)];
+            for (int x = Math.max(0, left); x < Math.min(getWidth(), right); x++) {
+                setIfInside(target, x, top, value);
+                setIfInside(target, x, bottom - 1, value);
+            }
+            for (int y = Math.max(0, top); y < Math.min(getHeight(), bottom); y++) {
+                setIfInside(target, left, y, value);
+                setIfInside(target, right - 1, y, value);
+            }
+        }
+        return new Image(result, sBufferedImageType);
+    }
+    
+    /**
+     * Sets a pixel of a band, if it lies inside the band.
+     * 
+     * @param band the band to set the pixel in
+     * @param x the x position of the pixel
+     * @param y the y position of the pixel
+     * @param value the value to set
+     */
+    private static void setIfInside(ImageUInt8 band, int x, int y, int value) {
+        if (band.isInBounds(x, y)) {
+            band.set(x, y, value);
+        }
     }
 }
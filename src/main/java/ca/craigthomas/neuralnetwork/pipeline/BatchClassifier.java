@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.pipeline;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.jblas.DoubleMatrix;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+
+/**
+ * Scores rows of features submitted from any number of threads, gathering
+ * the rows that are waiting into batches that are scored with one forward
+ * pass. A batch is started as soon as the classifying thread is free, and
+ * holds every row that arrived while the previous batch was being scored,
+ * so a lone row is never held back waiting for others, and rows that arrive
+ * together under load share the cost of a pass.
+ *
+ * @author thomas
+ */
+public class BatchClassifier implements Closeable {
+
+    private final NeuralNetwork mNeuralNetwork;
+    private final int mNumFeatures;
+    private final int mBatchSize;
+    private final FrameQueue<Pending> mPending;
+    private final Thread mThread;
+
+    public static class Builder {
+
+        private final NeuralNetwork mNeuralNetwork;
+        private final int mNumFeatures;
+        private int mBatchSize;
+        private int mQueueCapacity;
+
+        /**
+         * Initialize a builder for a classifier that scores rows with the
+         * specified network.
+         *
+         * @param neuralNetwork the trained network to score rows with
+         * @param numFeatures the number of features in each row
+         */
+        public Builder(NeuralNetwork neuralNetwork, int numFeatures) {
+            mNeuralNetwork = neuralNetwork;
+            mNumFeatures = numFeatures;
+            mBatchSize = WatchPipeline.DEFAULT_BATCH_SIZE;
+            mQueueCapacity = WatchPipeline.DEFAULT_QUEUE_CAPACITY;
+        }
+
+        /**
+         * Sets the largest number of rows scored in one forward pass.
+         * Defaults to 32.
+         *
+         * @param batchSize the largest number of rows per pass
+         * @return the builder for the classifier
+         */
+        public Builder batchSize(int batchSize) {
+            mBatchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Sets the number of rows that can wait to be scored before
+         * submitting another one blocks. Defaults to 64.
+         *
+         * @param queueCapacity the number of rows that can wait
+         * @return the builder for the classifier
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            mQueueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Builds the classifier, and starts its classifying thread.
+         *
+         * @return the new classifier
+         */
+        public BatchClassifier build() {
+            if (mNeuralNetwork == null) {
+                throw new IllegalArgumentException("neural network must be specified");
+            }
+            if (mNumFeatures < 1 || mBatchSize < 1) {
+                throw new IllegalArgumentException("number of features and batch size must be positive");
+            }
+            BatchClassifier classifier = new BatchClassifier(this);
+            classifier.mThread.start();
+            return classifier;
+        }
+    }
+
+    private BatchClassifier(Builder builder) {
+        mNeuralNetwork = builder.mNeuralNetwork;
+        mNumFeatures = builder.mNumFeatures;
+        mBatchSize = builder.mBatchSize;
+        mPending = new FrameQueue<Pending>(builder.mQueueCapacity, FrameQueue.Policy.BLOCK);
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                classifyRows();
+            }
+        }, "batch-classify");
+    }
+
+    /**
+     * Submits a row of features to be scored, waiting for room if too many
+     * rows are already waiting. The row must not be changed until its score
+     * is available. If the classifier is closed, the returned future fails
+     * with an IllegalStateException.
+     *
+     * @param features the features to score
+     * @return the future score of the row
+     * @throws InterruptedException if interrupted while waiting for room
+     */
+    public CompletableFuture<Double> submit(double [] features) throws InterruptedException {
+        if (features.length != mNumFeatures) {
+            throw new IllegalArgumentException("expected " + mNumFeatures + " features, got " + features.length);
+        }
+        Pending pending = new Pending(features);
+        if (!mPending.put(pending)) {
+            pending.mScore.completeExceptionally(new IllegalStateException("classifier is closed"));
+        }
+        return pending.mScore;
+    }
+
+    /**
+     * Scores batches of waiting rows until the queue is finished.
+     */
+    private void classifyRows() {
+        BatchScorer<Pending> scorer = new BatchScorer<Pending>(mNeuralNetwork, mPending, mBatchSize, mNumFeatures) {
+            @Override
+            protected void fillRow(Pending pending, DoubleMatrix features, int row) {
+                copyRow(pending.mFeatures, features, row);
+            }
+
+            @Override
+            protected void scored(Pending pending, double score) {
+                pending.mScore.complete(score);
+            }
+
+            @Override
+            protected void failed(List<Pending> batch, RuntimeException e) {
+                for (Pending pending : batch) {
+                    pending.mScore.completeExceptionally(e);
+                }
+            }
+        };
+        try {
+            scorer.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops accepting rows, and waits for the rows that are already waiting
+     * to be scored.
+     */
+    @Override
+    public void close() {
+        mPending.close();
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A row waiting to be scored, and the future that receives its score.
+     */
+    private static class Pending {
+
+        private final double [] mFeatures;
+        private final CompletableFuture<Double> mScore;
+
+        Pending(double [] features) {
+            mFeatures = features;
+            mScore = new CompletableFuture<Double>();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jblas.DoubleMatrix;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+
+/**
+ * Takes items from a queue until it is finished, gathering the items that
+ * are waiting into batches that are each scored with one forward pass. A
+ * batch is started as soon as the previous one has been scored, and holds
+ * every item that arrived in the meantime, up to the batch size. The
+ * features of a batch are written straight into the rows of one matrix,
+ * which is only allocated again when the size of the batch changes.
+ *
+ * Subclasses say how the features of an item are written, and what is done
+ * with its score. Used by the classify stage of a WatchPipeline, and by a
+ * BatchClassifier.
+ *
+ * @author thomas
+ */
+abstract class BatchScorer<T> {
+
+    private final NeuralNetwork mNeuralNetwork;
+    private final FrameQueue<T> mQueue;
+    private final int mBatchSize;
+    private final int mNumFeatures;
+
+    /**
+     * Creates a scorer for the items in the queue.
+     *
+     * @param neuralNetwork the trained network to score items with
+     * @param queue the queue to take items from
+     * @param batchSize the largest number of items per pass
+     * @param numFeatures the number of features of each item
+     */
+    BatchScorer(NeuralNetwork neuralNetwork, FrameQueue<T> queue, int batchSize, int numFeatures) {
+        mNeuralNetwork = neuralNetwork;
+        mQueue = queue;
+        mBatchSize = batchSize;
+        mNumFeatures = numFeatures;
+    }
+
+    /**
+     * Scores batches of items until the queue is finished. If a batch cannot
+     * be scored, its items are passed to failed, and the next batch is
+     * started.
+     *
+     * @throws InterruptedException if interrupted while waiting for items
+     */
+    void run() throws InterruptedException {
+        List<T> batch = new ArrayList<T>(mBatchSize);
+        DoubleMatrix features = null;
+        T first;
+        while ((first = mQueue.take()) != null) {
+            batch.clear();
+            batch.add(first);
+            mQueue.drainTo(batch, mBatchSize - 1);
+            if (features == null || features.rows != batch.size()) {
+                features = new DoubleMatrix(batch.size(), mNumFeatures);
+            }
+            DoubleMatrix scores;
+            try {
+                for (int row = 0; row < batch.size(); row++) {
+                    fillRow(batch.get(row), features, row);
+                }
+                scores = mNeuralNetwork.feedForward(features);
+            } catch (RuntimeException e) {
+                failed(batch, e);
+                continue;
+            }
+            for (int row = 0; row < batch.size(); row++) {
+                scored(batch.get(row), scores.get(row, 0));
+            }
+        }
+    }
+
+    /**
+     * Copies a row of features into the specified row of the matrix.
+     *
+     * @param values the features to copy
+     * @param features the matrix to copy them into
+     * @param row the row to write
+     */
+    static void copyRow(double [] values, DoubleMatrix features, int row) {
+        for (int column = 0; column < values.length; column++) {
+            features.data[(column * features.rows) + row] = values[column];
+        }
+    }
+
+    /**
+     * Writes the features of an item into the specified row of the matrix.
+     *
+     * @param item the item to write
+     * @param features the matrix of the batch
+     * @param row the row to write
+     */
+    protected abstract void fillRow(T item, DoubleMatrix features, int row);
+
+    /**
+     * Receives the score of an item.
+     *
+     * @param item the item that was scored
+     * @param score its score
+     * @throws InterruptedException if interrupted while passing the score on
+     */
+    protected abstract void scored(T item, double score) throws InterruptedException;
+
+    /**
+     * Receives the items of a batch that could not be scored.
+     *
+     * @param batch the items of the batch
+     * @param e the exception that stopped the batch
+     */
+    protected abstract void failed(List<T> batch, RuntimeException e);
+}
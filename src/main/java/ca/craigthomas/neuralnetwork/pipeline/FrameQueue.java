@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.pipeline;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded queue between two stages of a pipeline. When the queue is full,
+ * its policy decides what happens to a new item: BLOCK makes the producer
+ * wait for room, which pushes back on the stage before it; DROP discards
+ * the new item; and COALESCE discards the oldest waiting item to make room,
+ * so that consumers that fall behind skip ahead to the newest items. Once
+ * the queue is closed, no more items are accepted, and consumers drain the
+ * items that are left before being told the queue is finished.
+ *
+ * @author thomas
+ */
+public class FrameQueue<T> {
+
+    // What to do with a new item when the queue is full
+    public enum Policy { BLOCK, DROP, COALESCE }
+
+    private final int mCapacity;
+    private final Policy mPolicy;
+    private final ArrayDeque<T> mItems;
+    private final ReentrantLock mLock;
+    private final Condition mNotEmpty;
+    private final Condition mNotFull;
+    private boolean mClosed;
+    private long mDropped;
+
+    /**
+     * Creates a new, empty queue.
+     *
+     * @param capacity the largest number of items the queue holds
+     * @param policy what to do with a new item when the queue is full
+     */
+    public FrameQueue(int capacity, Policy policy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("policy must be specified");
+        }
+        mCapacity = capacity;
+        mPolicy = policy;
+        mItems = new ArrayDeque<T>(capacity);
+        mLock = new ReentrantLock();
+        mNotEmpty = mLock.newCondition();
+        mNotFull = mLock.newCondition();
+    }
+
+    /**
+     * Adds an item to the queue, following the policy of the queue if it
+     * is full. Returns false if the item was not added, either because it
+     * was dropped, or because the queue is closed.
+     *
+     * @param item the item to add
+     * @return true if the item was added
+     * @throws InterruptedException if interrupted while waiting for room
+     */
+    public boolean put(T item) throws InterruptedException {
+        mLock.lockInterruptibly();
+        try {
+            while (!mClosed && mItems.size() == mCapacity) {
+                if (mPolicy == Policy.DROP) {
+                    mDropped++;
+                    return false;
+                }
+                if (mPolicy == Policy.COALESCE) {
+                    mItems.removeFirst();
+                    mDropped++;
+                } else {
+                    mNotFull.await();
+                }
+            }
+            if (mClosed) {
+                return false;
+            }
+            mItems.addLast(item);
+            mNotEmpty.signal();
+            return true;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Removes the oldest item from the queue, waiting for one if the queue
+     * is empty. Returns null once the queue is closed and empty.
+     *
+     * @return the oldest item, or null if the queue is finished
+     * @throws InterruptedException if interrupted while waiting for an item
+     */
+    public T take() throws InterruptedException {
+        mLock.lockInterruptibly();
+        try {
+            while (mItems.isEmpty()) {
+                if (mClosed) {
+                    return null;
+                }
+                mNotEmpty.await();
+            }
+            mNotFull.signal();
+            return mItems.removeFirst();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Moves up to the specified number of waiting items into the list,
+     * without waiting for more to arrive.
+     *
+     * @param target the list to add the items to
+     * @param maxItems the largest number of items to move
+     * @return the number of items moved
+     */
+    public int drainTo(List<T> target, int maxItems) {
+        mLock.lock();
+        try {
+            int count = 0;
+            while (count < maxItems && !mItems.isEmpty()) {
+                target.add(mItems.removeFirst());
+                count++;
+            }
+            if (count > 0) {
+                mNotFull.signalAll();
+            }
+            return count;
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the queue from accepting items. Items already in the queue can
+     * still be taken.
+     */
+    public void close() {
+        mLock.lock();
+        try {
+            mClosed = true;
+            mNotEmpty.signalAll();
+            mNotFull.signalAll();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of items waiting in the queue.
+     *
+     * @return the number of waiting items
+     */
+    public int size() {
+        mLock.lock();
+        try {
+            return mItems.size();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of items discarded because the queue was full.
+     *
+     * @return the number of dropped items
+     */
+    public long getDropped() {
+        mLock.lock();
+        try {
+            return mDropped;
+        } finally {
+            mLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,605 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.pipeline;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+
+import org.jblas.DoubleMatrix;
+
+import ca.craigthomas.neuralnetwork.commandline.Runner;
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+import ca.craigthomas.neuralnetwork.imageprocessing.Image;
+
+/**
+ * Classifies image files as they arrive, in a pipeline of stages connected
+ * by bounded queues:
+ *
+ *   discover  - files are submitted directly, or found by watching a
+ *               directory with a WatchService
+ *   decode    - a pool of threads reads each file, and shrinks it to the
+ *               size of the network's input if it is larger
+ *   classify  - one or more threads each gather the frames that are
+ *               waiting into a batch, write their features straight into
+ *               the rows of one matrix, and score them with one forward pass
+ *   write     - a single thread writes a line of "name,score,label" for
+ *               each frame, flushing whenever it catches up
+ *
+ * Rows of features that need no decoding, such as the rows of a CSV file,
+ * can be submitted straight to the classify stage.
+ *
+ * The queues after the first stage block when full, so a slow stage holds
+ * back the stages before it. The first queue follows a configurable policy
+ * instead, so that when frames arrive faster than they can be classified
+ * they are dropped (DROP) or replaced by newer frames (COALESCE) rather than
+ * building up an unbounded backlog. BLOCK makes the discover stage wait.
+ *
+ * @author thomas
+ */
+public class WatchPipeline implements Closeable {
+
+    // The logger for the class
+    private final static Logger LOGGER = Logger.getLogger(Runner.class.getName());
+
+    // The default largest number of frames classified in one forward pass
+    public static final int DEFAULT_BATCH_SIZE = 32;
+    // The default number of items each queue holds
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    // The number of times a file that cannot be read yet is tried again
+    public static final int DECODE_RETRIES = 5;
+    // The time to wait before trying to read a file again, in milliseconds
+    public static final long DECODE_RETRY_DELAY = 100;
+
+    private final NeuralNetwork mNeuralNetwork;
+    private final int mWidth;
+    private final int mHeight;
+    private final boolean mColor;
+    private final double mThreshold;
+    private final int mBatchSize;
+    private final int mNumFeatures;
+    private final Writer mOutput;
+    private final FrameQueue<File> mFiles;
+    private final FrameQueue<Frame> mFrames;
+    private final FrameQueue<Result> mResults;
+    private final List<Thread> mThreads;
+    private final AtomicLong mProcessed;
+    private final AtomicLong mFailed;
+    private volatile WatchService mWatchService;
+    private boolean mClosed;
+
+    public static class Builder {
+
+        private final NeuralNetwork mNeuralNetwork;
+        private final int mWidth;
+        private final int mHeight;
+        private boolean mColor;
+        private double mThreshold;
+        private int mBatchSize;
+        private int mQueueCapacity;
+        private FrameQueue.Policy mPolicy;
+        private int mDecodeThreads;
+        private int mClassifyThreads;
+        private Writer mOutput;
+
+        /**
+         * Initialize a builder for a pipeline that classifies frames with a
+         * network trained on images of the specified size.
+         *
+         * @param neuralNetwork the trained network to classify frames with
+         * @param width the width of the network's input in pixels
+         * @param height the height of the network's input in pixels
+         */
+        public Builder(NeuralNetwork neuralNetwork, int width, int height) {
+            mNeuralNetwork = neuralNetwork;
+            mWidth = width;
+            mHeight = height;
+            mThreshold = 0.5;
+            mBatchSize = DEFAULT_BATCH_SIZE;
+            mQueueCapacity = DEFAULT_QUEUE_CAPACITY;
+            mPolicy = FrameQueue.Policy.COALESCE;
+            mDecodeThreads = Runtime.getRuntime().availableProcessors();
+            mClassifyThreads = 1;
+        }
+
+        /**
+         * Sets whether the network was trained on color features. Defaults
+         * to grayscale.
+         *
+         * @param color whether to use color features
+         * @return the builder for the pipeline
+         */
+        public Builder color(boolean color) {
+            mColor = color;
+            return this;
+        }
+
+        /**
+         * Sets the score a frame must be above to be labelled positive.
+         * Defaults to 0.5.
+         *
+         * @param threshold the prediction threshold
+         * @return the builder for the pipeline
+         */
+        public Builder threshold(double threshold) {
+            mThreshold = threshold;
+            return this;
+        }
+
+        /**
+         * Sets the largest number of frames classified in one forward pass.
+         * Defaults to 32.
+         *
+         * @param batchSize the largest number of frames per pass
+         * @return the builder for the pipeline
+         */
+        public Builder batchSize(int batchSize) {
+            mBatchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Sets the number of items each queue between stages holds.
+         * Defaults to 64.
+         *
+         * @param queueCapacity the capacity of each queue
+         * @return the builder for the pipeline
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            mQueueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Sets what happens to a new file when the pipeline has fallen
+         * behind. Defaults to COALESCE, which keeps the newest files.
+         *
+         * @param policy the policy for the first queue
+         * @return the builder for the pipeline
+         */
+        public Builder policy(FrameQueue.Policy policy) {
+            mPolicy = policy;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads that decode files. Defaults to the
+         * number of processors.
+         *
+         * @param decodeThreads the number of decoding threads
+         * @return the builder for the pipeline
+         */
+        public Builder decodeThreads(int decodeThreads) {
+            mDecodeThreads = decodeThreads;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads that classify batches of frames.
+         * Defaults to 1. More threads help when the network is small
+         * enough that a forward pass does not keep every processor busy.
+         *
+         * @param classifyThreads the number of classifying threads
+         * @return the builder for the pipeline
+         */
+        public Builder classifyThreads(int classifyThreads) {
+            mClassifyThreads = classifyThreads;
+            return this;
+        }
+
+        /**
+         * Sets where the results are written. The writer is flushed, but
+         * not closed, by the pipeline.
+         *
+         * @param output the writer to write results to
+         * @return the builder for the pipeline
+         */
+        public Builder output(Writer output) {
+            mOutput = output;
+            return this;
+        }
+
+        /**
+         * Builds the pipeline, and starts the threads of every stage.
+         *
+         * @return the new pipeline
+         */
+        public WatchPipeline build() {
+            if (mOutput == null) {
+                throw new IllegalArgumentException("output must be specified");
+            }
+            if (mBatchSize < 1 || mDecodeThreads < 1 || mClassifyThreads < 1) {
+                throw new IllegalArgumentException("batch size and thread counts must be positive");
+            }
+            WatchPipeline pipeline = new WatchPipeline(this);
+            pipeline.start(mDecodeThreads, mClassifyThreads);
+            return pipeline;
+        }
+    }
+
+    private WatchPipeline(Builder builder) {
+        mNeuralNetwork = builder.mNeuralNetwork;
+        mWidth = builder.mWidth;
+        mHeight = builder.mHeight;
+        mColor = builder.mColor;
+        mThreshold = builder.mThreshold;
+        mBatchSize = builder.mBatchSize;
+        mNumFeatures = mWidth * mHeight * (mColor ? 3 : 1);
+        mOutput = builder.mOutput;
+        mFiles = new FrameQueue<File>(builder.mQueueCapacity, builder.mPolicy);
+        mFrames = new FrameQueue<Frame>(builder.mQueueCapacity, FrameQueue.Policy.BLOCK);
+        mResults = new FrameQueue<Result>(builder.mQueueCapacity, FrameQueue.Policy.BLOCK);
+        mThreads = new ArrayList<Thread>();
+        mProcessed = new AtomicLong();
+        mFailed = new AtomicLong();
+    }
+
+    /**
+     * Starts the threads of the decode, classify and write stages. Each
+     * stage closes the queue after it once it has finished, so closing the
+     * first queue drains the whole pipeline.
+     *
+     * @param decodeThreads the number of decoding threads
+     * @param classifyThreads the number of classifying threads
+     */
+    private void start(int decodeThreads, int classifyThreads) {
+        final AtomicInteger decoders = new AtomicInteger(decodeThreads);
+        for (int thread = 0; thread < decodeThreads; thread++) {
+            mThreads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        decodeFrames();
+                    } finally {
+                        if (decoders.decrementAndGet() == 0) {
+                            mFrames.close();
+                        }
+                    }
+                }
+            }, "watch-decode-" + thread));
+        }
+        final AtomicInteger classifiers = new AtomicInteger(classifyThreads);
+        for (int thread = 0; thread < classifyThreads; thread++) {
+            mThreads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        classifyFrames();
+                    } finally {
+                        if (classifiers.decrementAndGet() == 0) {
+                            mResults.close();
+                        }
+                    }
+                }
+            }, "watch-classify-" + thread));
+        }
+        mThreads.add(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeResults();
+            }
+        }, "watch-write"));
+        for (Thread thread : mThreads) {
+            thread.start();
+        }
+    }
+
+    /**
+     * Adds a file to the pipeline. Returns false if the file was dropped
+     * because the pipeline has fallen behind, or if the pipeline is closed.
+     *
+     * @param file the image file to classify
+     * @return true if the file was accepted
+     * @throws InterruptedException if interrupted while waiting for room
+     */
+    public boolean submit(File file) throws InterruptedException {
+        return mFiles.put(file);
+    }
+
+    /**
+     * Adds a row of features straight to the classify stage, waiting for
+     * room if the pipeline is behind. The row must hold one feature for
+     * each input of the network, and must not be changed afterwards.
+     * Returns false if the pipeline is closed.
+     *
+     * @param name the name written with the result of the row
+     * @param features the features to classify
+     * @return true if the row was accepted
+     * @throws InterruptedException if interrupted while waiting for room
+     */
+    public boolean submit(String name, double [] features) throws InterruptedException {
+        if (features.length != mNumFeatures) {
+            throw new IllegalArgumentException("expected " + mNumFeatures + " features, got " + features.length);
+        }
+        return mFrames.put(new Frame(name, null, features));
+    }
+
+    /**
+     * Watches the directory, and submits every file created in it, until
+     * the pipeline is closed or the thread is interrupted. Files that are
+     * already in the directory are not classified. Files should ideally be
+     * moved into the directory once they are complete; a file that is still
+     * being written when it is decoded is tried again a few times before
+     * it is skipped.
+     *
+     * @param directory the directory to watch
+     * @throws IOException if the directory cannot be watched
+     * @throws InterruptedException if interrupted while watching
+     */
+    public void watch(File directory) throws IOException, InterruptedException {
+        Path path = directory.toPath();
+        WatchService watchService = FileSystems.getDefault().newWatchService();
+        mWatchService = watchService;
+        try {
+            path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        LOGGER.log(Level.WARNING, "missed events while watching [" + directory + "]");
+                        continue;
+                    }
+                    File file = path.resolve((Path)event.context()).toFile();
+                    if (!submit(file)) {
+                        LOGGER.log(Level.FINE, "dropped [" + file + "]");
+                    }
+                }
+                if (!key.reset()) {
+                    LOGGER.log(Level.SEVERE, "directory [" + directory + "] can no longer be watched");
+                    return;
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // The pipeline was closed
+        } finally {
+            watchService.close();
+        }
+    }
+
+    /**
+     * Reads files from the first queue until it is finished, and passes
+     * each one that can be decoded on to the classify stage.
+     */
+    private void decodeFrames() {
+        try {
+            File file;
+            while ((file = mFiles.take()) != null) {
+                Image image = null;
+                try {
+                    image = decode(file, false);
+                    for (int retry = 0; image == null && retry < DECODE_RETRIES && file.isFile(); retry++) {
+                        Thread.sleep(DECODE_RETRY_DELAY);
+                        image = decode(file, retry == DECODE_RETRIES - 1);
+                    }
+                } catch (UnusableImageException e) {
+                    LOGGER.log(Level.WARNING, "file " + file + " " + e.getMessage() + ", skipping");
+                }
+                if (image == null) {
+                    mFailed.incrementAndGet();
+                } else {
+                    mFrames.put(new Frame(file.getPath(), image, null));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads an image file, and shrinks it to the size of the network's
+     * input. Returns null if the file cannot be read as an image yet, since
+     * it may still be being written. An image that was read but is smaller
+     * than the network's input will never be usable, and is reported with
+     * an UnusableImageException instead, so that it is not tried again.
+     *
+     * @param file the file to read
+     * @param lastAttempt whether to log a warning if the file cannot be read
+     * @return the decoded image, or null
+     * @throws UnusableImageException if the image is smaller than the input
+     */
+    private Image decode(File file, boolean lastAttempt) throws UnusableImageException {
+        try {
+            BufferedImage bufferedImage = ImageIO.read(file);
+            if (bufferedImage == null) {
+                if (lastAttempt) {
+                    LOGGER.log(Level.WARNING, "file " + file + " is not a readable image, skipping");
+                }
+                return null;
+            }
+            Image image = new Image(bufferedImage);
+            if (image.getWidth() < mWidth || image.getHeight() < mHeight) {
+                throw new UnusableImageException("is smaller than " + mWidth + "x" + mHeight);
+            }
+            if (image.getWidth() != mWidth || image.getHeight() != mHeight) {
+                image = image.resize(mWidth, mHeight);
+            }
+            return image;
+        } catch (IOException | RuntimeException e) {
+            if (lastAttempt) {
+                LOGGER.log(Level.WARNING, "file " + file + " could not be decoded, skipping (" + e.getMessage() + ")");
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Gathers the frames that are waiting into batches, and scores each
+     * batch with one forward pass, until the frame queue is finished.
+     */
+    private void classifyFrames() {
+        BatchScorer<Frame> scorer = new BatchScorer<Frame>(mNeuralNetwork, mFrames, mBatchSize, mNumFeatures) {
+            @Override
+            protected void fillRow(Frame frame, DoubleMatrix features, int row) {
+                if (frame.mFeatures != null) {
+                    copyRow(frame.mFeatures, features, row);
+                } else if (mColor) {
+                    frame.mImage.convertColorToRow(features, row);
+                } else {
+                    frame.mImage.convertGrayscaleToRow(features, row);
+                }
+            }
+
+            @Override
+            protected void scored(Frame frame, double score) throws InterruptedException {
+                mResults.put(new Result(frame.mName, score));
+            }
+
+            @Override
+            protected void failed(List<Frame> batch, RuntimeException e) {
+                LOGGER.log(Level.WARNING, "could not classify batch of " + batch.size() + " frame(s) (" + e + ")");
+                mFailed.addAndGet(batch.size());
+            }
+        };
+        try {
+            scorer.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Writes a line for each result until the result queue is finished,
+     * flushing the output whenever no more results are waiting.
+     */
+    private void writeResults() {
+        try {
+            Result result;
+            while ((result = mResults.take()) != null) {
+                int label = (result.mScore > mThreshold) ? 1 : 0;
+                try {
+                    mOutput.write(result.mName + "," + result.mScore + "," + label + "\n");
+                    if (mResults.size() == 0) {
+                        mOutput.flush();
+                    }
+                } catch (IOException e) {
+                    LOGGER.log(Level.SEVERE, "could not write result for " + result.mName + " (" + e.getMessage() + ")");
+                }
+                mProcessed.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of frames that have been classified and written.
+     *
+     * @return the number of processed frames
+     */
+    public long getProcessed() {
+        return mProcessed.get();
+    }
+
+    /**
+     * Returns the number of files dropped because the pipeline had fallen
+     * behind.
+     *
+     * @return the number of dropped files
+     */
+    public long getDropped() {
+        return mFiles.getDropped();
+    }
+
+    /**
+     * Returns the number of files that could not be decoded or classified.
+     *
+     * @return the number of failed files
+     */
+    public long getFailed() {
+        return mFailed.get();
+    }
+
+    /**
+     * Stops watching, stops accepting files, and waits for the files that
+     * were already accepted to be classified and written. Closing the
+     * pipeline again waits for the first close to finish.
+     */
+    @Override
+    public synchronized void close() {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        WatchService watchService = mWatchService;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "could not stop watching (" + e.getMessage() + ")");
+            }
+        }
+        mFiles.close();
+        try {
+            for (Thread thread : mThreads) {
+                thread.join();
+            }
+            mOutput.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "could not flush results (" + e.getMessage() + ")");
+        }
+    }
+
+    /**
+     * A decoded frame, or a row of features, waiting to be classified.
+     */
+    private static class Frame {
+
+        private final String mName;
+        private final Image mImage;
+        private final double [] mFeatures;
+
+        Frame(String name, Image image, double [] features) {
+            mName = name;
+            mImage = image;
+            mFeatures = features;
+        }
+    }
+
+    /**
+     * The score of a classified frame, waiting to be written.
+     */
+    private static class Result {
+
+        private final String mName;
+        private final double mScore;
+
+        Result(String name, double score) {
+            mName = name;
+            mScore = score;
+        }
+    }
+
+    /**
+     * Thrown when a file was read as an image, but the image can never be
+     * classified, so there is no point in reading it again.
+     */
+    private static class UnusableImageException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        UnusableImageException(String message) {
+            super(message);
+        }
+    }
+}
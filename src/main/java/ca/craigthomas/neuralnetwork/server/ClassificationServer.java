@@ -0,0 +1,551 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.server;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+
+import org.jblas.DoubleMatrix;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import ca.craigthomas.neuralnetwork.commandline.Runner;
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+import ca.craigthomas.neuralnetwork.dataset.NumericCSVReader;
+import ca.craigthomas.neuralnetwork.imageprocessing.Image;
+import ca.craigthomas.neuralnetwork.pipeline.BatchClassifier;
+
+/**
+ * Keeps a trained network loaded, and classifies images or rows of features
+ * sent to it over HTTP. The server answers two paths:
+ *
+ *   POST /classify  - the body is either an encoded image (PNG, JPEG and
+ *                     so on), which is shrunk to the network's input size if
+ *                     it is larger, or, with a Content-Type of text/csv or
+ *                     text/plain, one row of comma separated features per
+ *                     line. The response has one "score,label" line for the
+ *                     image, or for each row.
+ *   GET  /health    - responds with "ok" once the server is ready.
+ *
+ * Requests are handled by a fixed pool of worker threads with a bounded
+ * queue. When both are full, the thread accepting connections handles the
+ * request itself, which stops it accepting more until it is done. Rows from
+ * every request are scored together in batches by a BatchClassifier.
+ *
+ * Before the server starts listening, the whole classification path is run
+ * a number of times on a blank image, so that the native libraries are
+ * loaded and the code is compiled before the first real request arrives.
+ *
+ * @author thomas
+ */
+public class ClassificationServer implements Closeable {
+
+    // The logger for the class
+    private final static Logger LOGGER = Logger.getLogger(Runner.class.getName());
+
+    // The path that classifies images and features
+    public static final String CLASSIFY_PATH = "/classify";
+    // The path that reports whether the server is ready
+    public static final String HEALTH_PATH = "/health";
+    // The largest request body accepted, in bytes
+    public static final int MAX_BODY_SIZE = 16 * 1024 * 1024;
+    // The default number of times the classification path is run at startup
+    public static final int DEFAULT_WARMUP_ITERATIONS = 1000;
+
+    private final NeuralNetwork mNeuralNetwork;
+    private final int mWidth;
+    private final int mHeight;
+    private final boolean mColor;
+    private final int mNumFeatures;
+    private final double mThreshold;
+    private final int mBatchSize;
+    private final int mWorkers;
+    private final int mQueueCapacity;
+    private final int mWarmupIterations;
+    private final InetSocketAddress mAddress;
+    private BatchClassifier mClassifier;
+    private ThreadPoolExecutor mExecutor;
+    private HttpServer mServer;
+    private boolean mClosed;
+
+    public static class Builder {
+
+        private final NeuralNetwork mNeuralNetwork;
+        private final int mWidth;
+        private final int mHeight;
+        private boolean mColor;
+        private double mThreshold;
+        private int mBatchSize;
+        private int mWorkers;
+        private int mQueueCapacity;
+        private int mWarmupIterations;
+        private InetSocketAddress mAddress;
+
+        /**
+         * Initialize a builder for a server that classifies with a network
+         * trained on images of the specified size.
+         *
+         * @param neuralNetwork the trained network to classify with
+         * @param width the width of the network's input in pixels
+         * @param height the height of the network's input in pixels
+         */
+        public Builder(NeuralNetwork neuralNetwork, int width, int height) {
+            mNeuralNetwork = neuralNetwork;
+            mWidth = width;
+            mHeight = height;
+            mThreshold = 0.5;
+            mBatchSize = 32;
+            mWorkers = Runtime.getRuntime().availableProcessors();
+            mQueueCapacity = 64;
+            mWarmupIterations = DEFAULT_WARMUP_ITERATIONS;
+            mAddress = new InetSocketAddress("127.0.0.1", 8080);
+        }
+
+        /**
+         * Sets whether the network was trained on color features. Defaults
+         * to grayscale.
+         *
+         * @param color whether to use color features
+         * @return the builder for the server
+         */
+        public Builder color(boolean color) {
+            mColor = color;
+            return this;
+        }
+
+        /**
+         * Sets the score a sample must be above to be labelled positive.
+         * Defaults to 0.5.
+         *
+         * @param threshold the prediction threshold
+         * @return the builder for the server
+         */
+        public Builder threshold(double threshold) {
+            mThreshold = threshold;
+            return this;
+        }
+
+        /**
+         * Sets the largest number of rows scored in one forward pass.
+         * Defaults to 32.
+         *
+         * @param batchSize the largest number of rows per pass
+         * @return the builder for the server
+         */
+        public Builder batchSize(int batchSize) {
+            mBatchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads that handle requests. Defaults to the
+         * number of processors.
+         *
+         * @param workers the number of worker threads
+         * @return the builder for the server
+         */
+        public Builder workers(int workers) {
+            mWorkers = workers;
+            return this;
+        }
+
+        /**
+         * Sets the number of requests that can wait for a worker, and the
+         * number of rows that can wait to be scored. Defaults to 64.
+         *
+         * @param queueCapacity the number of requests that can wait
+         * @return the builder for the server
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            mQueueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Sets the number of times the classification path is run before
+         * the server starts listening. Defaults to 1000.
+         *
+         * @param warmupIterations the number of warmup runs
+         * @return the builder for the server
+         */
+        public Builder warmupIterations(int warmupIterations) {
+            mWarmupIterations = warmupIterations;
+            return this;
+        }
+
+        /**
+         * Sets the address and port to listen on. Defaults to port 8080 on
+         * the loopback address, so that only local clients can connect. A
+         * port of 0 picks any free port.
+         *
+         * @param address the address to listen on
+         * @return the builder for the server
+         */
+        public Builder address(InetSocketAddress address) {
+            mAddress = address;
+            return this;
+        }
+
+        /**
+         * Builds the server. The server does not listen until it is started.
+         *
+         * @return the new server
+         */
+        public ClassificationServer build() {
+            if (mNeuralNetwork == null || mAddress == null) {
+                throw new IllegalArgumentException("neural network and address must be specified");
+            }
+            if (mWidth < 1 || mHeight < 1) {
+                throw new IllegalArgumentException("width and height must be positive");
+            }
+            if (mBatchSize < 1 || mWorkers < 1 || mQueueCapacity < 1 || mWarmupIterations < 0) {
+                throw new IllegalArgumentException("batch size, workers and queue capacity must be positive");
+            }
+            return new ClassificationServer(this);
+        }
+    }
+
+    private ClassificationServer(Builder builder) {
+        mNeuralNetwork = builder.mNeuralNetwork;
+        mWidth = builder.mWidth;
+        mHeight = builder.mHeight;
+        mColor = builder.mColor;
+        mNumFeatures = mWidth * mHeight * (mColor ? 3 : 1);
+        mThreshold = builder.mThreshold;
+        mBatchSize = builder.mBatchSize;
+        mWorkers = builder.mWorkers;
+        mQueueCapacity = builder.mQueueCapacity;
+        mWarmupIterations = builder.mWarmupIterations;
+        mAddress = builder.mAddress;
+    }
+
+    /**
+     * Warms up the classification path, and then starts listening.
+     *
+     * @throws IOException if the server cannot listen on its address
+     */
+    public synchronized void start() throws IOException {
+        if (mServer != null || mClosed) {
+            throw new IllegalStateException("server already started");
+        }
+        mClassifier = new BatchClassifier.Builder(mNeuralNetwork, mNumFeatures)
+                .batchSize(mBatchSize)
+                .queueCapacity(mQueueCapacity).build();
+        try {
+            warmUp();
+            mExecutor = new ThreadPoolExecutor(mWorkers, mWorkers, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(mQueueCapacity), new ThreadPoolExecutor.CallerRunsPolicy());
+            mServer = HttpServer.create(mAddress, mQueueCapacity);
+            mServer.createContext(CLASSIFY_PATH, new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    handleClassify(exchange);
+                }
+            });
+            mServer.createContext(HEALTH_PATH, new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    respond(exchange, 200, "ok\n");
+                }
+            });
+            mServer.setExecutor(mExecutor);
+            mServer.start();
+        } catch (IOException | RuntimeException e) {
+            closeResources();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs the whole classification path, from decoding an image to
+     * writing the response, on a blank image.
+     *
+     * @throws IOException if the blank image cannot be encoded
+     */
+    private void warmUp() throws IOException {
+        if (mWarmupIterations == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(mWidth, mHeight, BufferedImage.TYPE_INT_RGB), "png", encoded);
+        byte [] body = encoded.toByteArray();
+        try {
+            for (int iteration = 0; iteration < mWarmupIterations; iteration++) {
+                classify(body, "image/png");
+            }
+        } catch (RequestException e) {
+            throw new IOException("warmup failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while warming up");
+        }
+        LOGGER.log(Level.INFO, "warmed up with " + mWarmupIterations + " classification(s) in " +
+                ((System.nanoTime() - start) / 1000000) + "ms");
+    }
+
+    /**
+     * Handles a request to classify an image or rows of features.
+     *
+     * @param exchange the request to handle
+     * @throws IOException if the response cannot be sent
+     */
+    private void handleClassify(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                respond(exchange, 405, "only POST is supported\n");
+                return;
+            }
+            byte [] body = readBody(exchange.getRequestBody());
+            respond(exchange, 200, classify(body, exchange.getRequestHeaders().getFirst("Content-Type")));
+        } catch (RequestException e) {
+            respond(exchange, e.getStatus(), e.getMessage() + "\n");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "server is shutting down\n");
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "could not classify request (" + e + ")");
+            respond(exchange, 500, "could not classify request\n");
+        }
+    }
+
+    /**
+     * Classifies the body of a request, and returns the response.
+     *
+     * @param body the body of the request
+     * @param contentType the content type of the body, which may be null
+     * @return a "score,label" line for each sample in the body
+     * @throws RequestException if the body cannot be classified
+     * @throws InterruptedException if interrupted while classifying
+     */
+    private String classify(byte [] body, String contentType) throws RequestException, InterruptedException {
+        List<double []> rows = isFeatures(contentType) ? parseFeatures(body) : decodeImage(body);
+        List<CompletableFuture<Double>> scores = new ArrayList<CompletableFuture<Double>>(rows.size());
+        for (double [] row : rows) {
+            scores.add(mClassifier.submit(row));
+        }
+        StringBuilder response = new StringBuilder();
+        try {
+            for (CompletableFuture<Double> score : scores) {
+                double value = score.get();
+                response.append(value).append(',').append(value > mThreshold ? 1 : 0).append('\n');
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IllegalStateException) {
+                throw new RequestException(503, "server is shutting down");
+            }
+            throw new RequestException(500, "could not classify request (" + e.getCause() + ")");
+        }
+        return response.toString();
+    }
+
+    /**
+     * Returns whether a request with the specified content type holds rows
+     * of features rather than an image.
+     *
+     * @param contentType the content type of the request, which may be null
+     * @return true if the request holds rows of features
+     */
+    private static boolean isFeatures(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.startsWith("text/csv") || type.startsWith("text/plain");
+    }
+
+    /**
+     * Decodes an encoded image, and converts it to a row of features.
+     *
+     * @param body the encoded image
+     * @return a list holding the one row of features
+     * @throws RequestException if the body is not an image of a usable size
+     */
+    private List<double []> decodeImage(byte [] body) throws RequestException {
+        BufferedImage bufferedImage;
+        try {
+            bufferedImage = ImageIO.read(new ByteArrayInputStream(body));
+        } catch (IOException e) {
+            throw new RequestException(400, "could not decode image (" + e.getMessage() + ")");
+        }
+        if (bufferedImage == null) {
+            throw new RequestException(400, "body is not a readable image");
+        }
+        Image image = new Image(bufferedImage);
+        if (image.getWidth() < mWidth || image.getHeight() < mHeight) {
+            throw new RequestException(400, "image is smaller than " + mWidth + "x" + mHeight);
+        }
+        if (image.getWidth() != mWidth || image.getHeight() != mHeight) {
+            image = image.resize(mWidth, mHeight);
+        }
+        // With a single row, the column-major data of the matrix is the row
+        DoubleMatrix features = new DoubleMatrix(1, mNumFeatures);
+        if (mColor) {
+            image.convertColorToRow(features, 0);
+        } else {
+            image.convertGrayscaleToRow(features, 0);
+        }
+        List<double []> rows = new ArrayList<double []>(1);
+        rows.add(features.data);
+        return rows;
+    }
+
+    /**
+     * Parses rows of comma separated features, one row per line.
+     *
+     * @param body the rows of features
+     * @return the parsed rows
+     * @throws RequestException if a row is malformed or has the wrong length
+     */
+    private List<double []> parseFeatures(byte [] body) throws RequestException {
+        List<double []> rows = new ArrayList<double []>();
+        try (NumericCSVReader reader = new NumericCSVReader(Channels.newChannel(new ByteArrayInputStream(body)), false)) {
+            while (reader.readRow()) {
+                if (reader.getNumColumns() != mNumFeatures) {
+                    throw new RequestException(400, "line " + reader.getLineNumber() + " has " +
+                            reader.getNumColumns() + " value(s), expected " + mNumFeatures);
+                }
+                double [] row = new double [mNumFeatures];
+                System.arraycopy(reader.getRow(), 0, row, 0, mNumFeatures);
+                rows.add(row);
+            }
+        } catch (IOException e) {
+            throw new RequestException(400, e.getMessage());
+        }
+        if (rows.isEmpty()) {
+            throw new RequestException(400, "no features in request");
+        }
+        return rows;
+    }
+
+    /**
+     * Reads the body of a request, up to MAX_BODY_SIZE bytes.
+     *
+     * @param stream the body of the request
+     * @return the bytes of the body
+     * @throws IOException if the body cannot be read
+     * @throws RequestException if the body is too large
+     */
+    private static byte [] readBody(InputStream stream) throws IOException, RequestException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte [] buffer = new byte [8192];
+        int read;
+        while ((read = stream.read(buffer)) >= 0) {
+            if (body.size() + read > MAX_BODY_SIZE) {
+                throw new RequestException(413, "request body is larger than " + MAX_BODY_SIZE + " bytes");
+            }
+            body.write(buffer, 0, read);
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * Sends a plain text response, and closes the exchange.
+     *
+     * @param exchange the exchange to respond to
+     * @param status the HTTP status code
+     * @param text the body of the response
+     * @throws IOException if the response cannot be sent
+     */
+    private static void respond(HttpExchange exchange, int status, String text) throws IOException {
+        byte [] bytes = text.getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Returns the address the server is listening on. If the server was
+     * built with port 0, this holds the port that was picked.
+     *
+     * @return the address of the server
+     */
+    public synchronized InetSocketAddress getAddress() {
+        if (mServer == null) {
+            throw new IllegalStateException("server not started");
+        }
+        return mServer.getAddress();
+    }
+
+    /**
+     * Stops listening, waits briefly for requests that are being handled,
+     * and stops the classifier. Closing a closed server does nothing.
+     */
+    @Override
+    public synchronized void close() {
+        if (mClosed) {
+            return;
+        }
+        mClosed = true;
+        if (mServer != null) {
+            mServer.stop(1);
+        }
+        closeResources();
+    }
+
+    /**
+     * Stops the worker threads and the classifier.
+     */
+    private void closeResources() {
+        if (mExecutor != null) {
+            mExecutor.shutdown();
+            try {
+                mExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (mClassifier != null) {
+            mClassifier.close();
+        }
+    }
+
+    /**
+     * A request that cannot be classified, and the status to respond with.
+     */
+    private static class RequestException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+        private final int mStatus;
+
+        RequestException(int status, String message) {
+            super(message);
+            mStatus = status;
+        }
+
+        int getStatus() {
+            return mStatus;
+        }
+    }
+}
@@ -119,6 +119,14 @@ public class TestSigmoid {
         Assert.assertArrayEquals(expected.toArray(), result.toArray(), 0.0001);
     }
     
+    @Test
+    public void testSigmoidMatrixDoesNotChangeInput() {
+        DoubleMatrix doubleMatrix = new DoubleMatrix(new double[][] {{1.0, 5.0, 100.0}, {-1.0, -5.0, -100.0}});
+        DoubleMatrix expected = doubleMatrix.dup();
+        mSigmoid.apply(doubleMatrix);
+        Assert.assertArrayEquals(expected.toArray(), doubleMatrix.toArray(), 0.0);
+    }
+    
     @Test
     public void testSigmoidGradient() {
         DoubleMatrix input = new DoubleMatrix(new double[][] {
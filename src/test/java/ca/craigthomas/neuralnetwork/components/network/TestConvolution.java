@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.network;
+
+import static org.junit.Assert.*;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.util.Random;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestConvolution {
+
+    private Convolution mConvolution;
+    private DoubleMatrix mInput;
+    private DoubleMatrix mTheta;
+
+    @Before
+    public void setUp() {
+        Random.seed(11);
+        // 3 samples of 5 x 4 images with 2 channels, and 3 filters of 2 x 2
+        mConvolution = new Convolution(5, 4, 2, 3, 2);
+        mInput = DoubleMatrix.rand(3, 40);
+        mTheta = DoubleMatrix.rand(3, 9);
+    }
+
+    /**
+     * Computes the output of the convolution one pixel at a time.
+     */
+    private double convolve(int row, int outputX, int outputY, int filter) {
+        double total = mTheta.get(filter, 0);
+        for (int y = 0; y < 2; y++) {
+            for (int x = 0; x < 2; x++) {
+                for (int channel = 0; channel < 2; channel++) {
+                    int weight = 1 + (((y * 2) + x) * 2) + channel;
+                    int input = ((((outputY + y) * 5) + outputX + x) * 2) + channel;
+                    total += mTheta.get(filter, weight) * mInput.get(row, input);
+                }
+            }
+        }
+        return total;
+    }
+
+    @Test
+    public void testOutputShape() {
+        assertEquals(4, mConvolution.getOutputWidth());
+        assertEquals(3, mConvolution.getOutputHeight());
+        assertEquals(12, mConvolution.getNumPositions());
+        assertEquals(36, mConvolution.getOutputSize());
+        assertEquals(8, mConvolution.getPatchSize());
+    }
+
+    @Test
+    public void testPatchesTimesThetaMatchesDirectConvolution() {
+        DoubleMatrix patches = mConvolution.toPatches(mInput, 0);
+        DoubleMatrix output = mConvolution.toOutput(patches.mmul(mTheta.transpose()));
+        assertEquals(3, output.rows);
+        assertEquals(36, output.columns);
+        for (int row = 0; row < 3; row++) {
+            for (int y = 0; y < 3; y++) {
+                for (int x = 0; x < 4; x++) {
+                    for (int filter = 0; filter < 3; filter++) {
+                        double expected = convolve(row, x, y, filter);
+                        assertEquals(expected, output.get(row, (((y * 4) + x) * 3) + filter), 0.0000001);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFirstColumnSkipsBias() {
+        DoubleMatrix withBias = DoubleMatrix.concatHorizontally(DoubleMatrix.ones(3, 1), mInput);
+        Assert.assertArrayEquals(mConvolution.toPatches(mInput, 0).toArray(), 
+                mConvolution.toPatches(withBias, 1).toArray(), 0.0);
+    }
+
+    @Test
+    public void testToPositionsReversesToOutput() {
+        DoubleMatrix positions = DoubleMatrix.rand(36, 3);
+        DoubleMatrix result = mConvolution.toPositions(mConvolution.toOutput(positions));
+        Assert.assertArrayEquals(positions.toArray(), result.toArray(), 0.0);
+    }
+
+    @Test
+    public void testFromPatchesIsTransposeOfToPatches() {
+        // For any patch errors, the sum of the errors times the patches must
+        // equal the sum of the inputs times the errors passed back to them
+        DoubleMatrix patches = mConvolution.toPatches(mInput, 0);
+        DoubleMatrix patchErrors = DoubleMatrix.rand(patches.rows, patches.columns);
+        DoubleMatrix inputErrors = mConvolution.fromPatches(patchErrors, 3);
+        double expected = patches.mul(patchErrors).sum() - patchErrors.getColumn(0).sum();
+        assertEquals(expected, mInput.mul(inputErrors).sum(), 0.0000001);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testKernelLargerThanInputThrowsException() {
+        new Convolution(5, 4, 1, 1, 5);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.network;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+
+import ca.craigthomas.neuralnetwork.components.activation.HyperbolicTangent;
+
+public class TestInferenceScratch {
+
+    private DoubleMatrix mSamples;
+
+    @Before
+    public void setUp() {
+        Random.seed(7);
+        mSamples = DoubleMatrix.rand(6, 4);
+    }
+
+    private void assertMatchesFeedForward(NeuralNetwork network) {
+        InferenceScratch scratch = new InferenceScratch(network, mSamples.rows);
+        DoubleMatrix expected = network.feedForward(mSamples);
+        // Run twice to check that nothing is left over from the first pass
+        for (int pass = 0; pass < 2; pass++) {
+            scratch.getSamples().copy(mSamples);
+            DoubleMatrix output = scratch.feedForward();
+            assertEquals(expected.rows, output.rows);
+            assertEquals(expected.columns, output.columns);
+            for (int index = 0; index < expected.length; index++) {
+                assertEquals(expected.get(index), output.get(index), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testFeedForwardMatchesNetworkSigmoid() {
+        assertMatchesFeedForward(new NeuralNetwork.Builder(Arrays.asList(4, 5, 3, 2)).build());
+    }
+
+    @Test
+    public void testFeedForwardMatchesNetworkHyperbolicTangent() {
+        assertMatchesFeedForward(new NeuralNetwork.Builder(Arrays.asList(4, 3, 1))
+                .activationFunction(new HyperbolicTangent()).build());
+    }
+
+    @Test
+    public void testFeedForwardMatchesNetworkWithImageLayers() {
+        // The samples are 2 x 2 images with 1 channel, or 2 x 1 images
+        // with 2 channels
+        assertMatchesFeedForward(new NeuralNetwork.Builder(2, 2, 1,
+                Layer.parseList("conv:3:1,maxpool:2,2")).build());
+        assertMatchesFeedForward(new NeuralNetwork.Builder(2, 1, 2,
+                Layer.parseList("avgpool:1,conv:2:1,3,1")).build());
+    }
+
+    @Test
+    public void testGetRows() {
+        NeuralNetwork network = new NeuralNetwork.Builder(Arrays.asList(4, 3, 1)).build();
+        InferenceScratch scratch = new InferenceScratch(network, 6);
+        assertEquals(6, scratch.getRows());
+        assertEquals(6, scratch.getSamples().rows);
+        assertEquals(4, scratch.getSamples().columns);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testRowsMustBePositive() {
+        NeuralNetwork network = new NeuralNetwork.Builder(Arrays.asList(4, 3, 1)).build();
+        new InferenceScratch(network, 0);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.network;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestLayer {
+
+    @Test
+    public void testParseEachType() {
+        assertEquals(Layer.dense(10), Layer.parse("10"));
+        assertEquals(Layer.convolution(8, 5), Layer.parse("conv:8:5"));
+        assertEquals(Layer.maxPool(2), Layer.parse("maxpool:2"));
+        assertEquals(Layer.averagePool(3), Layer.parse(" avgpool:3 "));
+    }
+
+    @Test
+    public void testParseListKeepsOrder() {
+        List<Layer> layers = Layer.parseList("conv:8:5,maxpool:2,10");
+        assertEquals(Arrays.asList(Layer.convolution(8, 5), Layer.maxPool(2), Layer.dense(10)), layers);
+    }
+
+    @Test
+    public void testToStringParsesBack() {
+        for (String spec : new String [] {"10", "conv:8:5", "maxpool:2", "avgpool:3"}) {
+            assertEquals(spec, Layer.parse(spec).toString());
+        }
+    }
+
+    @Test
+    public void testOnlyDenseAndConvolutionHaveThetas() {
+        assertTrue(Layer.dense(1).hasTheta());
+        assertTrue(Layer.convolution(1, 1).hasTheta());
+        assertFalse(Layer.maxPool(2).hasTheta());
+        assertFalse(Layer.averagePool(2).hasTheta());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testParseRejectsMissingKernel() {
+        Layer.parse("conv:8");
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testParseRejectsUnknownType() {
+        Layer.parse("minpool:2");
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testParseRejectsZeroSize() {
+        Layer.parse("maxpool:0");
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.network;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.jblas.DoubleMatrix;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ca.craigthomas.neuralnetwork.components.activation.HyperbolicTangent;
+
+public class TestNetworkFile {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private String mFilename;
+
+    @Before
+    public void setUp() {
+        mFilename = new File(mFolder.getRoot(), "model.net").getPath();
+    }
+
+    @Test
+    public void testWriteAndReadRoundTrips() throws IOException {
+        DoubleMatrix theta1 = new DoubleMatrix(new double [][] {
+                {0.1, 0.2, 0.3},
+                {0.4, 0.5, 0.6},
+                {0.7, 0.8, 0.9}
+        });
+        DoubleMatrix theta2 = new DoubleMatrix(new double [][] {
+                {-1.0, 2.0, -3.0, 4.0}
+        });
+        NeuralNetwork network = new NeuralNetwork.Builder(Arrays.asList(2, 3, 1))
+                .theta(Arrays.asList(theta1, theta2)).build();
+        NetworkFile.write(network, mFilename);
+        NeuralNetwork result = NetworkFile.read(mFilename);
+
+        Assert.assertArrayEquals(new int [] {2, 3, 1}, result.getLayerSizes());
+        Assert.assertArrayEquals(theta1.toArray(), result.getTheta(0).toArray(), 0.0);
+        Assert.assertArrayEquals(theta2.toArray(), result.getTheta(1).toArray(), 0.0);
+        DoubleMatrix inputs = new DoubleMatrix(new double [][] {{0.5, -0.5}, {1.0, 2.0}});
+        Assert.assertArrayEquals(network.feedForward(inputs).toArray(), result.feedForward(inputs).toArray(), 0.0);
+    }
+
+    @Test
+    public void testImageLayersRoundTrip() throws IOException {
+        List<Layer> layers = Layer.parseList("conv:3:2,maxpool:2,avgpool:1,4,1");
+        NeuralNetwork network = new NeuralNetwork.Builder(5, 6, 2, layers).build();
+        NetworkFile.write(network, mFilename);
+        assertEquals(NetworkFile.getSize(network), new File(mFilename).length());
+        NeuralNetwork result = NetworkFile.read(mFilename);
+
+        assertEquals(layers, result.getLayers());
+        Assert.assertArrayEquals(new int [] {5, 6, 2}, result.getInputShape());
+        Assert.assertArrayEquals(network.getLayerSizes(), result.getLayerSizes());
+        for (int index = 0; index < network.getThetas().size(); index++) {
+            Assert.assertArrayEquals(network.getTheta(index).toArray(), result.getTheta(index).toArray(), 0.0);
+        }
+        DoubleMatrix inputs = DoubleMatrix.rand(3, 60);
+        Assert.assertArrayEquals(network.feedForward(inputs).toArray(), result.feedForward(inputs).toArray(), 0.0);
+    }
+
+    @Test
+    public void testFullyConnectedNetworkIsVersionOne() throws IOException {
+        NeuralNetwork network = new NeuralNetwork.Builder(Arrays.asList(4, 2, 1)).build();
+        NetworkFile.write(network, mFilename);
+        byte [] contents = FileUtils.readFileToByteArray(new File(mFilename));
+        assertEquals(NetworkFile.VERSION, contents[4]);
+    }
+
+    @Test
+    public void testActivationFunctionIsStored() throws IOException {
+        NeuralNetwork network = new NeuralNetwork.Builder(Arrays.asList(2, 1))
+                .activationFunction(new HyperbolicTangent()).build();
+        NetworkFile.write(network, mFilename);
+        assertTrue(NetworkFile.read(mFilename).getActivationFunction() instanceof HyperbolicTangent);
+    }
+
+    @Test (expected=IOException.class)
+    public void testReadRejectsTruncatedFile() throws IOException {
+        NeuralNetwork network = new NeuralNetwork.Builder(Arrays.asList(4, 2, 1)).build();
+        NetworkFile.write(network, mFilename);
+        byte [] contents = FileUtils.readFileToByteArray(new File(mFilename));
+        FileUtils.writeByteArrayToFile(new File(mFilename), Arrays.copyOf(contents, contents.length - 8));
+        NetworkFile.read(mFilename);
+    }
+
+    @Test (expected=IOException.class)
+    public void testReadRejectsOtherFiles() throws IOException {
+        FileUtils.writeStringToFile(new File(mFilename), "1,2,3\n4,5,6\n");
+        NetworkFile.read(mFilename);
+    }
+}
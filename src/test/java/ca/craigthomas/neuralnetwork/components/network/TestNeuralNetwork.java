@@ -5,12 +5,15 @@
 package ca.craigthomas.neuralnetwork.components.network;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import org.jblas.DoubleMatrix;
+import org.jblas.util.Random;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -120,6 +123,33 @@ public class TestNeuralNetwork {
         Assert.assertArrayEquals(expectedOutputs.toArray(), result.toArray(), 0.0001);
     }
     
+    @Test
+    public void testFeedForwardMatchesPredictWithoutStoringActivations() {
+        layerSizes = Arrays.asList(2, 2, 1);
+        DoubleMatrix theta1 = new DoubleMatrix(new double [][] {
+                {-100.0, 200.0, 200.0},
+                {200.0, -150.0, -150.0}
+        });
+        
+        DoubleMatrix theta2 = new DoubleMatrix(new double [][] {
+                {-300.0, 200.0, 200.0}
+        });
+        
+        DoubleMatrix testInputs = new DoubleMatrix(new double [][] {
+                {0.0, 0.0},
+                {0.0, 1.0},
+                {1.0, 0.0},
+                {1.0, 1.0}
+        });
+        
+        List<DoubleMatrix> thetas = Arrays.asList(theta1, theta2);
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).theta(thetas).build();
+        DoubleMatrix result = mNeuralNetwork.feedForward(testInputs);
+        
+        assertNull(mNeuralNetwork.mActivations[0]);
+        Assert.assertArrayEquals(mNeuralNetwork.predict(testInputs).toArray(), result.toArray(), 0.0);
+    }
+    
     @Test
     public void testPredictNOTFunction() {
         layerSizes = Arrays.asList(1, 1);
@@ -208,6 +238,61 @@ public class TestNeuralNetwork {
         assertEquals(expectedCost, mNeuralNetwork.getCostNoRegularization(8), 0.0005);
     }
     
+    @Test
+    public void testNeuralNetworkGetCostIsFiniteWhenOutputsSaturate() {
+        layerSizes = Arrays.asList(1, 1);
+        DoubleMatrix theta1 = new DoubleMatrix(new double [][] {
+                {0.0, 100.0}
+        });
+        
+        DoubleMatrix testInputs = new DoubleMatrix(new double [][] {
+                {1.0}, {-1.0}, {1.0}
+        });
+        
+        DoubleMatrix expectedOutputs = new DoubleMatrix(new double [][] {
+                {0.0}, {1.0}, {1.0}
+        });
+        
+        List<DoubleMatrix> thetas = Arrays.asList(theta1);
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).theta(thetas).expectedValues(expectedOutputs).build();
+        DoubleMatrix result = mNeuralNetwork.predict(testInputs);
+
+        // The first output rounds to exactly 1, which has no finite log(1 - a)
+        assertEquals(1.0, result.get(0, 0), 0.0);
+        assertEquals(200.0 / 3.0, mNeuralNetwork.getCostNoRegularization(3), 0.0000001);
+    }
+    
+    @Test
+    public void testNeuralNetworkGetCostSumsEachOutput() {
+        layerSizes = Arrays.asList(1, 2);
+        DoubleMatrix theta1 = new DoubleMatrix(new double [][] {
+                {0.0, 1.0},
+                {0.0, -2.0}
+        });
+        
+        DoubleMatrix testInputs = new DoubleMatrix(new double [][] {
+                {0.5}, {-1.0}
+        });
+        
+        DoubleMatrix expectedOutputs = new DoubleMatrix(new double [][] {
+                {1.0, 0.0}, {0.0, 1.0}
+        });
+        
+        List<DoubleMatrix> thetas = Arrays.asList(theta1);
+        mNeuralNetwork = new NeuralNetwork.Builder(layerSizes).theta(thetas).expectedValues(expectedOutputs).build();
+        DoubleMatrix result = mNeuralNetwork.predict(testInputs);
+
+        double expectedCost = 0.0;
+        for (int row = 0; row < 2; row++) {
+            for (int column = 0; column < 2; column++) {
+                double output = result.get(row, column);
+                double truth = expectedOutputs.get(row, column);
+                expectedCost -= (truth * Math.log(output)) + ((1.0 - truth) * Math.log(1.0 - output));
+            }
+        }
+        assertEquals(expectedCost / 2.0, mNeuralNetwork.getCostNoRegularization(2), 0.0000001);
+    }
+    
     @Test
     public void testGetMatrixNoBiasRemovesBiasUnit() {
         layerSizes = Arrays.asList(2, 1);
@@ -533,4 +618,91 @@ public class TestNeuralNetwork {
         Assert.assertArrayEquals(expectedTheta1Grad.toArray(), theta1Grad.toArray(), 0.0001);
         Assert.assertArrayEquals(expectedTheta2Grad.toArray(), theta2Grad.toArray(), 0.0001);
     }
+    
+    @Test
+    public void testImageLayerSizes() {
+        List<Layer> layers = Layer.parseList("conv:8:3,maxpool:2,1");
+        mNeuralNetwork = new NeuralNetwork.Builder(10, 10, 3, layers).build();
+        
+        Assert.assertArrayEquals(new int [] {300, 512, 128, 1}, mNeuralNetwork.getLayerSizes());
+        Assert.assertArrayEquals(new int [] {10, 10, 3}, mNeuralNetwork.getInputShape());
+        assertEquals(layers, mNeuralNetwork.getLayers());
+        assertEquals(2, mNeuralNetwork.getThetas().size());
+        assertEquals(8, mNeuralNetwork.getTheta(0).rows);
+        assertEquals(28, mNeuralNetwork.getTheta(0).columns);
+        assertEquals(1, mNeuralNetwork.getTheta(1).rows);
+        assertEquals(129, mNeuralNetwork.getTheta(1).columns);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testOutputLayerMustBeFullyConnected() {
+        new NeuralNetwork.Builder(10, 10, 1, Layer.parseList("conv:8:3,maxpool:2"));
+    }
+    
+    @Test
+    public void testCheckLayersAcceptsLayersThatFit() {
+        NeuralNetwork.checkLayers(10, 10, 3, Layer.parseList("conv:8:3,maxpool:2,10,1"));
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testCheckLayersRejectsFilterLargerThanImage() {
+        // The pooling leaves a 4 x 4 image, too small for a 5 x 5 filter
+        NeuralNetwork.checkLayers(10, 10, 3, Layer.parseList("conv:8:3,maxpool:2,conv:4:5,1"));
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testCheckLayersRejectsEmptyList() {
+        NeuralNetwork.checkLayers(10, 10, 3, new ArrayList<Layer>());
+    }
+    
+    @Test
+    public void testFeedForwardMatchesPredictWithImageLayers() {
+        Random.seed(3);
+        DoubleMatrix inputs = DoubleMatrix.rand(4, 60);
+        mNeuralNetwork = new NeuralNetwork.Builder(5, 6, 2, Layer.parseList("conv:3:2,maxpool:2,avgpool:1,4,2")).build();
+        
+        DoubleMatrix expected = mNeuralNetwork.feedForward(inputs);
+        Assert.assertArrayEquals(expected.toArray(), mNeuralNetwork.predict(inputs).toArray(), 0.0);
+    }
+    
+    /**
+     * Checks the gradient of every theta against the change in cost when
+     * the theta is moved a little either way.
+     */
+    private void assertGradientMatchesCost(String layers) {
+        Random.seed(3);
+        DoubleMatrix inputs = DoubleMatrix.rand(4, 60);
+        DoubleMatrix expectedOutputs = DoubleMatrix.rand(4, 1).gt(0.5);
+        mNeuralNetwork = new NeuralNetwork.Builder(5, 6, 2, Layer.parseList(layers))
+                .inputs(inputs).expectedValues(expectedOutputs).lambda(0.3).build();
+        mNeuralNetwork.forwardPropagation();
+        mNeuralNetwork.backPropagation();
+        
+        double epsilon = 0.00001;
+        for (int index = 0; index < mNeuralNetwork.getThetas().size(); index++) {
+            DoubleMatrix gradient = mNeuralNetwork.getThetaGradient(index);
+            DoubleMatrix theta = mNeuralNetwork.getTheta(index);
+            for (int element = 0; element < theta.length; element++) {
+                double value = theta.data[element];
+                theta.data[element] = value + epsilon;
+                mNeuralNetwork.forwardPropagation();
+                double higher = mNeuralNetwork.getCost();
+                theta.data[element] = value - epsilon;
+                mNeuralNetwork.forwardPropagation();
+                double lower = mNeuralNetwork.getCost();
+                theta.data[element] = value;
+                assertEquals((higher - lower) / (2 * epsilon), gradient.data[element], 0.000001);
+            }
+        }
+    }
+    
+    @Test
+    public void testConvolutionAndMaxPoolGradients() {
+        assertGradientMatchesCost("conv:3:2,maxpool:2,4,1");
+    }
+    
+    @Test
+    public void testStackedConvolutionAndAveragePoolGradients() {
+        assertGradientMatchesCost("conv:2:2,conv:2:2,avgpool:2,1");
+    }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.network;
+
+import static org.junit.Assert.*;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPooling {
+
+    private DoubleMatrix mInput;
+
+    @Before
+    public void setUp() {
+        // One 5 x 4 image with a single channel; the last column is left
+        // out of 2 x 2 windows
+        mInput = new DoubleMatrix(new double [][] {{
+                1, 2, 5, 0, 9,
+                3, 4, 6, 7, 9,
+                0, 0, 1, 1, 9,
+                8, 0, 1, 3, 9
+        }});
+    }
+
+    @Test
+    public void testMaxPoolKeepsLargestValue() {
+        Pooling pooling = new Pooling(5, 4, 1, 2, true);
+        assertEquals(2, pooling.getOutputWidth());
+        assertEquals(2, pooling.getOutputHeight());
+        int [] switches = new int [4];
+        DoubleMatrix output = pooling.forward(mInput, 0, switches);
+        Assert.assertArrayEquals(new double [] {4, 7, 8, 3}, output.toArray(), 0.0);
+        Assert.assertArrayEquals(new int [] {6, 8, 15, 18}, switches);
+    }
+
+    @Test
+    public void testMaxPoolPassesErrorToLargestValue() {
+        Pooling pooling = new Pooling(5, 4, 1, 2, true);
+        int [] switches = new int [4];
+        pooling.forward(mInput, 0, switches);
+        DoubleMatrix errors = new DoubleMatrix(new double [][] {{1, 2, 3, 4}});
+        DoubleMatrix result = pooling.backward(errors, switches);
+        DoubleMatrix expected = new DoubleMatrix(1, 20);
+        expected.put(0, 6, 1);
+        expected.put(0, 8, 2);
+        expected.put(0, 15, 3);
+        expected.put(0, 18, 4);
+        Assert.assertArrayEquals(expected.toArray(), result.toArray(), 0.0);
+    }
+
+    @Test
+    public void testAveragePoolAveragesWindow() {
+        Pooling pooling = new Pooling(5, 4, 1, 2, false);
+        DoubleMatrix output = pooling.forward(mInput, 0, null);
+        Assert.assertArrayEquals(new double [] {2.5, 4.5, 2, 1.5}, output.toArray(), 0.0);
+    }
+
+    @Test
+    public void testAveragePoolSharesErrorOverWindow() {
+        Pooling pooling = new Pooling(5, 4, 1, 2, false);
+        DoubleMatrix errors = new DoubleMatrix(new double [][] {{4, 8, 12, 16}});
+        DoubleMatrix result = pooling.backward(errors, null);
+        Assert.assertArrayEquals(new double [] {
+                1, 1, 2, 2, 0,
+                1, 1, 2, 2, 0,
+                3, 3, 4, 4, 0,
+                3, 3, 4, 4, 0
+        }, result.toArray(), 0.0);
+    }
+
+    @Test
+    public void testChannelsArePooledSeparately() {
+        // A 2 x 2 image with 2 channels, interleaved
+        DoubleMatrix input = new DoubleMatrix(new double [][] {{1, -1, 2, -2, 3, -3, 4, -4}});
+        Pooling pooling = new Pooling(2, 2, 2, 2, true);
+        Assert.assertArrayEquals(new double [] {4, -1}, pooling.forward(input, 0, null).toArray(), 0.0);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testWindowLargerThanInputThrowsException() {
+        new Pooling(5, 4, 1, 5, true);
+    }
+}
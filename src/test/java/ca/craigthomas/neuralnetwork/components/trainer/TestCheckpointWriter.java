@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.trainer;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.util.Random;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ca.craigthomas.neuralnetwork.components.network.Layer;
+
+public class TestCheckpointWriter {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private String mFilename;
+    private List<Integer> mLayerSizes;
+    private DoubleMatrix mInputs;
+    private DoubleMatrix mOutputs;
+
+    @Before
+    public void setUp() {
+        mFilename = new File(mFolder.getRoot(), "train.ckpt").getPath();
+        mLayerSizes = Arrays.asList(3, 4, 1);
+        Random.seed(7);
+        mInputs = DoubleMatrix.rand(50, 3);
+        mOutputs = mInputs.getColumn(0).gt(0.5);
+    }
+
+    private Trainer.Builder createBuilder(int maxIterations) {
+        Random.seed(11);
+        return new Trainer.Builder(mLayerSizes, mInputs, mOutputs)
+                .learningRate(0.01).maxIterations(maxIterations).heartBeat(0);
+    }
+
+    @Test
+    public void testCheckpointIsWrittenWhenTrainingFinishes() throws IOException {
+        CheckpointWriter writer = new CheckpointWriter.Builder(mFilename)
+                .interval(10).learningRate(0.01).seed(3L).build();
+        Trainer trainer = createBuilder(35).listener(writer).build();
+        trainer.train();
+        writer.close();
+
+        TrainingCheckpoint checkpoint = TrainingCheckpoint.read(mFilename);
+        assertTrue(writer.getWritten() >= 1);
+        assertFalse(new File(mFilename + ".tmp").exists());
+        assertEquals(35, checkpoint.getIteration());
+        assertTrue(checkpoint.isFinished());
+        assertEquals(Long.valueOf(3L), checkpoint.getSeed());
+        assertArrayEquals(trainer.getNeuralNetwork().getTheta(1).toArray(),
+                checkpoint.getNeuralNetwork().getTheta(1).toArray(), 0.0);
+    }
+
+    @Test
+    public void testIntervalCheckpointResumesToSameNetwork() throws IOException {
+        final TrainingCheckpoint [] intermediate = new TrainingCheckpoint [1];
+        CheckpointWriter writer = new CheckpointWriter.Builder(mFilename).interval(10).build();
+        Trainer trainer = createBuilder(25).listener(writer).listener(new TrainingListener() {
+            @Override
+            public void onIteration(TrainingEvent event) {
+                // The checkpoint of the first 20 iterations is taken during
+                // iteration 21, so wait for it to reach the disk
+                long deadline = System.currentTimeMillis() + 5000;
+                while (event.getIteration() == 22 && intermediate[0] == null && System.currentTimeMillis() < deadline) {
+                    try {
+                        TrainingCheckpoint checkpoint = TrainingCheckpoint.read(mFilename);
+                        if (checkpoint.getIteration() == 20) {
+                            intermediate[0] = checkpoint;
+                        }
+                    } catch (IOException e) {
+                        // Not written yet
+                    }
+                }
+            }
+
+            @Override
+            public void onTrainingFinished() {
+            }
+        }).build();
+        trainer.train();
+        writer.close();
+
+        assertNotNull(intermediate[0]);
+        Trainer resumed = createBuilder(25).resume(intermediate[0]).build();
+        resumed.train();
+        assertArrayEquals(trainer.getNeuralNetwork().getTheta(0).toArray(),
+                resumed.getNeuralNetwork().getTheta(0).toArray(), 0.0);
+    }
+
+    @Test
+    public void testResumedTrainingMatchesUninterruptedTraining() throws IOException {
+        Trainer uninterrupted = createBuilder(40).build();
+        uninterrupted.train();
+
+        CheckpointWriter writer = new CheckpointWriter.Builder(mFilename).interval(5).build();
+        createBuilder(20).listener(writer).build().train();
+        writer.close();
+        TrainingCheckpoint checkpoint = TrainingCheckpoint.read(mFilename);
+        assertEquals(20, checkpoint.getIteration());
+
+        Trainer resumed = createBuilder(40).resume(checkpoint).recordCosts().build();
+        resumed.train();
+
+        assertEquals(20, resumed.getCosts().size());
+        for (int index = 0; index < 2; index++) {
+            assertArrayEquals(uninterrupted.getNeuralNetwork().getTheta(index).toArray(),
+                    resumed.getNeuralNetwork().getTheta(index).toArray(), 0.0);
+        }
+    }
+
+    @Test (expected=IllegalArgumentException.class)
+    public void testResumeRejectsDifferentLayerSizes() throws IOException {
+        CheckpointWriter writer = new CheckpointWriter.Builder(mFilename).build();
+        createBuilder(5).listener(writer).build().train();
+        writer.close();
+
+        new Trainer.Builder(Arrays.asList(3, 2, 1), mInputs, mOutputs)
+                .resume(TrainingCheckpoint.read(mFilename)).build();
+    }
+
+    @Test (expected=IllegalArgumentException.class)
+    public void testResumeRejectsDifferentLayerTypes() throws IOException {
+        CheckpointWriter writer = new CheckpointWriter.Builder(mFilename).build();
+        new Trainer.Builder(3, 1, 1, Layer.parseList("maxpool:1,4,1"), mInputs, mOutputs)
+                .maxIterations(5).heartBeat(0).listener(writer).build().train();
+        writer.close();
+
+        new Trainer.Builder(3, 1, 1, Layer.parseList("avgpool:1,4,1"), mInputs, mOutputs)
+                .resume(TrainingCheckpoint.read(mFilename)).build();
+    }
+
+    @Test (expected=IllegalArgumentException.class)
+    public void testIntervalMustBePositive() {
+        new CheckpointWriter.Builder(mFilename).interval(0).build();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.trainer;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class TestCostHistory {
+
+    @Test
+    public void testCostsAreKeptInOrderUntilFull() {
+        CostHistory history = new CostHistory(4);
+        history.add(1.0);
+        history.add(2.0);
+        history.add(3.0);
+
+        assertEquals(3, history.size());
+        assertArrayEquals(new double [] {1.0, 2.0, 3.0}, history.toArray(), 0.0);
+        assertEquals(Arrays.asList(1.0, 2.0, 3.0), history.asList());
+    }
+
+    @Test
+    public void testOldestCostsAreReplacedWhenFull() {
+        CostHistory history = new CostHistory(3);
+        for (int cost = 1; cost <= 7; cost++) {
+            history.add(cost);
+        }
+
+        assertEquals(3, history.size());
+        assertEquals(7, history.getTotal());
+        assertEquals(3, history.getCapacity());
+        assertArrayEquals(new double [] {5.0, 6.0, 7.0}, history.toArray(), 0.0);
+        assertEquals(7.0, history.asList().get(2), 0.0);
+    }
+
+    @Test (expected=IndexOutOfBoundsException.class)
+    public void testGetBeyondSizeThrowsException() {
+        CostHistory history = new CostHistory(3);
+        history.add(1.0);
+        history.get(1);
+    }
+
+    @Test (expected=IllegalArgumentException.class)
+    public void testCapacityMustBePositive() {
+        new CostHistory(0);
+    }
+}
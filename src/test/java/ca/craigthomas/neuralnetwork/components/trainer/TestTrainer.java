@@ -7,6 +7,7 @@ package ca.craigthomas.neuralnetwork.components.trainer;
 import static org.junit.Assert.*;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
@@ -19,6 +20,7 @@ import org.junit.Test;
 import ca.craigthomas.neuralnetwork.dataset.DataSet;
 import ca.craigthomas.neuralnetwork.components.activation.HyperbolicTangent;
 import ca.craigthomas.neuralnetwork.components.activation.IActivationFunction;
+import ca.craigthomas.neuralnetwork.components.network.Layer;
 import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
 
 public class TestTrainer {
@@ -340,4 +342,109 @@ public class TestTrainer {
             assertTrue(strings[i].contains("Iteration: " + (i+1)));
         }
     }
+
+    @Test
+    public void testMetricsRecordEveryIteration() {
+        mLayerSizes = Arrays.asList(2, 1);
+        DoubleMatrix inputs = DoubleMatrix.ones(500, 2);
+        DoubleMatrix outputs = DoubleMatrix.ones(500, 1);
+        TrainingMetrics metrics = new TrainingMetrics();
+        
+        mTrainer = new Trainer.Builder(mLayerSizes, inputs, outputs)
+        .learningRate(0.001).maxIterations(50).heartBeat(0)
+        .recordCosts()
+        .metrics(metrics).build();
+        mTrainer.train();
+        
+        assertEquals(50, metrics.getIterations());
+        assertEquals(25000, metrics.getSamples());
+        assertTrue(metrics.getForwardMillis() > 0.0);
+        assertTrue(metrics.getCostMillis() > 0.0);
+        assertTrue(metrics.getSamplesPerSecond() > 0.0);
+        assertEquals(mTrainer.getCosts().get(49), metrics.getLastCost(), 0.0);
+    }
+
+    @Test
+    public void testListenersOnlyComputeCostWhenAsked() {
+        mLayerSizes = Arrays.asList(2, 1);
+        DoubleMatrix inputs = DoubleMatrix.ones(500, 2);
+        DoubleMatrix outputs = DoubleMatrix.ones(500, 1);
+        final List<Integer> iterations = new ArrayList<Integer>();
+        final List<Boolean> costComputed = new ArrayList<Boolean>();
+        final boolean [] finished = new boolean [1];
+        TrainingMetrics metrics = new TrainingMetrics();
+        
+        mTrainer = new Trainer.Builder(mLayerSizes, inputs, outputs)
+        .learningRate(0.001).maxIterations(10).heartBeat(0)
+        .metrics(metrics)
+        .listener(new TrainingListener() {
+            @Override
+            public void onIteration(TrainingEvent event) {
+                iterations.add(event.getIteration());
+                costComputed.add(event.isCostComputed());
+                if (event.getIteration() == 10) {
+                    assertTrue(event.getCost() > 0.0);
+                    assertTrue(event.isCostComputed());
+                }
+                assertTrue(event.getPhaseNanos(TrainingMetrics.Phase.FORWARD) > 0);
+            }
+
+            @Override
+            public void onTrainingFinished() {
+                finished[0] = true;
+            }
+        }).build();
+        mTrainer.train();
+        
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10), iterations);
+        assertFalse(costComputed.contains(true));
+        assertTrue(finished[0]);
+        assertTrue(mTrainer.getCosts().isEmpty());
+        assertFalse(Double.isNaN(metrics.getLastCost()));
+    }
+    
+    @Test
+    public void testCostHistoryKeepsMostRecentCosts() {
+        mLayerSizes = Arrays.asList(2, 1);
+        DoubleMatrix inputs = DoubleMatrix.ones(500, 2);
+        DoubleMatrix outputs = DoubleMatrix.ones(500, 1);
+        
+        mTrainer = new Trainer.Builder(mLayerSizes, inputs, outputs)
+        .learningRate(0.001).maxIterations(100).heartBeat(0)
+        .recordCosts().costHistorySize(10).build();
+        mTrainer.train();
+        
+        assertEquals(10, mTrainer.getCosts().size());
+        assertEquals(100, mTrainer.getCostHistory().getTotal());
+    }
+    
+    @Test
+    public void testTrainerWithImageLayers() {
+        // 4 x 4 images, where positives have a bright top left corner
+        DoubleMatrix inputs = new DoubleMatrix(20, 16);
+        DoubleMatrix outputs = new DoubleMatrix(20, 1);
+        for (int index = 0; index < 20; index++) {
+            for (int pixel = 0; pixel < 16; pixel++) {
+                inputs.put(index, pixel, ((index + pixel) % 5) / 10.0);
+            }
+            if (index % 2 == 0) {
+                inputs.put(index, 0, 1.0);
+                inputs.put(index, 1, 1.0);
+                inputs.put(index, 4, 1.0);
+                inputs.put(index, 5, 1.0);
+                outputs.put(index, 0, 1.0);
+            }
+        }
+        List<Layer> layers = Layer.parseList("conv:2:2,maxpool:3,1");
+        
+        mTrainer = new Trainer.Builder(4, 4, 1, layers, inputs, outputs)
+        .learningRate(0.01).maxIterations(200).heartBeat(0)
+        .recordCosts().build();
+        mTrainer.train();
+        
+        List<Double> costs = mTrainer.getCosts();
+        assertEquals(layers, mTrainer.getNeuralNetwork().getLayers());
+        Assert.assertArrayEquals(new int [] {16, 18, 2, 1}, mTrainer.getNeuralNetwork().getLayerSizes());
+        assertTrue(costs.get(costs.size() - 1) < costs.get(0));
+    }
 }
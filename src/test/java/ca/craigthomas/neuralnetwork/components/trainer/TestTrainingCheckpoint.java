@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.trainer;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.jblas.DoubleMatrix;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ca.craigthomas.neuralnetwork.components.activation.HyperbolicTangent;
+import ca.craigthomas.neuralnetwork.components.network.NetworkFile;
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+
+public class TestTrainingCheckpoint {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        mFile = new File(mFolder.getRoot(), "train.ckpt");
+    }
+
+    private void writeCheckpoint(int iteration, Long seed, NeuralNetwork network) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int)TrainingCheckpoint.getSize(network))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        TrainingCheckpoint.write(buffer, iteration, 500, 0.05, seed, network);
+        assertFalse(buffer.hasRemaining());
+        FileUtils.writeByteArrayToFile(mFile, buffer.array());
+    }
+
+    @Test
+    public void testWriteAndReadRoundTrips() throws IOException {
+        DoubleMatrix theta = new DoubleMatrix(new double [][] {{0.5, -1.5, 2.5}});
+        NeuralNetwork network = new NeuralNetwork.Builder(Arrays.asList(2, 1))
+                .theta(Arrays.asList(theta))
+                .activationFunction(new HyperbolicTangent()).build();
+        writeCheckpoint(200, 42L, network);
+        TrainingCheckpoint checkpoint = TrainingCheckpoint.read(mFile.getPath());
+
+        assertEquals(200, checkpoint.getIteration());
+        assertEquals(500, checkpoint.getMaxIterations());
+        assertFalse(checkpoint.isFinished());
+        assertEquals(0.05, checkpoint.getLearningRate(), 0.0);
+        assertEquals(Long.valueOf(42L), checkpoint.getSeed());
+        assertArrayEquals(theta.toArray(), checkpoint.getNeuralNetwork().getTheta(0).toArray(), 0.0);
+        assertTrue(checkpoint.getNeuralNetwork().getActivationFunction() instanceof HyperbolicTangent);
+    }
+
+    @Test
+    public void testMissingSeedIsNull() throws IOException {
+        writeCheckpoint(500, null, new NeuralNetwork.Builder(Arrays.asList(2, 1)).build());
+        TrainingCheckpoint checkpoint = TrainingCheckpoint.read(mFile.getPath());
+
+        assertNull(checkpoint.getSeed());
+        assertTrue(checkpoint.isFinished());
+    }
+
+    @Test (expected=IOException.class)
+    public void testReadRejectsNetworkFiles() throws IOException {
+        NetworkFile.write(new NeuralNetwork.Builder(Arrays.asList(2, 1)).build(), mFile.getPath());
+        TrainingCheckpoint.read(mFile.getPath());
+    }
+}
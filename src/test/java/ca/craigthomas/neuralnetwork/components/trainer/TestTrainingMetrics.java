@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.components.trainer;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class TestTrainingMetrics {
+
+    @Test
+    public void testRecordIterationComputesMeans() {
+        TrainingMetrics metrics = new TrainingMetrics();
+        metrics.recordIteration(new long [] {1000000, 2000000, 3000000, 4000000, 0}, 100, 1000);
+        metrics.recordIteration(new long [] {3000000, 2000000, 1000000, 0, 10000000}, 100, 3000);
+
+        assertEquals(2, metrics.getIterations());
+        assertEquals(200, metrics.getSamples());
+        assertEquals(2.0, metrics.getForwardMillis(), 0.000001);
+        assertEquals(2.0, metrics.getBackwardMillis(), 0.000001);
+        assertEquals(2.0, metrics.getGradientMillis(), 0.000001);
+        assertEquals(2.0, metrics.getUpdateMillis(), 0.000001);
+        assertEquals(5.0, metrics.getCostMillis(), 0.000001);
+        assertEquals(13.0, metrics.getIterationMillis(), 0.000001);
+        assertEquals(200 / 0.026, metrics.getSamplesPerSecond(), 0.000001);
+        assertEquals(2000.0, metrics.getAllocatedBytesPerIteration(), 0.0);
+    }
+
+    @Test
+    public void testUnmeasuredAllocationsAreIgnored() {
+        TrainingMetrics metrics = new TrainingMetrics();
+        metrics.recordIteration(new long [5], 1, -1);
+        assertEquals(-1.0, metrics.getAllocatedBytesPerIteration(), 0.0);
+        metrics.recordIteration(new long [5], 1, 500);
+        assertEquals(500.0, metrics.getAllocatedBytesPerIteration(), 0.0);
+    }
+
+    @Test
+    public void testResetClearsMetrics() {
+        TrainingMetrics metrics = new TrainingMetrics();
+        metrics.recordIteration(new long [] {1, 1, 1, 1, 1}, 10, 10);
+        metrics.recordCost(0.5);
+        metrics.reset();
+
+        assertEquals(0, metrics.getIterations());
+        assertEquals(0.0, metrics.getSamplesPerSecond(), 0.0);
+        assertEquals(0.0, metrics.getForwardMillis(), 0.0);
+        assertTrue(Double.isNaN(metrics.getLastCost()));
+    }
+
+    @Test
+    public void testRegisteredMetricsAreReadableThroughJMX() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(TrainingMetrics.OBJECT_NAME);
+        TrainingMetrics metrics = new TrainingMetrics();
+        metrics.recordIteration(new long [] {1000000, 0, 0, 0, 0}, 1, 0);
+        metrics.recordCost(0.25);
+        metrics.register();
+        try {
+            assertEquals(1L, server.getAttribute(name, "Iterations"));
+            assertEquals(1.0, (Double)server.getAttribute(name, "ForwardMillis"), 0.000001);
+            assertEquals(0.25, (Double)server.getAttribute(name, "LastCost"), 0.0);
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+}
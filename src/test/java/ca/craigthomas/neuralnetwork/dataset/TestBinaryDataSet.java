@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.jblas.DoubleMatrix;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestBinaryDataSet {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private DataSet mDataSet;
+    private String mFilename;
+
+    @Before
+    public void setUp() throws IOException {
+        DoubleMatrix samples = new DoubleMatrix(new double [][] {
+                {0.1, 0.2, 0.3},
+                {0.4, 0.5, 0.6},
+                {0.7, 0.8, 0.9}
+        });
+        DoubleMatrix truth = new DoubleMatrix(new double [][] {
+                {1.0}, {0.0}, {1.0}
+        });
+        mDataSet = new DataSet(true, samples, truth);
+        mFilename = new File(mFolder.getRoot(), "dataset.bin").getPath();
+    }
+
+    @Test
+    public void testWriteAndOpenRoundTripsDoubles() throws IOException {
+        BinaryDataSet.write(mDataSet, mFilename, BinaryDataSet.DTYPE_FLOAT64);
+        BinaryDataSet result = BinaryDataSet.open(mFilename);
+
+        assertEquals(BinaryDataSet.DTYPE_FLOAT64, result.getDataType());
+        assertEquals(3, result.getNumSamples());
+        assertEquals(3, result.getNumColsSamples());
+        assertEquals(1, result.getNumColsTruth());
+        assertEquals(BinaryDataSet.HEADER_SIZE + (3 * 4 * 8), new File(mFilename).length());
+        Assert.assertArrayEquals(mDataSet.getSamples().toArray(), result.getSamples(0, 3).toArray(), 0.0);
+        Assert.assertArrayEquals(mDataSet.getTruth().toArray(), result.getTruth(0, 3).toArray(), 0.0);
+    }
+
+    @Test
+    public void testWriteAndOpenRoundTripsFloats() throws IOException {
+        BinaryDataSet.write(mDataSet, mFilename, BinaryDataSet.DTYPE_FLOAT32);
+        BinaryDataSet result = BinaryDataSet.open(mFilename);
+
+        assertEquals(BinaryDataSet.DTYPE_FLOAT32, result.getDataType());
+        assertEquals(BinaryDataSet.HEADER_SIZE + (3 * 4 * 4), new File(mFilename).length());
+        Assert.assertArrayEquals(mDataSet.getSamples().toArray(), result.getSamples(0, 3).toArray(), 0.000001);
+    }
+
+    @Test
+    public void testGetSamplesReturnsRange() throws IOException {
+        BinaryDataSet.write(mDataSet, mFilename, BinaryDataSet.DTYPE_FLOAT64);
+        BinaryDataSet result = BinaryDataSet.open(mFilename);
+        DoubleMatrix expected = new DoubleMatrix(new double [][] {
+                {0.4, 0.5, 0.6},
+                {0.7, 0.8, 0.9}
+        });
+
+        Assert.assertArrayEquals(expected.toArray(), result.getSamples(1, 3).toArray(), 0.0);
+    }
+
+    @Test
+    public void testAddFromBinaryFileWorksCorrectly() throws IOException {
+        BinaryDataSet.write(mDataSet, mFilename, BinaryDataSet.DTYPE_FLOAT64);
+        DataSet result = new DataSet(true);
+        result.addFromBinaryFile(mFilename);
+
+        assertEquals(3, result.getNumSamples());
+        Assert.assertArrayEquals(mDataSet.getSamples().toArray(), result.getSamples().toArray(), 0.0);
+        Assert.assertArrayEquals(mDataSet.getTruth().toArray(), result.getTruth().toArray(), 0.0);
+    }
+
+    @Test (expected=IOException.class)
+    public void testOpenRejectsOtherFiles() throws IOException {
+        FileUtils.writeStringToFile(new File(mFilename), "1,2,3\n4,5,6\n7,8,9\n10,11,12\n");
+        BinaryDataSet.open(mFilename);
+    }
+
+    @Test (expected=IOException.class)
+    public void testOpenRejectsTruncatedFiles() throws IOException {
+        BinaryDataSet.write(mDataSet, mFilename, BinaryDataSet.DTYPE_FLOAT64);
+        byte [] contents = FileUtils.readFileToByteArray(new File(mFilename));
+        byte [] truncated = new byte [contents.length - 8];
+        System.arraycopy(contents, 0, truncated, 0, truncated.length);
+        FileUtils.writeByteArrayToFile(new File(mFilename), truncated);
+        BinaryDataSet.open(mFilename);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.jblas.DoubleMatrix;
+import org.jblas.util.Random;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+
+public class TestChunkedEvaluator {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private NeuralNetwork mNeuralNetwork;
+    private DataSet mDataSet;
+    private Prediction mPrediction;
+
+    @Before
+    public void setUp() {
+        Random.seed(5);
+        DoubleMatrix samples = DoubleMatrix.rand(103, 4);
+        DoubleMatrix truth = samples.getColumn(1).gt(0.5);
+        mDataSet = new DataSet(true, samples, truth);
+        mNeuralNetwork = new NeuralNetwork.Builder(Arrays.asList(4, 3, 1)).build();
+        mPrediction = new Prediction(mNeuralNetwork, 0.5);
+        mPrediction.predict(mDataSet);
+    }
+
+    private void assertMatchesPrediction(ConfusionMatrix confusion) {
+        assertEquals(103, confusion.getTotal());
+        assertEquals(mPrediction.getTruePositives(), confusion.getTruePositives(), 0.0);
+        assertEquals(mPrediction.getFalsePositives(), confusion.getFalsePositives(), 0.0);
+        assertEquals(mPrediction.getTrueNegatives(), confusion.getTrueNegatives(), 0.0);
+        assertEquals(mPrediction.getFalseNegatives(), confusion.getFalseNegatives(), 0.0);
+    }
+
+    @Test
+    public void testEvaluateDataSetMatchesPrediction() {
+        ChunkedEvaluator evaluator = new ChunkedEvaluator(mNeuralNetwork, 0.5, 10);
+        assertMatchesPrediction(evaluator.evaluate(mDataSet));
+    }
+
+    @Test
+    public void testEvaluateShuffledDataSetMatchesPrediction() {
+        mDataSet.setSeed(3);
+        mDataSet.randomize();
+        ChunkedEvaluator evaluator = new ChunkedEvaluator(mNeuralNetwork, 0.5, 16);
+        assertMatchesPrediction(evaluator.evaluate(mDataSet));
+    }
+
+    @Test
+    public void testEvaluateBinaryDataSetMatchesPrediction() throws IOException {
+        String filename = new File(mFolder.getRoot(), "data.bin").getPath();
+        BinaryDataSet.write(mDataSet, filename, BinaryDataSet.DTYPE_FLOAT64);
+        ChunkedEvaluator evaluator = new ChunkedEvaluator(mNeuralNetwork, 0.5, 32);
+        assertMatchesPrediction(evaluator.evaluate(BinaryDataSet.open(filename)));
+    }
+
+    @Test
+    public void testEvaluateSourceMatchesPrediction() throws IOException {
+        StringBuilder contents = new StringBuilder();
+        for (int row = 0; row < mDataSet.getNumSamples(); row++) {
+            for (int column = 0; column < 4; column++) {
+                contents.append(mDataSet.getSamples().get(row, column)).append(',');
+            }
+            contents.append(mDataSet.getTruth().get(row, 0)).append('\n');
+        }
+        File file = new File(mFolder.getRoot(), "data.csv");
+        FileUtils.writeStringToFile(file, contents.toString());
+
+        ChunkedEvaluator evaluator = new ChunkedEvaluator(mNeuralNetwork, 0.5, 25);
+        try (SampleSource source = DataSetReader.openCSVSource(file.getPath(), false)) {
+            assertMatchesPrediction(evaluator.evaluate(source));
+        }
+    }
+
+    @Test
+    public void testEvaluateEmptyDataSetCountsNothing() {
+        DataSet empty = new DataSet(true, new DoubleMatrix(0, 4), new DoubleMatrix(0, 1));
+        assertEquals(0, new ChunkedEvaluator(mNeuralNetwork, 0.5).evaluate(empty).getTotal());
+    }
+
+    @Test (expected=IllegalArgumentException.class)
+    public void testChunkSizeMustBePositive() {
+        new ChunkedEvaluator(mNeuralNetwork, 0.5, 0);
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import static org.junit.Assert.*;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Test;
+
+public class TestConfusionMatrix {
+
+    @Test
+    public void testAddCountsOnlyTheFilledRows() {
+        DoubleMatrix scores = new DoubleMatrix(new double [] {0.9, 0.2, 0.7, 0.4, 0.9});
+        DoubleMatrix truth = new DoubleMatrix(new double [] {1.0, 1.0, 0.0, 0.0, 0.0});
+        ConfusionMatrix confusion = new ConfusionMatrix();
+        confusion.add(scores, truth, 4, 0.5);
+
+        assertEquals(1, confusion.getTruePositives());
+        assertEquals(1, confusion.getFalseNegatives());
+        assertEquals(1, confusion.getFalsePositives());
+        assertEquals(1, confusion.getTrueNegatives());
+        assertEquals(4, confusion.getTotal());
+        assertEquals(0.5, confusion.getAccuracy(), 0.0);
+        assertEquals(0.5, confusion.getF1(), 0.0);
+    }
+
+    @Test
+    public void testMergeAddsCounts() {
+        DoubleMatrix scores = new DoubleMatrix(new double [] {0.9, 0.9, 0.1});
+        DoubleMatrix truth = new DoubleMatrix(new double [] {1.0, 0.0, 1.0});
+        ConfusionMatrix first = new ConfusionMatrix();
+        ConfusionMatrix second = new ConfusionMatrix();
+        first.add(scores, truth, 3, 0.5);
+        second.add(scores, truth, 3, 0.5);
+        first.merge(second);
+
+        assertEquals(2, first.getTruePositives());
+        assertEquals(2, first.getFalsePositives());
+        assertEquals(2, first.getFalseNegatives());
+        assertEquals(0, first.getTrueNegatives());
+        assertEquals(0.5, first.getPrecision(), 0.0);
+        assertEquals(0.5, first.getRecall(), 0.0);
+    }
+}
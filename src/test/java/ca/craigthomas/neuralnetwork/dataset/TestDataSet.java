@@ -579,4 +579,91 @@ public class TestDataSet {
         Assert.assertArrayEquals(dataSet.getSamples().toArray(), newDataSet.getSamples().toArray(), 0.0001);
         Assert.assertArrayEquals(dataSet.getTruth().toArray(), newDataSet.getTruth().toArray(), 0.0001);
     }
+    
+    private DataSet createNumberedDataSet(int rows) {
+        DoubleMatrix samples = new DoubleMatrix(rows, 2);
+        DoubleMatrix truth = new DoubleMatrix(rows, 1);
+        for (int row = 0; row < rows; row++) {
+            samples.put(row, 0, row);
+            samples.put(row, 1, row * 10.0);
+            truth.put(row, 0, row % 2);
+        }
+        return new DataSet(true, samples, truth);
+    }
+    
+    @Test
+    public void testRandomizeWithSameSeedIsReproducible() {
+        DataSet first = createNumberedDataSet(50);
+        DataSet second = createNumberedDataSet(50);
+        first.setSeed(1234L);
+        second.setSeed(1234L);
+        first.randomize();
+        second.randomize();
+        Assert.assertArrayEquals(first.getRowOrder(), second.getRowOrder());
+        Assert.assertArrayEquals(first.getSamples().toArray(), second.getSamples().toArray(), 0.0);
+    }
+    
+    @Test
+    public void testRandomizeProducesPermutation() {
+        dataSet = createNumberedDataSet(50);
+        dataSet.setSeed(42L);
+        dataSet.randomize();
+        int [] order = dataSet.getRowOrder();
+        int [] sorted = order.clone();
+        Arrays.sort(sorted);
+        for (int row = 0; row < sorted.length; row++) {
+            assertEquals(row, sorted[row]);
+        }
+        DoubleMatrix samples = dataSet.getSamples();
+        DoubleMatrix truth = dataSet.getTruth();
+        for (int row = 0; row < order.length; row++) {
+            assertEquals(order[row], samples.get(row, 0), 0.0);
+            assertEquals(order[row] * 10.0, samples.get(row, 1), 0.0);
+            assertEquals(order[row] % 2, truth.get(row, 0), 0.0);
+        }
+    }
+    
+    @Test
+    public void testCopySamplesFollowsRowOrder() {
+        dataSet = createNumberedDataSet(20);
+        dataSet.setSeed(7L);
+        dataSet.randomize();
+        int [] order = dataSet.getRowOrder();
+        DoubleMatrix batch = new DoubleMatrix(6, 2);
+        DoubleMatrix truth = new DoubleMatrix(6, 1);
+        dataSet.copySamples(5, 10, batch, 1);
+        dataSet.copyTruth(5, 10, truth, 1);
+        assertEquals(0.0, batch.get(0, 0), 0.0);
+        for (int row = 0; row < 5; row++) {
+            assertEquals(order[row + 5], batch.get(row + 1, 0), 0.0);
+            assertEquals(order[row + 5] * 10.0, batch.get(row + 1, 1), 0.0);
+            assertEquals(order[row + 5] % 2, truth.get(row + 1, 0), 0.0);
+        }
+    }
+    
+    @Test
+    public void testSplitSequentiallyFollowsRowOrder() {
+        dataSet = createNumberedDataSet(10);
+        dataSet.setSeed(99L);
+        dataSet.randomize();
+        int [] order = dataSet.getRowOrder();
+        Pair<DataSet, DataSet> result = dataSet.splitSequentially(50);
+        DoubleMatrix training = result.getLeft().getSamples();
+        DoubleMatrix testing = result.getRight().getSamples();
+        for (int row = 0; row < 5; row++) {
+            assertEquals(order[row], training.get(row, 0), 0.0);
+            assertEquals(order[row + 5], testing.get(row, 0), 0.0);
+        }
+    }
+    
+    @Test
+    public void testAddSamplesAfterRandomizeAppendsRows() {
+        dataSet = createNumberedDataSet(5);
+        dataSet.randomize();
+        dataSet.addSample(new DoubleMatrix(new double [][] {{5.0, 50.0, 1.0}}));
+        int [] order = dataSet.getRowOrder();
+        assertEquals(6, order.length);
+        assertEquals(5, order[5]);
+        assertEquals(5.0, dataSet.getSamples().get(5, 0), 0.0);
+    }
 }
@@ -9,8 +9,11 @@ import static org.junit.Assert.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.ArrayUtils;
+import org.jblas.DoubleMatrix;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -53,4 +56,140 @@ public class TestDataSetReader {
             Assert.assertArrayEquals(expected[index], sampleRow, 0.0001);        
         }
     }
+
+    @Test
+    public void testReadCSVReturnsPrimitiveRows() throws IOException {
+        RowBuffer result = DataSetReader.readCSV(sampleFilename, false);
+
+        assertEquals(4, result.getNumRows());
+        assertEquals(3, result.getNumColumns());
+        assertEquals(1.0, result.get(0, 2), 0.0001);
+        assertEquals(0.0, result.get(1, 2), 0.0001);
+        assertEquals(1.0, result.get(2, 1), 0.0001);
+    }
+
+    @Test
+    public void testCSVSourceReadsRowsInChunks() throws IOException {
+        DoubleMatrix samples = new DoubleMatrix(3, 2);
+        DoubleMatrix truth = new DoubleMatrix(3, 1);
+        try (SampleSource source = DataSetReader.openCSVSource(sampleFilename, false)) {
+            assertEquals(2, source.getNumColsSamples());
+            assertEquals(3, source.read(samples, truth));
+            assertEquals(1.0, truth.get(0, 0), 0.0);
+            assertEquals(0.0, truth.get(1, 0), 0.0);
+            assertEquals(1.0, samples.get(2, 1), 0.0);
+            assertEquals(1, source.read(samples, truth));
+            assertEquals(0.0, samples.get(0, 0), 0.0);
+            assertEquals(0, source.read(samples, truth));
+        }
+    }
+
+    @Test
+    public void testReadCSVSkipsHeader() throws IOException {
+        RowBuffer result = DataSetReader.readCSV(sampleFilename, true);
+
+        assertEquals(3, result.getNumRows());
+        assertEquals(1.0, result.get(0, 0), 0.0001);
+        assertEquals(0.0, result.get(0, 1), 0.0001);
+    }
+
+    @Test
+    public void testReadCSVRejectsRowsWithWrongNumberOfValues() throws IOException {
+        File file = File.createTempFile("ragged", ".csv");
+        file.deleteOnExit();
+        FileUtils.writeStringToFile(file, "1,2,3\n4,5\n");
+        try {
+            DataSetReader.readCSV(file.getPath(), false);
+            fail("expected an IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("line 2"));
+        }
+    }
+
+    private File createLargeCSV(int rows, int badRow) throws IOException {
+        StringBuilder contents = new StringBuilder("first,second,label\n");
+        for (int row = 0; row < rows; row++) {
+            String first = (row == badRow) ? "bad" : String.valueOf(row * 0.5);
+            contents.append(first).append(",").append(row).append(",").append(row % 2).append("\n");
+        }
+        File file = File.createTempFile("large", ".csv");
+        file.deleteOnExit();
+        FileUtils.writeStringToFile(file, contents.toString());
+        return file;
+    }
+
+    @Test
+    public void testReadCSVParallelPreservesRowOrder() throws IOException {
+        File file = createLargeCSV(1000, -1);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        for (int numChunks : new int [] {1, 7, 50, 5000}) {
+            List<RowBuffer> chunks = DataSetReader.readCSVParallel(file.getPath(), true, pool, numChunks);
+            DoubleMatrix result = RowBuffer.toMatrix(chunks, 0, 3);
+
+            assertEquals(1000, result.rows);
+            for (int row = 0; row < 1000; row++) {
+                assertEquals(row * 0.5, result.get(row, 0), 0.0);
+                assertEquals(row, result.get(row, 1), 0.0);
+                assertEquals(row % 2, result.get(row, 2), 0.0);
+            }
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void testReadCSVParallelSizesChunksFromTheirByteRange() throws IOException {
+        StringBuilder contents = new StringBuilder();
+        for (int row = 0; row < 40; row++) {
+            for (int column = 0; column < 2000; column++) {
+                contents.append(column > 0 ? "," : "").append(row % 10);
+            }
+            contents.append("\n");
+        }
+        File file = File.createTempFile("wide", ".csv");
+        file.deleteOnExit();
+        FileUtils.writeStringToFile(file, contents.toString());
+        ForkJoinPool pool = new ForkJoinPool(2);
+        List<RowBuffer> chunks = DataSetReader.readCSVParallel(file.getPath(), false, pool, 4);
+        pool.shutdown();
+
+        int numRows = 0;
+        for (RowBuffer chunk : chunks) {
+            assertTrue("capacity " + chunk.getCapacity() + " for " + chunk.getNumRows() + " rows",
+                    chunk.getCapacity() <= chunk.getNumRows() + 1);
+            numRows += chunk.getNumRows();
+        }
+        assertEquals(40, numRows);
+    }
+
+    @Test
+    public void testReadCSVSizesBufferFromFileLength() throws IOException {
+        StringBuilder contents = new StringBuilder("header\n");
+        for (int row = 0; row < 5; row++) {
+            for (int column = 0; column < 2000; column++) {
+                contents.append(column > 0 ? "," : "").append(row);
+            }
+            contents.append("\n");
+        }
+        File file = File.createTempFile("wide", ".csv");
+        file.deleteOnExit();
+        FileUtils.writeStringToFile(file, contents.toString());
+        RowBuffer rows = DataSetReader.readCSV(file.getPath(), true);
+
+        assertEquals(5, rows.getNumRows());
+        assertEquals(6, rows.getCapacity());
+    }
+
+    @Test
+    public void testReadCSVParallelReportsFileLineNumbers() throws IOException {
+        File file = createLargeCSV(1000, 733);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            DataSetReader.readCSVParallel(file.getPath(), true, pool, 9);
+            fail("expected a MalformedCSVException");
+        } catch (MalformedCSVException e) {
+            assertEquals(735, e.getLineNumber());
+        } finally {
+            pool.shutdown();
+        }
+    }
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FileUtils;
+import org.jblas.DoubleMatrix;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestFeatureCache {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private String mCacheFilename;
+    private File mImageFile;
+    private DoubleMatrix mFeatures;
+
+    @Before
+    public void setUp() throws IOException {
+        mCacheFilename = new File(mFolder.getRoot(), "features.cache").getPath();
+        mImageFile = mFolder.newFile("image.png");
+        FileUtils.writeStringToFile(mImageFile, "image contents");
+        mFeatures = new DoubleMatrix(new double [][] {
+                {0.1, 0.2, 0.3},
+                {0.4, 0.5, 0.6}
+        });
+    }
+
+    @Test
+    public void testPutAndGetRoundTrips() throws IOException {
+        try (FeatureCache cache = FeatureCache.open(mCacheFilename)) {
+            FeatureCache.Key key = new FeatureCache.Key(mImageFile, 3, 1, false);
+            cache.put(key, mFeatures, 1);
+            DoubleMatrix target = new DoubleMatrix(3, 3);
+            assertTrue(cache.get(key, target, 2));
+            Assert.assertArrayEquals(mFeatures.getRow(1).toArray(), target.getRow(2).toArray(), 0.0);
+            assertEquals(1, cache.getHits());
+        }
+    }
+
+    @Test
+    public void testEntriesSurviveReopening() throws IOException {
+        try (FeatureCache cache = FeatureCache.open(mCacheFilename)) {
+            cache.put(new FeatureCache.Key(mImageFile, 3, 1, false), mFeatures, 0);
+        }
+        try (FeatureCache cache = FeatureCache.open(mCacheFilename)) {
+            DoubleMatrix target = new DoubleMatrix(1, 3);
+            assertEquals(1, cache.size());
+            assertTrue(cache.get(new FeatureCache.Key(mImageFile, 3, 1, false), target, 0));
+            Assert.assertArrayEquals(mFeatures.getRow(0).toArray(), target.toArray(), 0.0);
+        }
+    }
+
+    @Test
+    public void testChangedFileIsAMiss() throws IOException {
+        try (FeatureCache cache = FeatureCache.open(mCacheFilename)) {
+            cache.put(new FeatureCache.Key(mImageFile, 3, 1, false), mFeatures, 0);
+            FileUtils.writeStringToFile(mImageFile, "different image contents");
+            assertFalse(cache.get(new FeatureCache.Key(mImageFile, 3, 1, false), new DoubleMatrix(1, 3), 0));
+            assertEquals(1, cache.getMisses());
+        }
+    }
+
+    @Test
+    public void testDifferentDimensionsOrColorAreMisses() throws IOException {
+        try (FeatureCache cache = FeatureCache.open(mCacheFilename)) {
+            cache.put(new FeatureCache.Key(mImageFile, 3, 1, false), mFeatures, 0);
+            assertFalse(cache.get(new FeatureCache.Key(mImageFile, 1, 3, false), new DoubleMatrix(1, 3), 0));
+            assertFalse(cache.get(new FeatureCache.Key(mImageFile, 3, 1, true), new DoubleMatrix(1, 3), 0));
+        }
+    }
+
+    @Test
+    public void testIncompleteRecordIsDiscarded() throws IOException {
+        try (FeatureCache cache = FeatureCache.open(mCacheFilename)) {
+            cache.put(new FeatureCache.Key(mImageFile, 3, 1, false), mFeatures, 0);
+        }
+        long completeLength = new File(mCacheFilename).length();
+        byte [] contents = FileUtils.readFileToByteArray(new File(mCacheFilename));
+        byte [] extended = new byte [contents.length + 20];
+        System.arraycopy(contents, 0, extended, 0, contents.length);
+        System.arraycopy(contents, FeatureCache.HEADER_SIZE, extended, contents.length, 20);
+        FileUtils.writeByteArrayToFile(new File(mCacheFilename), extended);
+
+        try (FeatureCache cache = FeatureCache.open(mCacheFilename)) {
+            assertEquals(1, cache.size());
+        }
+        assertEquals(completeLength, new File(mCacheFilename).length());
+    }
+
+    @Test
+    public void testOlderVersionIsDiscarded() throws IOException {
+        try (FeatureCache cache = FeatureCache.open(mCacheFilename)) {
+            cache.put(new FeatureCache.Key(mImageFile, 3, 1, false), mFeatures, 0);
+        }
+        byte [] contents = FileUtils.readFileToByteArray(new File(mCacheFilename));
+        contents[4] = 1;
+        FileUtils.writeByteArrayToFile(new File(mCacheFilename), contents);
+
+        try (FeatureCache cache = FeatureCache.open(mCacheFilename)) {
+            assertEquals(0, cache.size());
+        }
+        assertEquals(FeatureCache.HEADER_SIZE, new File(mCacheFilename).length());
+    }
+
+    @Test (expected=IOException.class)
+    public void testOpenRejectsOtherFiles() throws IOException {
+        FileUtils.writeStringToFile(new File(mCacheFilename), "1,2,3\n4,5,6\n");
+        FeatureCache.open(mCacheFilename);
+    }
+
+    @Test
+    public void testImageDirectoryReaderUsesCache() throws IOException, InterruptedException {
+        File directory = mFolder.newFolder("images");
+        BufferedImage image = new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, 0xffffff);
+        ImageIO.write(image, "png", new File(directory, "a.png"));
+        ImageIO.write(image, "png", new File(directory, "b.png"));
+
+        DataSet first;
+        try (FeatureCache cache = FeatureCache.open(mCacheFilename)) {
+            first = new ImageDirectoryReader.Builder(2, 2).directory(directory, 1.0).cache(cache).build().read();
+            assertEquals(0, cache.getHits());
+            assertEquals(2, cache.size());
+        }
+        try (FeatureCache cache = FeatureCache.open(mCacheFilename)) {
+            DataSet second = new ImageDirectoryReader.Builder(2, 2).directory(directory, 1.0).cache(cache).build().read();
+            assertEquals(2, cache.getHits());
+            Assert.assertArrayEquals(first.getSamples().toArray(), second.getSamples().toArray(), 0.0);
+            Assert.assertArrayEquals(first.getTruth().toArray(), second.getTruth().toArray(), 0.0);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FileUtils;
+import org.jblas.DoubleMatrix;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestImageDirectoryReader {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mPositives;
+    private File mNegatives;
+
+    @Before
+    public void setUp() throws IOException {
+        mPositives = mFolder.newFolder("positives");
+        mNegatives = mFolder.newFolder("negatives");
+    }
+
+    private void writeImage(File directory, String name, int width, int height, int intensity) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int rgb = (intensity << 16) | (intensity << 8) | intensity;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, rgb);
+            }
+        }
+        ImageIO.write(image, "png", new File(directory, name));
+    }
+
+    @Test
+    public void testReadKeepsDirectoryAndFilenameOrder() throws IOException, InterruptedException {
+        for (int index = 0; index < 20; index++) {
+            writeImage(mPositives, String.format("p%02d.png", index), 4, 3, index);
+            writeImage(mNegatives, String.format("n%02d.png", index), 4, 3, 100 + index);
+        }
+        DataSet result = new ImageDirectoryReader.Builder(4, 3)
+                .directory(mPositives, 1.0)
+                .directory(mNegatives, 0.0)
+                .ioThreads(4)
+                .cpuThreads(3).build().read();
+
+        assertEquals(40, result.getNumSamples());
+        assertEquals(12, result.getNumColsSamples());
+        for (int index = 0; index < 20; index++) {
+            assertEquals(index / 255.0, result.getSamples().get(index, 0), 0.0001);
+            assertEquals(1.0, result.getTruth().get(index, 0), 0.0);
+            assertEquals((100 + index) / 255.0, result.getSamples().get(index + 20, 11), 0.0001);
+            assertEquals(0.0, result.getTruth().get(index + 20, 0), 0.0);
+        }
+    }
+
+    @Test
+    public void testReadSkipsWrongSizeAndUnreadableFiles() throws IOException, InterruptedException {
+        writeImage(mPositives, "a.png", 4, 3, 10);
+        writeImage(mPositives, "b.png", 5, 3, 20);
+        FileUtils.writeStringToFile(new File(mPositives, "c.png"), "not an image");
+        writeImage(mPositives, "d.png", 4, 3, 40);
+        DataSet result = new ImageDirectoryReader.Builder(4, 3)
+                .directory(mPositives, 1.0).build().read();
+
+        assertEquals(2, result.getNumSamples());
+        assertEquals(10 / 255.0, result.getSamples().get(0, 0), 0.0001);
+        assertEquals(40 / 255.0, result.getSamples().get(1, 0), 0.0001);
+    }
+
+    @Test
+    public void testSourceReadsEveryDirectoryInChunks() throws IOException {
+        for (int index = 0; index < 5; index++) {
+            writeImage(mPositives, "p" + index + ".png", 4, 3, 10);
+            writeImage(mNegatives, "n" + index + ".png", 4, 3, 200);
+        }
+        writeImage(mPositives, "wrong.png", 5, 3, 20);
+        FileUtils.writeStringToFile(new File(mNegatives, "bad.png"), "not an image");
+
+        DoubleMatrix samples = new DoubleMatrix(4, 12);
+        DoubleMatrix truth = new DoubleMatrix(4, 1);
+        double [] counts = new double [2];
+        int chunks = 0;
+        int rows;
+        try (SampleSource source = new ImageDirectoryReader.Builder(4, 3)
+                .directory(mPositives, 1.0)
+                .directory(mNegatives, 0.0).build().createSource()) {
+            assertEquals(12, source.getNumColsSamples());
+            while ((rows = source.read(samples, truth)) > 0) {
+                for (int row = 0; row < rows; row++) {
+                    int type = (int)truth.get(row, 0);
+                    assertEquals((type == 1) ? 10 / 255.0 : 200 / 255.0, samples.get(row, 11), 0.0001);
+                    counts[type]++;
+                }
+                chunks++;
+            }
+        }
+
+        assertEquals(3, chunks);
+        assertArrayEquals(new double [] {5, 5}, counts, 0.0);
+    }
+
+    @Test
+    public void testReadColorGeneratesThreeFeaturesPerPixel() throws IOException, InterruptedException {
+        writeImage(mPositives, "a.png", 4, 3, 10);
+        DataSet result = new ImageDirectoryReader.Builder(4, 3)
+                .directory(mPositives, 1.0)
+                .color(true).build().read();
+
+        assertEquals(1, result.getNumSamples());
+        assertEquals(36, result.getNumColsSamples());
+    }
+
+    @Test
+    public void testReadEmptyDirectoryReturnsEmptyDataSet() throws IOException, InterruptedException {
+        DataSet result = new ImageDirectoryReader.Builder(4, 3)
+                .directory(mPositives, 1.0).build().read();
+        assertEquals(0, result.getNumSamples());
+    }
+
+    @Test (expected=IOException.class)
+    public void testReadMissingDirectoryThrowsIOException() throws IOException, InterruptedException {
+        new ImageDirectoryReader.Builder(4, 3)
+                .directory(new File(mFolder.getRoot(), "missing"), 1.0).build().read();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestNumericCSVReader {
+
+    private NumericCSVReader mReader;
+
+    private NumericCSVReader createReader(String contents, boolean hasHeader, int bufferSize) throws IOException {
+        byte [] bytes = contents.getBytes(StandardCharsets.UTF_8);
+        return new NumericCSVReader(Channels.newChannel(new ByteArrayInputStream(bytes)), hasHeader, bufferSize);
+    }
+
+    private double parse(String value) {
+        byte [] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        return NumericCSVReader.parseDouble(bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void testParseDoubleMatchesJavaParser() {
+        String [] values = {
+                "0", "1", "-1", "+1", "0.5", "-0.25", ".5", "5.", "3.14159",
+                "123456789012345678", "1234567890123456789012", "0.1", "0.2",
+                "0.3", "1e10", "1E-10", "-2.5e+3", "1e-300", "1e300",
+                "0.00000000000000000000000001", "9007199254740993",
+                "2.2250738585072014E-308", "4.9e-324", "-0.0", "NaN",
+                "Infinity", "-Infinity", "0.003921568627450980"
+        };
+        for (String value : values) {
+            assertEquals(value, Double.doubleToLongBits(Double.parseDouble(value)), Double.doubleToLongBits(parse(value)));
+        }
+    }
+
+    @Test (expected=NumberFormatException.class)
+    public void testParseDoubleRejectsText() {
+        parse("abc");
+    }
+
+    @Test (expected=NumberFormatException.class)
+    public void testParseDoubleRejectsEmptyValue() {
+        parse("");
+    }
+
+    @Test (expected=NumberFormatException.class)
+    public void testParseDoubleRejectsMissingExponent() {
+        parse("1e");
+    }
+
+    @Test
+    public void testReadRowReadsAllRows() throws IOException {
+        mReader = createReader("1,2,3\n4,5,6\n", false, NumericCSVReader.DEFAULT_BUFFER_SIZE);
+
+        assertTrue(mReader.readRow());
+        assertEquals(3, mReader.getNumColumns());
+        Assert.assertArrayEquals(new double [] {1.0, 2.0, 3.0}, Arrays.copyOf(mReader.getRow(), 3), 0.0);
+        assertTrue(mReader.readRow());
+        Assert.assertArrayEquals(new double [] {4.0, 5.0, 6.0}, Arrays.copyOf(mReader.getRow(), 3), 0.0);
+        assertFalse(mReader.readRow());
+    }
+
+    @Test
+    public void testReadRowSkipsHeaderAndBlankLines() throws IOException {
+        mReader = createReader("a,b\r\n\r\n1.5, 2.5\r\n  \n\"3\",4", true, NumericCSVReader.DEFAULT_BUFFER_SIZE);
+
+        assertTrue(mReader.readRow());
+        assertEquals(3, mReader.getLineNumber());
+        assertEquals(10, mReader.getRowLength());
+        assertEquals(1.5, mReader.getRow()[0], 0.0);
+        assertEquals(2.5, mReader.getRow()[1], 0.0);
+        assertTrue(mReader.readRow());
+        assertEquals(5, mReader.getLineNumber());
+        assertEquals(5, mReader.getRowLength());
+        assertEquals(3.0, mReader.getRow()[0], 0.0);
+        assertEquals(4.0, mReader.getRow()[1], 0.0);
+        assertFalse(mReader.readRow());
+    }
+
+    @Test
+    public void testReadRowWithSmallBufferHandlesLongLines() throws IOException {
+        StringBuilder contents = new StringBuilder();
+        for (int row = 0; row < 20; row++) {
+            for (int column = 0; column < 50; column++) {
+                contents.append(column > 0 ? "," : "").append(row * 1000 + column);
+            }
+            contents.append("\n");
+        }
+        mReader = createReader(contents.toString(), false, 4);
+
+        for (int row = 0; row < 20; row++) {
+            assertTrue(mReader.readRow());
+            assertEquals(50, mReader.getNumColumns());
+            for (int column = 0; column < 50; column++) {
+                assertEquals(row * 1000 + column, mReader.getRow()[column], 0.0);
+            }
+        }
+        assertFalse(mReader.readRow());
+    }
+
+    @Test
+    public void testReadRowReportsLineNumberOfMalformedValue() throws IOException {
+        mReader = createReader("1,2\n3,4\n5,x\n", false, NumericCSVReader.DEFAULT_BUFFER_SIZE);
+        assertTrue(mReader.readRow());
+        assertTrue(mReader.readRow());
+        try {
+            mReader.readRow();
+            fail("expected an IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("line 3"));
+            assertTrue(e.getMessage().contains("column 2"));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.jblas.DoubleMatrix;
+import org.jblas.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+
+public class TestParallelEvaluator {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private NeuralNetwork mNeuralNetwork;
+    private DataSet mDataSet;
+    private Prediction mPrediction;
+    private ForkJoinPool mPool;
+
+    @Before
+    public void setUp() {
+        Random.seed(5);
+        DoubleMatrix samples = DoubleMatrix.rand(103, 4);
+        DoubleMatrix truth = samples.getColumn(1).gt(0.5);
+        mDataSet = new DataSet(true, samples, truth);
+        mNeuralNetwork = new NeuralNetwork.Builder(Arrays.asList(4, 3, 1)).build();
+        mPrediction = new Prediction(mNeuralNetwork, 0.5);
+        mPrediction.predict(mDataSet);
+        mPool = new ForkJoinPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        mPool.shutdown();
+    }
+
+    private void assertMatchesPrediction(ConfusionMatrix confusion) {
+        assertEquals(103, confusion.getTotal());
+        assertEquals(mPrediction.getTruePositives(), confusion.getTruePositives(), 0.0);
+        assertEquals(mPrediction.getFalsePositives(), confusion.getFalsePositives(), 0.0);
+        assertEquals(mPrediction.getTrueNegatives(), confusion.getTrueNegatives(), 0.0);
+        assertEquals(mPrediction.getFalseNegatives(), confusion.getFalseNegatives(), 0.0);
+    }
+
+    @Test
+    public void testEvaluateDataSetMatchesPrediction() {
+        ParallelEvaluator evaluator = new ParallelEvaluator(mNeuralNetwork, 0.5, 10, mPool);
+        assertMatchesPrediction(evaluator.evaluate(mDataSet));
+    }
+
+    @Test
+    public void testEvaluateSingleChunkMatchesPrediction() {
+        ParallelEvaluator evaluator = new ParallelEvaluator(mNeuralNetwork, 0.5, 1000, mPool);
+        assertMatchesPrediction(evaluator.evaluate(mDataSet));
+    }
+
+    @Test
+    public void testEvaluateBinaryDataSetMatchesPrediction() throws IOException {
+        String filename = new File(mFolder.getRoot(), "data.bin").getPath();
+        BinaryDataSet.write(mDataSet, filename, BinaryDataSet.DTYPE_FLOAT64);
+        ParallelEvaluator evaluator = new ParallelEvaluator(mNeuralNetwork, 0.5, 7, mPool);
+        assertMatchesPrediction(evaluator.evaluate(BinaryDataSet.open(filename)));
+    }
+
+    @Test
+    public void testScoreMatchesFeedForward() {
+        ParallelEvaluator evaluator = new ParallelEvaluator(mNeuralNetwork, 0.5, 8, mPool);
+        DoubleMatrix expected = mNeuralNetwork.feedForward(mDataSet.getSamples());
+        DoubleMatrix scores = evaluator.score(mDataSet);
+        assertEquals(expected.rows, scores.rows);
+        assertEquals(expected.columns, scores.columns);
+        for (int index = 0; index < expected.length; index++) {
+            assertEquals(expected.get(index), scores.get(index), 1e-12);
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testWrongNumberOfFeaturesThrowsException() {
+        NeuralNetwork network = new NeuralNetwork.Builder(Arrays.asList(5, 3, 1)).build();
+        new ParallelEvaluator(network, 0.5, 10, mPool).evaluate(mDataSet);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testChunkSizeMustBePositive() {
+        new ParallelEvaluator(mNeuralNetwork, 0.5, 0, mPool);
+    }
+}
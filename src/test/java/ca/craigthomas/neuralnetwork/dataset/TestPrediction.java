@@ -14,39 +14,42 @@ public class TestPrediction {
     private Prediction mPrediction;
     
     @Test
-    public void testSaveSampleToClassWorksCorrectly() {
-        DoubleMatrix truePositives = new DoubleMatrix(new double [][] {
+    public void testSampleIndicesAreRecordedByType() {
+        DoubleMatrix samples = new DoubleMatrix(new double [][] {
                 {1.0, 2.0, 3.0},
-                {4.0, 5.0, 6.0}
+                {4.0, 5.0, 6.0},
+                {7.0, 8.0, 9.0},
+                {10.0, 11.0, 12.0},
+                {13.0, 14.0, 15.0},
+                {16.0, 17.0, 18.0}
         });
         
-        DoubleMatrix trueNegatives = new DoubleMatrix(new double [][] {
-                {7.0, 8.0, 9.0}
+        DoubleMatrix truth = new DoubleMatrix(new double [][] {
+                {1.0}, {0.0}, {1.0}, {0.0}, {0.0}, {1.0}
         });
         
-        DoubleMatrix falsePositives = new DoubleMatrix(new double[][] {
-                {10.0, 11.0, 12.0},
-                {13.0, 14.0, 15.0}
+        DoubleMatrix predictions = new DoubleMatrix(new double [][] {
+                {0.9}, {0.8}, {0.7}, {0.1}, {0.6}, {0.9}
         });
         
-        DoubleMatrix falseNegatives = new DoubleMatrix(new double [][] {
-                {16.0, 17.0, 18.0}
-        });
+        DataSet mockDataSet = mock(DataSet.class);
+        when(mockDataSet.getSamples()).thenReturn(samples);
+        when(mockDataSet.getTruth()).thenReturn(truth);
         
         NeuralNetwork mockNeuralNetwork = mock(NeuralNetwork.class);
-        mPrediction = new Prediction(mockNeuralNetwork, 0.0);
-        
-        mPrediction.saveSampleToClass(truePositives.getRow(0), Prediction.TRUE_POS);
-        mPrediction.saveSampleToClass(truePositives.getRow(1), Prediction.TRUE_POS);
-        mPrediction.saveSampleToClass(trueNegatives.getRow(0), Prediction.TRUE_NEG);
-        mPrediction.saveSampleToClass(falsePositives.getRow(0), Prediction.FALSE_POS);
-        mPrediction.saveSampleToClass(falsePositives.getRow(1), Prediction.FALSE_POS);
-        mPrediction.saveSampleToClass(falseNegatives.getRow(0), Prediction.FALSE_NEG);;
-
-        Assert.assertArrayEquals(truePositives.toArray(), mPrediction.getTruePositiveSamples().toArray(), 0.0001);
-        Assert.assertArrayEquals(trueNegatives.toArray(), mPrediction.getTrueNegativeSamples().toArray(), 0.0001);
-        Assert.assertArrayEquals(falsePositives.toArray(), mPrediction.getFalsePositiveSamples().toArray(), 0.0001);
-        Assert.assertArrayEquals(falseNegatives.toArray(), mPrediction.getFalseNegativeSamples().toArray(), 0.0001);
+        when(mockNeuralNetwork.predict(samples)).thenReturn(predictions);
+        
+        mPrediction = new Prediction(mockNeuralNetwork, 0.5);
+        mPrediction.predict(mockDataSet);
+        
+        Assert.assertArrayEquals(new int [] {0, 2, 5}, mPrediction.getSampleIndices(Prediction.TRUE_POS));
+        Assert.assertArrayEquals(new int [] {3}, mPrediction.getSampleIndices(Prediction.TRUE_NEG));
+        Assert.assertArrayEquals(new int [] {1, 4}, mPrediction.getSampleIndices(Prediction.FALSE_POS));
+        Assert.assertArrayEquals(new int [0], mPrediction.getSampleIndices(Prediction.FALSE_NEG));
+        
+        Assert.assertArrayEquals(samples.getRows(new int [] {1, 4}).toArray(), mPrediction.getFalsePositiveSamples().toArray(), 0.0001);
+        assertSame(mPrediction.getFalsePositiveSamples(), mPrediction.getFalsePositiveSamples());
+        assertNull(mPrediction.getFalseNegativeSamples());
     }
     
     @Test
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import static org.junit.Assert.*;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Test;
+
+public class TestRowBuffer {
+
+    @Test
+    public void testWideRowsStartWithSmallAllocation() {
+        // 100 x 100 color features, plus the truth column
+        RowBuffer buffer = new RowBuffer(30001);
+        assertEquals(2, buffer.getCapacity());
+
+        double [] row = new double [30001];
+        for (int index = 0; index < 5; index++) {
+            row[0] = index;
+            buffer.addRow(row);
+        }
+        assertEquals(5, buffer.getNumRows());
+        assertTrue(buffer.getCapacity() >= 5);
+        assertEquals(4.0, buffer.get(4, 0), 0.0);
+    }
+
+    @Test
+    public void testNarrowRowsStartWithManyRows() {
+        RowBuffer buffer = new RowBuffer(4);
+        assertEquals(16384, buffer.getCapacity());
+    }
+
+    @Test
+    public void testExpectedRowsSetsCapacity() {
+        assertEquals(7, new RowBuffer(30001, 7).getCapacity());
+        assertEquals(1, new RowBuffer(30001, 0).getCapacity());
+        assertEquals(0, new RowBuffer(0, Integer.MAX_VALUE).getCapacity());
+    }
+
+    @Test
+    public void testToMatrixCopiesColumnRange() {
+        RowBuffer buffer = new RowBuffer(3);
+        buffer.addRow(new double [] {1.0, 2.0, 3.0});
+        buffer.addRow(new double [] {4.0, 5.0, 6.0});
+        DoubleMatrix result = buffer.toMatrix(1, 3);
+
+        assertArrayEquals(new double [] {2.0, 3.0}, result.getRow(0).toArray(), 0.0);
+        assertArrayEquals(new double [] {5.0, 6.0}, result.getRow(1).toArray(), 0.0);
+        assertNull(new RowBuffer(3).toMatrix(0, 3));
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.jblas.DoubleMatrix;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestStratifiedSplitter {
+
+    private DataSet mDataSet;
+    private StratifiedSplitter mSplitter;
+
+    @Before
+    public void setUp() {
+        // 30 positive rows followed by 70 negative rows
+        DoubleMatrix samples = new DoubleMatrix(100, 1);
+        DoubleMatrix truth = new DoubleMatrix(100, 1);
+        for (int row = 0; row < 100; row++) {
+            samples.put(row, 0, row);
+            truth.put(row, 0, (row < 30) ? 1.0 : 0.0);
+        }
+        mDataSet = new DataSet(true, samples, truth);
+        mSplitter = new StratifiedSplitter(mDataSet, new Random(1234L));
+    }
+
+    private int countPositives(int [] rows) {
+        int count = 0;
+        for (int row : rows) {
+            count += (row < 30) ? 1 : 0;
+        }
+        return count;
+    }
+
+    private void assertPartition(int [] training, int [] testing) {
+        boolean [] seen = new boolean [100];
+        for (int row : training) {
+            assertFalse(seen[row]);
+            seen[row] = true;
+        }
+        for (int row : testing) {
+            assertFalse(seen[row]);
+            seen[row] = true;
+        }
+    }
+
+    @Test
+    public void testBucketsClasses() {
+        assertEquals(2, mSplitter.getNumClasses());
+        assertEquals(0.0, mSplitter.getLabel(0), 0.0);
+        assertEquals(1.0, mSplitter.getLabel(1), 0.0);
+        assertEquals(70, mSplitter.getClassSize(0));
+        assertEquals(30, mSplitter.getClassSize(1));
+    }
+
+    @Test
+    public void testSplitKeepsClassProportions() {
+        Pair<int [], int []> result = mSplitter.split(80, false);
+        assertEquals(80, result.getLeft().length);
+        assertEquals(20, result.getRight().length);
+        assertEquals(24, countPositives(result.getLeft()));
+        assertEquals(6, countPositives(result.getRight()));
+        assertPartition(result.getLeft(), result.getRight());
+    }
+
+    @Test
+    public void testSplitWithBalanceUndersamplesLargerClass() {
+        Pair<int [], int []> result = mSplitter.split(80, true);
+        assertEquals(48, result.getLeft().length);
+        assertEquals(24, countPositives(result.getLeft()));
+        assertEquals(52, result.getRight().length);
+        assertPartition(result.getLeft(), result.getRight());
+    }
+
+    @Test
+    public void testKFoldTestsEveryRowOnce() {
+        List<Pair<int [], int []>> folds = mSplitter.kFold(5, false);
+        int [] timesTested = new int [100];
+        assertEquals(5, folds.size());
+        for (Pair<int [], int []> fold : folds) {
+            assertEquals(80, fold.getLeft().length);
+            assertEquals(20, fold.getRight().length);
+            assertEquals(6, countPositives(fold.getRight()));
+            assertPartition(fold.getLeft(), fold.getRight());
+            for (int row : fold.getRight()) {
+                timesTested[row]++;
+            }
+        }
+        for (int row = 0; row < 100; row++) {
+            assertEquals(1, timesTested[row]);
+        }
+    }
+
+    @Test
+    public void testKFoldWithBalanceUndersamplesTraining() {
+        for (Pair<int [], int []> fold : mSplitter.kFold(5, true)) {
+            assertEquals(48, fold.getLeft().length);
+            assertEquals(24, countPositives(fold.getLeft()));
+            assertEquals(20, fold.getRight().length);
+            assertPartition(fold.getLeft(), fold.getRight());
+        }
+    }
+
+    @Test
+    public void testSameSeedGivesSameSplit() {
+        StratifiedSplitter other = new StratifiedSplitter(mDataSet, new Random(1234L));
+        Pair<int [], int []> first = mSplitter.split(50, false);
+        Pair<int [], int []> second = other.split(50, false);
+        Assert.assertArrayEquals(first.getLeft(), second.getLeft());
+        Assert.assertArrayEquals(first.getRight(), second.getRight());
+    }
+
+    @Test
+    public void testSubsetFollowsRows() {
+        Pair<int [], int []> result = mSplitter.split(50, false);
+        DataSet training = mDataSet.subset(result.getLeft());
+        assertEquals(result.getLeft().length, training.getNumSamples());
+        for (int index = 0; index < result.getLeft().length; index++) {
+            int row = result.getLeft()[index];
+            assertEquals(row, training.getSamples().get(index, 0), 0.0);
+            assertEquals((row < 30) ? 1.0 : 0.0, training.getTruth().get(index, 0), 0.0);
+        }
+    }
+
+    @Test (expected=IllegalArgumentException.class)
+    public void testRejectsDataSetWithoutTruth() {
+        new StratifiedSplitter(new DataSet(false, new DoubleMatrix(2, 1), null), new Random());
+    }
+}
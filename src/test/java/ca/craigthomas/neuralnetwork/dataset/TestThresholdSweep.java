@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.dataset;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Test;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+
+public class TestThresholdSweep {
+
+    private ThresholdSweep mSweep;
+
+    private void sweep(double [] scores, double [] truth) {
+        mSweep = new ThresholdSweep(mock(NeuralNetwork.class));
+        mSweep.sweep(new DoubleMatrix(scores), new DoubleMatrix(truth));
+    }
+
+    @Test
+    public void testPerfectSeparationHasAreaOfOne() {
+        sweep(new double [] {0.9, 0.1, 0.8, 0.2}, new double [] {1.0, 0.0, 1.0, 0.0});
+
+        assertEquals(5, mSweep.getNumPoints());
+        assertEquals(1.0, mSweep.getRocAuc(), 0.0);
+        assertEquals(1.0, mSweep.getAveragePrecision(), 0.0);
+        assertEquals(1.0, mSweep.getBestF1(), 0.0);
+        assertEquals(0.5, mSweep.getBestThreshold(), 0.00001);
+    }
+
+    @Test
+    public void testCurvesMatchPredictionAtEveryThreshold() {
+        double [] scores = {0.9, 0.8, 0.7, 0.6, 0.55, 0.5, 0.4, 0.3, 0.2, 0.1};
+        double [] truth = {1.0, 1.0, 0.0, 1.0, 1.0, 0.0, 1.0, 0.0, 0.0, 0.0};
+        sweep(scores, truth);
+
+        for (int point = 0; point < mSweep.getNumPoints(); point++) {
+            int truePositives = 0;
+            int falsePositives = 0;
+            for (int index = 0; index < scores.length; index++) {
+                if (scores[index] > mSweep.getThreshold(point)) {
+                    truePositives += (truth[index] > 0.5) ? 1 : 0;
+                    falsePositives += (truth[index] > 0.5) ? 0 : 1;
+                }
+            }
+            assertEquals(truePositives, mSweep.getTruePositives(point));
+            assertEquals(falsePositives, mSweep.getFalsePositives(point));
+            assertEquals(5 - falsePositives, mSweep.getTrueNegatives(point));
+            assertEquals(5 - truePositives, mSweep.getFalseNegatives(point));
+        }
+
+        // 21 of the 25 positive and negative pairs are in the right order
+        assertEquals(0.84, mSweep.getRocAuc(), 0.00001);
+        assertEquals((1.0 + 1.0 + 0.75 + 0.8 + (5.0 / 7.0)) / 5, mSweep.getAveragePrecision(), 0.00001);
+        assertEquals(10.0 / 12.0, mSweep.getBestF1(), 0.00001);
+        assertEquals(0.35, mSweep.getBestThreshold(), 0.00001);
+    }
+
+    @Test
+    public void testTiedScoresShareAPoint() {
+        sweep(new double [] {0.5, 0.5, 0.5, 0.5}, new double [] {1.0, 0.0, 1.0, 0.0});
+
+        assertEquals(2, mSweep.getNumPoints());
+        assertEquals(2, mSweep.getTruePositives(1));
+        assertEquals(2, mSweep.getFalsePositives(1));
+        assertTrue(mSweep.getThreshold(1) < 0.5);
+        assertEquals(0.5, mSweep.getRocAuc(), 0.0);
+    }
+
+    @Test
+    public void testWriteCSVWritesEveryPoint() throws IOException {
+        sweep(new double [] {0.9, 0.1}, new double [] {1.0, 0.0});
+        StringWriter output = new StringWriter();
+        mSweep.writeCSV(output);
+        String [] lines = output.toString().split("\n");
+
+        assertEquals(4, lines.length);
+        assertEquals(ThresholdSweep.CSV_HEADER, lines[0]);
+        assertEquals("0.5,1,0,1,0,1.0,1.0,0.0,1.0", lines[2]);
+    }
+}
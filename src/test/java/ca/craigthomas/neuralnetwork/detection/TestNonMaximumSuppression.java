@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.detection;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestNonMaximumSuppression {
+
+    /**
+     * Suppresses the boxes by comparing every pair, for checking the grid.
+     */
+    private static List<BoundingBox> suppressAllPairs(List<BoundingBox> boxes, double overlapThreshold) {
+        List<BoundingBox> sorted = new ArrayList<BoundingBox>(boxes);
+        Collections.sort(sorted, new Comparator<BoundingBox>() {
+            @Override
+            public int compare(BoundingBox first, BoundingBox second) {
+                return Double.compare(second.getScore(), first.getScore());
+            }
+        });
+        List<BoundingBox> result = new ArrayList<BoundingBox>();
+        for (BoundingBox box : sorted) {
+            boolean suppressed = false;
+            for (BoundingBox kept : result) {
+                suppressed |= box.getIntersectionOverUnion(kept) > overlapThreshold;
+            }
+            if (!suppressed) {
+                result.add(box);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the windows a pyramid of 24 x 24 windows with a stride of 4
+     * would report for a frame, mapped back to the coordinates of the frame,
+     * from the finest level up to the one where a window fills the frame.
+     */
+    private static List<BoundingBox> pyramidBoxes(int width, int height, Random random) {
+        List<BoundingBox> boxes = new ArrayList<BoundingBox>();
+        for (double scale = 1.0; 24 * scale <= Math.min(width, height); scale *= 1.25) {
+            int levelWidth = (int)Math.round(width / scale);
+            int levelHeight = (int)Math.round(height / scale);
+            for (int top = 0; top + 24 <= levelHeight; top += 4) {
+                for (int left = 0; left + 24 <= levelWidth; left += 4) {
+                    boxes.add(new BoundingBox(
+                            (int)Math.round(left * scale),
+                            (int)Math.round(top * scale),
+                            Math.min(width, (int)Math.round((left + 24) * scale)),
+                            Math.min(height, (int)Math.round((top + 24) * scale)),
+                            random.nextDouble()));
+                }
+            }
+        }
+        return boxes;
+    }
+
+    /**
+     * Returns the number of comparisons per box made when suppressing the
+     * boxes.
+     */
+    private static double getComparisonsPerBox(NonMaximumSuppression suppression, List<BoundingBox> boxes) {
+        BoundingBox [] array = boxes.toArray(new BoundingBox [boxes.size()]);
+        NonMaximumSuppression.Grid grid = suppression.createGrid(array);
+        suppression.suppress(array, grid);
+        return (double)grid.getComparisons() / array.length;
+    }
+
+    @Test
+    public void testIntersectionOverUnion() {
+        BoundingBox box = new BoundingBox(0, 0, 4, 4, 1.0);
+        assertEquals(1.0, box.getIntersectionOverUnion(box), 0.0);
+        assertEquals(4.0 / 28.0, box.getIntersectionOverUnion(new BoundingBox(2, 2, 6, 6, 1.0)), 0.0);
+        assertEquals(0.0, box.getIntersectionOverUnion(new BoundingBox(4, 0, 8, 4, 1.0)), 0.0);
+        assertEquals(16, box.getArea());
+    }
+
+    @Test
+    public void testGreedyKeepsHighestOfOverlappingBoxes() {
+        List<BoundingBox> boxes = Arrays.asList(
+                new BoundingBox(0, 0, 10, 10, 0.6),
+                new BoundingBox(1, 1, 11, 11, 0.9),
+                new BoundingBox(2, 0, 12, 10, 0.7),
+                new BoundingBox(30, 30, 40, 40, 0.8));
+        List<BoundingBox> result = new NonMaximumSuppression.Builder().build().suppress(boxes);
+
+        assertEquals(2, result.size());
+        assertSame(boxes.get(1), result.get(0));
+        assertSame(boxes.get(3), result.get(1));
+    }
+
+    @Test
+    public void testGreedyMatchesAllPairsComparison() {
+        Random random = new Random(1234);
+        List<BoundingBox> boxes = new ArrayList<BoundingBox>();
+        for (int index = 0; index < 2000; index++) {
+            int size = 8 + random.nextInt(40);
+            int left = random.nextInt(400);
+            int top = random.nextInt(300);
+            boxes.add(new BoundingBox(left, top, left + size, top + size, random.nextDouble()));
+        }
+        List<BoundingBox> expected = suppressAllPairs(boxes, 0.3);
+        List<BoundingBox> result = new NonMaximumSuppression.Builder().overlapThreshold(0.3).build().suppress(boxes);
+
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void testGreedyMatchesAllPairsComparisonOnPyramid() {
+        List<BoundingBox> boxes = pyramidBoxes(160, 120, new Random(99));
+        List<BoundingBox> expected = suppressAllPairs(boxes, 0.3);
+        List<BoundingBox> result = new NonMaximumSuppression.Builder().overlapThreshold(0.3).build().suppress(boxes);
+
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void testComparisonsStayLinearOnPyramid() {
+        // Frame sized windows from the coarse levels must not put every box
+        // in one cell. Doubling the frame gives more than 4 times the boxes,
+        // so comparing every pair would make more than 4 times the
+        // comparisons per box, while the size bands keep it close to the same.
+        List<BoundingBox> small = pyramidBoxes(320, 240, new Random(5));
+        List<BoundingBox> large = pyramidBoxes(640, 480, new Random(5));
+        assertTrue(large.size() > 4 * small.size());
+        NonMaximumSuppression [] suppressions = {
+            new NonMaximumSuppression.Builder().build(),
+            new NonMaximumSuppression.Builder().method(NonMaximumSuppression.Method.GAUSSIAN).build()
+        };
+        for (NonMaximumSuppression suppression : suppressions) {
+            double smallComparisons = getComparisonsPerBox(suppression, small);
+            double largeComparisons = getComparisonsPerBox(suppression, large);
+            assertTrue(largeComparisons < 2 * smallComparisons);
+            assertTrue(largeComparisons < large.size() / 20.0);
+        }
+    }
+
+    @Test
+    public void testLinearLowersScoresOfOverlappingBoxes() {
+        List<BoundingBox> boxes = Arrays.asList(
+                new BoundingBox(0, 0, 4, 4, 1.0),
+                new BoundingBox(2, 0, 6, 4, 0.8),
+                new BoundingBox(3, 0, 7, 4, 0.5));
+        List<BoundingBox> result = new NonMaximumSuppression.Builder()
+                .method(NonMaximumSuppression.Method.LINEAR)
+                .overlapThreshold(0.2).build().suppress(boxes);
+
+        // The second box overlaps the first by 1/3, and the third overlaps
+        // the first by 1/7 and the second by 3/5
+        assertEquals(3, result.size());
+        assertEquals(1.0, result.get(0).getScore(), 0.0);
+        assertEquals(0.8 * (2.0 / 3.0), result.get(1).getScore(), 0.000001);
+        assertEquals(0.5 * (2.0 / 5.0), result.get(2).getScore(), 0.000001);
+        assertEquals(3, result.get(2).getLeft());
+    }
+
+    @Test
+    public void testGaussianDropsBoxesBelowScoreThreshold() {
+        List<BoundingBox> boxes = Arrays.asList(
+                new BoundingBox(0, 0, 4, 4, 1.0),
+                new BoundingBox(0, 0, 4, 4, 0.9),
+                new BoundingBox(1, 0, 5, 4, 0.9));
+        List<BoundingBox> result = new NonMaximumSuppression.Builder()
+                .method(NonMaximumSuppression.Method.GAUSSIAN)
+                .sigma(0.5)
+                .scoreThreshold(0.2).build().suppress(boxes);
+
+        // The identical box decays to 0.9 * e^-2, below the threshold
+        assertEquals(2, result.size());
+        assertEquals(1.0, result.get(0).getScore(), 0.0);
+        assertEquals(0.9 * Math.exp(-(0.6 * 0.6) / 0.5), result.get(1).getScore(), 0.000001);
+        assertEquals(1, result.get(1).getLeft());
+    }
+
+    @Test
+    public void testEmptyListReturnsEmptyList() {
+        assertTrue(new NonMaximumSuppression.Builder().build().suppress(new ArrayList<BoundingBox>()).isEmpty());
+    }
+
+    @Test (expected=IllegalArgumentException.class)
+    public void testOverlapThresholdMustBeAtMostOne() {
+        new NonMaximumSuppression.Builder().overlapThreshold(1.5).build();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.detection;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import org.jblas.DoubleMatrix;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+import ca.craigthomas.neuralnetwork.imageprocessing.Image;
+
+public class TestPyramidDetector {
+
+    private Image mImage;
+    private NeuralNetwork mNeuralNetwork;
+    private PyramidDetector mDetector;
+
+    @Before
+    public void setUp() {
+        mImage = new Image(new BufferedImage(16, 16, BufferedImage.TYPE_INT_RGB));
+
+        // Scores every window as a detection
+        mNeuralNetwork = mock(NeuralNetwork.class);
+        when(mNeuralNetwork.feedForward(any(DoubleMatrix.class))).thenAnswer(new Answer<DoubleMatrix>() {
+            @Override
+            public DoubleMatrix answer(InvocationOnMock invocation) {
+                DoubleMatrix batch = (DoubleMatrix)invocation.getArguments()[0];
+                return DoubleMatrix.ones(batch.rows, 1);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        if (mDetector != null) {
+            mDetector.close();
+        }
+    }
+
+    @Test
+    public void testGetScalesStopsAtWindowSize() {
+        mDetector = new PyramidDetector.Builder(mNeuralNetwork, 4, 4).scaleFactor(2.0).build();
+        Assert.assertArrayEquals(new double [] {1.0, 0.5, 0.25}, mDetector.getScales(16, 16), 0.0);
+        Assert.assertArrayEquals(new double [] {1.0, 0.5}, mDetector.getScales(16, 8), 0.0);
+    }
+
+    @Test
+    public void testGetScalesStartsAtMinSize() {
+        mDetector = new PyramidDetector.Builder(mNeuralNetwork, 4, 4).scaleFactor(2.0).minSize(8).build();
+        Assert.assertArrayEquals(new double [] {0.5, 0.25}, mDetector.getScales(16, 16), 0.0);
+    }
+
+    @Test
+    public void testDetectMapsBoxesToOriginalCoordinates() throws InterruptedException {
+        mDetector = new PyramidDetector.Builder(mNeuralNetwork, 4, 4)
+                .scaleFactor(2.0)
+                .stride(4)
+                .threads(2).build();
+        List<BoundingBox> boxes = mDetector.detect(mImage);
+
+        // 16 boxes of 4x4, then 4 boxes of 8x8, then a single 16x16 box
+        assertEquals(21, boxes.size());
+        assertEquals(4, boxes.get(0).getWidth());
+        BoundingBox box = boxes.get(19);
+        assertEquals(8, box.getLeft());
+        assertEquals(8, box.getTop());
+        assertEquals(16, box.getRight());
+        assertEquals(16, box.getBottom());
+        box = boxes.get(20);
+        assertEquals(0, box.getLeft());
+        assertEquals(0, box.getTop());
+        assertEquals(16, box.getWidth());
+        assertEquals(16, box.getHeight());
+        assertEquals(1.0, box.getScore(), 0.0);
+    }
+
+    @Test
+    public void testDetectAppliesSuppression() throws InterruptedException {
+        mDetector = new PyramidDetector.Builder(mNeuralNetwork, 4, 4)
+                .scaleFactor(2.0)
+                .stride(4)
+                .suppression(new NonMaximumSuppression.Builder().overlapThreshold(0.0).build())
+                .threads(2).build();
+        List<BoundingBox> boxes = mDetector.detect(mImage);
+
+        // Every box overlaps the first 4x4 box, or one of the other 4x4 boxes
+        assertEquals(16, boxes.size());
+        assertEquals(4, boxes.get(15).getWidth());
+    }
+
+    @Test (expected=IllegalArgumentException.class)
+    public void testScaleFactorMustBeGreaterThanOne() {
+        new PyramidDetector.Builder(mNeuralNetwork, 4, 4).scaleFactor(1.0).build();
+    }
+}
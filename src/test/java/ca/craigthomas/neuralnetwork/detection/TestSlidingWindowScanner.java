@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.detection;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+import ca.craigthomas.neuralnetwork.imageprocessing.Image;
+
+public class TestSlidingWindowScanner {
+
+    private Image mImage;
+    private NeuralNetwork mNeuralNetwork;
+    private List<DoubleMatrix> mBatches;
+
+    @Before
+    public void setUp() {
+        BufferedImage bufferedImage = new BufferedImage(6, 4, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 6; x++) {
+                bufferedImage.setRGB(x, y, new Color(x * 10, y * 10, (x + y) * 5).getRGB());
+            }
+        }
+        mImage = new Image(bufferedImage);
+
+        // Scores each window with the value of its first feature
+        mBatches = new ArrayList<DoubleMatrix>();
+        mNeuralNetwork = mock(NeuralNetwork.class);
+        when(mNeuralNetwork.feedForward(any(DoubleMatrix.class))).thenAnswer(new Answer<DoubleMatrix>() {
+            @Override
+            public DoubleMatrix answer(InvocationOnMock invocation) {
+                DoubleMatrix batch = ((DoubleMatrix)invocation.getArguments()[0]).dup();
+                mBatches.add(batch);
+                return batch.getColumn(0);
+            }
+        });
+    }
+
+    private DoubleMatrix getExpectedFeatures(int left, int top, int width, int height, boolean color) {
+        Image window = mImage.getSubImage(left, top, left + width, top + height);
+        DoubleMatrix features = color ? window.convertColorToMatrix(0.0) : window.convertGrayscaleToMatrix(0.0);
+        return features.getRange(0, 1, 0, features.columns - 1);
+    }
+
+    @Test
+    public void testWindowsMatchConvertedSubImages() {
+        SlidingWindowScanner scanner = new SlidingWindowScanner.Builder(mNeuralNetwork, 3, 2)
+                .stride(2)
+                .threshold(-1.0).build();
+        List<BoundingBox> boxes = scanner.scan(mImage);
+
+        assertEquals(1, mBatches.size());
+        DoubleMatrix batch = mBatches.get(0);
+        assertEquals(4, batch.rows);
+        assertEquals(6, batch.columns);
+        assertEquals(4, boxes.size());
+        int [][] corners = {{0, 0}, {2, 0}, {0, 2}, {2, 2}};
+        for (int window = 0; window < corners.length; window++) {
+            DoubleMatrix expected = getExpectedFeatures(corners[window][0], corners[window][1], 3, 2, false);
+            Assert.assertArrayEquals(expected.toArray(), batch.getRow(window).toArray(), 0.0);
+            assertEquals(corners[window][0], boxes.get(window).getLeft());
+            assertEquals(corners[window][1], boxes.get(window).getTop());
+            assertEquals(corners[window][0] + 3, boxes.get(window).getRight());
+            assertEquals(corners[window][1] + 2, boxes.get(window).getBottom());
+        }
+    }
+
+    @Test
+    public void testColorWindowsMatchConvertedSubImages() {
+        SlidingWindowScanner scanner = new SlidingWindowScanner.Builder(mNeuralNetwork, 2, 2)
+                .stride(3)
+                .color(true)
+                .threshold(-1.0).build();
+        scanner.scan(mImage);
+
+        DoubleMatrix batch = mBatches.get(0);
+        assertEquals(2, batch.rows);
+        assertEquals(12, batch.columns);
+        Assert.assertArrayEquals(getExpectedFeatures(0, 0, 2, 2, true).toArray(), batch.getRow(0).toArray(), 0.0);
+        Assert.assertArrayEquals(getExpectedFeatures(3, 0, 2, 2, true).toArray(), batch.getRow(1).toArray(), 0.0);
+    }
+
+    @Test
+    public void testOnlyWindowsAboveThresholdAreReturned() {
+        SlidingWindowScanner scanner = new SlidingWindowScanner.Builder(mNeuralNetwork, 1, 1)
+                .stride(1)
+                .color(true)
+                .threshold(25 / 255.0).build();
+        List<BoundingBox> boxes = scanner.scan(mImage);
+
+        // The first feature of each window is the red value, x * 10
+        assertEquals(12, boxes.size());
+        for (BoundingBox box : boxes) {
+            assertTrue(box.getLeft() >= 3);
+            assertEquals(box.getLeft() * 10 / 255.0, box.getScore(), 0.0001);
+        }
+    }
+
+    @Test
+    public void testWindowsAreScoredInBatches() {
+        SlidingWindowScanner scanner = new SlidingWindowScanner.Builder(mNeuralNetwork, 2, 2)
+                .stride(1)
+                .batchSize(4)
+                .threshold(-1.0).build();
+        List<BoundingBox> boxes = scanner.scan(mImage);
+
+        assertEquals(15, boxes.size());
+        assertEquals(4, mBatches.size());
+        assertEquals(3, mBatches.get(3).rows);
+        verify(mNeuralNetwork, times(4)).feedForward(any(DoubleMatrix.class));
+        assertEquals(4, boxes.get(14).getLeft());
+        assertEquals(2, boxes.get(14).getTop());
+    }
+
+    @Test
+    public void testSubImageIsScannedInPlace() {
+        SlidingWindowScanner scanner = new SlidingWindowScanner.Builder(mNeuralNetwork, 2, 2)
+                .stride(1)
+                .color(true)
+                .threshold(-1.0).build();
+        Image subImage = mImage.getSubImage(2, 1, 5, 4);
+        List<BoundingBox> boxes = scanner.scan(subImage);
+        scanner.scan(subImage.getColorPixels(), 3, 3);
+
+        assertEquals(4, boxes.size());
+        assertEquals(2, mBatches.size());
+        Assert.assertArrayEquals(mBatches.get(1).toArray(), mBatches.get(0).toArray(), 0.0);
+        Assert.assertArrayEquals(getExpectedFeatures(3, 2, 2, 2, true).toArray(), mBatches.get(0).getRow(3).toArray(), 0.0);
+    }
+
+    @Test
+    public void testImageSmallerThanWindowReturnsNothing() {
+        SlidingWindowScanner scanner = new SlidingWindowScanner.Builder(mNeuralNetwork, 7, 2).build();
+        assertTrue(scanner.scan(mImage).isEmpty());
+        verify(mNeuralNetwork, never()).feedForward(any(DoubleMatrix.class));
+    }
+}
@@ -66,6 +66,42 @@ public class TestImage {
         Assert.assertArrayEquals(expected.toArray(), result.toArray(), 0.0001);
     }
     
+    @Test
+    public void testPixelToFeatureIsUnsigned() {
+        assertEquals(0.0, Image.pixelToFeature((byte)0), 0.0);
+        assertEquals(127 / 255.0, Image.pixelToFeature((byte)127), 0.0);
+        assertEquals(200 / 255.0, Image.pixelToFeature((byte)200), 0.0);
+        assertEquals(1.0, Image.pixelToFeature((byte)255), 0.0);
+    }
+    
+    @Test
+    public void testConvertColorToMatrixWorksCorrectly() {
+        DoubleMatrix expected = new DoubleMatrix(new double [][] {
+                {1.0, 0.0, 0.0, 0.0, 1.0, 0.0, 0.0, 0.0, 1.0, 0.5}
+        });
+        mImage = new Image(mBufferedImage);
+        DoubleMatrix result = mImage.convertColorToMatrix(0.5);
+        Assert.assertArrayEquals(expected.toArray(), result.toArray(), 0.0);
+    }
+    
+    @Test
+    public void testConvertToRowWritesOnlyThatRow() {
+        mImage = new Image(mBufferedImage);
+        DoubleMatrix batch = new DoubleMatrix(3, 9);
+        mImage.convertColorToRow(batch, 1);
+        mImage.convertGrayscaleToRow(batch, 2);
+
+        Assert.assertArrayEquals(new double [9], batch.getRow(0).toArray(), 0.0);
+        Assert.assertArrayEquals(mImage.convertColorToMatrix(0.0).getRange(0, 1, 0, 9).toArray(), batch.getRow(1).toArray(), 0.0);
+        Assert.assertArrayEquals(new double [] {85 / 255.0, 85 / 255.0, 85 / 255.0, 0, 0, 0, 0, 0, 0}, batch.getRow(2).toArray(), 0.0);
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testConvertToRowRejectsSmallMatrix() {
+        mImage = new Image(mBufferedImage);
+        mImage.convertColorToRow(new DoubleMatrix(1, 8), 0);
+    }
+    
     @Test
     public void testGetSubImageGetsCorrectly() {
         mImage = new Image(mBufferedImage);
@@ -82,8 +118,139 @@ public class TestImage {
         assertEquals(blue.getRGB(), result.getRGB(0, 0));
     }
     
+    @Test
+    public void testGetSubImageSharesPixels() {
+        BufferedImage bufferedImage = new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 4; x++) {
+                bufferedImage.setRGB(x, y, new Color(x * 10, y * 10, x + y).getRGB());
+            }
+        }
+        mImage = new Image(bufferedImage);
+        Image subImage = mImage.getSubImage(1, 1, 3, 3);
+
+        assertTrue(subImage.isSubImage());
+        assertFalse(mImage.isSubImage());
+        assertSame(mImage.getBand(0).data, subImage.getBand(0).data);
+        assertEquals(2, subImage.getWidth());
+        assertEquals(2, subImage.getHeight());
+        Assert.assertArrayEquals(new byte [] {10, 10, 2, 20, 10, 3, 10, 20, 3, 20, 20, 4}, subImage.getColorPixels());
+        Assert.assertArrayEquals(new byte [] {7, 11, 11, 14}, subImage.getGrayscalePixels());
+        assertEquals(new Color(20, 20, 4).getRGB(), subImage.getBufferedImage().getRGB(1, 1));
+    }
+
+    @Test (expected=IllegalArgumentException.class)
+    public void testGetSubImageOutsideImageThrowsException() {
+        mImage = new Image(mBufferedImage);
+        mImage.getSubImage(1, 0, 4, 1);
+    }
+
     @Test (expected=IllegalArgumentException.class)
     public void testCreateWithNullThrowsException() {
         mImage = new Image((BufferedImage)null);
     }
+    
+    @Test
+    public void testGetBufferedImageIsCreatedOnce() {
+        mImage = new Image(mBufferedImage);
+        assertSame(mImage.getBufferedImage(), mImage.getBufferedImage());
+    }
+    
+    @Test
+    public void testConvertToGrayscaleSharesOneBand() {
+        mImage = new Image(mBufferedImage);
+        Image grayscale = mImage.convertToGrayscale();
+        assertFalse(mImage.isGrayscale());
+        assertTrue(grayscale.isGrayscale());
+        assertEquals(3, grayscale.getNumBands());
+        assertSame(grayscale.getBand(0).data, grayscale.getBand(2).data);
+        Assert.assertArrayEquals(grayscale.getColorPixels(), grayscale.convertToGrayscale().getColorPixels());
+    }
+    
+    @Test
+    public void testCreateGrayscaleFromMatrixRoundTrips() {
+        DoubleMatrix features = new DoubleMatrix(new double [][] {
+                {0.0, 200 / 255.0, 1.0, 85 / 255.0}
+        });
+        mImage = new Image(features, 2, 2, false);
+        assertTrue(mImage.isGrayscale());
+        Assert.assertArrayEquals(features.toArray(), mImage.convertGrayscaleToMatrix(0.0).getRange(0, 1, 0, 4).toArray(), 0.000001);
+        assertEquals(new Color(200, 200, 200).getRGB(), mImage.getBufferedImage().getRGB(1, 0));
+
+        Image resized = mImage.resize(1, 1);
+        assertTrue(resized.isGrayscale());
+        assertEquals(135, resized.getBand(0).get(0, 0));
+    }
+    
+    @Test
+    public void testDrawBoundingBoxDrawsOutline() {
+        BufferedImage blank = new BufferedImage(5, 5, BufferedImage.TYPE_INT_RGB);
+        mImage = new Image(blank);
+        BufferedImage result = mImage.drawBoundingBox(1, 1, 4, 4, red).getBufferedImage();
+        assertEquals(red.getRGB(), result.getRGB(1, 1));
+        assertEquals(red.getRGB(), result.getRGB(3, 1));
+        assertEquals(red.getRGB(), result.getRGB(1, 3));
+        assertEquals(red.getRGB(), result.getRGB(3, 3));
+        assertEquals(blank.getRGB(2, 2), result.getRGB(2, 2));
+        assertEquals(blank.getRGB(0, 0), result.getRGB(0, 0));
+        assertEquals(blank.getRGB(4, 4), result.getRGB(4, 4));
+        assertEquals(blank.getRGB(1, 1), mImage.getBufferedImage().getRGB(1, 1));
+    }
+    
+    @Test
+    public void testDrawBoundingBoxOnSharedGrayscaleBandsUsesAverage() {
+        // Grayscale images hold 3 bands that share one set of pixels
+        mImage = new Image(new DoubleMatrix(1, 25), 5, 5, false);
+        assertEquals(3, mImage.getNumBands());
+        Image result = mImage.drawBoundingBox(1, 1, 4, 4, new Color(30, 60, 90));
+
+        assertTrue(result.isGrayscale());
+        assertEquals(new Color(60, 60, 60).getRGB(), result.getBufferedImage().getRGB(1, 1));
+        assertEquals(new Color(0, 0, 0).getRGB(), result.getBufferedImage().getRGB(2, 2));
+        assertEquals(0, mImage.getBand(0).get(1, 1));
+    }
+    
+    @Test
+    public void testResizeAveragesArea() {
+        BufferedImage image = new BufferedImage(4, 2, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, new Color(200, 0, 0).getRGB());
+        image.setRGB(1, 0, new Color(100, 0, 0).getRGB());
+        image.setRGB(0, 1, new Color(0, 0, 0).getRGB());
+        image.setRGB(1, 1, new Color(100, 0, 0).getRGB());
+        image.setRGB(2, 0, new Color(0, 40, 0).getRGB());
+        image.setRGB(3, 0, new Color(0, 40, 0).getRGB());
+        image.setRGB(2, 1, new Color(0, 40, 0).getRGB());
+        image.setRGB(3, 1, new Color(0, 40, 0).getRGB());
+        mImage = new Image(image);
+        Image result = mImage.resize(2, 1);
+        
+        assertEquals(2, result.getWidth());
+        assertEquals(1, result.getHeight());
+        BufferedImage resultImage = result.getBufferedImage();
+        assertEquals(new Color(100, 0, 0).getRGB(), resultImage.getRGB(0, 0));
+        assertEquals(new Color(0, 40, 0).getRGB(), resultImage.getRGB(1, 0));
+    }
+    
+    @Test
+    public void testResizeToFractionalRatioKeepsConstantImage() {
+        BufferedImage image = new BufferedImage(7, 5, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 5; y++) {
+            for (int x = 0; x < 7; x++) {
+                image.setRGB(x, y, green.getRGB());
+            }
+        }
+        mImage = new Image(image);
+        BufferedImage result = mImage.resize(3, 2).getBufferedImage();
+        for (int y = 0; y < 2; y++) {
+            for (int x = 0; x < 3; x++) {
+                assertEquals(green.getRGB(), result.getRGB(x, y));
+            }
+        }
+    }
+    
+    @Test (expected=IllegalArgumentException.class)
+    public void testResizeCannotEnlarge() {
+        mImage = new Image(mBufferedImage);
+        mImage.resize(4, 1);
+    }
 }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.pipeline;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+
+public class TestBatchClassifier {
+
+    private NeuralNetwork mNeuralNetwork;
+    private List<Integer> mBatchSizes;
+    private CountDownLatch mRelease;
+
+    @Before
+    public void setUp() {
+        // Scores each row with the sum of its features, after waiting for
+        // the test to release the first batch
+        mBatchSizes = new ArrayList<Integer>();
+        mRelease = new CountDownLatch(0);
+        mNeuralNetwork = mock(NeuralNetwork.class);
+        when(mNeuralNetwork.feedForward(any(DoubleMatrix.class))).thenAnswer(new Answer<DoubleMatrix>() {
+            @Override
+            public DoubleMatrix answer(InvocationOnMock invocation) throws InterruptedException {
+                DoubleMatrix features = (DoubleMatrix)invocation.getArguments()[0];
+                synchronized (mBatchSizes) {
+                    mBatchSizes.add(features.rows);
+                }
+                mRelease.await();
+                return features.rowSums();
+            }
+        });
+    }
+
+    @Test (timeout=10000)
+    public void testRowsWaitingTogetherAreScoredInOneBatch() throws Exception {
+        mRelease = new CountDownLatch(1);
+        BatchClassifier classifier = new BatchClassifier.Builder(mNeuralNetwork, 2)
+                .batchSize(4).build();
+
+        // The first row is scored alone, and holds the classifier until the
+        // other rows are waiting
+        List<CompletableFuture<Double>> scores = new ArrayList<CompletableFuture<Double>>();
+        scores.add(classifier.submit(new double [] {0.0, 1.0}));
+        while (mBatchSizes.isEmpty()) {
+            Thread.sleep(1);
+        }
+        for (int row = 1; row < 7; row++) {
+            scores.add(classifier.submit(new double [] {row, 1.0}));
+        }
+        mRelease.countDown();
+
+        for (int row = 0; row < 7; row++) {
+            assertEquals(row + 1.0, scores.get(row).get(), 0.0);
+        }
+        classifier.close();
+        assertEquals(3, mBatchSizes.size());
+        assertEquals(Integer.valueOf(1), mBatchSizes.get(0));
+        assertEquals(Integer.valueOf(4), mBatchSizes.get(1));
+        assertEquals(Integer.valueOf(2), mBatchSizes.get(2));
+    }
+
+    @Test (timeout=10000)
+    public void testSubmitAfterCloseFails() throws InterruptedException {
+        BatchClassifier classifier = new BatchClassifier.Builder(mNeuralNetwork, 2).build();
+        classifier.close();
+        try {
+            classifier.submit(new double [2]).get();
+            fail("expected the score to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test (expected=IllegalArgumentException.class)
+    public void testSubmittedRowMustMatchNumberOfFeatures() throws InterruptedException {
+        BatchClassifier classifier = new BatchClassifier.Builder(mNeuralNetwork, 2).build();
+        try {
+            classifier.submit(new double [3]);
+        } finally {
+            classifier.close();
+        }
+    }
+}
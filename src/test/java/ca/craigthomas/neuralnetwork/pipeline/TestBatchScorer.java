@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.pipeline;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jblas.DoubleMatrix;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+
+public class TestBatchScorer {
+
+    private NeuralNetwork mNeuralNetwork;
+    private List<Integer> mBatchSizes;
+    private List<Double> mScores;
+    private List<Double> mFailed;
+
+    @Before
+    public void setUp() {
+        // Scores each row with the sum of its features, but fails the
+        // second batch
+        mBatchSizes = new ArrayList<Integer>();
+        mScores = new ArrayList<Double>();
+        mFailed = new ArrayList<Double>();
+        mNeuralNetwork = mock(NeuralNetwork.class);
+        when(mNeuralNetwork.feedForward(any(DoubleMatrix.class))).thenAnswer(new Answer<DoubleMatrix>() {
+            @Override
+            public DoubleMatrix answer(InvocationOnMock invocation) {
+                DoubleMatrix features = (DoubleMatrix)invocation.getArguments()[0];
+                mBatchSizes.add(features.rows);
+                if (mBatchSizes.size() == 2) {
+                    throw new IllegalStateException("failed batch");
+                }
+                return features.rowSums();
+            }
+        });
+    }
+
+    private BatchScorer<double []> createScorer(FrameQueue<double []> queue, int batchSize) {
+        return new BatchScorer<double []>(mNeuralNetwork, queue, batchSize, 2) {
+            @Override
+            protected void fillRow(double [] item, DoubleMatrix features, int row) {
+                copyRow(item, features, row);
+            }
+
+            @Override
+            protected void scored(double [] item, double score) {
+                assertEquals(item[0] + item[1], score, 0.0);
+                mScores.add(score);
+            }
+
+            @Override
+            protected void failed(List<double []> batch, RuntimeException e) {
+                assertEquals("failed batch", e.getMessage());
+                for (double [] item : batch) {
+                    mFailed.add(item[0]);
+                }
+            }
+        };
+    }
+
+    @Test (timeout=10000)
+    public void testWaitingItemsAreScoredInBatchesAfterAFailedBatch() throws InterruptedException {
+        FrameQueue<double []> queue = new FrameQueue<double []>(10, FrameQueue.Policy.BLOCK);
+        for (int item = 0; item < 7; item++) {
+            queue.put(new double [] {item, 1.0});
+        }
+        queue.close();
+        createScorer(queue, 3).run();
+
+        assertEquals(3, mBatchSizes.size());
+        assertEquals(Integer.valueOf(3), mBatchSizes.get(0));
+        assertEquals(Integer.valueOf(3), mBatchSizes.get(1));
+        assertEquals(Integer.valueOf(1), mBatchSizes.get(2));
+        assertEquals(4, mScores.size());
+        assertEquals(7.0, mScores.get(3), 0.0);
+        assertEquals(3, mFailed.size());
+        assertEquals(3.0, mFailed.get(0), 0.0);
+    }
+
+    @Test
+    public void testCopyRowWritesColumnMajor() {
+        DoubleMatrix features = new DoubleMatrix(2, 3);
+        BatchScorer.copyRow(new double [] {1.0, 2.0, 3.0}, features, 1);
+
+        assertArrayEquals(new double [] {0.0, 0.0, 0.0}, features.getRow(0).toArray(), 0.0);
+        assertArrayEquals(new double [] {1.0, 2.0, 3.0}, features.getRow(1).toArray(), 0.0);
+    }
+}
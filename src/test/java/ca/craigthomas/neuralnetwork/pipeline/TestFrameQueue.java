@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.pipeline;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TestFrameQueue {
+
+    @Test
+    public void testDropDiscardsNewItems() throws InterruptedException {
+        FrameQueue<Integer> queue = new FrameQueue<Integer>(2, FrameQueue.Policy.DROP);
+        assertTrue(queue.put(1));
+        assertTrue(queue.put(2));
+        assertFalse(queue.put(3));
+        assertEquals(1, queue.getDropped());
+        assertEquals(Integer.valueOf(1), queue.take());
+        assertEquals(Integer.valueOf(2), queue.take());
+    }
+
+    @Test
+    public void testCoalesceDiscardsOldestItems() throws InterruptedException {
+        FrameQueue<Integer> queue = new FrameQueue<Integer>(2, FrameQueue.Policy.COALESCE);
+        for (int item = 1; item <= 5; item++) {
+            assertTrue(queue.put(item));
+        }
+        assertEquals(3, queue.getDropped());
+        assertEquals(Integer.valueOf(4), queue.take());
+        assertEquals(Integer.valueOf(5), queue.take());
+    }
+
+    @Test (timeout=5000)
+    public void testBlockWaitsForRoom() throws InterruptedException {
+        final FrameQueue<Integer> queue = new FrameQueue<Integer>(1, FrameQueue.Policy.BLOCK);
+        queue.put(1);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    queue.put(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        producer.start();
+        assertEquals(Integer.valueOf(1), queue.take());
+        producer.join();
+        assertEquals(Integer.valueOf(2), queue.take());
+        assertEquals(0, queue.getDropped());
+    }
+
+    @Test
+    public void testClosedQueueDrainsThenFinishes() throws InterruptedException {
+        FrameQueue<Integer> queue = new FrameQueue<Integer>(4, FrameQueue.Policy.BLOCK);
+        queue.put(1);
+        queue.put(2);
+        queue.put(3);
+        queue.close();
+        assertFalse(queue.put(4));
+
+        List<Integer> drained = new ArrayList<Integer>();
+        assertEquals(2, queue.drainTo(drained, 2));
+        assertEquals(Arrays.asList(1, 2), drained);
+        assertEquals(Integer.valueOf(3), queue.take());
+        assertNull(queue.take());
+    }
+}
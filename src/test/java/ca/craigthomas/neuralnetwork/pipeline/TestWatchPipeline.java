@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.pipeline;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FileUtils;
+import org.jblas.DoubleMatrix;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+
+public class TestWatchPipeline {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private NeuralNetwork mNeuralNetwork;
+    private StringWriter mOutput;
+
+    @Before
+    public void setUp() {
+        // Scores each frame with the value of its first feature
+        mNeuralNetwork = mock(NeuralNetwork.class);
+        when(mNeuralNetwork.feedForward(any(DoubleMatrix.class))).thenAnswer(new Answer<DoubleMatrix>() {
+            @Override
+            public DoubleMatrix answer(InvocationOnMock invocation) {
+                return ((DoubleMatrix)invocation.getArguments()[0]).getColumn(0);
+            }
+        });
+        mOutput = new StringWriter();
+    }
+
+    private File writeImage(File directory, String name, int width, int height, int gray) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, new Color(gray, gray, gray).getRGB());
+            }
+        }
+        File file = new File(directory, name);
+        ImageIO.write(image, "png", file);
+        return file;
+    }
+
+    private List<String> getSortedLines() {
+        List<String> lines = Arrays.asList(mOutput.toString().split("\n"));
+        Collections.sort(lines);
+        return lines;
+    }
+
+    @Test (timeout=10000)
+    public void testSubmittedFilesAreClassified() throws IOException, InterruptedException {
+        File bright = writeImage(mFolder.getRoot(), "bright.png", 2, 2, 255);
+        File dark = writeImage(mFolder.getRoot(), "dark.png", 4, 4, 0);
+        File small = writeImage(mFolder.getRoot(), "small.png", 1, 1, 255);
+        File text = mFolder.newFile("notes.txt");
+        FileUtils.writeStringToFile(text, "not an image");
+
+        WatchPipeline pipeline = new WatchPipeline.Builder(mNeuralNetwork, 2, 2)
+                .policy(FrameQueue.Policy.BLOCK)
+                .decodeThreads(2)
+                .output(mOutput).build();
+        for (File file : Arrays.asList(bright, dark, small, text)) {
+            assertTrue(pipeline.submit(file));
+        }
+        pipeline.close();
+
+        assertEquals(2, pipeline.getProcessed());
+        assertEquals(2, pipeline.getFailed());
+        assertEquals(Arrays.asList(bright.getPath() + ",1.0,1", dark.getPath() + ",0.0,0"), getSortedLines());
+        assertFalse(pipeline.submit(bright));
+    }
+
+    @Test (timeout=10000)
+    public void testSmallImagesAreNotRetried() throws IOException, InterruptedException {
+        File small = writeImage(mFolder.getRoot(), "small.png", 1, 1, 255);
+
+        WatchPipeline pipeline = new WatchPipeline.Builder(mNeuralNetwork, 2, 2)
+                .policy(FrameQueue.Policy.BLOCK)
+                .decodeThreads(1)
+                .output(mOutput).build();
+        long start = System.currentTimeMillis();
+        for (int count = 0; count < 3; count++) {
+            assertTrue(pipeline.submit(small));
+        }
+        pipeline.close();
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(3, pipeline.getFailed());
+        assertTrue("took " + elapsed + " ms", elapsed < WatchPipeline.DECODE_RETRIES * WatchPipeline.DECODE_RETRY_DELAY);
+    }
+
+    @Test (timeout=10000)
+    public void testNewFilesInWatchedDirectoryAreClassified() throws Exception {
+        final File directory = mFolder.newFolder("watched");
+        File staging = writeImage(mFolder.getRoot(), "frame.png", 2, 2, 255);
+        final WatchPipeline pipeline = new WatchPipeline.Builder(mNeuralNetwork, 2, 2)
+                .output(mOutput).build();
+        Thread watcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    pipeline.watch(directory);
+                } catch (Exception e) {
+                    fail(e.getMessage());
+                }
+            }
+        });
+        watcher.start();
+
+        // Keep moving frames in until the watch service has been registered
+        int frame = 0;
+        while (pipeline.getProcessed() == 0) {
+            Files.copy(staging.toPath(), new File(mFolder.getRoot(), "copy.png").toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(new File(mFolder.getRoot(), "copy.png").toPath(), new File(directory, "frame" + frame++ + ".png").toPath());
+            Thread.sleep(50);
+        }
+        pipeline.close();
+        watcher.join();
+
+        assertTrue(mOutput.toString().startsWith(new File(directory, "frame").getPath()));
+        assertTrue(mOutput.toString().contains(",1.0,1\n"));
+    }
+
+    @Test (timeout=10000)
+    public void testSubmittedFeaturesAreClassifiedByEveryWorker() throws InterruptedException {
+        WatchPipeline pipeline = new WatchPipeline.Builder(mNeuralNetwork, 2, 1)
+                .policy(FrameQueue.Policy.BLOCK)
+                .batchSize(3)
+                .queueCapacity(4)
+                .classifyThreads(3)
+                .threshold(0.5)
+                .output(mOutput).build();
+        for (int row = 0; row < 100; row++) {
+            assertTrue(pipeline.submit(Integer.toString(row), new double [] {row / 100.0, 0.0}));
+        }
+        pipeline.close();
+
+        assertEquals(100, pipeline.getProcessed());
+        assertEquals(0, pipeline.getFailed());
+        List<String> lines = getSortedLines();
+        assertEquals(100, lines.size());
+        assertTrue(lines.contains("7,0.07,0"));
+        assertTrue(lines.contains("50,0.5,0"));
+        assertTrue(lines.contains("51,0.51,1"));
+    }
+
+    @Test (expected=IllegalArgumentException.class)
+    public void testSubmittedFeaturesMustMatchInputSize() throws InterruptedException {
+        WatchPipeline pipeline = new WatchPipeline.Builder(mNeuralNetwork, 2, 2)
+                .output(mOutput).build();
+        try {
+            pipeline.submit("row", new double [3]);
+        } finally {
+            pipeline.close();
+        }
+    }
+}
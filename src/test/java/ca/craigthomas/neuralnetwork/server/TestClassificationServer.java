@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2014-2019 Craig Thomas
+ * This project uses an MIT style license - see LICENSE for details.
+ */
+package ca.craigthomas.neuralnetwork.server;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.IOUtils;
+import org.jblas.DoubleMatrix;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import ca.craigthomas.neuralnetwork.components.network.NeuralNetwork;
+
+public class TestClassificationServer {
+
+    private NeuralNetwork mNeuralNetwork;
+    private ClassificationServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        // Scores each sample with the value of its first feature
+        mNeuralNetwork = mock(NeuralNetwork.class);
+        when(mNeuralNetwork.feedForward(any(DoubleMatrix.class))).thenAnswer(new Answer<DoubleMatrix>() {
+            @Override
+            public DoubleMatrix answer(InvocationOnMock invocation) {
+                return ((DoubleMatrix)invocation.getArguments()[0]).getColumn(0);
+            }
+        });
+        mServer = new ClassificationServer.Builder(mNeuralNetwork, 2, 2)
+                .warmupIterations(5)
+                .address(new InetSocketAddress("127.0.0.1", 0)).build();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.close();
+    }
+
+    private byte [] encodeImage(int width, int height, int gray) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, new Color(gray, gray, gray).getRGB());
+            }
+        }
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", encoded);
+        return encoded.toByteArray();
+    }
+
+    /**
+     * Sends a request, and returns the status followed by the response body.
+     */
+    private String send(String method, String path, String contentType, byte [] body) throws IOException {
+        URL url = new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + path);
+        HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", contentType);
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(body);
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream input = (status < 400) ? connection.getInputStream() : connection.getErrorStream();
+        try {
+            return status + " " + IOUtils.toString(input, StandardCharsets.UTF_8);
+        } finally {
+            input.close();
+            connection.disconnect();
+        }
+    }
+
+    @Test (timeout=10000)
+    public void testImageIsClassified() throws IOException {
+        assertEquals("200 1.0,1\n", send("POST", "/classify", "image/png", encodeImage(2, 2, 255)));
+        assertEquals("200 0.0,0\n", send("POST", "/classify", "image/png", encodeImage(4, 4, 0)));
+    }
+
+    @Test (timeout=10000)
+    public void testFeatureRowsAreClassified() throws IOException {
+        // A score equal to the threshold is not above it
+        byte [] rows = "0.25,0,0,0\n0.5,0,0,0\n0.75,1,1,1\n".getBytes(StandardCharsets.UTF_8);
+        assertEquals("200 0.25,0\n0.5,0\n0.75,1\n", send("POST", "/classify", "text/csv", rows));
+    }
+
+    @Test (timeout=10000)
+    public void testBadRequestsAreRejected() throws IOException {
+        assertTrue(send("POST", "/classify", "image/png", "not an image".getBytes(StandardCharsets.UTF_8)).startsWith("400 "));
+        assertTrue(send("POST", "/classify", "image/png", encodeImage(1, 1, 255)).startsWith("400 "));
+        assertTrue(send("POST", "/classify", "text/csv", "1,2,3\n".getBytes(StandardCharsets.UTF_8)).startsWith("400 "));
+        assertTrue(send("GET", "/classify", null, null).startsWith("405 "));
+    }
+
+    @Test (timeout=10000)
+    public void testHealthCheck() throws IOException {
+        assertEquals("200 ok\n", send("GET", "/health", null, null));
+    }
+}